@@ -0,0 +1,199 @@
+package hr.fer.kik.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import hr.fer.kik.Cipher;
+import hr.fer.kik.ModeOfOperation;
+
+/**
+ * This class serves the requests of a single connection, one after another.
+ * It runs on its own virtual thread, so the blocking reads and writes only
+ * park the virtual thread. The key contexts are shared through the key
+ * schedule cache of <code>Cipher</code>, so a key used again, on any
+ * connection, is not expanded again.
+ *
+ * @author Ivan Lokas
+ *
+ */
+class ConnectionHandler implements Runnable {
+	/**
+	 * Size of the stream buffers in bytes
+	 */
+	private static final int BUFFER_SIZE = 16384;
+
+	private final SocketChannel channel;
+	private final EncryptionServer server;
+	/**
+	 * Buffer for the payload chunks, grown when needed, so idle connections
+	 * hold little memory
+	 */
+	private byte[] chunk = new byte[BUFFER_SIZE];
+	/**
+	 * Buffer for the cipher output, grown when needed
+	 */
+	private byte[] output = new byte[BUFFER_SIZE];
+
+	/**
+	 * @param channel the connection
+	 * @param server  the server which accepted the connection
+	 */
+	ConnectionHandler(SocketChannel channel, EncryptionServer server) {
+		this.channel = channel;
+		this.server = server;
+	}
+
+	@Override
+	public void run() {
+		try (channel) {
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+
+			int operation;
+			while ((operation = in.read()) >= 0) {
+				if (!serve(operation, in, out)) {
+					break;
+				}
+			}
+		} catch (EOFException e) {
+			// the client closed the connection in the middle of a request
+		} catch (IOException e) {
+			// the connection failed or the server was closed
+		} finally {
+			server.connectionClosed(channel);
+		}
+	}
+
+	/**
+	 * Serves a request
+	 *
+	 * @param operation the operation byte
+	 * @param in        input stream
+	 * @param out       output stream
+	 * @return true if the connection can be used for the next request
+	 * @throws IOException if the connection fails or the request is malformed
+	 */
+	private boolean serve(int operation, DataInputStream in, OutputStream out) throws IOException {
+		String transformation = new String(
+				Protocol.readBytes(in, in.readUnsignedShort(), Protocol.MAX_TRANSFORMATION_SIZE),
+				StandardCharsets.UTF_8);
+		byte[] key = Protocol.readBytes(in, in.readUnsignedByte(), Protocol.MAX_KEY_SIZE);
+		byte[] iv = Protocol.readBytes(in, in.readUnsignedByte(), Protocol.MAX_KEY_SIZE);
+		byte[] aad = Protocol.readBytes(in, in.readInt(), Protocol.MAX_AAD_SIZE);
+
+		try {
+			Cipher cipher = createCipher(operation, transformation, key, iv, aad);
+			long limit = isBuffered(cipher) ? server.getMaxBufferedSize() : Long.MAX_VALUE;
+			long total = 0;
+
+			int len;
+			while ((len = Protocol.readChunkLength(in)) > 0) {
+				total += len;
+				if (total > limit) {
+					throw new IllegalArgumentException(String.format(
+							"The payload is longer than %d bytes, which is the most this server buffers!", limit));
+				}
+
+				if (chunk.length < len) {
+					chunk = new byte[len];
+				}
+
+				in.readFully(chunk, 0, len);
+				writeOutput(out, cipher.update(chunk, 0, len, ensureOutput(cipher, len), 0));
+			}
+
+			if (len != 0) {
+				throw new IllegalArgumentException("The payload chunk length needs to be positive!");
+			}
+
+			writeOutput(out, cipher.doFinal(chunk, 0, 0, ensureOutput(cipher, 0), 0));
+			Protocol.writeEnd(out);
+			out.flush();
+
+			return true;
+		} catch (RuntimeException e) {
+			Protocol.writeError(out, e.getMessage());
+			out.flush();
+
+			return false;
+		}
+	}
+
+	/**
+	 * @param operation      the operation byte
+	 * @param transformation the transformation
+	 * @param key            the Cipher Key bytes
+	 * @param iv             the IV, or an empty array
+	 * @param aad            additional data, or an empty array
+	 * @return cipher initialized for the request
+	 */
+	private static Cipher createCipher(int operation, String transformation, byte[] key, byte[] iv, byte[] aad) {
+		int modeOfUse = switch (operation) {
+		case Protocol.ENCRYPT -> Cipher.ENCRYPT_MODE;
+		case Protocol.DECRYPT -> Cipher.DECRYPT_MODE;
+		default -> throw new IllegalArgumentException(String.format("The operation %d is not supported!", operation));
+		};
+
+		Cipher cipher = new Cipher();
+		cipher.init(transformation);
+
+		if (iv.length == 0) {
+			cipher.init(modeOfUse, key);
+		} else {
+			cipher.init(modeOfUse, key, iv);
+		}
+
+		if (aad.length != 0) {
+			cipher.updateAAD(aad);
+		}
+
+		return cipher;
+	}
+
+	/**
+	 * @param cipher the cipher
+	 * @return true if the cipher keeps the whole payload until
+	 *         <code>doFinal</code>, like the GCM decryption
+	 */
+	private static boolean isBuffered(Cipher cipher) {
+		return cipher.getModeOfUse() == Cipher.DECRYPT_MODE
+				&& ModeOfOperation.GCM.name().equals(cipher.getModeOfOperation());
+	}
+
+	/**
+	 * Writes the cipher output as chunks
+	 *
+	 * @param out      output stream
+	 * @param produced number of bytes in the output buffer
+	 * @throws IOException if writing fails
+	 */
+	private void writeOutput(OutputStream out, int produced) throws IOException {
+		for (int off = 0; off < produced; off += Protocol.MAX_CHUNK_SIZE) {
+			Protocol.writeChunk(out, output, off, Math.min(produced - off, Protocol.MAX_CHUNK_SIZE));
+		}
+	}
+
+	/**
+	 * @param cipher the cipher
+	 * @param len    length of the next input
+	 * @return output buffer large enough for the next call
+	 */
+	private byte[] ensureOutput(Cipher cipher, int len) {
+		int size = cipher.getOutputSize(len);
+
+		if (output.length < size) {
+			output = new byte[size];
+		}
+
+		return output;
+	}
+
+}
@@ -0,0 +1,244 @@
+package hr.fer.kik.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+/**
+ * This class provides a client of the encryption service. A client holds a
+ * single connection and sends one request at a time, so it is not thread safe.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class EncryptionClient implements Closeable {
+	/**
+	 * Size of the stream buffers in bytes
+	 */
+	private static final int BUFFER_SIZE = 16384;
+	private static final byte[] EMPTY = new byte[0];
+
+	private final SocketChannel channel;
+	private final DataInputStream in;
+	private final OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * @param channel the connected channel
+	 */
+	private EncryptionClient(SocketChannel channel) {
+		this.channel = channel;
+		this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+		this.out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+	}
+
+	/**
+	 * Connects to a server
+	 *
+	 * @param address address of the server
+	 * @return the connected client
+	 * @throws IOException if the connection fails
+	 */
+	public static EncryptionClient connect(SocketAddress address) throws IOException {
+		SocketChannel channel = address instanceof UnixDomainSocketAddress
+				? SocketChannel.open(StandardProtocolFamily.UNIX)
+				: SocketChannel.open();
+
+		try {
+			channel.connect(address);
+
+			if (!(address instanceof UnixDomainSocketAddress)) {
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		return new EncryptionClient(channel);
+	}
+
+	/**
+	 * @param transformation the transformation, for example
+	 *                       <code>AES128/GCM</code>
+	 * @param key            the Cipher Key bytes
+	 * @param iv             the IV, or an empty array for the all zero IV
+	 * @param aad            additional data, or an empty array
+	 * @param data           the plaintext
+	 * @return the ciphertext
+	 * @throws IOException if the connection fails or the server rejects the
+	 *                     request
+	 */
+	public byte[] encrypt(String transformation, byte[] key, byte[] iv, byte[] aad, byte[] data) throws IOException {
+		return process(Protocol.ENCRYPT, transformation, key, iv, aad, data);
+	}
+
+	/**
+	 * @param transformation the transformation, for example
+	 *                       <code>AES128/GCM</code>
+	 * @param key            the Cipher Key bytes
+	 * @param iv             the IV, or an empty array for the all zero IV
+	 * @param aad            additional data, or an empty array
+	 * @param data           the ciphertext
+	 * @return the plaintext
+	 * @throws IOException if the connection fails or the server rejects the
+	 *                     request
+	 */
+	public byte[] decrypt(String transformation, byte[] key, byte[] iv, byte[] aad, byte[] data) throws IOException {
+		return process(Protocol.DECRYPT, transformation, key, iv, aad, data);
+	}
+
+	/**
+	 * Streams the payload from <code>source</code> to the server, and the
+	 * result from the server to <code>sink</code>. The payload is sent from a
+	 * virtual thread while the result is received, so neither has to fit into
+	 * memory.
+	 *
+	 * @param operation      <code>Protocol.ENCRYPT</code> or
+	 *                       <code>Protocol.DECRYPT</code>
+	 * @param transformation the transformation
+	 * @param key            the Cipher Key bytes
+	 * @param iv             the IV, or an empty array for the all zero IV
+	 * @param aad            additional data, or an empty array
+	 * @param source         the payload
+	 * @param sink           receives the result
+	 * @return number of bytes written to <code>sink</code>
+	 * @throws IOException if the connection fails or the server rejects the
+	 *                     request
+	 */
+	public long process(int operation, String transformation, byte[] key, byte[] iv, byte[] aad, InputStream source,
+			OutputStream sink) throws IOException {
+		Protocol.writeHeader(out, operation, transformation, key, nonNull(iv), nonNull(aad));
+
+		IOException[] failure = new IOException[1];
+		Thread sender = Thread.ofVirtual().start(() -> {
+			try {
+				byte[] chunk = new byte[BUFFER_SIZE];
+				int len;
+
+				while ((len = source.readNBytes(chunk, 0, chunk.length)) > 0) {
+					Protocol.writeChunk(out, chunk, 0, len);
+				}
+
+				Protocol.writeEnd(out);
+				out.flush();
+			} catch (IOException e) {
+				failure[0] = e;
+			}
+		});
+
+		long total = receive(sink);
+
+		try {
+			sender.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sending the payload!", e);
+		}
+
+		if (Objects.nonNull(failure[0])) {
+			throw failure[0];
+		}
+
+		return total;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Sends a request whose payload is a single chunk. The server reads the
+	 * whole chunk before it answers, so the request can be written completely
+	 * before the response is read.
+	 *
+	 * @param operation      the operation byte
+	 * @param transformation the transformation
+	 * @param key            the Cipher Key bytes
+	 * @param iv             the IV
+	 * @param aad            additional data
+	 * @param data           the payload
+	 * @return the result
+	 * @throws IOException if the connection fails or the server rejects the
+	 *                     request
+	 */
+	private byte[] process(int operation, String transformation, byte[] key, byte[] iv, byte[] aad, byte[] data)
+			throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream(data.length + 16);
+
+		if (data.length > Protocol.MAX_CHUNK_SIZE) {
+			process(operation, transformation, key, iv, aad, new ByteArrayInputStream(data), result);
+			return result.toByteArray();
+		}
+
+		Protocol.writeHeader(out, operation, transformation, key, nonNull(iv), nonNull(aad));
+		if (data.length > 0) {
+			Protocol.writeChunk(out, data, 0, data.length);
+		}
+		Protocol.writeEnd(out);
+		out.flush();
+
+		receive(result);
+
+		return result.toByteArray();
+	}
+
+	/**
+	 * Reads a response
+	 *
+	 * @param sink receives the result
+	 * @return number of bytes written to <code>sink</code>
+	 * @throws IOException if the connection fails or the server rejects the
+	 *                     request
+	 */
+	private long receive(OutputStream sink) throws IOException {
+		long total = 0;
+		int len;
+
+		while ((len = Protocol.readChunkLength(in)) > 0) {
+			total += len;
+
+			while (len > 0) {
+				int read = in.read(buffer, 0, Math.min(len, buffer.length));
+				if (read < 0) {
+					throw new IOException("The server closed the connection in the middle of a response!");
+				}
+
+				sink.write(buffer, 0, read);
+				len -= read;
+			}
+		}
+
+		if (len == Protocol.ERROR) {
+			String message = Protocol.readError(in);
+			close();
+
+			throw new IOException(String.format("The server rejected the request: %s", message));
+		}
+
+		return total;
+	}
+
+	/**
+	 * @param bytes an array, or <code>null</code>
+	 * @return the array, or an empty array
+	 */
+	private static byte[] nonNull(byte[] bytes) {
+		return Objects.isNull(bytes) ? EMPTY : bytes;
+	}
+
+}
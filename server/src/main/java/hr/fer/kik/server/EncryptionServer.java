@@ -0,0 +1,259 @@
+package hr.fer.kik.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class provides an embeddable encryption service, which serves the
+ * requests described in <code>Protocol</code> over a TCP or a Unix-domain
+ * socket. Every connection is handled on its own virtual thread, so thousands
+ * of concurrent connections only take a few carrier threads.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class EncryptionServer implements Closeable {
+	/**
+	 * Maximum number of pending connections
+	 */
+	public static final int BACKLOG = 4096;
+	/**
+	 * Delay in milliseconds before accepting again after a failed accept, like
+	 * one caused by too many open files
+	 */
+	private static final long ACCEPT_RETRY_DELAY = 100;
+
+	private final ServerSocketChannel channel;
+	private final SocketAddress localAddress;
+	/**
+	 * Maximum length of a payload which is buffered as a whole
+	 */
+	private final int maxBufferedSize;
+	/**
+	 * Open connections, closed together with the server
+	 */
+	private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+	private final Thread acceptor;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param channel         the bound server channel
+	 * @param maxBufferedSize maximum length of a payload which is buffered as a
+	 *                        whole
+	 * @throws IOException if the local address can not be read
+	 */
+	private EncryptionServer(ServerSocketChannel channel, int maxBufferedSize) throws IOException {
+		this.channel = channel;
+		this.localAddress = channel.getLocalAddress();
+		this.maxBufferedSize = maxBufferedSize;
+		this.acceptor = Thread.ofVirtual().name("encryption-server-acceptor").unstarted(this::accept);
+	}
+
+	/**
+	 * Starts a new server on the given address. A Unix-domain socket file is
+	 * created on start and deleted on close.
+	 *
+	 * @param address <code>InetSocketAddress</code>, with port 0 for any free
+	 *                port, or <code>UnixDomainSocketAddress</code>
+	 * @return the started server
+	 * @throws IOException if the address can not be bound
+	 */
+	public static EncryptionServer start(SocketAddress address) throws IOException {
+		return start(address, Protocol.MAX_BUFFERED_SIZE);
+	}
+
+	/**
+	 * Starts a new server on the given address, which rejects requests whose
+	 * payload has to be buffered as a whole, like the ciphertext of a GCM
+	 * decryption, if it is longer than <code>maxBufferedSize</code> bytes
+	 *
+	 * @param address         <code>InetSocketAddress</code>, with port 0 for any
+	 *                        free port, or <code>UnixDomainSocketAddress</code>
+	 * @param maxBufferedSize maximum length of a payload which is buffered as a
+	 *                        whole
+	 * @return the started server
+	 * @throws IOException if the address can not be bound
+	 */
+	public static EncryptionServer start(SocketAddress address, int maxBufferedSize) throws IOException {
+		if (maxBufferedSize < 0) {
+			throw new IllegalArgumentException(
+					String.format("The maximum buffered size %d needs to be non-negative!", maxBufferedSize));
+		}
+
+		ServerSocketChannel channel = address instanceof UnixDomainSocketAddress
+				? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+				: ServerSocketChannel.open();
+
+		try {
+			channel.bind(address, BACKLOG);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		EncryptionServer server = new EncryptionServer(channel, maxBufferedSize);
+		server.acceptor.start();
+
+		return server;
+	}
+
+	/**
+	 * @return address the server is bound to
+	 */
+	public SocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	/**
+	 * @return maximum length of a payload which is buffered as a whole
+	 */
+	public int getMaxBufferedSize() {
+		return maxBufferedSize;
+	}
+
+	/**
+	 * @return number of open connections
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Stops accepting connections, closes the open ones and waits for the
+	 * acceptor to finish
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		channel.close();
+
+		for (SocketChannel connection : connections) {
+			connection.close();
+		}
+
+		try {
+			acceptor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (localAddress instanceof UnixDomainSocketAddress unix) {
+			Files.deleteIfExists(unix.getPath());
+		}
+	}
+
+	/**
+	 * @param connection the closed connection
+	 */
+	void connectionClosed(SocketChannel connection) {
+		connections.remove(connection);
+	}
+
+	/**
+	 * Accepts connections until the server is closed
+	 */
+	private void accept() {
+		int id = 0;
+
+		while (!closed) {
+			SocketChannel connection;
+
+			try {
+				connection = channel.accept();
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				// Accepting fails again right away while the cause, like too
+				// many open files, lasts, so the acceptor waits before retrying
+				try {
+					Thread.sleep(ACCEPT_RETRY_DELAY);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+
+				continue;
+			}
+
+			try {
+				if (!(localAddress instanceof UnixDomainSocketAddress)) {
+					connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				}
+			} catch (IOException e) {
+				closeQuietly(connection);
+				continue;
+			}
+
+			connections.add(connection);
+			if (closed) {
+				closeQuietly(connection);
+				return;
+			}
+
+			Thread.ofVirtual().name("encryption-server-connection-" + id++)
+					.start(new ConnectionHandler(connection, this));
+		}
+	}
+
+	/**
+	 * @param connection connection which is closed, ignoring failures
+	 */
+	private static void closeQuietly(SocketChannel connection) {
+		try {
+			connection.close();
+		} catch (IOException e) {
+			// the connection is dropped anyway
+		}
+	}
+
+	/**
+	 * Starts a server on the loopback interface, or on a Unix-domain socket,
+	 * until the process is stopped
+	 *
+	 * @param args the port, or the path of the socket file
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length != 1) {
+			System.err.println("Usage: EncryptionServer <port | socket path>");
+			System.exit(1);
+		}
+
+		EncryptionServer server = start(parseAddress(args[0]));
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				server.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}));
+
+		System.out.println("Listening on " + server.getLocalAddress());
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * @param address a port on the loopback interface, or the path of a
+	 *                Unix-domain socket file
+	 * @return the socket address
+	 */
+	static SocketAddress parseAddress(String address) {
+		if (!address.isEmpty() && address.chars().allMatch(Character::isDigit)) {
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+		}
+
+		return UnixDomainSocketAddress.of(Path.of(address));
+	}
+
+}
@@ -0,0 +1,134 @@
+package hr.fer.kik.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.kik.metrics.LatencyHistogram;
+
+/**
+ * This class generates load on the encryption service. Every connection runs
+ * on its own virtual thread and sends encryption requests one after another,
+ * each under one of a few keys, and the latency of every request is recorded.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class LoadGenerator {
+	/**
+	 * Number of distinct keys used by the requests
+	 */
+	public static final int KEYS = 64;
+
+	/**
+	 * Result of a load test
+	 *
+	 * @param requests  number of completed requests
+	 * @param errors    number of failed requests and connections
+	 * @param nanos     duration of the test in nanoseconds
+	 * @param latencies latencies of the completed requests
+	 */
+	public record Result(long requests, long errors, long nanos, LatencyHistogram latencies) {
+
+		/**
+		 * @return completed requests per second
+		 */
+		public double requestsPerSecond() {
+			return requests * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d requests, %d errors, %.0f requests/s, latency p50 %d us, p99 %d us, p99.9 %d us",
+					requests, errors, requestsPerSecond(), latencies.getPercentile(50) / 1000,
+					latencies.getPercentile(99) / 1000, latencies.getPercentile(99.9) / 1000);
+		}
+	}
+
+	private LoadGenerator() {
+	}
+
+	/**
+	 * Runs a load test
+	 *
+	 * @param address        address of the server
+	 * @param connections    number of concurrent connections
+	 * @param duration       duration of the test
+	 * @param payloadSize    size of the payload in bytes
+	 * @param transformation the transformation
+	 * @return result of the test
+	 * @throws InterruptedException if interrupted while waiting for the
+	 *                              connections
+	 */
+	public static Result run(SocketAddress address, int connections, Duration duration, int payloadSize,
+			String transformation) throws InterruptedException {
+		if (connections <= 0 || payloadSize < 0) {
+			throw new IllegalArgumentException(
+					"The number of connections needs to be positive, and the payload size non-negative!");
+		}
+
+		byte[][] keys = new byte[KEYS][16];
+		Random random = new Random(0);
+		for (byte[] key : keys) {
+			random.nextBytes(key);
+		}
+		byte[] iv = new byte[16];
+		byte[] payload = new byte[payloadSize];
+		random.nextBytes(payload);
+
+		LatencyHistogram latencies = new LatencyHistogram();
+		LongAdder errors = new LongAdder();
+		long start = System.nanoTime();
+		long deadline = start + duration.toNanos();
+
+		List<Thread> threads = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			int index = i;
+			threads.add(Thread.ofVirtual().name("load-generator-" + i).start(() -> {
+				try (EncryptionClient client = EncryptionClient.connect(address)) {
+					for (int request = index; System.nanoTime() < deadline; request++) {
+						long begin = System.nanoTime();
+						client.encrypt(transformation, keys[request % KEYS], iv, null, payload);
+						latencies.record(System.nanoTime() - begin);
+					}
+				} catch (IOException e) {
+					errors.increment();
+				}
+			}));
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		return new Result(latencies.getCount(), errors.sum(), System.nanoTime() - start, latencies);
+	}
+
+	/**
+	 * Runs a load test against a running server and prints the result
+	 *
+	 * @param args the port or the socket path of the server, and optionally
+	 *             the number of connections, the duration in seconds, the
+	 *             payload size and the transformation
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 1 || args.length > 5) {
+			System.err.println(
+					"Usage: LoadGenerator <port | socket path> [connections] [seconds] [payload size] [transformation]");
+			System.exit(1);
+		}
+
+		SocketAddress address = EncryptionServer.parseAddress(args[0]);
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int payloadSize = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+		String transformation = args.length > 4 ? args[4] : "AES128/CTR";
+
+		System.out.println(run(address, connections, Duration.ofSeconds(seconds), payloadSize, transformation));
+	}
+
+}
@@ -0,0 +1,213 @@
+package hr.fer.kik.server;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class describes the binary protocol of the encryption service. Every
+ * number is big-endian, and a connection carries any number of requests, one
+ * after another.
+ * <p>
+ * A request consists of the operation byte, the transformation as a short
+ * length and UTF-8 bytes, the key and the IV, each as a byte length and bytes,
+ * the additional data as an int length and bytes, and the payload as chunks,
+ * each an int length and bytes, ended with a chunk of length 0. An empty IV
+ * selects the all zero IV. The server rejects a payload which it has to
+ * buffer as a whole, like the ciphertext of a GCM decryption, once it is longer
+ * than its maximum buffered size.
+ * <p>
+ * The response consists of the output chunks in the same format, ended with a
+ * chunk of length 0 on success, or with the length <code>ERROR</code>, the
+ * error message as a short length and UTF-8 bytes, after which the server
+ * closes the connection. Output that was sent before an error has to be
+ * discarded.
+ * <p>
+ * The messages are written without <code>DataOutputStream</code>, whose
+ * synchronized writes would pin a virtual thread blocked on the socket to its
+ * carrier thread.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class Protocol {
+	/**
+	 * Operation byte of the encryption
+	 */
+	public static final int ENCRYPT = 1;
+	/**
+	 * Operation byte of the decryption
+	 */
+	public static final int DECRYPT = 2;
+	/**
+	 * Length which ends a response with an error
+	 */
+	public static final int ERROR = -1;
+	/**
+	 * Maximum length of a chunk in bytes
+	 */
+	public static final int MAX_CHUNK_SIZE = 1 << 20;
+	/**
+	 * Maximum length of the additional data in bytes
+	 */
+	public static final int MAX_AAD_SIZE = 1 << 20;
+	/**
+	 * Default maximum length in bytes of a payload which the server buffers as
+	 * a whole, like the ciphertext of a GCM decryption
+	 */
+	public static final int MAX_BUFFERED_SIZE = 64 << 20;
+	/**
+	 * Maximum length of the transformation in bytes
+	 */
+	public static final int MAX_TRANSFORMATION_SIZE = 64;
+	/**
+	 * Maximum length of the key and of the IV in bytes
+	 */
+	public static final int MAX_KEY_SIZE = 32;
+
+	private Protocol() {
+	}
+
+	/**
+	 * Writes the header of a request, which is followed by the payload chunks
+	 *
+	 * @param out            output stream
+	 * @param operation      <code>ENCRYPT</code> or <code>DECRYPT</code>
+	 * @param transformation the transformation, for example
+	 *                       <code>AES128/GCM</code>
+	 * @param key            the Cipher Key bytes
+	 * @param iv             the IV, or an empty array
+	 * @param aad            additional data, or an empty array
+	 * @throws IOException if writing fails
+	 */
+	public static void writeHeader(OutputStream out, int operation, String transformation, byte[] key, byte[] iv,
+			byte[] aad) throws IOException {
+		byte[] name = transformation.getBytes(StandardCharsets.UTF_8);
+		checkLength("transformation", name.length, MAX_TRANSFORMATION_SIZE);
+		checkLength("key", key.length, MAX_KEY_SIZE);
+		checkLength("IV", iv.length, MAX_KEY_SIZE);
+		checkLength("additional data", aad.length, MAX_AAD_SIZE);
+
+		ByteBuffer header = ByteBuffer.allocate(9 + name.length + key.length + iv.length);
+		header.put((byte) operation).putShort((short) name.length).put(name);
+		header.put((byte) key.length).put(key).put((byte) iv.length).put(iv);
+		header.putInt(aad.length);
+
+		out.write(header.array());
+		out.write(aad);
+	}
+
+	/**
+	 * Writes a chunk, so a chunk of length 0 ends the payload
+	 *
+	 * @param out output stream
+	 * @param b   array containing the chunk
+	 * @param off offset of the chunk
+	 * @param len length of the chunk
+	 * @throws IOException if writing fails
+	 */
+	public static void writeChunk(OutputStream out, byte[] b, int off, int len) throws IOException {
+		checkLength("chunk", len, MAX_CHUNK_SIZE);
+
+		writeLength(out, len);
+		out.write(b, off, len);
+	}
+
+	/**
+	 * Ends the payload of a request, or a successful response
+	 *
+	 * @param out output stream
+	 * @throws IOException if writing fails
+	 */
+	public static void writeEnd(OutputStream out) throws IOException {
+		writeLength(out, 0);
+	}
+
+	/**
+	 * Ends a response with an error
+	 *
+	 * @param out     output stream
+	 * @param message the error message
+	 * @throws IOException if writing fails
+	 */
+	public static void writeError(OutputStream out, String message) throws IOException {
+		byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+		int len = Math.min(bytes.length, Short.MAX_VALUE);
+
+		writeLength(out, ERROR);
+		out.write(len >>> 8);
+		out.write(len);
+		out.write(bytes, 0, len);
+	}
+
+	/**
+	 * Reads the length of the next chunk
+	 *
+	 * @param in input stream
+	 * @return length of the chunk, 0 at the end, or <code>ERROR</code>
+	 * @throws IOException if reading fails or the length is not valid
+	 */
+	public static int readChunkLength(DataInputStream in) throws IOException {
+		int len = in.readInt();
+
+		if (len < ERROR || len > MAX_CHUNK_SIZE) {
+			throw new IOException(String.format("The chunk length %d is not valid!", len));
+		}
+
+		return len;
+	}
+
+	/**
+	 * @param in input stream
+	 * @return error message which follows the <code>ERROR</code> length
+	 * @throws IOException if reading fails
+	 */
+	public static String readError(DataInputStream in) throws IOException {
+		return new String(readBytes(in, in.readUnsignedShort(), Short.MAX_VALUE), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param in  input stream
+	 * @param len number of bytes
+	 * @param max maximum number of bytes
+	 * @return the read bytes
+	 * @throws IOException if reading fails or <code>len</code> is not valid
+	 */
+	static byte[] readBytes(DataInputStream in, int len, int max) throws IOException {
+		if (len < 0 || len > max) {
+			throw new IOException(String.format("The length %d is not valid, at most %d is allowed!", len, max));
+		}
+
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+
+		return bytes;
+	}
+
+	/**
+	 * @param out output stream
+	 * @param len big-endian length
+	 * @throws IOException if writing fails
+	 */
+	private static void writeLength(OutputStream out, int len) throws IOException {
+		out.write(len >>> 24);
+		out.write(len >>> 16);
+		out.write(len >>> 8);
+		out.write(len);
+	}
+
+	/**
+	 * @param name   name of the field
+	 * @param length length of the field
+	 * @param max    maximum length
+	 */
+	private static void checkLength(String name, int length, int max) {
+		if (length < 0 || length > max) {
+			throw new IllegalArgumentException(
+					String.format("The %s is %d bytes long, but at most %d bytes are allowed!", name, length, max));
+		}
+	}
+
+}
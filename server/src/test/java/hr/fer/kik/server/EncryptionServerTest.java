@@ -0,0 +1,140 @@
+package hr.fer.kik.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import hr.fer.kik.Cipher;
+
+public class EncryptionServerTest {
+
+	@Test
+	public void testResultsMatchCipher() throws IOException {
+		byte[] key = new byte[16];
+		byte[] iv = new byte[12];
+		byte[] aad = "header".getBytes();
+		byte[] plaintext = new byte[5000];
+		Random random = new Random(11);
+		random.nextBytes(key);
+		random.nextBytes(iv);
+		random.nextBytes(plaintext);
+
+		try (EncryptionServer server = EncryptionServer.start(loopback());
+				EncryptionClient client = EncryptionClient.connect(server.getLocalAddress())) {
+			for (String mode : new String[] { "ECB", "CBC", "CTR", "GCM" }) {
+				byte[] modeIv = mode.equals("GCM") ? iv : new byte[16];
+				byte[] modeAad = mode.equals("GCM") ? aad : new byte[0];
+
+				Cipher cipher = new Cipher();
+				cipher.init("AES128/" + mode);
+				cipher.init(Cipher.ENCRYPT_MODE, key, modeIv);
+				if (modeAad.length != 0) {
+					cipher.updateAAD(modeAad);
+				}
+				byte[] expected = cipher.doFinal(plaintext);
+
+				byte[] ciphertext = client.encrypt("AES128/" + mode, key, modeIv, modeAad, plaintext);
+				assertArrayEquals(expected, ciphertext);
+
+				byte[] decrypted = client.decrypt("AES128/" + mode, key, modeIv, modeAad, ciphertext);
+				assertArrayEquals(plaintext, mode.equals("ECB") ? Arrays.copyOf(decrypted, plaintext.length)
+						: decrypted);
+			}
+		}
+	}
+
+	@Test
+	public void testStreamingLargePayload(@TempDir Path directory) throws IOException {
+		byte[] key = new byte[16];
+		byte[] plaintext = new byte[3 * Protocol.MAX_CHUNK_SIZE + 7];
+		new Random(12).nextBytes(plaintext);
+
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/CTR");
+		cipher.init(Cipher.ENCRYPT_MODE, key);
+		byte[] expected = cipher.doFinal(plaintext);
+
+		SocketAddress address = UnixDomainSocketAddress.of(directory.resolve("aes.sock"));
+		try (EncryptionServer server = EncryptionServer.start(address);
+				EncryptionClient client = EncryptionClient.connect(address)) {
+			ByteArrayOutputStream sink = new ByteArrayOutputStream();
+			long written = client.process(Protocol.ENCRYPT, "AES128/CTR", key, null, null,
+					new ByteArrayInputStream(plaintext), sink);
+
+			assertEquals(expected.length, written);
+			assertArrayEquals(expected, sink.toByteArray());
+			assertArrayEquals(plaintext, client.decrypt("AES128/CTR", key, null, null, expected));
+		}
+
+		assertFalse(Files.exists(directory.resolve("aes.sock")));
+	}
+
+	@Test
+	public void testRejectedRequestClosesConnection() throws IOException {
+		try (EncryptionServer server = EncryptionServer.start(loopback());
+				EncryptionClient client = EncryptionClient.connect(server.getLocalAddress())) {
+			IOException e = assertThrows(IOException.class,
+					() -> client.encrypt("AES128/XTS", new byte[16], null, null, new byte[16]));
+			assertTrue(e.getMessage().startsWith("The server rejected the request"));
+
+			assertThrows(IOException.class, () -> client.encrypt("AES128/CTR", new byte[16], null, null, new byte[16]));
+		}
+	}
+
+	@Test
+	public void testBufferedPayloadIsLimited() throws IOException {
+		byte[] key = new byte[16];
+		byte[] iv = new byte[12];
+		byte[] plaintext = new byte[5000];
+
+		try (EncryptionServer server = EncryptionServer.start(loopback(), 4096)) {
+			try (EncryptionClient client = EncryptionClient.connect(server.getLocalAddress())) {
+				byte[] ciphertext = client.encrypt("AES128/GCM", key, iv, null, plaintext);
+
+				IOException e = assertThrows(IOException.class,
+						() -> client.decrypt("AES128/GCM", key, iv, null, ciphertext));
+				assertTrue(e.getMessage().contains("most this server buffers"));
+			}
+
+			try (EncryptionClient client = EncryptionClient.connect(server.getLocalAddress())) {
+				byte[] ciphertext = client.encrypt("AES128/CTR", key, null, null, plaintext);
+				assertArrayEquals(plaintext, client.decrypt("AES128/CTR", key, null, null, ciphertext));
+			}
+		}
+	}
+
+	@Test
+	public void testLoadGenerator() throws Exception {
+		try (EncryptionServer server = EncryptionServer.start(loopback())) {
+			LoadGenerator.Result result = LoadGenerator.run(server.getLocalAddress(), 200, Duration.ofMillis(500), 256,
+					"AES128/GCM");
+
+			assertEquals(0, result.errors());
+			assertTrue(result.requests() > 0);
+			assertEquals(result.requests(), result.latencies().getCount());
+		}
+	}
+
+	private static SocketAddress loopback() {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+	}
+
+}
@@ -1,12 +1,23 @@
 package hr.fer.kik;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.engine.EngineType;
+import hr.fer.kik.engine.TTableEngine;
+import hr.fer.kik.jfr.CipherOperationEvent;
+import hr.fer.kik.mode.Counter;
+import hr.fer.kik.mode.Padding;
+import hr.fer.kik.mode.ParallelCounterMode;
 import hr.fer.kik.specification.AESMethods;
+import hr.fer.kik.trace.RoundObserver;
+import hr.fer.kik.trace.RoundStep;
+import hr.fer.kik.trace.TextRoundObserver;
 import hr.fer.kik.util.AlgorithmUtils;
-import hr.fer.kik.util.FiniteFieldsUtil;
 import hr.fer.kik.util.IOUtils;
-import hr.fer.kik.util.MatrixUtils;
 
 /**
  * This class provides AES-128 functionality.
@@ -23,6 +34,10 @@ public class AES128 implements Algorithm, AESMethods {
 	 * Supported data block length
 	 */
 	public final int DATA_BLOCK_LENGTH = 128;
+	/**
+	 * Name of the algorithm, as used in the transformation strings
+	 */
+	public static final String NAME = "AES128";
 
 	/**
 	 * Number of columns (32-bit words) comprising the State. For this standard, Nb
@@ -113,9 +128,14 @@ public class AES128 implements Algorithm, AESMethods {
 	//@formatter:on
 
 	/**
-	 * Field variable that is used for debugging and testing. If true debugger lines
-	 * are printed out, otherwise if false
+	 * Field variable that is used for debugging and testing. If true, and no
+	 * round observer is set, the intermediate states of every instance are
+	 * printed to <code>System.out</code>
+	 * 
+	 * @deprecated set a <code>TextRoundObserver</code> on a single instance
+	 *             instead
 	 */
+	@Deprecated
 	public static boolean debug = false;
 
 	/**
@@ -130,27 +150,100 @@ public class AES128 implements Algorithm, AESMethods {
 	 * Mode of operation that will be used
 	 */
 	public ModeOfOperation modeOfOperation = null;
+	/**
+	 * Padding used in ECB and CBC mode, the default padding of the mode of
+	 * operation if it is <code>null</code>
+	 */
+	public Padding padding = null;
 	/**
 	 * IV in string hex format that will be used
 	 */
 	public String ivString = "00000000000000000000000000000000";
+	/**
+	 * Width of the counter field of the IV in bits, which is incremented in CTR
+	 * mode
+	 */
+	public int counterWidth = 128;
+	/**
+	 * Input length in bytes, from which the input is processed on multiple
+	 * threads, in the modes of operation that allow it
+	 */
+	public int parallelThreshold = ParallelCounterMode.DEFAULT_THRESHOLD;
+	/**
+	 * Executor used for processing on multiple threads
+	 */
+	public Executor executor = ForkJoinPool.commonPool();
+	/**
+	 * Additional data, which is authenticated, but not encrypted, in GCM mode
+	 */
+	public byte[] aad = new byte[0];
+	/**
+	 * Observer of the intermediate states. While it is set, every block is
+	 * processed by the reference implementation.
+	 */
+	public RoundObserver roundObserver = null;
+
+	/**
+	 * Key context, with the block engine used when there is no round observer
+	 */
+	private KeyContext context = null;
+	/**
+	 * Key schedule that the key context was created for
+	 */
+	private int[][] contextKeySchedule = null;
 
 	/**
 	 * @return true if in debug mode, false otherwise
+	 * @deprecated use <code>getRoundObserver</code> instead
 	 */
+	@Deprecated
 	public static boolean isDebug() {
 		return debug;
 	}
 
 	/**
-	 * Sets the debug mode
+	 * Sets the debug mode, which prints the intermediate states of every
+	 * instance without a round observer
 	 * 
 	 * @param debug
+	 * @deprecated set a <code>TextRoundObserver</code> with
+	 *             <code>setRoundObserver</code> instead
 	 */
+	@Deprecated
 	public static void setDebug(boolean debug) {
 		AES128.debug = debug;
 	}
 
+	/**
+	 * @return observer of the intermediate states, <code>null</code> if there is
+	 *         none
+	 */
+	public RoundObserver getRoundObserver() {
+		return roundObserver;
+	}
+
+	/**
+	 * @param roundObserver observer of the intermediate states, or
+	 *                      <code>null</code> to stop tracing
+	 */
+	public void setRoundObserver(RoundObserver roundObserver) {
+		this.roundObserver = roundObserver;
+	}
+
+	/**
+	 * @return the round observer, a new observer printing to
+	 *         <code>System.out</code> in the deprecated debug mode, or
+	 *         <code>null</code>
+	 */
+	@SuppressWarnings("deprecation")
+	private RoundObserver getActiveObserver() {
+		if (Objects.nonNull(roundObserver)) {
+			return roundObserver;
+		}
+
+		return debug ? new TextRoundObserver(System.out) : null;
+	}
+
 	/**
 	 * @return key length
 	 */
@@ -236,8 +329,27 @@ public class AES128 implements Algorithm, AESMethods {
 			throw new IllegalArgumentException("The key size does not meet the specification criteria!");
 		}
 
-		this.key = key;
-		this.keySchedule = keyExpansion(key);
+		setKeyContext(KeyContext.of(key, getEngineType()));
+	}
+
+	/**
+	 * Sets the key, together with its already expanded key schedule and the
+	 * block engine, from the given context
+	 * 
+	 * @param keyContext the key context, possibly shared with other threads
+	 */
+	public void setKeyContext(KeyContext keyContext) {
+		this.key = keyContext.getKey();
+		this.keySchedule = keyContext.getKeySchedule();
+		this.context = keyContext;
+		this.contextKeySchedule = this.keySchedule;
+	}
+
+	/**
+	 * @param key the Cipher Key bytes
+	 */
+	public void setKey(byte[] key) {
+		setKey(AlgorithmUtils.bytesToKey(key));
 	}
 
 	/**
@@ -261,6 +373,22 @@ public class AES128 implements Algorithm, AESMethods {
 		this.modeOfOperation = modeOfOperation;
 	}
 
+	/**
+	 * @return padding that was initialized, null if the default padding of the
+	 *         mode of operation is used
+	 */
+	public Padding getPadding() {
+		return padding;
+	}
+
+	/**
+	 * @param padding used in ECB and CBC mode, or <code>null</code> for the
+	 *                default padding of the mode of operation
+	 */
+	public void setPadding(Padding padding) {
+		this.padding = padding;
+	}
+
 	/**
 	 * @return IV string that was initialized, all zeros otherwise
 	 */
@@ -275,6 +403,67 @@ public class AES128 implements Algorithm, AESMethods {
 		this.ivString = ivString;
 	}
 
+	/**
+	 * @return additional data, authenticated in GCM mode
+	 */
+	public byte[] getAAD() {
+		return aad;
+	}
+
+	/**
+	 * @param aad additional data, authenticated in GCM mode
+	 */
+	public void setAAD(byte[] aad) {
+		this.aad = Objects.requireNonNull(aad);
+	}
+
+	/**
+	 * @return width of the counter field of the IV in bits
+	 */
+	public int getCounterWidth() {
+		return counterWidth;
+	}
+
+	/**
+	 * @param counterWidth width of the counter field of the IV in bits, which is
+	 *                     incremented in CTR mode
+	 */
+	public void setCounterWidth(int counterWidth) {
+		this.counterWidth = counterWidth;
+	}
+
+	/**
+	 * @return input length in bytes, from which the input is processed on
+	 *         multiple threads
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          processed on multiple threads.
+	 *                          <code>Integer.MAX_VALUE</code> disables it.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return executor used for processing on multiple threads
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @param executor used for processing on multiple threads, the common
+	 *                 <code>ForkJoinPool</code> by default
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = Objects.requireNonNull(executor);
+	}
+
 	/**
 	 * Method that enables abstract use of encryption
 	 */
@@ -290,31 +479,16 @@ public class AES128 implements Algorithm, AESMethods {
 			throw new IllegalArgumentException("The argument is not valid!");
 		}
 
-		if (colNum == Nk) {
-			return cipher(plaintext, this.keySchedule);
+		if (modeOfOperation == ModeOfOperation.GCM) {
+			return processAuthenticated(plaintext, true);
 		}
 
-		int[][] result = new int[Nb][colNum];
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
 
-		switch (modeOfOperation) {
-		case ECB -> {
-			for (int k = 0; k < colNum / 4; k++) {
-				int[][] inNumK = MatrixUtils.getMatrixColumns(plaintext, k * Nk, k * Nk + 4);
-				int[][] cipherNumK = cipher(inNumK, this.keySchedule);
-				result = MatrixUtils.insertMatrixColumns(result, cipherNumK, k * 4);
-			}
-		}
-		case CTR -> {
-			for (int k = 0; k < colNum / 4; k++) {
-				int[][] iv = AlgorithmUtils.createIV(ivString, k);
-				int[][] cipherNumK = cipher(iv, this.keySchedule);
-				int[][] inNumK = MatrixUtils.getMatrixColumns(plaintext, k * Nk, k * Nk + 4);
-				result = MatrixUtils.insertMatrixColumns(result, FiniteFieldsUtil.add(cipherNumK, inNumK), k * 4);
-			}
-		}
-		default ->
-			throw new IllegalArgumentException(String.format("Unsupported mode of operation: '%s'!", modeOfOperation));
-		}
+		int[][] result = colNum == Nk && modeOfOperation != ModeOfOperation.CBC ? cipher(plaintext, this.keySchedule)
+				: processBlocks(plaintext, true);
+		event.record(NAME, String.valueOf(modeOfOperation), true, colNum * Nb, getEngineType());
 
 		return result;
 	}
@@ -334,26 +508,91 @@ public class AES128 implements Algorithm, AESMethods {
 			throw new IllegalArgumentException("The argument is not valid!");
 		}
 
-		if (colNum == Nk) {
-			return invCipher(ciphertext, this.keySchedule);
+		if (modeOfOperation == ModeOfOperation.GCM) {
+			return processAuthenticated(ciphertext, false);
 		}
 
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+
+		int[][] result = colNum == Nk && modeOfOperation != ModeOfOperation.CBC
+				? invCipher(ciphertext, this.keySchedule)
+				: processBlocks(ciphertext, false);
+		event.record(NAME, String.valueOf(modeOfOperation), false, colNum * Nb, getEngineType());
+
+		return result;
+	}
+
+	/**
+	 * Encrypts or decrypts the given multi-block matrix in the current mode of
+	 * operation. Every block is copied into a single reusable buffer, processed,
+	 * and written directly into its columns of the result, so the cost grows
+	 * linearly with the number of blocks. The matrix is already padded to whole
+	 * blocks by <code>IOUtils</code>, so CBC mode does not add the PKCS#7
+	 * padding here.
+	 * 
+	 * @param in         the input matrix with Nb rows
+	 * @param encryption true for encryption, false for decryption
+	 * @return the resulting matrix
+	 */
+	private int[][] processBlocks(int[][] in, boolean encryption) {
+		int colNum = in[0].length;
 		int[][] result = new int[Nb][colNum];
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
 
 		switch (modeOfOperation) {
 		case ECB -> {
-			for (int k = 0; k < colNum / 4; k++) {
-				int[][] inNumK = MatrixUtils.getMatrixColumns(ciphertext, k * Nk, k * Nk + 4);
-				int[][] invCipherNumK = invCipher(inNumK, this.keySchedule);
-				result = MatrixUtils.insertMatrixColumns(result, invCipherNumK, k * 4);
+			for (int k = 0; k < colNum; k += Nb) {
+				AlgorithmUtils.stateToBytes(in, k, block, 0);
+				cipherBlock(block, block, encryption);
+				AlgorithmUtils.bytesToState(block, 0, result, k);
 			}
 		}
 		case CTR -> {
-			for (int k = 0; k < colNum / 4; k++) {
-				int[][] iv = AlgorithmUtils.createIV(ivString, k);
-				int[][] cipherNumK = cipher(iv, this.keySchedule);
-				int[][] inNumK = MatrixUtils.getMatrixColumns(ciphertext, k * Nk, k * Nk + 4);
-				result = MatrixUtils.insertMatrixColumns(result, FiniteFieldsUtil.add(cipherNumK, inNumK), k * 4);
+			Counter counter = createCounter();
+			byte[] counterBlock = new byte[BlockEngine.BLOCK_SIZE];
+			byte[] keystream = new byte[BlockEngine.BLOCK_SIZE];
+
+			for (int k = 0; k < colNum; k += Nb) {
+				counter.next(counterBlock, 0);
+				cipherBlock(counterBlock, keystream, true);
+				AlgorithmUtils.stateToBytes(in, k, block, 0);
+
+				for (int j = 0; j < block.length; j++) {
+					block[j] ^= keystream[j];
+				}
+
+				AlgorithmUtils.bytesToState(block, 0, result, k);
+			}
+		}
+		case CBC -> {
+			byte[] chain = createIV();
+			byte[] next = new byte[BlockEngine.BLOCK_SIZE];
+
+			for (int k = 0; k < colNum; k += Nb) {
+				AlgorithmUtils.stateToBytes(in, k, block, 0);
+
+				if (encryption) {
+					for (int j = 0; j < block.length; j++) {
+						block[j] ^= chain[j];
+					}
+
+					cipherBlock(block, block, true);
+					System.arraycopy(block, 0, chain, 0, block.length);
+				} else {
+					System.arraycopy(block, 0, next, 0, block.length);
+					cipherBlock(block, block, false);
+
+					for (int j = 0; j < block.length; j++) {
+						block[j] ^= chain[j];
+					}
+
+					byte[] t = chain;
+					chain = next;
+					next = t;
+				}
+
+				AlgorithmUtils.bytesToState(block, 0, result, k);
 			}
 		}
 		default ->
@@ -363,142 +602,435 @@ public class AES128 implements Algorithm, AESMethods {
 		return result;
 	}
 
-	@Override
-	public int[][] cipher(int[][] in, int[][] word) {
-		if (debug) {
-			System.out.println(String.format("PLAINTEXT: %s", IOUtils.parseState(in)));
-			System.out.println(String.format("KEY: %s", IOUtils.parseState(AlgorithmUtils.getRoundKey(word, 0))));
-			System.out.println(String.format("CIPHER (ENCRYPT):"));
-			System.out.println(String.format("round[%2d].%s %s", 0, "input", IOUtils.parseState(in)));
-			System.out.println(String.format("round[%2d].%s %s", 0, "k_sch",
-					IOUtils.parseState(AlgorithmUtils.getRoundKey(word, 0))));
+	/**
+	 * Encrypts or decrypts the given multi-block matrix in GCM mode, through the
+	 * byte array methods. The authentication tag is a single block, so the
+	 * ciphertext matrix has Nb more columns than the plaintext matrix.
+	 * 
+	 * @param in         the input matrix with Nb rows
+	 * @param encryption true for encryption, false for decryption
+	 * @return the resulting matrix
+	 */
+	private int[][] processAuthenticated(int[][] in, boolean encryption) {
+		int colNum = in[0].length;
+		byte[] bytes = new byte[colNum * Nb];
+
+		for (int k = 0; k < colNum; k += Nb) {
+			AlgorithmUtils.stateToBytes(in, k, bytes, k * Nb);
 		}
 
-		int[][] state = AlgorithmUtils.addRoundKey(in, word, 0);
+		byte[] out = new byte[KeyContext.getOutputSize(modeOfOperation, getActivePadding(), encryption, bytes.length)];
+		int produced = encryption ? encrypt(bytes, 0, bytes.length, out, 0) : decrypt(bytes, 0, bytes.length, out, 0);
+		int[][] result = new int[Nb][produced / Nb];
 
-		for (int round = 1; round < Nr; round++) {
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", round, "start", IOUtils.parseState(state)));
-			}
+		for (int k = 0; k < produced / Nb; k += Nb) {
+			AlgorithmUtils.bytesToState(out, k * Nb, result, k);
+		}
 
-			state = subBytes(state);
+		return result;
+	}
 
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", round, "s_box", IOUtils.parseState(state)));
+	/**
+	 * Encrypts or decrypts a single block with the current key schedule. While
+	 * there is a round observer, the reference implementation is used, so the
+	 * intermediate states are reported.
+	 * 
+	 * @param in         array containing the input block
+	 * @param out        array that the output block will be written to
+	 * @param encryption true for encryption, false for decryption
+	 */
+	private void cipherBlock(byte[] in, byte[] out, boolean encryption) {
+		RoundObserver observer = getActiveObserver();
+
+		if (Objects.isNull(observer)) {
+			if (encryption) {
+				getEngine(keySchedule).encryptBlock(in, 0, out, 0);
+			} else {
+				getEngine(keySchedule).decryptBlock(in, 0, out, 0);
 			}
 
-			state = shiftRows(state);
+			return;
+		}
 
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", round, "s_row", IOUtils.parseState(state)));
-			}
+		int[][] state = new int[Nb][Nb];
+		AlgorithmUtils.bytesToState(in, 0, state, 0);
+		state = encryption ? referenceCipher(state, keySchedule, observer)
+				: referenceInvCipher(state, keySchedule, observer);
+		AlgorithmUtils.stateToBytes(state, 0, out, 0);
+	}
 
-			state = mixColumns(state);
+	/**
+	 * Method that enables abstract use of encryption over byte arrays. In ECB
+	 * mode <code>len</code> has to be a multiple of the block size, while CTR
+	 * mode accepts any length. In CBC mode the PKCS#7 padding is appended, and
+	 * in GCM mode the authentication tag of the data and <code>aad</code>, so
+	 * <code>out</code> has to hold <code>KeyContext.getOutputSize</code> bytes.
+	 */
+	@Override
+	public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		checkArguments();
 
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", round, "m_col", IOUtils.parseState(state)));
-			}
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
 
-			state = addRoundKey(state, AlgorithmUtils.getRoundKey(word, round));
+		int produced = getTracedContext().process(true, modeOfOperation, getActivePadding(), createIV(), counterWidth,
+				aad, in, inOff, len, out, outOff, executor, parallelThreshold);
+		event.record(NAME, modeOfOperation.name(), true, len, getEngineType());
 
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", round, "k_sch",
-						IOUtils.parseState(AlgorithmUtils.getRoundKey(word, round))));
-			}
+		return produced;
+	}
+
+	/**
+	 * Method that enables abstract use of decryption over byte arrays. In ECB
+	 * mode <code>len</code> has to be a multiple of the block size, while CTR
+	 * mode accepts any length. In CBC mode the PKCS#7 padding is removed, and
+	 * in GCM mode the authentication tag is verified and removed, so the length
+	 * of the plaintext is returned.
+	 */
+	@Override
+	public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		checkArguments();
+
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+
+		int produced = getTracedContext().process(false, modeOfOperation, getActivePadding(), createIV(), counterWidth,
+				aad, in, inOff, len, out, outOff, executor, parallelThreshold);
+		event.record(NAME, modeOfOperation.name(), false, len, getEngineType());
+
+		return produced;
+	}
+
+	/**
+	 * Encrypts the remaining bytes of <code>src</code> in the current mode of
+	 * operation, with the same padding and tag as the byte array method
+	 */
+	@Override
+	public int encrypt(ByteBuffer src, ByteBuffer dst) {
+		checkArguments();
+
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+
+		int len = src.remaining();
+		int produced = getTracedContext().process(true, modeOfOperation, getActivePadding(), createIV(), counterWidth,
+				aad, src, dst, executor, parallelThreshold);
+		event.record(NAME, modeOfOperation.name(), true, len, getEngineType());
+
+		return produced;
+	}
+
+	/**
+	 * Decrypts the remaining bytes of <code>src</code> in the current mode of
+	 * operation, and removes the padding or verifies the tag like the byte array
+	 * method
+	 */
+	@Override
+	public int decrypt(ByteBuffer src, ByteBuffer dst) {
+		checkArguments();
+
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+
+		int len = src.remaining();
+		int produced = getTracedContext().process(false, modeOfOperation, getActivePadding(), createIV(),
+				counterWidth, aad, src, dst, executor, parallelThreshold);
+		event.record(NAME, modeOfOperation.name(), false, len, getEngineType());
+
+		return produced;
+	}
+
+	/**
+	 * @return key context for the current key schedule, traced while there is a
+	 *         round observer. The deprecated debug mode does not apply here.
+	 */
+	private KeyContext getTracedContext() {
+		KeyContext result = getContext(keySchedule);
+
+		return Objects.isNull(roundObserver) ? result : result.traced(roundObserver);
+	}
+
+	/**
+	 * @return the padding, or the default padding of the mode of operation
+	 */
+	private Padding getActivePadding() {
+		return Objects.isNull(padding) ? modeOfOperation.getDefaultPadding() : padding;
+	}
+
+	/**
+	 * Checks that the key and the mode of operation are initialized
+	 */
+	private void checkArguments() {
+		if (Objects.isNull(key)) {
+			throw new IllegalArgumentException("The key has not been initialized!");
 		}
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "start", IOUtils.parseState(state)));
+		if (Objects.isNull(modeOfOperation)) {
+			throw new IllegalArgumentException("The mode of operation has not been initialized!");
 		}
+	}
 
-		state = subBytes(state);
+	/**
+	 * @return the IV given by the current IV string
+	 */
+	private byte[] createIV() {
+		byte[] iv = new byte[BlockEngine.BLOCK_SIZE];
+		AlgorithmUtils.stateToBytes(IOUtils.parseHexString(ivString, Nk, Nb, false), 0, iv, 0);
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "s_box", IOUtils.parseState(state)));
-		}
+		return iv;
+	}
 
-		state = shiftRows(state);
+	/**
+	 * @return a new counter, positioned at the block given by the current IV
+	 *         string
+	 */
+	private Counter createCounter() {
+		return new Counter(createIV(), counterWidth);
+	}
+
+	/**
+	 * Creates a new block engine for the given Cipher Key, which does not depend
+	 * on the state of this object
+	 * 
+	 * @param key the Cipher Key
+	 * @return block engine for the key
+	 */
+	public BlockEngine createEngine(int[][] key) {
+		return new TTableEngine(keyExpansion(key));
+	}
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "s_row", IOUtils.parseState(state)));
-			System.out.println(String.format("round[%2d].%s %s", Nr, "k_sch",
-					IOUtils.parseState(AlgorithmUtils.getRoundKey(word, Nr))));
+	/**
+	 * Returns the block engine for the given key schedule, reusing the engine of
+	 * the previous call when the key schedule is the same
+	 * 
+	 * @param word the key schedule
+	 * @return block engine for the key schedule
+	 */
+	public BlockEngine getEngine(int[][] word) {
+		return getContext(word).getEngine();
+	}
+
+	/**
+	 * Returns the key context for the given key schedule, reusing the context of
+	 * the previous call when the key schedule is the same
+	 * 
+	 * @param word the key schedule
+	 * @return key context for the key schedule
+	 */
+	private KeyContext getContext(int[][] word) {
+		if (Objects.isNull(context) || contextKeySchedule != word) {
+			context = KeyContext.ofKeySchedule(word, getEngineType());
+			contextKeySchedule = word;
 		}
 
-		state = addRoundKey(state, AlgorithmUtils.getRoundKey(word, Nr));
+		return context;
+	}
+
+	/**
+	 * @return type of the block engine of the current key context, the table
+	 *         driven engine if there is none
+	 */
+	public EngineType getEngineType() {
+		return Objects.isNull(context) ? EngineType.TABLE : context.getEngineType();
+	}
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "output", IOUtils.parseState(state)));
+	/**
+	 * Runs the Cipher on the block engine, or on the reference implementation
+	 * while there is a round observer
+	 */
+	@Override
+	public int[][] cipher(int[][] in, int[][] word) {
+		RoundObserver observer = getActiveObserver();
+
+		if (Objects.nonNull(observer)) {
+			return referenceCipher(in, word, observer);
 		}
 
-		return state;
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+		AlgorithmUtils.stateToBytes(in, 0, block, 0);
+		getEngine(word).encryptBlock(block, 0, block, 0);
+
+		int[][] result = new int[Nb][Nb];
+		AlgorithmUtils.bytesToState(block, 0, result, 0);
+
+		return result;
 	}
 
+	/**
+	 * Runs the Inverse Cipher on the block engine, or on the reference
+	 * implementation while there is a round observer
+	 */
 	@Override
 	public int[][] invCipher(int[][] in, int[][] word) {
-		if (debug) {
-			System.out.println(String.format("INVERSE CIPHER (DECRYPT):"));
-			System.out.println(String.format("round[%2d].%s %s", 0, "iinput", IOUtils.parseState(in)));
-			System.out.println(String.format("round[%2d].%s %s", 0, "ik_sch",
-					IOUtils.parseState(AlgorithmUtils.getRoundKey(word, Nr))));
+		RoundObserver observer = getActiveObserver();
+
+		if (Objects.nonNull(observer)) {
+			return referenceInvCipher(in, word, observer);
 		}
 
-		int[][] state = AlgorithmUtils.addRoundKey(in, AlgorithmUtils.getRoundKey(word, Nr));
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+		AlgorithmUtils.stateToBytes(in, 0, block, 0);
+		getEngine(word).decryptBlock(block, 0, block, 0);
 
-		for (int round = Nr - 1, i = 1; round > 0; round--, i++) {
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", i, "istart", IOUtils.parseState(state)));
-			}
+		int[][] result = new int[Nb][Nb];
+		AlgorithmUtils.bytesToState(block, 0, result, 0);
 
-			state = invShiftRows(state);
+		return result;
+	}
 
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", i, "is_row", IOUtils.parseState(state)));
-			}
+	/**
+	 * Reference implementation of the Cipher, which applies the transformations
+	 * one by one, as described in the specification. The intermediate states are
+	 * reported to the round observer, if there is one.
+	 * 
+	 * @param in   the plaintext in matrix format
+	 * @param word the key schedule created using the Cipher Key
+	 * @return ciphertext
+	 */
+	public int[][] referenceCipher(int[][] in, int[][] word) {
+		return referenceCipher(in, word, getActiveObserver());
+	}
 
-			state = invSubBytes(state);
+	/**
+	 * Reference implementation of the Cipher, which reports the intermediate
+	 * states to the given observer
+	 * 
+	 * @param in       the plaintext in matrix format
+	 * @param word     the key schedule created using the Cipher Key
+	 * @param observer observer of the intermediate states, or <code>null</code>
+	 * @return ciphertext
+	 */
+	public int[][] referenceCipher(int[][] in, int[][] word, RoundObserver observer) {
+		byte[] buffer = Objects.isNull(observer) ? null : new byte[BlockEngine.BLOCK_SIZE];
+		int[][] roundKey = AlgorithmUtils.getRoundKey(word, 0);
 
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", i, "is_box", IOUtils.parseState(state)));
-			}
+		if (Objects.nonNull(observer)) {
+			observer.begin(true, toBytes(in, new byte[BlockEngine.BLOCK_SIZE]),
+					toBytes(roundKey, new byte[BlockEngine.BLOCK_SIZE]));
+		}
 
-			state = addRoundKey(state, AlgorithmUtils.getRoundKey(word, round));
+		trace(observer, 0, RoundStep.INPUT, in, buffer);
+		trace(observer, 0, RoundStep.K_SCH, roundKey, buffer);
 
-			if (debug) {
-				System.out.println(String.format("round[%2d].%s %s", i, "ik_sch",
-						IOUtils.parseState(AlgorithmUtils.getRoundKey(word, round))));
-				System.out.println(String.format("round[%2d].%s %s", i, "ik_add", IOUtils.parseState(state)));
-			}
+		int[][] state = AlgorithmUtils.addRoundKey(in, roundKey);
 
-			state = invMixColumns(state);
+		for (int round = 1; round < Nr; round++) {
+			trace(observer, round, RoundStep.START, state, buffer);
+			state = subBytes(state);
+			trace(observer, round, RoundStep.S_BOX, state, buffer);
+			state = shiftRows(state);
+			trace(observer, round, RoundStep.S_ROW, state, buffer);
+			state = mixColumns(state);
+			trace(observer, round, RoundStep.M_COL, state, buffer);
 
+			roundKey = AlgorithmUtils.getRoundKey(word, round);
+			state = addRoundKey(state, roundKey);
+			trace(observer, round, RoundStep.K_SCH, roundKey, buffer);
 		}
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "istart", IOUtils.parseState(state)));
+		trace(observer, Nr, RoundStep.START, state, buffer);
+		state = subBytes(state);
+		trace(observer, Nr, RoundStep.S_BOX, state, buffer);
+		state = shiftRows(state);
+		trace(observer, Nr, RoundStep.S_ROW, state, buffer);
+
+		roundKey = AlgorithmUtils.getRoundKey(word, Nr);
+		trace(observer, Nr, RoundStep.K_SCH, roundKey, buffer);
+		state = addRoundKey(state, roundKey);
+		trace(observer, Nr, RoundStep.OUTPUT, state, buffer);
+
+		return state;
+	}
+
+	/**
+	 * Reference implementation of the Inverse Cipher, which applies the
+	 * transformations one by one, as described in the specification. The
+	 * intermediate states are reported to the round observer, if there is one.
+	 * 
+	 * @param in   the ciphertext in matrix format
+	 * @param word the key schedule created using the Cipher Key
+	 * @return plaintext
+	 */
+	public int[][] referenceInvCipher(int[][] in, int[][] word) {
+		return referenceInvCipher(in, word, getActiveObserver());
+	}
+
+	/**
+	 * Reference implementation of the Inverse Cipher, which reports the
+	 * intermediate states to the given observer
+	 * 
+	 * @param in       the ciphertext in matrix format
+	 * @param word     the key schedule created using the Cipher Key
+	 * @param observer observer of the intermediate states, or <code>null</code>
+	 * @return plaintext
+	 */
+	public int[][] referenceInvCipher(int[][] in, int[][] word, RoundObserver observer) {
+		byte[] buffer = Objects.isNull(observer) ? null : new byte[BlockEngine.BLOCK_SIZE];
+		int[][] roundKey = AlgorithmUtils.getRoundKey(word, Nr);
+
+		if (Objects.nonNull(observer)) {
+			observer.begin(false, toBytes(in, new byte[BlockEngine.BLOCK_SIZE]),
+					toBytes(AlgorithmUtils.getRoundKey(word, 0), new byte[BlockEngine.BLOCK_SIZE]));
 		}
 
-		state = invShiftRows(state);
+		trace(observer, 0, RoundStep.IINPUT, in, buffer);
+		trace(observer, 0, RoundStep.IK_SCH, roundKey, buffer);
+
+		int[][] state = AlgorithmUtils.addRoundKey(in, roundKey);
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "is_row", IOUtils.parseState(state)));
+		for (int round = Nr - 1, i = 1; round > 0; round--, i++) {
+			trace(observer, i, RoundStep.ISTART, state, buffer);
+			state = invShiftRows(state);
+			trace(observer, i, RoundStep.IS_ROW, state, buffer);
+			state = invSubBytes(state);
+			trace(observer, i, RoundStep.IS_BOX, state, buffer);
+
+			roundKey = AlgorithmUtils.getRoundKey(word, round);
+			state = addRoundKey(state, roundKey);
+			trace(observer, i, RoundStep.IK_SCH, roundKey, buffer);
+			trace(observer, i, RoundStep.IK_ADD, state, buffer);
+
+			state = invMixColumns(state);
 		}
 
+		trace(observer, Nr, RoundStep.ISTART, state, buffer);
+		state = invShiftRows(state);
+		trace(observer, Nr, RoundStep.IS_ROW, state, buffer);
 		state = invSubBytes(state);
+		trace(observer, Nr, RoundStep.IS_BOX, state, buffer);
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "is_box", IOUtils.parseState(state)));
-		}
+		roundKey = AlgorithmUtils.getRoundKey(word, 0);
+		state = addRoundKey(state, roundKey);
+		trace(observer, Nr, RoundStep.IK_SCH, roundKey, buffer);
+		trace(observer, Nr, RoundStep.IOUTPUT, state, buffer);
 
-		state = addRoundKey(state, AlgorithmUtils.getRoundKey(word, 0));
+		return state;
+	}
 
-		if (debug) {
-			System.out.println(String.format("round[%2d].%s %s", Nr, "ik_sch",
-					IOUtils.parseState(AlgorithmUtils.getRoundKey(word, 0))));
-			System.out.println(String.format("round[%2d].%s %s", Nr, "ioutput", IOUtils.parseState(state)));
+	/**
+	 * Reports the given state to the observer, if there is one
+	 * 
+	 * @param observer observer of the intermediate states, or <code>null</code>
+	 * @param round    the round
+	 * @param step     the step
+	 * @param state    the state in matrix format
+	 * @param buffer   block that the state is packed into
+	 */
+	private static void trace(RoundObserver observer, int round, RoundStep step, int[][] state, byte[] buffer) {
+		if (Objects.nonNull(observer)) {
+			observer.onStep(round, step, toBytes(state, buffer));
 		}
+	}
 
-		return state;
+	/**
+	 * @param state  the state in matrix format
+	 * @param buffer block that the state is packed into
+	 * @return the <code>buffer</code>
+	 */
+	private static byte[] toBytes(int[][] state, byte[] buffer) {
+		AlgorithmUtils.stateToBytes(state, 0, buffer, 0);
+
+		return buffer;
 	}
 
 	@Override
@@ -1,5 +1,7 @@
 package hr.fer.kik;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interface that models a generic algorithm.
  * 
@@ -19,4 +21,58 @@ public interface Algorithm {
 	 * @return plaintext
 	 */
 	int[][] decrypt(int[][] ciphertext);
+
+	/**
+	 * Encrypts <code>len</code> bytes of the <code>in</code> array, starting at
+	 * <code>inOff</code>, and writes the result into the <code>out</code> array,
+	 * starting at <code>outOff</code>. The encryption can be done in place, when
+	 * <code>out</code> is <code>in</code> and both offsets are the same.
+	 * 
+	 * @param in     array containing the plaintext
+	 * @param inOff  offset of the plaintext
+	 * @param len    length of the plaintext
+	 * @param out    array that the ciphertext will be written to
+	 * @param outOff offset of the ciphertext
+	 * @return number of bytes written to <code>out</code>
+	 */
+	int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff);
+
+	/**
+	 * Decrypts <code>len</code> bytes of the <code>in</code> array, starting at
+	 * <code>inOff</code>, and writes the result into the <code>out</code> array,
+	 * starting at <code>outOff</code>. The decryption can be done in place, when
+	 * <code>out</code> is <code>in</code> and both offsets are the same.
+	 * 
+	 * @param in     array containing the ciphertext
+	 * @param inOff  offset of the ciphertext
+	 * @param len    length of the ciphertext
+	 * @param out    array that the plaintext will be written to
+	 * @param outOff offset of the plaintext
+	 * @return number of bytes written to <code>out</code>
+	 */
+	int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff);
+
+	/**
+	 * Encrypts the remaining bytes of <code>src</code>, writes the ciphertext at
+	 * the position of <code>dst</code>, and advances both positions. Heap and
+	 * direct buffers are read and written in place.
+	 * 
+	 * @param src buffer containing the plaintext
+	 * @param dst buffer that the ciphertext will be written to, a different
+	 *            object than <code>src</code>
+	 * @return number of bytes written to <code>dst</code>
+	 */
+	int encrypt(ByteBuffer src, ByteBuffer dst);
+
+	/**
+	 * Decrypts the remaining bytes of <code>src</code>, writes the plaintext at
+	 * the position of <code>dst</code>, and advances both positions. Heap and
+	 * direct buffers are read and written in place.
+	 * 
+	 * @param src buffer containing the ciphertext
+	 * @param dst buffer that the plaintext will be written to, a different
+	 *            object than <code>src</code>
+	 * @return number of bytes written to <code>dst</code>
+	 */
+	int decrypt(ByteBuffer src, ByteBuffer dst);
 }
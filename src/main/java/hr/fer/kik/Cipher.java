@@ -1,9 +1,24 @@
 package hr.fer.kik;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.engine.EngineType;
+import hr.fer.kik.jfr.CipherOperationEvent;
+import hr.fer.kik.metrics.CipherMetrics;
+import hr.fer.kik.metrics.TransformationMetrics;
+import hr.fer.kik.mode.Padding;
+import hr.fer.kik.mode.ParallelCodeBookMode;
+import hr.fer.kik.mode.StreamProcessor;
+import hr.fer.kik.trace.RoundObserver;
 
 /**
  * This class represents an abstract cipher.
@@ -35,18 +50,25 @@ public class Cipher {
 	 */
 	static List<String> supportedModesOfOperation = Arrays.asList(ModeOfOperation.values()).stream().map(e -> e.name())
 			.toList();
+	/**
+	 * List of supported paddings, the optional third element of the
+	 * transformation
+	 */
+	static List<String> supportedPaddings = Arrays.asList(Padding.values()).stream().map(e -> e.name()).toList();
 
 	/**
-	 * Map of algorithm names and their corresponding algorithm instances
+	 * Map of algorithm names and the factories of their corresponding algorithm
+	 * instances. Every cipher gets its own instance, so ciphers used on
+	 * different threads do not share any mutable state.
 	 */
-	static Map<String, Algorithm> algorithmMap = new TreeMap<>() {
+	static Map<String, Supplier<Algorithm>> algorithmMap = new TreeMap<>() {
 		/**
 		 * Serial version UID for this object
 		 */
 		private static final long serialVersionUID = 1L;
 
 		{
-			put("AES128", new AES128());
+			put("AES128", AES128::new);
 		}
 	};
 
@@ -62,12 +84,38 @@ public class Cipher {
 		{
 			put("ECB", ModeOfOperation.ECB);
 			put("CTR", ModeOfOperation.CTR);
+			put("CBC", ModeOfOperation.CBC);
+			put("GCM", ModeOfOperation.GCM);
 		}
 	};
 
+	/**
+	 * Cache of the key schedules, shared by all ciphers
+	 */
+	static KeyScheduleCache keyScheduleCache = new KeyScheduleCache();
+
 	public Algorithm algorithm = null;
 	public String modeOfOperation = null;
+	public Padding padding = null;
 	public int modeOfUse = ENCRYPT_MODE;
+	public Executor executor = ForkJoinPool.commonPool();
+	public int parallelThreshold = ParallelCodeBookMode.DEFAULT_THRESHOLD;
+	public EngineType engineType = EngineType.TABLE;
+	public RoundObserver roundObserver = null;
+
+	/**
+	 * Processor used by the incremental <code>update</code> and
+	 * <code>doFinal</code> methods, created by <code>init</code>
+	 */
+	private StreamProcessor processor = null;
+	/**
+	 * Metrics of the transformation, set by <code>init</code>
+	 */
+	private TransformationMetrics metrics = null;
+	/**
+	 * Name of the algorithm, set by <code>init</code>
+	 */
+	private String algorithmName = null;
 
 	/**
 	 * @return all supported modes of operation
@@ -76,6 +124,13 @@ public class Cipher {
 		return supportedModesOfOperation;
 	}
 
+	/**
+	 * @return all supported paddings
+	 */
+	public static List<String> getSupportedPaddings() {
+		return supportedPaddings;
+	}
+
 	/**
 	 * @return all supported algorithms
 	 */
@@ -83,6 +138,13 @@ public class Cipher {
 		return supportedAlgorithms;
 	}
 
+	/**
+	 * @return cache of the key schedules, shared by all ciphers
+	 */
+	public static KeyScheduleCache getKeyScheduleCache() {
+		return keyScheduleCache;
+	}
+
 	/**
 	 * @return current algorithm. Returns <code>null</code> if not initialized
 	 */
@@ -112,6 +174,68 @@ public class Cipher {
 		this.modeOfUse = modeOfUse;
 	}
 
+	/**
+	 * @param executor used for processing on multiple threads, the common
+	 *                 <code>ForkJoinPool</code> by default
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          processed on multiple threads.
+	 *                          <code>Integer.MAX_VALUE</code> disables it.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return type of the block engine used for the keys
+	 */
+	public EngineType getEngineType() {
+		return engineType;
+	}
+
+	/**
+	 * @param engineType type of the block engine used for the keys,
+	 *                   <code>EngineType.BITSLICED</code> for a constant-time
+	 *                   engine
+	 */
+	public void setEngineType(EngineType engineType) {
+		this.engineType = Objects.requireNonNull(engineType);
+	}
+
+	/**
+	 * @return observer of the intermediate states, <code>null</code> if there is
+	 *         none
+	 */
+	public RoundObserver getRoundObserver() {
+		return roundObserver;
+	}
+
+	/**
+	 * Sets the observer of the intermediate states of this cipher only. While
+	 * it is set, every block is processed by the reference implementation, so
+	 * it should only be used for tracing single operations. It applies from the
+	 * next <code>init</code> or <code>doFinal</code> call.
+	 * 
+	 * @param roundObserver observer of the intermediate states, or
+	 *                      <code>null</code> to stop tracing
+	 */
+	public void setRoundObserver(RoundObserver roundObserver) {
+		this.roundObserver = roundObserver;
+	}
+
+	/**
+	 * @return padding given by the transformation, null if the default padding
+	 *         of the mode of operation is used
+	 */
+	public Padding getPadding() {
+		return padding;
+	}
+
 	/**
 	 * Method for initializing the cipher
 	 * 
@@ -119,30 +243,409 @@ public class Cipher {
 	 */
 	public void init(String transformation) {
 		parseTransformation(transformation);
+		processor = null;
+	}
+
+	/**
+	 * Initializes the cipher for incremental processing, with an all zero IV
+	 * 
+	 * @param modeOfUse <code>ENCRYPT_MODE</code> or <code>DECRYPT_MODE</code>
+	 * @param key       the Cipher Key bytes
+	 */
+	public void init(int modeOfUse, byte[] key) {
+		init(modeOfUse, key, new byte[BlockEngine.BLOCK_SIZE]);
+	}
+
+	/**
+	 * Initializes the cipher for incremental processing with
+	 * <code>update</code> and <code>doFinal</code>. The transformation has to be
+	 * initialized first.
+	 * 
+	 * @param modeOfUse <code>ENCRYPT_MODE</code> or <code>DECRYPT_MODE</code>
+	 * @param key       the Cipher Key bytes
+	 * @param iv        the IV, used in CTR, CBC and GCM mode
+	 */
+	public void init(int modeOfUse, byte[] key, byte[] iv) {
+		if (algorithm == null) {
+			throw new IllegalArgumentException("The transformation has not been initialized!");
+		}
+
+		setModeOfUse(modeOfUse);
+		checkModeOfUse();
+
+		KeyContext context = keyScheduleCache.getContext(key, engineType);
+
+		if (Objects.nonNull(roundObserver)) {
+			context = context.traced(roundObserver);
+		}
+
+		ModeOfOperation mode = modesOfOperationMap.get(modeOfOperation);
+		Padding activePadding = Objects.isNull(padding) ? mode.getDefaultPadding() : padding;
+
+		processor = context.createProcessor(modeOfUse == ENCRYPT_MODE, mode, activePadding, iv, 128, executor,
+				parallelThreshold);
+	}
+
+	/**
+	 * Adds additional data, which is authenticated, but not encrypted, to the
+	 * incremental operation. Only GCM mode supports it, and it has to be called
+	 * before the first <code>update</code>.
+	 * 
+	 * @param aad additional data
+	 */
+	public void updateAAD(byte[] aad) {
+		updateAAD(aad, 0, aad.length);
+	}
+
+	/**
+	 * Adds additional data, which is authenticated, but not encrypted, to the
+	 * incremental operation
+	 * 
+	 * @param aad    array containing the additional data
+	 * @param aadOff offset of the additional data
+	 * @param len    length of the additional data
+	 */
+	public void updateAAD(byte[] aad, int aadOff, int len) {
+		Objects.checkFromIndexSize(aadOff, len, aad.length);
+		getProcessor().updateAAD(aad, aadOff, len);
+	}
+
+	/**
+	 * @param len length of the next input
+	 * @return maximum number of bytes that the next <code>doFinal</code> call
+	 *         with <code>len</code> input bytes outputs
+	 */
+	public int getOutputSize(int len) {
+		return getProcessor().getFinalOutputSize(len);
+	}
+
+	/**
+	 * Continues the incremental operation, and returns every output byte that
+	 * is already available
+	 * 
+	 * @param in the next part of the input
+	 * @return the next part of the output, which might be empty
+	 */
+	public byte[] update(byte[] in) {
+		return update(in, 0, in.length);
+	}
+
+	/**
+	 * Continues the incremental operation, and returns every output byte that
+	 * is already available
+	 * 
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 * @return the next part of the output, which might be empty
+	 */
+	public byte[] update(byte[] in, int inOff, int len) {
+		byte[] out = new byte[getProcessor().getUpdateOutputSize(len)];
+		int produced = update(in, inOff, len, out, 0);
+
+		return produced == out.length ? out : Arrays.copyOf(out, produced);
+	}
+
+	/**
+	 * Continues the incremental operation, and writes every output byte that is
+	 * already available into <code>out</code>
+	 * 
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		StreamProcessor processor = getProcessor();
+
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+		long start = System.nanoTime();
+
+		try {
+			Objects.checkFromIndexSize(inOff, len, in.length);
+			Objects.checkFromIndexSize(outOff, processor.getUpdateOutputSize(len), out.length);
+
+			int produced = processor.update(in, inOff, len, out, outOff);
+			metrics.recordUpdate(len, System.nanoTime() - start);
+			event.record(algorithmName, modeOfOperation, modeOfUse == ENCRYPT_MODE, len, engineType);
+
+			return produced;
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			throw e;
+		}
+	}
+
+	/**
+	 * Finishes the incremental operation, processes the tail and the padding,
+	 * and resets the cipher to the state after <code>init</code>
+	 * 
+	 * @param in the last part of the input
+	 * @return the last part of the output
+	 */
+	public byte[] doFinal(byte[] in) {
+		return doFinal(in, 0, in.length);
+	}
+
+	/**
+	 * Finishes the incremental operation, processes the tail and the padding,
+	 * and resets the cipher to the state after <code>init</code>
+	 * 
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 * @return the last part of the output
+	 */
+	public byte[] doFinal(byte[] in, int inOff, int len) {
+		byte[] out = new byte[getProcessor().getFinalOutputSize(len)];
+		int produced = doFinal(in, inOff, len, out, 0);
+
+		return produced == out.length ? out : Arrays.copyOf(out, produced);
+	}
+
+	/**
+	 * Finishes the incremental operation, processes the tail and the padding,
+	 * writes the rest of the output into <code>out</code>, and resets the cipher
+	 * to the state after <code>init</code>
+	 * 
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		StreamProcessor processor = getProcessor();
+
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+		long start = System.nanoTime();
+
+		try {
+			Objects.checkFromIndexSize(inOff, len, in.length);
+			Objects.checkFromIndexSize(outOff, processor.getFinalOutputSize(len), out.length);
+
+			int produced = processor.doFinal(in, inOff, len, out, outOff);
+			metrics.recordDoFinal(len, System.nanoTime() - start);
+			event.record(algorithmName, modeOfOperation, modeOfUse == ENCRYPT_MODE, len, engineType);
+
+			return produced;
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			throw e;
+		}
+	}
+
+	/**
+	 * Continues the incremental operation with the remaining bytes of
+	 * <code>in</code>, writes every output byte that is already available at the
+	 * position of <code>out</code>, and advances both positions. Direct buffers
+	 * are not copied onto the heap as a whole.
+	 * 
+	 * @param in  input buffer
+	 * @param out output buffer, a different object than <code>in</code>
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int update(ByteBuffer in, ByteBuffer out) {
+		StreamProcessor processor = getProcessor();
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+		long start = System.nanoTime();
+		int len = in.remaining();
+
+		try {
+			int produced = processor.update(in, out);
+			metrics.recordUpdate(len, System.nanoTime() - start);
+			event.record(algorithmName, modeOfOperation, modeOfUse == ENCRYPT_MODE, len, engineType);
+
+			return produced;
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			throw e;
+		}
+	}
+
+	/**
+	 * Finishes the incremental operation with the remaining bytes of
+	 * <code>in</code>, writes the rest of the output at the position of
+	 * <code>out</code>, advances both positions, and resets the cipher to the
+	 * state after <code>init</code>
+	 * 
+	 * @param in  input buffer
+	 * @param out output buffer, a different object than <code>in</code>
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int doFinal(ByteBuffer in, ByteBuffer out) {
+		StreamProcessor processor = getProcessor();
+		CipherOperationEvent event = new CipherOperationEvent();
+		event.begin();
+		long start = System.nanoTime();
+		int len = in.remaining();
+
+		try {
+			int produced = processor.doFinal(in, out);
+			metrics.recordDoFinal(len, System.nanoTime() - start);
+			event.record(algorithmName, modeOfOperation, modeOfUse == ENCRYPT_MODE, len, engineType);
+
+			return produced;
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return processor for the incremental operation
+	 */
+	private StreamProcessor getProcessor() {
+		if (processor == null) {
+			throw new IllegalArgumentException("The cipher has not been initialized with a key!");
+		}
+
+		return processor;
 	}
 
 	public int[][] doFinal(int[][] in, int[][] key) {
-		if (!supportedModeOfUses.contains(modeOfUse)) {
-			throw new IllegalArgumentException(
-					String.format("Unexpected mode of use! Expected %d or %d, but recieved %d", ENCRYPT_MODE,
-							DECRYPT_MODE, modeOfUse));
+		TransformationMetrics metrics = getMetrics();
+		long start = System.nanoTime();
+
+		try {
+			prepareAlgorithm(key);
+
+			int[][] out = switch (modeOfUse) {
+			case ENCRYPT_MODE -> algorithm.encrypt(in);
+			case DECRYPT_MODE -> algorithm.decrypt(in);
+			default -> throw new IllegalArgumentException();
+			};
+			metrics.recordDoFinal((long) in.length * in[0].length, System.nanoTime() - start);
+
+			return out;
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			throw e;
 		}
+	}
+
+	/**
+	 * Encrypts or decrypts, depending on the current mode of use,
+	 * <code>len</code> bytes of the <code>in</code> array, starting at
+	 * <code>inOff</code>, and writes the result into the <code>out</code> array,
+	 * starting at <code>outOff</code>. The operation can be done in place, when
+	 * <code>out</code> is <code>in</code> and both offsets are the same. ECB and
+	 * CBC encryption pad the last block, and GCM encryption appends the
+	 * authentication tag, so <code>out</code> has to hold
+	 * <code>KeyContext.getOutputSize</code> bytes.
+	 * 
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @param key    the Cipher Key
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff, int[][] key) {
+		TransformationMetrics metrics = getMetrics();
+		long start = System.nanoTime();
+
+		try {
+			prepareAlgorithm(key);
+
+			int produced = switch (modeOfUse) {
+			case ENCRYPT_MODE -> algorithm.encrypt(in, inOff, len, out, outOff);
+			case DECRYPT_MODE -> algorithm.decrypt(in, inOff, len, out, outOff);
+			default -> throw new IllegalArgumentException();
+			};
+			metrics.recordDoFinal(len, System.nanoTime() - start);
+
+			return produced;
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			throw e;
+		}
+	}
+
+	/**
+	 * Encrypts or decrypts, depending on the current mode of use, the remaining
+	 * bytes of <code>in</code>, writes the result at the position of
+	 * <code>out</code>, and advances both positions. Heap and direct buffers are
+	 * read and written in place.
+	 * 
+	 * @param in  input buffer
+	 * @param out output buffer, a different object than <code>in</code>
+	 * @param key the Cipher Key
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int doFinal(ByteBuffer in, ByteBuffer out, int[][] key) {
+		TransformationMetrics metrics = getMetrics();
+		long start = System.nanoTime();
+		int len = in.remaining();
+
+		try {
+			prepareAlgorithm(key);
+
+			int produced = switch (modeOfUse) {
+			case ENCRYPT_MODE -> algorithm.encrypt(in, out);
+			case DECRYPT_MODE -> algorithm.decrypt(in, out);
+			default -> throw new IllegalArgumentException();
+			};
+			metrics.recordDoFinal(len, System.nanoTime() - start);
+
+			return produced;
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return metrics of the transformation
+	 */
+	private TransformationMetrics getMetrics() {
+		if (metrics == null) {
+			throw new IllegalArgumentException("The cipher has not been initialized with a transformation!");
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * Helper method that checks the mode of use, and sets the <code>key</code>,
+	 * with its shared key context from the cache, and the mode of operation on
+	 * the algorithm instance of this cipher
+	 * 
+	 * @param key the Cipher Key
+	 */
+	private void prepareAlgorithm(int[][] key) {
+		checkModeOfUse();
 
 		for (var entry : algorithmMap.entrySet()) {
 			switch (entry.getKey()) {
 			case "AES128" -> {
-				((AES128) algorithm).setKey(key);
+				((AES128) algorithm).setKeyContext(keyScheduleCache.getContext(key, engineType));
 				((AES128) algorithm).setModeOfOperation(modesOfOperationMap.get(modeOfOperation));
+				((AES128) algorithm).setPadding(padding);
+				((AES128) algorithm).setExecutor(executor);
+				((AES128) algorithm).setParallelThreshold(parallelThreshold);
+				((AES128) algorithm).setRoundObserver(roundObserver);
 			}
 			}
 		}
+	}
 
-		return switch (modeOfUse) {
-		case ENCRYPT_MODE -> algorithm.encrypt(in);
-		case DECRYPT_MODE -> algorithm.decrypt(in);
-		default -> throw new IllegalArgumentException();
-		};
-
+	/**
+	 * Helper method that checks the current mode of use
+	 */
+	private void checkModeOfUse() {
+		if (!supportedModeOfUses.contains(modeOfUse)) {
+			throw new IllegalArgumentException(
+					String.format("Unexpected mode of use! Expected %d or %d, but recieved %d", ENCRYPT_MODE,
+							DECRYPT_MODE, modeOfUse));
+		}
 	}
 
 	/**
@@ -153,9 +656,9 @@ public class Cipher {
 	private void parseTransformation(String transformation) {
 		String[] elements = transformation.split("/");
 
-		if (elements.length != 2) {
+		if (elements.length != 2 && elements.length != 3) {
 			throw new IllegalArgumentException(String.format(
-					"Expected transformation string in format 'ALGORITHM/MODE_OF_OPERATION', but recieved '%s'!",
+					"Expected transformation string in format 'ALGORITHM/MODE_OF_OPERATION[/PADDING]', but recieved '%s'!",
 					transformation));
 		}
 
@@ -164,7 +667,7 @@ public class Cipher {
 					supportedAlgorithms, elements[0].toUpperCase()));
 		}
 
-		algorithm = algorithmMap.get(elements[0]);
+		algorithm = algorithmMap.get(elements[0]).get();
 
 		if (!supportedModesOfOperation.contains(elements[1])) {
 			throw new IllegalArgumentException(
@@ -172,7 +675,27 @@ public class Cipher {
 							supportedModesOfOperation.toString(), elements[1].toUpperCase()));
 		}
 
+		if (elements.length == 3) {
+			if (!supportedPaddings.contains(elements[2])) {
+				throw new IllegalArgumentException(String.format("Unsupported padding! Expected %s, but recieved '%s'!",
+						supportedPaddings.toString(), elements[2].toUpperCase()));
+			}
+
+			Padding parsed = Padding.valueOf(elements[2]);
+
+			if (!modesOfOperationMap.get(elements[1]).isPaddingSupported(parsed)) {
+				throw new IllegalArgumentException(
+						String.format("The %s padding is not supported in %s mode!", parsed, elements[1]));
+			}
+
+			padding = parsed;
+		} else {
+			padding = null;
+		}
+
 		modeOfOperation = elements[1];
+		algorithmName = elements[0];
+		metrics = CipherMetrics.getInstance().getTransformation(elements[0] + "/" + elements[1]);
 	}
 
 }
@@ -0,0 +1,527 @@
+package hr.fer.kik;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.engine.EngineType;
+import hr.fer.kik.jfr.KeyExpansionEvent;
+import hr.fer.kik.metrics.CipherMetrics;
+import hr.fer.kik.mode.BlockChainingMode;
+import hr.fer.kik.mode.BlockChainingStreamProcessor;
+import hr.fer.kik.mode.CodeBookStreamProcessor;
+import hr.fer.kik.mode.Counter;
+import hr.fer.kik.mode.CounterStreamProcessor;
+import hr.fer.kik.mode.GHash;
+import hr.fer.kik.mode.GaloisCounterMode;
+import hr.fer.kik.mode.GaloisCounterStreamProcessor;
+import hr.fer.kik.mode.Padding;
+import hr.fer.kik.mode.ParallelCodeBookMode;
+import hr.fer.kik.mode.ParallelCounterMode;
+import hr.fer.kik.mode.StreamProcessor;
+import hr.fer.kik.trace.RoundObserver;
+import hr.fer.kik.trace.TracingEngine;
+import hr.fer.kik.util.AlgorithmUtils;
+
+/**
+ * This class represents an immutable Cipher Key, together with its key
+ * schedule, the block engine created from it, and the GHASH tables of the key.
+ * The key is expanded only once, and the context can be used by any number of
+ * threads at the same time, since every operation keeps its own state.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public final class KeyContext {
+	/**
+	 * Algorithm used for the key expansion, which does not depend on its state
+	 */
+	private static final AES128 EXPANSION = new AES128();
+	/**
+	 * Empty additional data
+	 */
+	private static final byte[] NO_AAD = new byte[0];
+
+	/**
+	 * Copy of the Cipher Key
+	 */
+	private final int[][] key;
+	/**
+	 * Key schedule of the Cipher Key
+	 */
+	private final int[][] keySchedule;
+	/**
+	 * Type of the block engine
+	 */
+	private final EngineType engineType;
+	/**
+	 * Block engine created from the key schedule
+	 */
+	private final BlockEngine engine;
+	/**
+	 * GHASH function of the key, used in GCM mode
+	 */
+	private final GHash ghash;
+	/**
+	 * True if the blocks are traced, in which case they are processed on the
+	 * calling thread, one after another
+	 */
+	private final boolean traced;
+
+	/**
+	 * Creates a new context
+	 *
+	 * @param key         the Cipher Key
+	 * @param keySchedule the key schedule, which is copied
+	 * @param engineType  type of the block engine
+	 */
+	private KeyContext(int[][] key, int[][] keySchedule, EngineType engineType) {
+		this.key = copy(key);
+		this.keySchedule = copy(keySchedule);
+		this.engineType = Objects.requireNonNull(engineType);
+		this.engine = engineType.create(this.keySchedule);
+		this.ghash = new GHash(engine);
+		this.traced = false;
+	}
+
+	/**
+	 * Creates a new context for the key of the <code>base</code> context, with
+	 * a different block engine
+	 *
+	 * @param base   the context of the key
+	 * @param engine the block engine
+	 */
+	private KeyContext(KeyContext base, BlockEngine engine) {
+		this.key = base.key;
+		this.keySchedule = base.keySchedule;
+		this.engineType = base.engineType;
+		this.engine = engine;
+		this.ghash = base.ghash;
+		this.traced = true;
+	}
+
+	/**
+	 * @param key the Cipher Key in the matrix format
+	 * @return a new context for the key, with the table driven engine
+	 */
+	public static KeyContext of(int[][] key) {
+		return of(key, EngineType.TABLE);
+	}
+
+	/**
+	 * @param key        the Cipher Key in the matrix format
+	 * @param engineType type of the block engine
+	 * @return a new context for the key
+	 */
+	public static KeyContext of(int[][] key, EngineType engineType) {
+		if (key.length != AES128.getNk() || key[0].length != AES128.getNb()) {
+			throw new IllegalArgumentException("The key size does not meet the specification criteria!");
+		}
+
+		CipherMetrics.getInstance().recordKeyExpansion();
+
+		KeyExpansionEvent event = new KeyExpansionEvent();
+		event.begin();
+
+		KeyContext context = new KeyContext(key, EXPANSION.keyExpansion(key), engineType);
+		event.record(engineType);
+
+		return context;
+	}
+
+	/**
+	 * @param key the Cipher Key bytes
+	 * @return a new context for the key, with the table driven engine
+	 */
+	public static KeyContext of(byte[] key) {
+		return of(AlgorithmUtils.bytesToKey(key));
+	}
+
+	/**
+	 * @param key        the Cipher Key bytes
+	 * @param engineType type of the block engine
+	 * @return a new context for the key
+	 */
+	public static KeyContext of(byte[] key, EngineType engineType) {
+		return of(AlgorithmUtils.bytesToKey(key), engineType);
+	}
+
+	/**
+	 * Creates a new context for an already expanded key schedule, whose first
+	 * round key is the Cipher Key
+	 *
+	 * @param keySchedule the key schedule in the matrix format
+	 * @param engineType  type of the block engine
+	 * @return a new context for the key schedule
+	 */
+	static KeyContext ofKeySchedule(int[][] keySchedule, EngineType engineType) {
+		int[][] roundKey = AlgorithmUtils.getRoundKey(keySchedule, 0);
+		int[][] key = new int[AES128.getNk()][AES128.getNb()];
+
+		for (int i = 0; i < key.length; i++) {
+			for (int j = 0; j < key[i].length; j++) {
+				key[i][j] = roundKey[j][i];
+			}
+		}
+
+		return new KeyContext(key, keySchedule, engineType);
+	}
+
+	/**
+	 * Creates a context for the same key, which runs every block through the
+	 * reference implementation, and reports its intermediate states to the
+	 * given observer. It is meant for tracing single operations, and is much
+	 * slower than this context. The traced context never uses an executor, so
+	 * the observer is called from one thread, in the order of the blocks.
+	 *
+	 * @param observer observer of the intermediate states
+	 * @return a new traced context for the key
+	 */
+	public KeyContext traced(RoundObserver observer) {
+		return new KeyContext(this, new TracingEngine(keySchedule, observer));
+	}
+
+	/**
+	 * @return copy of the Cipher Key
+	 */
+	public int[][] getKey() {
+		return copy(key);
+	}
+
+	/**
+	 * @return copy of the key schedule
+	 */
+	public int[][] getKeySchedule() {
+		return copy(keySchedule);
+	}
+
+	/**
+	 * @return type of the block engine
+	 */
+	public EngineType getEngineType() {
+		return engineType;
+	}
+
+	/**
+	 * @return block engine for the key
+	 */
+	public BlockEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return GHASH function for the key
+	 */
+	public GHash getGHash() {
+		return ghash;
+	}
+
+	/**
+	 * Encrypts <code>len</code> bytes of the <code>in</code> array, starting at
+	 * <code>inOff</code>, and writes the result into the <code>out</code> array,
+	 * starting at <code>outOff</code>. In ECB and CBC mode the output is padded
+	 * with the default padding of the mode, and in GCM mode it is followed by
+	 * the authentication tag, so <code>out</code> has to hold
+	 * <code>getOutputSize</code> bytes.
+	 *
+	 * @param modeOfOperation the mode of operation
+	 * @param iv              the IV, used in CTR, CBC and GCM mode
+	 * @param in              input array
+	 * @param inOff           input offset
+	 * @param len             input length
+	 * @param out             output array
+	 * @param outOff          output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int encrypt(ModeOfOperation modeOfOperation, byte[] iv, byte[] in, int inOff, int len, byte[] out,
+			int outOff) {
+		return encrypt(modeOfOperation, iv, NO_AAD, in, inOff, len, out, outOff);
+	}
+
+	/**
+	 * Encrypts the given array region, and authenticates the additional data
+	 * together with it in GCM mode
+	 *
+	 * @param modeOfOperation the mode of operation
+	 * @param iv              the IV, used in CTR, CBC and GCM mode
+	 * @param aad             additional data, used in GCM mode
+	 * @param in              input array
+	 * @param inOff           input offset
+	 * @param len             input length
+	 * @param out             output array
+	 * @param outOff          output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int encrypt(ModeOfOperation modeOfOperation, byte[] iv, byte[] aad, byte[] in, int inOff, int len,
+			byte[] out, int outOff) {
+		return process(true, modeOfOperation, modeOfOperation.getDefaultPadding(), iv, 128, aad, in, inOff, len,
+				out, outOff, ForkJoinPool.commonPool(), ParallelCodeBookMode.DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Decrypts <code>len</code> bytes of the <code>in</code> array, starting at
+	 * <code>inOff</code>, and writes the result into the <code>out</code> array,
+	 * starting at <code>outOff</code>. In CBC mode the padding is removed, and
+	 * in GCM mode the authentication tag is verified and removed, so only the
+	 * plaintext length is returned.
+	 *
+	 * @param modeOfOperation the mode of operation
+	 * @param iv              the IV, used in CTR, CBC and GCM mode
+	 * @param in              input array
+	 * @param inOff           input offset
+	 * @param len             input length
+	 * @param out             output array
+	 * @param outOff          output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int decrypt(ModeOfOperation modeOfOperation, byte[] iv, byte[] in, int inOff, int len, byte[] out,
+			int outOff) {
+		return decrypt(modeOfOperation, iv, NO_AAD, in, inOff, len, out, outOff);
+	}
+
+	/**
+	 * Decrypts the given array region, and verifies the additional data together
+	 * with it in GCM mode
+	 *
+	 * @param modeOfOperation the mode of operation
+	 * @param iv              the IV, used in CTR, CBC and GCM mode
+	 * @param aad             additional data, used in GCM mode
+	 * @param in              input array
+	 * @param inOff           input offset
+	 * @param len             input length
+	 * @param out             output array
+	 * @param outOff          output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public int decrypt(ModeOfOperation modeOfOperation, byte[] iv, byte[] aad, byte[] in, int inOff, int len,
+			byte[] out, int outOff) {
+		return process(false, modeOfOperation, modeOfOperation.getDefaultPadding(), iv, 128, aad, in, inOff, len,
+				out, outOff, ForkJoinPool.commonPool(), ParallelCodeBookMode.DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param modeOfOperation the mode of operation
+	 * @param encryption      true for encryption, false for decryption
+	 * @param len             input length
+	 * @return maximum number of bytes written to the output for an input of
+	 *         <code>len</code> bytes
+	 */
+	public static int getOutputSize(ModeOfOperation modeOfOperation, boolean encryption, int len) {
+		return getOutputSize(modeOfOperation, modeOfOperation.getDefaultPadding(), encryption, len);
+	}
+
+	/**
+	 * @param modeOfOperation the mode of operation
+	 * @param padding         the padding, used in ECB and CBC mode
+	 * @param encryption      true for encryption, false for decryption
+	 * @param len             input length
+	 * @return maximum number of bytes written to the output for an input of
+	 *         <code>len</code> bytes
+	 */
+	public static int getOutputSize(ModeOfOperation modeOfOperation, Padding padding, boolean encryption, int len) {
+		return switch (modeOfOperation) {
+		case ECB, CBC -> encryption ? padding.paddedLength(len) : len;
+		case GCM -> encryption ? len + GaloisCounterMode.TAG_LENGTH
+				: Math.max(0, len - GaloisCounterMode.TAG_LENGTH);
+		default -> len;
+		};
+	}
+
+	/**
+	 * Encrypts or decrypts the given array region in the given mode of
+	 * operation. Regions of at least <code>parallelThreshold</code> bytes are
+	 * split across the executor, in the modes of operation that allow it.
+	 *
+	 * @param encryption        true for encryption, false for decryption
+	 * @param modeOfOperation   the mode of operation
+	 * @param padding           the padding, used in ECB and CBC mode
+	 * @param iv                the IV, used in CTR, CBC and GCM mode
+	 * @param counterWidth      width of the counter field of the IV in bits,
+	 *                          used in CTR mode
+	 * @param aad               additional data, used in GCM mode
+	 * @param in                input array
+	 * @param inOff             input offset
+	 * @param len               input length
+	 * @param out               output array
+	 * @param outOff            output offset
+	 * @param executor          executor used for processing on multiple threads
+	 * @param parallelThreshold input length from which the executor is used
+	 * @return number of bytes written to <code>out</code>
+	 */
+	int process(boolean encryption, ModeOfOperation modeOfOperation, Padding padding, byte[] iv, int counterWidth,
+			byte[] aad, byte[] in, int inOff, int len, byte[] out, int outOff, Executor executor,
+			int parallelThreshold) {
+		if (!modeOfOperation.isPaddingSupported(padding)) {
+			throw new IllegalArgumentException(
+					String.format("The %s padding is not supported in %s mode!", padding, modeOfOperation));
+		}
+
+		Objects.checkFromIndexSize(inOff, len, in.length);
+		Objects.checkFromIndexSize(outOff, getOutputSize(modeOfOperation, padding, encryption, len), out.length);
+		parallelThreshold = threshold(parallelThreshold);
+
+		return switch (modeOfOperation) {
+		case ECB -> encryption
+				? ParallelCodeBookMode.encryptPadded(engine, padding, in, inOff, len, out, outOff, executor,
+						parallelThreshold)
+				: ParallelCodeBookMode.decryptPadded(engine, padding, in, inOff, len, out, outOff, executor,
+						parallelThreshold);
+		case CTR -> {
+			ParallelCounterMode.process(engine, new Counter(requireIV(iv), counterWidth), in, inOff, len, out, outOff,
+					executor, parallelThreshold);
+			yield len;
+		}
+		case CBC -> encryption
+				? BlockChainingMode.encryptPadded(engine, padding, requireIV(iv), in, inOff, len, out, outOff)
+				: BlockChainingMode.decryptPadded(engine, padding, requireIV(iv), in, inOff, len, out, outOff,
+						executor, parallelThreshold);
+		case GCM -> encryption
+				? GaloisCounterMode.encrypt(engine, ghash, Objects.requireNonNull(iv), aad, in, inOff, len, out,
+						outOff, executor, parallelThreshold)
+				: GaloisCounterMode.decrypt(engine, ghash, Objects.requireNonNull(iv), aad, in, inOff, len, out,
+						outOff, executor, parallelThreshold);
+		};
+	}
+
+	/**
+	 * Encrypts or decrypts the remaining bytes of <code>src</code>, writes the
+	 * result at the position of <code>dst</code>, and advances both positions.
+	 * Heap buffers are processed in place, unless their regions of the same
+	 * array partly overlap, CTR mode combines direct buffers directly, and the
+	 * other modes pass direct buffers through a small window, so the data is
+	 * never copied onto the heap as a whole.
+	 *
+	 * @param encryption        true for encryption, false for decryption
+	 * @param modeOfOperation   the mode of operation
+	 * @param padding           the padding, used in ECB and CBC mode
+	 * @param iv                the IV, used in CTR, CBC and GCM mode
+	 * @param counterWidth      width of the counter field of the IV in bits,
+	 *                          used in CTR mode
+	 * @param aad               additional data, used in GCM mode
+	 * @param src               input buffer
+	 * @param dst               output buffer, a different object than
+	 *                          <code>src</code>
+	 * @param executor          executor used for processing on multiple threads
+	 * @param parallelThreshold input length from which the executor is used
+	 * @return number of bytes written to <code>dst</code>
+	 */
+	int process(boolean encryption, ModeOfOperation modeOfOperation, Padding padding, byte[] iv, int counterWidth,
+			byte[] aad, ByteBuffer src, ByteBuffer dst, Executor executor, int parallelThreshold) {
+		if (src.hasArray() && dst.hasArray() && !dst.isReadOnly() && src != dst) {
+			int len = src.remaining();
+			int size = getOutputSize(modeOfOperation, padding, encryption, len);
+
+			if (dst.remaining() < size) {
+				throw new IllegalArgumentException(String.format(
+						"The output buffer has %d bytes remaining, but %d are needed!", dst.remaining(), size));
+			}
+
+			byte[] in = src.array();
+			int inOff = src.arrayOffset() + src.position();
+			int outOff = dst.arrayOffset() + dst.position();
+
+			if (in == dst.array() && inOff != outOff && inOff < outOff + size && outOff < inOff + len) {
+				// The regions partly overlap, so the input is copied before the
+				// output overwrites it
+				in = Arrays.copyOfRange(in, inOff, inOff + len);
+				inOff = 0;
+			}
+
+			int produced = process(encryption, modeOfOperation, padding, iv, counterWidth, aad, in, inOff, len,
+					dst.array(), outOff, executor, parallelThreshold);
+
+			src.position(src.limit());
+			dst.position(dst.position() + produced);
+
+			return produced;
+		}
+
+		StreamProcessor processor = createProcessor(encryption, modeOfOperation, padding, iv, counterWidth, executor,
+				parallelThreshold);
+
+		if (modeOfOperation == ModeOfOperation.GCM) {
+			processor.updateAAD(aad, 0, aad.length);
+		}
+
+		return processor.doFinal(src, dst);
+	}
+
+	/**
+	 * Creates a stream processor for incremental processing with the block
+	 * engine of this context
+	 *
+	 * @param encryption        true for encryption, false for decryption
+	 * @param modeOfOperation   the mode of operation
+	 * @param padding           the padding, used in ECB and CBC mode
+	 * @param iv                the IV, used in CTR, CBC and GCM mode
+	 * @param counterWidth      width of the counter field of the IV in bits,
+	 *                          used in CTR mode
+	 * @param executor          executor used for processing on multiple threads
+	 * @param parallelThreshold input length from which the executor is used
+	 * @return new stream processor
+	 */
+	public StreamProcessor createProcessor(boolean encryption, ModeOfOperation modeOfOperation, Padding padding,
+			byte[] iv, int counterWidth, Executor executor, int parallelThreshold) {
+		if (!modeOfOperation.isPaddingSupported(padding)) {
+			throw new IllegalArgumentException(
+					String.format("The %s padding is not supported in %s mode!", padding, modeOfOperation));
+		}
+
+		parallelThreshold = threshold(parallelThreshold);
+
+		return switch (modeOfOperation) {
+		case ECB -> new CodeBookStreamProcessor(engine, encryption, padding, executor, parallelThreshold);
+		case CTR -> new CounterStreamProcessor(engine, new Counter(requireIV(iv), counterWidth), executor,
+				parallelThreshold);
+		case CBC -> new BlockChainingStreamProcessor(engine, encryption, padding, requireIV(iv), executor,
+				parallelThreshold);
+		case GCM -> new GaloisCounterStreamProcessor(engine, ghash, encryption, Objects.requireNonNull(iv), executor,
+				parallelThreshold);
+		};
+	}
+
+	/**
+	 * @param parallelThreshold input length from which the executor is used
+	 * @return the <code>parallelThreshold</code>, or
+	 *         <code>Integer.MAX_VALUE</code> if the blocks are traced
+	 */
+	private int threshold(int parallelThreshold) {
+		return traced ? Integer.MAX_VALUE : parallelThreshold;
+	}
+
+	/**
+	 * @param iv the IV
+	 * @return the <code>iv</code>, if it is a single block
+	 */
+	private static byte[] requireIV(byte[] iv) {
+		if (Objects.isNull(iv) || iv.length != BlockEngine.BLOCK_SIZE) {
+			throw new IllegalArgumentException(
+					String.format("The IV needs to be %d bytes long!", BlockEngine.BLOCK_SIZE));
+		}
+
+		return iv;
+	}
+
+	/**
+	 * @param matrix the matrix
+	 * @return deep copy of the <code>matrix</code>
+	 */
+	private static int[][] copy(int[][] matrix) {
+		int[][] result = new int[matrix.length][];
+
+		for (int i = 0; i < matrix.length; i++) {
+			result[i] = matrix[i].clone();
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("KeyContext[AES128, %s]", engineType);
+	}
+
+}
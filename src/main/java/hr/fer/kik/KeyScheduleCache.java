@@ -0,0 +1,283 @@
+package hr.fer.kik;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.engine.EngineType;
+import hr.fer.kik.util.AlgorithmUtils;
+
+/**
+ * This class provides a bounded cache of immutable key contexts, which hold the
+ * key schedules and the block engines created from them, keyed by the Cipher
+ * Key bytes and the engine type. Lookups of cached keys do not lock, so the
+ * cache can be read from many threads at the same time. When the cache grows
+ * over its maximum size, the least recently used keys are evicted.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class KeyScheduleCache {
+	/**
+	 * Default maximum number of cached keys
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+	/**
+	 * Maximum number of cached keys
+	 */
+	private final int maximumSize;
+	/**
+	 * Cached entries
+	 */
+	private final Map<KeyId, Entry> entries = new ConcurrentHashMap<>();
+	/**
+	 * Logical clock used for recording the last access of an entry
+	 */
+	private final AtomicLong clock = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Creates a new cache with the default maximum size
+	 */
+	public KeyScheduleCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * Creates a new cache
+	 *
+	 * @param maximumSize maximum number of cached keys
+	 */
+	public KeyScheduleCache(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("The maximum size needs to be positive!");
+		}
+
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @param key the Cipher Key
+	 * @return copy of the key schedule for the given <code>key</code>
+	 */
+	public int[][] getKeySchedule(int[][] key) {
+		return getContext(key).getKeySchedule();
+	}
+
+	/**
+	 * @param key the Cipher Key
+	 * @return block engine for the given <code>key</code>
+	 */
+	public BlockEngine getEngine(int[][] key) {
+		return getContext(key).getEngine();
+	}
+
+	/**
+	 * @param key the Cipher Key bytes
+	 * @return key context for the given <code>key</code>
+	 */
+	public KeyContext getContext(byte[] key) {
+		return getContext(AlgorithmUtils.bytesToKey(key));
+	}
+
+	/**
+	 * @param key the Cipher Key
+	 * @return key context for the given <code>key</code>, with the table driven
+	 *         engine
+	 */
+	public KeyContext getContext(int[][] key) {
+		return getContext(key, EngineType.TABLE);
+	}
+
+	/**
+	 * @param key        the Cipher Key bytes
+	 * @param engineType type of the block engine
+	 * @return key context for the given <code>key</code>
+	 */
+	public KeyContext getContext(byte[] key, EngineType engineType) {
+		return getContext(AlgorithmUtils.bytesToKey(key), engineType);
+	}
+
+	/**
+	 * Returns the cached context for the given <code>key</code> and engine type,
+	 * or expands the key and caches the result. The context can be shared
+	 * between threads.
+	 *
+	 * @param key        the Cipher Key
+	 * @param engineType type of the block engine
+	 * @return key context for the given <code>key</code>
+	 */
+	public KeyContext getContext(int[][] key, EngineType engineType) {
+		KeyId id = KeyId.of(key, engineType);
+		Entry entry = entries.get(id);
+
+		if (Objects.nonNull(entry)) {
+			hits.increment();
+		} else {
+			misses.increment();
+			entry = entries.computeIfAbsent(id,
+					k -> new Entry(KeyContext.of(key, engineType), clock.incrementAndGet()));
+
+			if (entries.size() > maximumSize) {
+				evict();
+			}
+		}
+
+		entry.lastAccess = clock.incrementAndGet();
+
+		return entry.context;
+	}
+
+	/**
+	 * Evicts the least recently used entries, until the cache is within its
+	 * maximum size
+	 */
+	private void evict() {
+		while (entries.size() > maximumSize) {
+			KeyId oldest = null;
+			long oldestAccess = Long.MAX_VALUE;
+
+			for (var e : entries.entrySet()) {
+				if (e.getValue().lastAccess < oldestAccess) {
+					oldest = e.getKey();
+					oldestAccess = e.getValue().lastAccess;
+				}
+			}
+
+			if (Objects.isNull(oldest)) {
+				return;
+			}
+
+			if (Objects.nonNull(entries.remove(oldest))) {
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * Removes the given <code>key</code> from the cache, for every engine type
+	 *
+	 * @param key the Cipher Key
+	 */
+	public void invalidate(int[][] key) {
+		for (EngineType engineType : EngineType.values()) {
+			entries.remove(KeyId.of(key, engineType));
+		}
+	}
+
+	/**
+	 * Removes the given <code>key</code> from the cache
+	 *
+	 * @param key the Cipher Key bytes
+	 */
+	public void invalidate(byte[] key) {
+		invalidate(AlgorithmUtils.bytesToKey(key));
+	}
+
+	/**
+	 * Removes all keys from the cache
+	 */
+	public void invalidateAll() {
+		entries.clear();
+	}
+
+	/**
+	 * @return number of cached keys
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return maximum number of cached keys
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * @return number of lookups which found the key in the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of lookups which had to expand the key
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of keys evicted because of the maximum size
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("KeyScheduleCache[size=%d, hits=%d, misses=%d, evictions=%d]", size(), getHitCount(),
+				getMissCount(), getEvictionCount());
+	}
+
+	/**
+	 * Cached key context, with the time of its last access
+	 *
+	 * @author Ivan Lokas
+	 *
+	 */
+	private static class Entry {
+		final KeyContext context;
+		volatile long lastAccess;
+
+		/**
+		 * @param context    the key context
+		 * @param lastAccess time of the insertion, so a new entry is not the
+		 *                   least recently used one
+		 */
+		Entry(KeyContext context, long lastAccess) {
+			this.context = context;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * The Cipher Key bytes, packed into two big-endian longs, and the engine
+	 * type
+	 *
+	 * @author Ivan Lokas
+	 *
+	 */
+	private record KeyId(long high, long low, EngineType engineType) {
+
+		/**
+		 * @param key        the Cipher Key in the matrix format
+		 * @param engineType type of the block engine
+		 * @return identifier of the key
+		 */
+		static KeyId of(int[][] key, EngineType engineType) {
+			if (key.length != AES128.getNk() || key[0].length != AES128.getNb()) {
+				throw new IllegalArgumentException("The key size does not meet the specification criteria!");
+			}
+
+			long high = 0;
+			long low = 0;
+
+			for (int i = 0; i < 8; i++) {
+				high = high << 8 | (key[i / 4][i % 4] & 0xff);
+				low = low << 8 | (key[(i + 8) / 4][(i + 8) % 4] & 0xff);
+			}
+
+			return new KeyId(high, low, Objects.requireNonNull(engineType));
+		}
+	}
+
+}
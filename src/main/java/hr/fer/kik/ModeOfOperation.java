@@ -1,5 +1,7 @@
 package hr.fer.kik;
 
+import hr.fer.kik.mode.Padding;
+
 /**
  * Supported modes of operation
  * 
@@ -8,11 +10,45 @@ package hr.fer.kik;
  */
 public enum ModeOfOperation {
 	/**
-	 * Electronic Code Book mode of operation
+	 * Electronic Code Book mode of operation, with zero padding by default
 	 */
-	ECB,
+	ECB(Padding.ZERO),
 	/**
 	 * CounTeR mode of operation
 	 */
-	CTR
+	CTR(Padding.NONE),
+	/**
+	 * Cipher Block Chaining mode of operation, with PKCS#7 padding by default
+	 */
+	CBC(Padding.PKCS7),
+	/**
+	 * Galois/Counter Mode authenticated encryption
+	 */
+	GCM(Padding.NONE);
+
+	/**
+	 * Padding used when none is given
+	 */
+	private final Padding defaultPadding;
+
+	private ModeOfOperation(Padding defaultPadding) {
+		this.defaultPadding = defaultPadding;
+	}
+
+	/**
+	 * @return padding used when none is given
+	 */
+	public Padding getDefaultPadding() {
+		return defaultPadding;
+	}
+
+	/**
+	 * @param padding the padding
+	 * @return true if the mode of operation can be used with the
+	 *         <code>padding</code>. Only the block modes support padding, the
+	 *         stream modes accept any input length.
+	 */
+	public boolean isPaddingSupported(Padding padding) {
+		return padding == Padding.NONE || this == ECB || this == CBC;
+	}
 }
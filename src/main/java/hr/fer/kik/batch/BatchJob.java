@@ -0,0 +1,48 @@
+package hr.fer.kik.batch;
+
+import java.util.Objects;
+
+import hr.fer.kik.KeyContext;
+
+/**
+ * A single job of a <code>MultiKeyBatchCipher</code> batch, a payload with its
+ * own key context and IV
+ *
+ * @param context the key context of the job
+ * @param iv      the IV, 16 bytes in CTR mode, preferably 12 bytes in GCM mode
+ * @param aad     additional data, which is authenticated, but not encrypted,
+ *                in GCM mode
+ * @param payload the input of the job
+ *
+ * @author Ivan Lokas
+ *
+ */
+public record BatchJob(KeyContext context, byte[] iv, byte[] aad, byte[] payload) {
+	private static final byte[] NO_AAD = new byte[0];
+
+	/**
+	 * Checks the components, and replaces missing additional data with an empty
+	 * array
+	 */
+	public BatchJob {
+		if (Objects.isNull(context) || Objects.isNull(iv) || Objects.isNull(payload)) {
+			throw new IllegalArgumentException("The key context, the IV and the payload of a job can not be null!");
+		}
+
+		if (Objects.isNull(aad)) {
+			aad = NO_AAD;
+		}
+	}
+
+	/**
+	 * Creates a new job without additional data
+	 *
+	 * @param context the key context of the job
+	 * @param iv      the IV
+	 * @param payload the input of the job
+	 */
+	public BatchJob(KeyContext context, byte[] iv, byte[] payload) {
+		this(context, iv, NO_AAD, payload);
+	}
+
+}
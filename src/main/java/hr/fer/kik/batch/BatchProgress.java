@@ -0,0 +1,39 @@
+package hr.fer.kik.batch;
+
+/**
+ * Snapshot of the progress of a batch job.
+ * 
+ * @param completedFiles number of files that were fully processed
+ * @param totalFiles     number of files in the batch
+ * @param processedBytes number of input bytes that were processed
+ * @param totalBytes     number of input bytes in the batch
+ * @param elapsedNanos   time since the start of the batch in nanoseconds
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public record BatchProgress(int completedFiles, int totalFiles, long processedBytes, long totalBytes,
+		long elapsedNanos) {
+
+	/**
+	 * @return average throughput since the start of the batch, in bytes per
+	 *         second
+	 */
+	public double bytesPerSecond() {
+		return elapsedNanos == 0 ? 0 : processedBytes * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return true if all files were processed
+	 */
+	public boolean isDone() {
+		return completedFiles == totalFiles;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d/%d files, %d/%d bytes, %.2f MB/s", completedFiles, totalFiles, processedBytes,
+				totalBytes, bytesPerSecond() / 1e6);
+	}
+
+}
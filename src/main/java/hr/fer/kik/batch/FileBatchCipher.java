@@ -0,0 +1,528 @@
+package hr.fer.kik.batch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import hr.fer.kik.Cipher;
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.mode.Counter;
+
+/**
+ * This class encrypts or decrypts a batch of files concurrently, on a bounded
+ * pool of worker threads. Files larger than the chunk size are split into
+ * chunks which are processed independently, in the modes of operation that
+ * allow it, while smaller files are grouped together, so every task handles
+ * roughly the same amount of data. The algorithm and the mode of operation are
+ * selected with a <code>Cipher</code> transformation string.
+ * <p>
+ * Every file is processed with its own IV, since CTR and GCM encryption of two
+ * files with the same key and IV reveals the XOR of their plaintexts, and GCM
+ * loses its authenticity as well. Encryption rejects a batch in which two
+ * files would share an IV.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class FileBatchCipher {
+	/**
+	 * Default chunk size in bytes
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+	/**
+	 * Maximum number of files in a single group
+	 */
+	private static final int MAX_GROUP_FILES = 64;
+	/**
+	 * Number of bytes passed to the cipher at a time
+	 */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * <code>Cipher</code> transformation string
+	 */
+	private final String transformation;
+	/**
+	 * <code>Cipher.ENCRYPT_MODE</code> or <code>Cipher.DECRYPT_MODE</code>
+	 */
+	private final int modeOfUse;
+	/**
+	 * The Cipher Key bytes
+	 */
+	private final byte[] key;
+	/**
+	 * Function which returns the IV of a source file, null in ECB mode
+	 */
+	private final Function<Path, byte[]> ivs;
+	/**
+	 * True if files can be split into independently processed chunks
+	 */
+	private final boolean chunkable;
+
+	/**
+	 * Number of worker threads
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Chunk size in bytes
+	 */
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	/**
+	 * Listener which receives progress after every finished task
+	 */
+	private Consumer<BatchProgress> progressListener = progress -> {
+	};
+
+	/**
+	 * Creates a new batch cipher for a mode of operation without an IV, like
+	 * ECB
+	 *
+	 * @param transformation <code>Cipher</code> transformation string
+	 * @param modeOfUse      <code>Cipher.ENCRYPT_MODE</code> or
+	 *                       <code>Cipher.DECRYPT_MODE</code>
+	 * @param key            the Cipher Key bytes
+	 */
+	public FileBatchCipher(String transformation, int modeOfUse, byte[] key) {
+		this(transformation, modeOfUse, key, null, false);
+	}
+
+	/**
+	 * Creates a new batch cipher
+	 *
+	 * @param transformation <code>Cipher</code> transformation string
+	 * @param modeOfUse      <code>Cipher.ENCRYPT_MODE</code> or
+	 *                       <code>Cipher.DECRYPT_MODE</code>
+	 * @param key            the Cipher Key bytes
+	 * @param ivs            function which returns the IV of a source file,
+	 *                       different for every file that is encrypted
+	 */
+	public FileBatchCipher(String transformation, int modeOfUse, byte[] key, Function<Path, byte[]> ivs) {
+		this(transformation, modeOfUse, key, Objects.requireNonNull(ivs), true);
+	}
+
+	/**
+	 * @param transformation <code>Cipher</code> transformation string
+	 * @param modeOfUse      <code>Cipher.ENCRYPT_MODE</code> or
+	 *                       <code>Cipher.DECRYPT_MODE</code>
+	 * @param key            the Cipher Key bytes
+	 * @param ivs            function which returns the IV of a source file
+	 * @param ivRequired     true if the mode of operation uses an IV
+	 */
+	private FileBatchCipher(String transformation, int modeOfUse, byte[] key, Function<Path, byte[]> ivs,
+			boolean ivRequired) {
+		Cipher cipher = createCipher(transformation);
+		cipher.init(modeOfUse, key);
+
+		if (cipher.getModeOfOperation().equals("ECB") == ivRequired) {
+			throw new IllegalArgumentException(ivRequired
+					? "The ECB mode does not use an IV!"
+					: String.format("The %s mode needs a different IV for every file!", cipher.getModeOfOperation()));
+		}
+
+		this.transformation = transformation;
+		this.modeOfUse = modeOfUse;
+		this.key = key.clone();
+		this.ivs = ivs;
+		this.chunkable = isChunkable(cipher);
+	}
+
+	/**
+	 * @param threads number of worker threads
+	 */
+	public void setThreads(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("The number of threads needs to be positive!");
+		}
+
+		this.threads = threads;
+	}
+
+	/**
+	 * @param chunkSize chunk size in bytes, a positive multiple of the block size
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0 || chunkSize % BlockEngine.BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException(String.format(
+					"The chunk size needs to be a positive multiple of %d bytes, but was %d!", BlockEngine.BLOCK_SIZE,
+					chunkSize));
+		}
+
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param progressListener listener which receives progress after every
+	 *                         finished task, from the worker threads
+	 */
+	public void setProgressListener(Consumer<BatchProgress> progressListener) {
+		this.progressListener = Objects.requireNonNull(progressListener);
+	}
+
+	/**
+	 * Encrypts or decrypts every file in <code>sources</code> into the file
+	 * given by <code>targets</code>, which is created or overwritten
+	 *
+	 * @param sources the input files
+	 * @param targets function which returns the output file for an input file
+	 * @return the final progress of the batch
+	 * @throws IOException if any of the files can not be processed
+	 */
+	public BatchProgress process(Collection<Path> sources, Function<Path, Path> targets) throws IOException {
+		List<FileState> files = new ArrayList<>();
+		Set<ByteBuffer> usedIVs = new HashSet<>();
+		long totalBytes = 0;
+
+		for (Path source : sources) {
+			byte[] iv = Objects.isNull(ivs) ? null : Objects.requireNonNull(ivs.apply(source)).clone();
+
+			if (Objects.nonNull(iv) && modeOfUse == Cipher.ENCRYPT_MODE && !usedIVs.add(ByteBuffer.wrap(iv))) {
+				throw new IllegalArgumentException(
+						String.format("The IV of %s is already used by another file of the batch!", source));
+			}
+
+			FileState file = new FileState(source, targets.apply(source), Files.size(source), iv);
+			files.add(file);
+			totalBytes += file.size;
+		}
+
+		Progress progress = new Progress(files.size(), totalBytes);
+		List<Runnable> tasks = createTasks(files, progress);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+
+			for (Runnable task : tasks) {
+				futures.add(executor.submit(task));
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException cause) {
+				throw cause.getCause();
+			}
+
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("The batch was interrupted!", e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return progress.snapshot();
+	}
+
+	/**
+	 * Splits large files into chunks and groups small files
+	 *
+	 * @param files    the files of the batch
+	 * @param progress progress of the batch
+	 * @return tasks that process the whole batch
+	 * @throws IOException if a target file can not be created
+	 */
+	private List<Runnable> createTasks(List<FileState> files, Progress progress) throws IOException {
+		List<Runnable> tasks = new ArrayList<>();
+		List<FileState> group = new ArrayList<>();
+		long groupBytes = 0;
+
+		for (FileState file : files) {
+			if (chunkable && file.size > chunkSize) {
+				Files.newByteChannel(file.target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING).close();
+
+				int chunks = (int) ((file.size + chunkSize - 1) / chunkSize);
+				file.remainingChunks.set(chunks);
+
+				for (int c = 0; c < chunks; c++) {
+					long offset = (long) c * chunkSize;
+					long length = Math.min(chunkSize, file.size - offset);
+
+					tasks.add(() -> run(() -> processChunk(file, offset, length), progress, file, length));
+				}
+
+				continue;
+			}
+
+			group.add(file);
+			groupBytes += file.size;
+
+			if (groupBytes >= chunkSize || group.size() == MAX_GROUP_FILES) {
+				tasks.add(createGroupTask(group, progress));
+				group = new ArrayList<>();
+				groupBytes = 0;
+			}
+		}
+
+		if (!group.isEmpty()) {
+			tasks.add(createGroupTask(group, progress));
+		}
+
+		return tasks;
+	}
+
+	/**
+	 * @param group    small files that will be processed one after another
+	 * @param progress progress of the batch
+	 * @return task which processes the whole group
+	 */
+	private Runnable createGroupTask(List<FileState> group, Progress progress) {
+		return () -> {
+			for (FileState file : group) {
+				file.remainingChunks.set(1);
+				run(() -> processChunk(file, 0, file.size), progress, file, file.size);
+			}
+		};
+	}
+
+	/**
+	 * Runs the given work, and reports the progress
+	 *
+	 * @param work     work on a part of a file
+	 * @param progress progress of the batch
+	 * @param file     the file
+	 * @param length   number of input bytes processed by the work
+	 */
+	private void run(IOWork work, Progress progress, FileState file, long length) {
+		try {
+			work.run();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		boolean fileDone = file.remainingChunks.decrementAndGet() == 0;
+		progressListener.accept(progress.add(length, fileDone));
+	}
+
+	/**
+	 * Processes a chunk of the file, starting at <code>offset</code>, with a new
+	 * cipher, initialized for that position in the file. The chunk which ends the
+	 * file also finishes the cipher, and truncates the output file.
+	 *
+	 * @param file   the file
+	 * @param offset offset of the chunk, a multiple of the block size
+	 * @param length length of the chunk
+	 * @throws IOException if the file can not be read or written
+	 */
+	private void processChunk(FileState file, long offset, long length) throws IOException {
+		Cipher cipher = createCipher(transformation);
+		cipher.setParallelThreshold(Integer.MAX_VALUE);
+
+		if (Objects.isNull(file.iv)) {
+			cipher.init(modeOfUse, key);
+		} else {
+			cipher.init(modeOfUse, key, ivAt(file.iv, offset));
+		}
+
+		boolean last = offset + length == file.size;
+		byte[] input = new byte[(int) Math.min(BUFFER_SIZE, Math.max(length, 1))];
+		byte[] output = new byte[input.length + BlockEngine.BLOCK_SIZE];
+
+		try (FileChannel in = FileChannel.open(file.source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(file.target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			long position = offset;
+			long written = offset;
+			long end = offset + length;
+
+			do {
+				int n = (int) Math.min(input.length, end - position);
+				readFully(in, input, n, position);
+				position += n;
+
+				boolean finish = position == end && last;
+
+				if (finish && cipher.getOutputSize(n) > output.length) {
+					output = new byte[cipher.getOutputSize(n)];
+				}
+
+				int produced = finish ? cipher.doFinal(input, 0, n, output, 0) : cipher.update(input, 0, n, output, 0);
+
+				writeFully(out, output, produced, written);
+				written += produced;
+			} while (position < end);
+
+			if (last) {
+				out.truncate(written);
+			}
+		}
+	}
+
+	/**
+	 * @param iv     the IV of the file
+	 * @param offset offset in the file, a multiple of the block size, which is
+	 *               only positive for the chunks of CTR mode
+	 * @return the IV, or the counter block for the given offset
+	 */
+	private static byte[] ivAt(byte[] iv, long offset) {
+		if (offset == 0) {
+			return iv;
+		}
+
+		Counter counter = new Counter(iv);
+		counter.add(offset / BlockEngine.BLOCK_SIZE);
+
+		byte[] result = new byte[BlockEngine.BLOCK_SIZE];
+		counter.getBlock(result, 0);
+
+		return result;
+	}
+
+	/**
+	 * @param cipher initialized cipher
+	 * @return true if files can be split into independently processed chunks.
+	 *         The ECB decryption with a reversible padding holds back the last
+	 *         block until <code>doFinal</code>, so its files are not split.
+	 */
+	private static boolean isChunkable(Cipher cipher) {
+		return switch (cipher.getModeOfOperation()) {
+		case "CTR" -> true;
+		case "ECB" -> cipher.getModeOfUse() == Cipher.ENCRYPT_MODE || Objects.isNull(cipher.getPadding())
+				|| !cipher.getPadding().isReversible();
+		default -> false;
+		};
+	}
+
+	/**
+	 * @param transformation <code>Cipher</code> transformation string
+	 * @return new cipher initialized with the transformation
+	 */
+	private static Cipher createCipher(String transformation) {
+		Cipher cipher = new Cipher();
+		cipher.init(transformation);
+
+		return cipher;
+	}
+
+	/**
+	 * Reads exactly <code>len</code> bytes from the given position
+	 *
+	 * @param channel  the channel
+	 * @param b        array that the bytes will be written to
+	 * @param len      number of bytes
+	 * @param position position in the channel
+	 * @throws IOException if the bytes can not be read
+	 */
+	private static void readFully(FileChannel channel, byte[] b, int len, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(b, 0, len);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) == -1) {
+				throw new IOException("Unexpected end of file!");
+			}
+		}
+	}
+
+	/**
+	 * Writes exactly <code>len</code> bytes at the given position
+	 *
+	 * @param channel  the channel
+	 * @param b        array containing the bytes
+	 * @param len      number of bytes
+	 * @param position position in the channel
+	 * @throws IOException if the bytes can not be written
+	 */
+	private static void writeFully(FileChannel channel, byte[] b, int len, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(b, 0, len);
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	/**
+	 * A single file of the batch
+	 *
+	 * @author Ivan Lokas
+	 *
+	 */
+	private static class FileState {
+		private final Path source;
+		private final Path target;
+		private final long size;
+		/**
+		 * The IV of the file, null in ECB mode
+		 */
+		private final byte[] iv;
+		private final AtomicInteger remainingChunks = new AtomicInteger();
+
+		FileState(Path source, Path target, long size, byte[] iv) {
+			this.source = source;
+			this.target = target;
+			this.size = size;
+			this.iv = iv;
+		}
+	}
+
+	/**
+	 * Shared progress counters of the batch
+	 *
+	 * @author Ivan Lokas
+	 *
+	 */
+	private static class Progress {
+		private final int totalFiles;
+		private final long totalBytes;
+		private final long start = System.nanoTime();
+		private final AtomicInteger completedFiles = new AtomicInteger();
+		private final AtomicLong processedBytes = new AtomicLong();
+
+		Progress(int totalFiles, long totalBytes) {
+			this.totalFiles = totalFiles;
+			this.totalBytes = totalBytes;
+		}
+
+		BatchProgress add(long bytes, boolean fileDone) {
+			processedBytes.addAndGet(bytes);
+
+			if (fileDone) {
+				completedFiles.incrementAndGet();
+			}
+
+			return snapshot();
+		}
+
+		BatchProgress snapshot() {
+			return new BatchProgress(completedFiles.get(), totalFiles, processedBytes.get(), totalBytes,
+					System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Work on a part of a file
+	 *
+	 * @author Ivan Lokas
+	 *
+	 */
+	@FunctionalInterface
+	private interface IOWork {
+		/**
+		 * @throws IOException if the file can not be read or written
+		 */
+		void run() throws IOException;
+	}
+
+}
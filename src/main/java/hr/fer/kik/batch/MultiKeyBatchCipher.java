@@ -0,0 +1,436 @@
+package hr.fer.kik.batch;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import hr.fer.kik.ModeOfOperation;
+import hr.fer.kik.engine.BitslicedEngine;
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.mode.Counter;
+import hr.fer.kik.mode.CounterMode;
+import hr.fer.kik.mode.GHash;
+import hr.fer.kik.mode.GaloisCounterMode;
+import hr.fer.kik.mode.ParallelChunks;
+
+/**
+ * This class encrypts or decrypts a batch of jobs, each with its own key
+ * context, IV and payload, like the data keys of envelope encryption. The
+ * counter blocks of all jobs are laid out one after another and encrypted in
+ * windows of <code>WINDOW_BLOCKS</code> blocks, so the blocks of small
+ * payloads under different keys share the calls to the block engines. When
+ * every key context of a window has a bitsliced engine, the window is
+ * encrypted in full bitsliced batches with the round keys merged lane by lane.
+ * Large batches are split into slices of <code>SLICE_BLOCKS</code> blocks,
+ * which are processed on the executor.
+ * <p>
+ * Only the CTR and GCM modes of operation are supported, since their blocks do
+ * not depend on each other. The results are returned in the order of the
+ * jobs.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class MultiKeyBatchCipher {
+	/**
+	 * Default total payload length in bytes, from which the executor is used
+	 */
+	public static final int DEFAULT_THRESHOLD = 256 * 1024;
+	/**
+	 * Number of blocks in a slice, which is processed by a single task
+	 */
+	public static final int SLICE_BLOCKS = 4096;
+	/**
+	 * Number of blocks encrypted together
+	 */
+	public static final int WINDOW_BLOCKS = 64;
+	/**
+	 * Number of jobs authenticated by a single task in GCM mode
+	 */
+	private static final int AUTHENTICATION_JOBS = 256;
+
+	/**
+	 * CTR or GCM
+	 */
+	private final ModeOfOperation modeOfOperation;
+	/**
+	 * Executor that the slices are processed on
+	 */
+	private final Executor executor;
+	/**
+	 * Total payload length in bytes, from which the executor is used
+	 */
+	private final int parallelThreshold;
+
+	/**
+	 * Creates a new batch cipher, which processes large batches on the common
+	 * <code>ForkJoinPool</code>
+	 *
+	 * @param modeOfOperation CTR or GCM
+	 */
+	public MultiKeyBatchCipher(ModeOfOperation modeOfOperation) {
+		this(modeOfOperation, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Creates a new batch cipher
+	 *
+	 * @param modeOfOperation   CTR or GCM
+	 * @param executor          executor that the slices are processed on
+	 * @param parallelThreshold total payload length in bytes, from which the
+	 *                          executor is used
+	 */
+	public MultiKeyBatchCipher(ModeOfOperation modeOfOperation, Executor executor, int parallelThreshold) {
+		if (modeOfOperation != ModeOfOperation.CTR && modeOfOperation != ModeOfOperation.GCM) {
+			throw new IllegalArgumentException(
+					String.format("The %s mode is not supported in batches, only CTR and GCM are!", modeOfOperation));
+		}
+
+		this.modeOfOperation = modeOfOperation;
+		this.executor = executor;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return the mode of operation
+	 */
+	public ModeOfOperation getModeOfOperation() {
+		return modeOfOperation;
+	}
+
+	/**
+	 * Encrypts the payloads of the jobs. In GCM mode every ciphertext is
+	 * followed by its authentication tag.
+	 *
+	 * @param jobs the jobs
+	 * @return the ciphertexts, in the order of the jobs
+	 */
+	public byte[][] encrypt(BatchJob[] jobs) {
+		return process(true, jobs);
+	}
+
+	/**
+	 * Decrypts the payloads of the jobs. In GCM mode the authentication tags
+	 * are verified and removed, and if any of them does not match, no plaintext
+	 * is returned.
+	 *
+	 * @param jobs the jobs
+	 * @return the plaintexts, in the order of the jobs
+	 */
+	public byte[][] decrypt(BatchJob[] jobs) {
+		return process(false, jobs);
+	}
+
+	/**
+	 * @param encryption true for encryption, false for decryption
+	 * @param jobs       the jobs
+	 * @return results of the jobs
+	 */
+	private byte[][] process(boolean encryption, BatchJob[] jobs) {
+		Batch batch = new Batch(encryption, modeOfOperation == ModeOfOperation.GCM, jobs);
+		long blocks = batch.firstBlocks[jobs.length];
+		int slices = (int) ((blocks + SLICE_BLOCKS - 1) / SLICE_BLOCKS);
+
+		run(slices, blocks * BlockEngine.BLOCK_SIZE, slice -> batch.processSlice((long) slice * SLICE_BLOCKS,
+				Math.min(blocks, (long) (slice + 1) * SLICE_BLOCKS)));
+
+		if (batch.gcm) {
+			int groups = (jobs.length + AUTHENTICATION_JOBS - 1) / AUTHENTICATION_JOBS;
+
+			run(groups, blocks * BlockEngine.BLOCK_SIZE, group -> {
+				for (int i = group * AUTHENTICATION_JOBS; i < Math.min(jobs.length,
+						(group + 1) * AUTHENTICATION_JOBS); i++) {
+					batch.authenticate(i);
+				}
+			});
+
+			batch.checkAuthenticated();
+		}
+
+		return batch.results;
+	}
+
+	/**
+	 * Runs the tasks on the executor, or on the calling thread when there are
+	 * few of them, or little data
+	 *
+	 * @param tasks  number of tasks
+	 * @param length total length of the data in bytes
+	 * @param task   the task
+	 */
+	private void run(int tasks, long length, IntConsumer task) {
+		if (tasks <= 1 || length < parallelThreshold) {
+			for (int i = 0; i < tasks; i++) {
+				task.accept(i);
+			}
+		} else {
+			ParallelChunks.run(tasks, task, executor);
+		}
+	}
+
+	/**
+	 * Encrypts consecutive blocks, each under its own engine. Bitsliced engines
+	 * share batches, while other engines are called once for every run of
+	 * blocks with the same engine.
+	 *
+	 * @param engines engines of the blocks
+	 * @param lanes   the same engines as bitsliced engines, or
+	 *                <code>null</code> if any of them is not bitsliced
+	 * @param blocks  array containing the blocks, which are encrypted in place
+	 * @param count   number of blocks
+	 */
+	static void encryptBlocks(BlockEngine[] engines, BitslicedEngine[] lanes, byte[] blocks, int count) {
+		if (lanes != null) {
+			BitslicedEngine.encryptBlocks(lanes, 0, blocks, 0, blocks, 0, count);
+			return;
+		}
+
+		for (int start = 0; start < count;) {
+			int end = start + 1;
+
+			while (end < count && engines[end] == engines[start]) {
+				end++;
+			}
+
+			int offset = start * BlockEngine.BLOCK_SIZE;
+			engines[start].encryptBlocks(blocks, offset, blocks, offset, end - start);
+			start = end;
+		}
+	}
+
+	/**
+	 * State of a single call, shared by the slices
+	 */
+	private static class Batch {
+		private final boolean encryption;
+		private final boolean gcm;
+		private final BatchJob[] jobs;
+		/**
+		 * Index of the first block of every job in the batch, and the total
+		 * number of blocks at the end
+		 */
+		private final long[] firstBlocks;
+		/**
+		 * Length of the text of every job, without the tag
+		 */
+		private final int[] textLengths;
+		/**
+		 * Counter of every job, positioned at its first payload block
+		 */
+		private final Counter[] counters;
+		/**
+		 * The pre-counter block of every job in GCM mode, which is replaced by
+		 * its encryption
+		 */
+		private final byte[][] preCounterBlocks;
+		/**
+		 * True for every job whose authentication tag does not match
+		 */
+		private final boolean[] failed;
+		private final byte[][] results;
+
+		/**
+		 * @param encryption true for encryption, false for decryption
+		 * @param gcm        true for GCM, false for CTR
+		 * @param jobs       the jobs
+		 */
+		Batch(boolean encryption, boolean gcm, BatchJob[] jobs) {
+			this.encryption = encryption;
+			this.gcm = gcm;
+			this.jobs = jobs;
+			this.firstBlocks = new long[jobs.length + 1];
+			this.textLengths = new int[jobs.length];
+			this.counters = new Counter[jobs.length];
+			this.preCounterBlocks = new byte[jobs.length][];
+			this.failed = new boolean[jobs.length];
+			this.results = new byte[jobs.length][];
+
+			for (int i = 0; i < jobs.length; i++) {
+				BatchJob job = jobs[i];
+				int textLength = gcm && !encryption ? job.payload().length - GaloisCounterMode.TAG_LENGTH
+						: job.payload().length;
+
+				if (textLength < 0) {
+					throw new IllegalArgumentException(String.format(
+							"The payload of the job %d needs to be at least %d bytes long!", i,
+							GaloisCounterMode.TAG_LENGTH));
+				}
+
+				if (gcm) {
+					preCounterBlocks[i] = GaloisCounterMode.preCounterBlock(job.context().getGHash(), job.iv());
+					counters[i] = GaloisCounterMode.counter(preCounterBlocks[i]);
+				} else {
+					counters[i] = new Counter(job.iv());
+				}
+
+				textLengths[i] = textLength;
+				results[i] = new byte[gcm && encryption ? textLength + GaloisCounterMode.TAG_LENGTH : textLength];
+				firstBlocks[i + 1] = firstBlocks[i] + (gcm ? 1 : 0) + CounterMode.blocks(textLength);
+			}
+		}
+
+		/**
+		 * Creates the keystream of the blocks from <code>start</code> inclusive
+		 * to <code>end</code> exclusive, and applies it to the payloads. In GCM
+		 * mode the first block of every job is its pre-counter block, whose
+		 * encryption masks the tag.
+		 *
+		 * @param start index of the first block
+		 * @param end   index after the last block
+		 */
+		void processSlice(long start, long end) {
+			byte[] window = new byte[WINDOW_BLOCKS * BlockEngine.BLOCK_SIZE];
+			BlockEngine[] engines = new BlockEngine[WINDOW_BLOCKS];
+			BitslicedEngine[] lanes = new BitslicedEngine[WINDOW_BLOCKS];
+			int[] owners = new int[WINDOW_BLOCKS];
+			int[] offsets = new int[WINDOW_BLOCKS];
+			boolean bitsliced = true;
+			int filled = 0;
+
+			for (int job = firstJob(start); job < jobs.length && firstBlocks[job] < end; job++) {
+				long first = firstBlocks[job];
+				int from = (int) (Math.max(start, first) - first);
+				int to = (int) (Math.min(end, firstBlocks[job + 1]) - first);
+
+				if (from >= to) {
+					continue;
+				}
+
+				BlockEngine engine = jobs[job].context().getEngine();
+				int skipped = gcm ? 1 : 0;
+				Counter counter = counters[job].copy();
+				counter.add(Math.max(0, from - skipped));
+
+				for (int block = from; block < to; block++) {
+					if (block < skipped) {
+						System.arraycopy(preCounterBlocks[job], 0, window, filled * BlockEngine.BLOCK_SIZE,
+								BlockEngine.BLOCK_SIZE);
+					} else {
+						counter.next(window, filled * BlockEngine.BLOCK_SIZE);
+					}
+
+					engines[filled] = engine;
+					lanes[filled] = engine instanceof BitslicedEngine lane ? lane : null;
+					bitsliced &= lanes[filled] != null;
+					owners[filled] = job;
+					offsets[filled] = (block - skipped) * BlockEngine.BLOCK_SIZE;
+
+					if (++filled == WINDOW_BLOCKS) {
+						apply(window, engines, bitsliced ? lanes : null, owners, offsets, filled);
+						bitsliced = true;
+						filled = 0;
+					}
+				}
+			}
+
+			if (filled > 0) {
+				apply(window, engines, bitsliced ? lanes : null, owners, offsets, filled);
+			}
+		}
+
+		/**
+		 * Encrypts a window of counter blocks, and combines the keystream with
+		 * the payloads
+		 *
+		 * @param window  the counter blocks
+		 * @param engines engines of the blocks
+		 * @param lanes   bitsliced engines of the blocks, or <code>null</code>
+		 * @param owners  job of every block
+		 * @param offsets offset of every block in the text of its job, negative
+		 *                for a pre-counter block
+		 * @param count   number of blocks
+		 */
+		private void apply(byte[] window, BlockEngine[] engines, BitslicedEngine[] lanes, int[] owners,
+				int[] offsets, int count) {
+			encryptBlocks(engines, lanes, window, count);
+
+			for (int b = 0; b < count; b++) {
+				int job = owners[b];
+				int offset = offsets[b];
+				int windowOffset = b * BlockEngine.BLOCK_SIZE;
+
+				if (offset < 0) {
+					System.arraycopy(window, windowOffset, preCounterBlocks[job], 0, BlockEngine.BLOCK_SIZE);
+					continue;
+				}
+
+				byte[] in = jobs[job].payload();
+				byte[] out = results[job];
+				int n = Math.min(BlockEngine.BLOCK_SIZE, textLengths[job] - offset);
+
+				for (int i = 0; i < n; i++) {
+					out[offset + i] = (byte) (in[offset + i] ^ window[windowOffset + i]);
+				}
+			}
+		}
+
+		/**
+		 * Computes the authentication tag of a job in GCM mode. The tag is
+		 * appended on encryption, and compared on decryption.
+		 *
+		 * @param index index of the job
+		 */
+		void authenticate(int index) {
+			BatchJob job = jobs[index];
+			GHash ghash = job.context().getGHash();
+			byte[] text = encryption ? results[index] : job.payload();
+			int textLength = textLengths[index];
+
+			long[] state = new long[2];
+			ghash.update(state, job.aad(), 0, job.aad().length);
+			ghash.update(state, text, 0, textLength);
+			ghash.updateLengths(state, job.aad().length, textLength);
+
+			byte[] tag = new byte[GaloisCounterMode.TAG_LENGTH];
+			GHash.getBlock(state, tag, 0);
+
+			for (int i = 0; i < GaloisCounterMode.TAG_LENGTH; i++) {
+				tag[i] ^= preCounterBlocks[index][i];
+			}
+
+			if (encryption) {
+				System.arraycopy(tag, 0, results[index], textLength, GaloisCounterMode.TAG_LENGTH);
+			} else {
+				failed[index] = !MessageDigest.isEqual(tag,
+						Arrays.copyOfRange(text, textLength, textLength + GaloisCounterMode.TAG_LENGTH));
+			}
+		}
+
+		/**
+		 * Clears every plaintext, if any authentication tag does not match
+		 */
+		void checkAuthenticated() {
+			for (int i = 0; i < failed.length; i++) {
+				if (failed[i]) {
+					for (byte[] result : results) {
+						Arrays.fill(result, (byte) 0);
+					}
+
+					throw new IllegalArgumentException(
+							String.format("The authentication tag of the job %d does not match!", i));
+				}
+			}
+		}
+
+		/**
+		 * @param block index of a block
+		 * @return index of the first job that can hold the block
+		 */
+		private int firstJob(long block) {
+			int index = Arrays.binarySearch(firstBlocks, block);
+
+			if (index < 0) {
+				return -index - 2;
+			}
+
+			while (index > 0 && firstBlocks[index - 1] == block) {
+				index--;
+			}
+
+			return index;
+		}
+	}
+
+}
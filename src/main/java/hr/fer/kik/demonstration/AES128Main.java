@@ -19,7 +19,6 @@ public class AES128Main {
 	 */
 	public static void main(String[] args) {
 		AES128 aes = new AES128();
-		AES128.setDebug(false);
 
 		//@formatter:off
 		int[][] plaintext = IOUtils.parseHexString("00112233445566778899aabbccddeeff", AES128.getNk(), AES128.getNb(), false);
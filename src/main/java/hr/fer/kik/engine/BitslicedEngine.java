@@ -0,0 +1,592 @@
+package hr.fer.kik.engine;
+
+/**
+ * This class provides a bitsliced AES-128 block engine, which does not use
+ * any secret dependent table lookups or branches. Four blocks are processed
+ * at once, and their 64 bytes are transposed into eight <code>long</code>
+ * bit-planes, where plane <code>i</code> holds bit <code>i</code> of every
+ * byte. SubBytes is evaluated as a Boolean circuit over the planes, the
+ * inversion in GF(2^8) followed by the affine transformation, while ShiftRows
+ * and MixColumns become bit permutations within each plane.
+ *
+ * A single block is padded to a whole batch, so the engine is the fastest
+ * when it is given <code>BATCH_BLOCKS</code> blocks or more at a time, like in
+ * the ECB and CTR modes of operation.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class BitslicedEngine implements BlockEngine {
+	/**
+	 * Number of rounds. For AES-128, Nr = 10
+	 */
+	private static final int Nr = 10;
+	/**
+	 * Number of blocks processed at once
+	 */
+	public static final int BATCH_BLOCKS = 4;
+	/**
+	 * Size of a batch in bytes
+	 */
+	private static final int BATCH_SIZE = BATCH_BLOCKS * BLOCK_SIZE;
+
+	/**
+	 * Bit 0 of every nibble. The bits of a plane are ordered by the byte index,
+	 * so a nibble holds a column of a block and a 16-bit lane holds a block.
+	 */
+	private static final long NIBBLES = 0x1111111111111111L;
+	/**
+	 * Bit 0 of every 16-bit lane
+	 */
+	private static final long LANES = 0x0001000100010001L;
+	/**
+	 * Bits of the first block in a plane
+	 */
+	private static final long LANE_MASK = 0xffffL;
+
+	/**
+	 * Constant of the affine transformation of SubBytes
+	 */
+	private static final int AFFINE_CONSTANT = 0x63;
+	/**
+	 * Constant of the inverse affine transformation of InvSubBytes
+	 */
+	private static final int INVERSE_AFFINE_CONSTANT = 0x05;
+
+	/**
+	 * Bitsliced round keys, eight planes per round
+	 */
+	private final long[] roundKeys;
+
+	/**
+	 * Creates a new engine for the given <code>keySchedule</code>
+	 *
+	 * @param keySchedule the key schedule in the matrix format created by
+	 *                    <code>AES128.keyExpansion</code>
+	 */
+	public BitslicedEngine(int[][] keySchedule) {
+		this(TTableEngine.packKeySchedule(keySchedule));
+	}
+
+	/**
+	 * Creates a new engine for the given packed key schedule
+	 *
+	 * @param words the key schedule as 4 * (Nr + 1) big-endian words
+	 */
+	public BitslicedEngine(int[] words) {
+		if (words.length != 4 * (Nr + 1)) {
+			throw new IllegalArgumentException("The key schedule size does not meet the specification criteria!");
+		}
+
+		this.roundKeys = new long[8 * (Nr + 1)];
+		byte[] batch = new byte[BATCH_SIZE];
+
+		for (int round = 0; round <= Nr; round++) {
+			for (int i = 0; i < BATCH_SIZE; i += 4) {
+				TTableEngine.putWord(batch, i, words[4 * round + i / 4 % 4]);
+			}
+
+			pack(batch, 0, roundKeys, 8 * round);
+		}
+	}
+
+	@Override
+	public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		encryptBlocks(in, inOff, out, outOff, 1);
+	}
+
+	@Override
+	public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		decryptBlocks(in, inOff, out, outOff, 1);
+	}
+
+	@Override
+	public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		processBlocks(true, in, inOff, out, outOff, blocks);
+	}
+
+	@Override
+	public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		processBlocks(false, in, inOff, out, outOff, blocks);
+	}
+
+	/**
+	 * Encrypts consecutive blocks, each under the key of its own engine, so
+	 * blocks of different keys share a batch. The round keys of a batch are
+	 * merged from the engines of its blocks, a 16-bit lane at a time, and a
+	 * batch whose blocks all have the same engine uses its round keys as they
+	 * are.
+	 *
+	 * @param engines    engines of the blocks
+	 * @param enginesOff index of the engine of the first block
+	 * @param in         array containing the plaintext blocks
+	 * @param inOff      offset of the first plaintext block
+	 * @param out        array that the ciphertext blocks will be written to
+	 * @param outOff     offset of the first ciphertext block
+	 * @param blocks     number of blocks
+	 */
+	public static void encryptBlocks(BitslicedEngine[] engines, int enginesOff, byte[] in, int inOff, byte[] out,
+			int outOff, int blocks) {
+		long[] state = new long[8];
+		long[] merged = new long[8 * (Nr + 1)];
+
+		for (int i = 0; i < blocks; i += BATCH_BLOCKS) {
+			int n = Math.min(BATCH_BLOCKS, blocks - i);
+			long[] keys = mergeRoundKeys(engines, enginesOff + i, n, merged);
+
+			processBatch(true, keys, state, in, inOff + i * BLOCK_SIZE, out, outOff + i * BLOCK_SIZE, n);
+		}
+	}
+
+	/**
+	 * @param engines engines of the blocks
+	 * @param off     index of the engine of the first block of the batch
+	 * @param n       number of blocks in the batch
+	 * @param merged  array that the merged round keys are written to
+	 * @return round keys of the batch
+	 */
+	private static long[] mergeRoundKeys(BitslicedEngine[] engines, int off, int n, long[] merged) {
+		long[] first = engines[off].roundKeys;
+		boolean single = true;
+
+		for (int j = 1; j < n; j++) {
+			single &= engines[off + j].roundKeys == first;
+		}
+
+		if (single) {
+			return first;
+		}
+
+		for (int k = 0; k < merged.length; k++) {
+			merged[k] = first[k] & LANE_MASK;
+		}
+
+		for (int j = 1; j < n; j++) {
+			long mask = LANE_MASK << 16 * j;
+			long[] keys = engines[off + j].roundKeys;
+
+			for (int k = 0; k < merged.length; k++) {
+				merged[k] |= keys[k] & mask;
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Encrypts or decrypts consecutive blocks in batches
+	 *
+	 * @param encryption true for encryption, false for decryption
+	 * @param in         input array
+	 * @param inOff      input offset
+	 * @param out        output array
+	 * @param outOff     output offset
+	 * @param blocks     number of blocks
+	 */
+	private void processBlocks(boolean encryption, byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		long[] state = new long[8];
+
+		for (int i = 0; i < blocks; i += BATCH_BLOCKS) {
+			int offset = i * BLOCK_SIZE;
+
+			processBatch(encryption, roundKeys, state, in, inOff + offset, out, outOff + offset,
+					Math.min(BATCH_BLOCKS, blocks - i));
+		}
+	}
+
+	/**
+	 * Encrypts or decrypts a batch of up to <code>BATCH_BLOCKS</code> blocks. An
+	 * incomplete batch is copied into a zero padded buffer.
+	 *
+	 * @param encryption true for encryption, false for decryption
+	 * @param keys       bitsliced round keys
+	 * @param state      buffer for the bit-planes
+	 * @param in         input array
+	 * @param inOff      input offset
+	 * @param out        output array
+	 * @param outOff     output offset
+	 * @param n          number of blocks in the batch
+	 */
+	private static void processBatch(boolean encryption, long[] keys, long[] state, byte[] in, int inOff, byte[] out,
+			int outOff, int n) {
+		if (n == BATCH_BLOCKS) {
+			pack(in, inOff, state, 0);
+			processBatch(encryption, keys, state);
+			unpack(state, out, outOff);
+		} else {
+			byte[] batch = new byte[BATCH_SIZE];
+			System.arraycopy(in, inOff, batch, 0, n * BLOCK_SIZE);
+
+			pack(batch, 0, state, 0);
+			processBatch(encryption, keys, state);
+			unpack(state, batch, 0);
+
+			System.arraycopy(batch, 0, out, outOff, n * BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * Encrypts or decrypts a bitsliced batch in place
+	 *
+	 * @param encryption true for encryption, false for decryption
+	 * @param keys       bitsliced round keys
+	 * @param state      the batch as eight bit-planes
+	 */
+	private static void processBatch(boolean encryption, long[] keys, long[] state) {
+		if (encryption) {
+			addRoundKey(state, keys, 0);
+
+			for (int round = 1; round < Nr; round++) {
+				subBytes(state);
+				shiftRows(state);
+				mixColumns(state);
+				addRoundKey(state, keys, round);
+			}
+
+			subBytes(state);
+			shiftRows(state);
+			addRoundKey(state, keys, Nr);
+		} else {
+			addRoundKey(state, keys, Nr);
+
+			for (int round = Nr - 1; round > 0; round--) {
+				invShiftRows(state);
+				invSubBytes(state);
+				addRoundKey(state, keys, round);
+				invMixColumns(state);
+			}
+
+			invShiftRows(state);
+			invSubBytes(state);
+			addRoundKey(state, keys, 0);
+		}
+	}
+
+	/**
+	 * @param state the batch as eight bit-planes
+	 * @param keys  bitsliced round keys
+	 * @param round the round, whose key is added to the <code>state</code>
+	 */
+	private static void addRoundKey(long[] state, long[] keys, int round) {
+		for (int i = 0; i < 8; i++) {
+			state[i] ^= keys[8 * round + i];
+		}
+	}
+
+	/**
+	 * Substitutes every byte with its inverse in GF(2^8), followed by the affine
+	 * transformation of the S-box
+	 *
+	 * @param state the batch as eight bit-planes
+	 */
+	private static void subBytes(long[] state) {
+		long[] a = inverse(state);
+
+		for (int i = 0; i < 8; i++) {
+			state[i] = a[i] ^ a[(i + 4) % 8] ^ a[(i + 5) % 8] ^ a[(i + 6) % 8] ^ a[(i + 7) % 8]
+					^ -(AFFINE_CONSTANT >>> i & 1);
+		}
+	}
+
+	/**
+	 * Substitutes every byte with the inverse affine transformation, followed by
+	 * the inversion in GF(2^8)
+	 *
+	 * @param state the batch as eight bit-planes
+	 */
+	private static void invSubBytes(long[] state) {
+		long[] a = new long[8];
+
+		for (int i = 0; i < 8; i++) {
+			a[i] = state[(i + 2) % 8] ^ state[(i + 5) % 8] ^ state[(i + 7) % 8] ^ -(INVERSE_AFFINE_CONSTANT >>> i & 1);
+		}
+
+		System.arraycopy(inverse(a), 0, state, 0, 8);
+	}
+
+	/**
+	 * Computes the multiplicative inverse of every byte as x^254, which maps 0
+	 * to 0, with four multiplications and seven squarings
+	 *
+	 * @param x the bytes as eight bit-planes
+	 * @return the inverses as eight bit-planes
+	 */
+	private static long[] inverse(long[] x) {
+		long[] x2 = square(x);
+		long[] x3 = multiply(x2, x);
+		long[] x12 = square(square(x3));
+		long[] x15 = multiply(x12, x3);
+		long[] x240 = square(square(square(square(x15))));
+		long[] x252 = multiply(x240, x12);
+
+		return multiply(x252, x2);
+	}
+
+	/**
+	 * Multiplies two sets of bytes in GF(2^8) as a Boolean circuit
+	 *
+	 * @param a the first bytes as eight bit-planes
+	 * @param b the second bytes as eight bit-planes
+	 * @return the products as eight bit-planes
+	 */
+	private static long[] multiply(long[] a, long[] b) {
+		long[] product = new long[15];
+
+		for (int i = 0; i < 8; i++) {
+			for (int j = 0; j < 8; j++) {
+				product[i + j] ^= a[i] & b[j];
+			}
+		}
+
+		return reduce(product);
+	}
+
+	/**
+	 * Squares every byte in GF(2^8), which is a linear map
+	 *
+	 * @param a the bytes as eight bit-planes
+	 * @return the squares as eight bit-planes
+	 */
+	private static long[] square(long[] a) {
+		long[] product = new long[15];
+
+		for (int i = 0; i < 8; i++) {
+			product[2 * i] = a[i];
+		}
+
+		return reduce(product);
+	}
+
+	/**
+	 * Reduces a polynomial of degree 14 modulo x^8 + x^4 + x^3 + x + 1
+	 *
+	 * @param product the coefficients as 15 bit-planes
+	 * @return the remainder as eight bit-planes
+	 */
+	private static long[] reduce(long[] product) {
+		for (int i = 14; i >= 8; i--) {
+			product[i - 4] ^= product[i];
+			product[i - 5] ^= product[i];
+			product[i - 7] ^= product[i];
+			product[i - 8] ^= product[i];
+		}
+
+		long[] result = new long[8];
+		System.arraycopy(product, 0, result, 0, 8);
+
+		return result;
+	}
+
+	/**
+	 * Multiplies every byte by x in GF(2^8), in place
+	 *
+	 * @param a the bytes as eight bit-planes
+	 */
+	private static void xtime(long[] a) {
+		long high = a[7];
+
+		a[7] = a[6];
+		a[6] = a[5];
+		a[5] = a[4];
+		a[4] = a[3] ^ high;
+		a[3] = a[2] ^ high;
+		a[2] = a[1];
+		a[1] = a[0] ^ high;
+		a[0] = high;
+	}
+
+	/**
+	 * Cyclically shifts the row r of every block by r columns to the left
+	 *
+	 * @param state the batch as eight bit-planes
+	 */
+	private static void shiftRows(long[] state) {
+		for (int i = 0; i < 8; i++) {
+			long x = state[i];
+
+			state[i] = x & NIBBLES | rotateLanes(x & NIBBLES << 1, 4) | rotateLanes(x & NIBBLES << 2, 8)
+					| rotateLanes(x & NIBBLES << 3, 12);
+		}
+	}
+
+	/**
+	 * Cyclically shifts the row r of every block by r columns to the right
+	 *
+	 * @param state the batch as eight bit-planes
+	 */
+	private static void invShiftRows(long[] state) {
+		for (int i = 0; i < 8; i++) {
+			long x = state[i];
+
+			state[i] = x & NIBBLES | rotateLanes(x & NIBBLES << 1, 12) | rotateLanes(x & NIBBLES << 2, 8)
+					| rotateLanes(x & NIBBLES << 3, 4);
+		}
+	}
+
+	/**
+	 * Mixes every column as 2 * a(r) + 3 * a(r + 1) + a(r + 2) + a(r + 3),
+	 * where the row neighbours are obtained by rotating the columns
+	 *
+	 * @param state the batch as eight bit-planes
+	 */
+	private static void mixColumns(long[] state) {
+		long[] t = new long[8];
+		long[] rest = new long[8];
+
+		for (int i = 0; i < 8; i++) {
+			long a1 = rotateNibbles(state[i], 1);
+
+			t[i] = state[i] ^ a1;
+			rest[i] = a1 ^ rotateNibbles(state[i], 2) ^ rotateNibbles(state[i], 3);
+		}
+
+		xtime(t);
+
+		for (int i = 0; i < 8; i++) {
+			state[i] = t[i] ^ rest[i];
+		}
+	}
+
+	/**
+	 * Inverts the MixColumns transformation, by first multiplying every column
+	 * by {05, 00, 04, 00}, and then applying MixColumns
+	 *
+	 * @param state the batch as eight bit-planes
+	 */
+	private static void invMixColumns(long[] state) {
+		long[] u = new long[8];
+
+		for (int i = 0; i < 8; i++) {
+			u[i] = state[i] ^ rotateNibbles(state[i], 2);
+		}
+
+		xtime(u);
+		xtime(u);
+
+		for (int i = 0; i < 8; i++) {
+			state[i] ^= u[i];
+		}
+
+		mixColumns(state);
+	}
+
+	/**
+	 * Rotates every 16-bit lane towards the lower bits
+	 *
+	 * @param x bit-plane
+	 * @param n number of bits, between 1 and 15
+	 * @return the rotated bit-plane
+	 */
+	private static long rotateLanes(long x, int n) {
+		return x >>> n & LANES * (0xffff >>> n) | x << (16 - n) & LANES * (0xffff << (16 - n) & 0xffff);
+	}
+
+	/**
+	 * Rotates every nibble towards the lower bits
+	 *
+	 * @param x bit-plane
+	 * @param n number of bits, between 1 and 3
+	 * @return the rotated bit-plane
+	 */
+	private static long rotateNibbles(long x, int n) {
+		return x >>> n & NIBBLES * (0xf >>> n) | x << (4 - n) & NIBBLES * (0xf << (4 - n) & 0xf);
+	}
+
+	/**
+	 * Transposes a batch into bit-planes. Every group of eight bytes is
+	 * transposed as an 8x8 bit matrix, and its rows are spread across the
+	 * planes.
+	 *
+	 * @param in       array containing the batch
+	 * @param inOff    offset of the batch
+	 * @param planes   array that the bit-planes will be written to
+	 * @param planeOff offset of the first bit-plane
+	 */
+	private static void pack(byte[] in, int inOff, long[] planes, int planeOff) {
+		for (int i = 0; i < 8; i++) {
+			planes[planeOff + i] = 0;
+		}
+
+		for (int group = 0; group < 8; group++) {
+			long x = transpose(getLong(in, inOff + 8 * group));
+
+			for (int i = 0; i < 8; i++) {
+				planes[planeOff + i] |= (x >>> 8 * i & 0xff) << 8 * group;
+			}
+		}
+	}
+
+	/**
+	 * Transposes bit-planes back into a batch
+	 *
+	 * @param planes the batch as eight bit-planes
+	 * @param out    array that the batch will be written to
+	 * @param outOff offset of the batch
+	 */
+	private static void unpack(long[] planes, byte[] out, int outOff) {
+		for (int group = 0; group < 8; group++) {
+			long x = 0;
+
+			for (int i = 0; i < 8; i++) {
+				x |= (planes[i] >>> 8 * group & 0xff) << 8 * i;
+			}
+
+			putLong(out, outOff + 8 * group, transpose(x));
+		}
+	}
+
+	/**
+	 * Transposes an 8x8 bit matrix, whose row <code>i</code> is the byte
+	 * <code>i</code> of <code>x</code>
+	 *
+	 * @param x the matrix
+	 * @return the transposed matrix
+	 */
+	private static long transpose(long x) {
+		long t = (x ^ x >>> 7) & 0x00aa00aa00aa00aaL;
+		x ^= t ^ t << 7;
+		t = (x ^ x >>> 14) & 0x0000cccc0000ccccL;
+		x ^= t ^ t << 14;
+		t = (x ^ x >>> 28) & 0x00000000f0f0f0f0L;
+		x ^= t ^ t << 28;
+
+		return x;
+	}
+
+	/**
+	 * Reads a little-endian long
+	 *
+	 * @param b   array containing the value
+	 * @param off offset of the value
+	 * @return the value
+	 */
+	private static long getLong(byte[] b, int off) {
+		long result = 0;
+
+		for (int i = 7; i >= 0; i--) {
+			result = result << 8 | (b[off + i] & 0xff);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes a little-endian long
+	 *
+	 * @param b   array that the value will be written to
+	 * @param off offset of the value
+	 * @param v   the value
+	 */
+	private static void putLong(byte[] b, int off, long v) {
+		for (int i = 0; i < 8; i++) {
+			b[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BitslicedEngine";
+	}
+
+}
@@ -0,0 +1,69 @@
+package hr.fer.kik.engine;
+
+/**
+ * Interface that models a keyed block engine, which encrypts and decrypts
+ * single 128-bit blocks stored in byte arrays. Implementations do not change
+ * after construction, so a single engine can be used by multiple threads at
+ * the same time.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public interface BlockEngine {
+	/**
+	 * Block size in bytes
+	 */
+	int BLOCK_SIZE = 16;
+
+	/**
+	 * Encrypts a single block
+	 * 
+	 * @param in     array containing the plaintext block
+	 * @param inOff  offset of the plaintext block
+	 * @param out    array that the ciphertext block will be written to
+	 * @param outOff offset of the ciphertext block
+	 */
+	void encryptBlock(byte[] in, int inOff, byte[] out, int outOff);
+
+	/**
+	 * Decrypts a single block
+	 * 
+	 * @param in     array containing the ciphertext block
+	 * @param inOff  offset of the ciphertext block
+	 * @param out    array that the plaintext block will be written to
+	 * @param outOff offset of the plaintext block
+	 */
+	void decryptBlock(byte[] in, int inOff, byte[] out, int outOff);
+
+	/**
+	 * Encrypts <code>blocks</code> consecutive blocks. The input and the output
+	 * may be the same array region.
+	 * 
+	 * @param in     array containing the plaintext blocks
+	 * @param inOff  offset of the first plaintext block
+	 * @param out    array that the ciphertext blocks will be written to
+	 * @param outOff offset of the first ciphertext block
+	 * @param blocks number of blocks
+	 */
+	default void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		for (int i = 0; i < blocks; i++) {
+			encryptBlock(in, inOff + i * BLOCK_SIZE, out, outOff + i * BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * Decrypts <code>blocks</code> consecutive blocks. The input and the output
+	 * may be the same array region.
+	 * 
+	 * @param in     array containing the ciphertext blocks
+	 * @param inOff  offset of the first ciphertext block
+	 * @param out    array that the plaintext blocks will be written to
+	 * @param outOff offset of the first plaintext block
+	 * @param blocks number of blocks
+	 */
+	default void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		for (int i = 0; i < blocks; i++) {
+			decryptBlock(in, inOff + i * BLOCK_SIZE, out, outOff + i * BLOCK_SIZE);
+		}
+	}
+}
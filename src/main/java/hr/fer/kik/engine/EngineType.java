@@ -0,0 +1,53 @@
+package hr.fer.kik.engine;
+
+import java.util.function.Function;
+
+/**
+ * Supported block engine implementations
+ *
+ * @author Ivan Lokas
+ *
+ */
+public enum EngineType {
+	/**
+	 * Table driven engine, the fastest one, but its lookups depend on the key
+	 * and the data
+	 */
+	TABLE(TTableEngine::new),
+	/**
+	 * Bitsliced constant-time engine, for hosts shared with untrusted code
+	 */
+	BITSLICED(BitslicedEngine::new),
+	/**
+	 * Constant-time engine on the Vector API, built in the <code>vector</code>
+	 * profile. Falls back to the bitsliced engine, when the engine or the
+	 * <code>jdk.incubator.vector</code> module is not available.
+	 */
+	VECTOR(VectorEngineLoader::create);
+
+	/**
+	 * Factory of the engines, from the key schedule in the matrix format
+	 */
+	private final Function<int[][], BlockEngine> factory;
+
+	private EngineType(Function<int[][], BlockEngine> factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * @param keySchedule the key schedule in the matrix format created by
+	 *                    <code>AES128.keyExpansion</code>
+	 * @return new block engine of this type for the key schedule
+	 */
+	public BlockEngine create(int[][] keySchedule) {
+		return factory.apply(keySchedule);
+	}
+
+	/**
+	 * @return true if <code>VECTOR</code> creates the Vector API engine, false
+	 *         if it falls back to the bitsliced engine
+	 */
+	public static boolean isVectorAvailable() {
+		return VectorEngineLoader.isAvailable();
+	}
+}
@@ -0,0 +1,248 @@
+package hr.fer.kik.engine;
+
+import hr.fer.kik.AES128;
+import hr.fer.kik.util.FiniteFieldsUtil;
+
+/**
+ * This class provides a table driven AES-128 block engine. The State is kept
+ * in four packed 32-bit column words, and the SubBytes, ShiftRows and
+ * MixColumns transformations of a round are merged into lookups in the
+ * precomputed tables <code>TE0</code> to <code>TE3</code> (<code>TD0</code> to
+ * <code>TD3</code> for the Inverse Cipher).
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class TTableEngine implements BlockEngine {
+	/**
+	 * Number of rounds. For AES-128, Nr = 10
+	 */
+	private static final int Nr = 10;
+
+	/**
+	 * Flattened S-box
+	 */
+	static final int[] S = new int[256];
+	/**
+	 * Flattened inverse S-box
+	 */
+	static final int[] IS = new int[256];
+
+	/**
+	 * Combined SubBytes and MixColumns tables for the Cipher, one per row
+	 */
+	static final int[] TE0 = new int[256], TE1 = new int[256], TE2 = new int[256], TE3 = new int[256];
+	/**
+	 * Combined InvSubBytes and InvMixColumns tables for the Inverse Cipher, one
+	 * per row
+	 */
+	static final int[] TD0 = new int[256], TD1 = new int[256], TD2 = new int[256], TD3 = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			S[i] = AES128.SBOX[i >> 4][i & 0x0f];
+			IS[i] = AES128.INVERSE_SBOX[i >> 4][i & 0x0f];
+		}
+
+		for (int i = 0; i < 256; i++) {
+			int s = S[i];
+			int e = FiniteFieldsUtil.multiply(s, 0x02) << 24 | s << 16 | s << 8 | FiniteFieldsUtil.multiply(s, 0x03);
+
+			TE0[i] = e;
+			TE1[i] = Integer.rotateRight(e, 8);
+			TE2[i] = Integer.rotateRight(e, 16);
+			TE3[i] = Integer.rotateRight(e, 24);
+
+			int is = IS[i];
+			int d = FiniteFieldsUtil.multiply(is, 0x0e) << 24 | FiniteFieldsUtil.multiply(is, 0x09) << 16
+					| FiniteFieldsUtil.multiply(is, 0x0d) << 8 | FiniteFieldsUtil.multiply(is, 0x0b);
+
+			TD0[i] = d;
+			TD1[i] = Integer.rotateRight(d, 8);
+			TD2[i] = Integer.rotateRight(d, 16);
+			TD3[i] = Integer.rotateRight(d, 24);
+		}
+	}
+
+	/**
+	 * Packed round keys of the Cipher
+	 */
+	private final int[] encryptionKey;
+	/**
+	 * Packed round keys of the equivalent Inverse Cipher
+	 */
+	private final int[] decryptionKey;
+
+	/**
+	 * Creates a new engine for the given <code>keySchedule</code>
+	 *
+	 * @param keySchedule the key schedule in the matrix format created by
+	 *                    <code>AES128.keyExpansion</code>
+	 */
+	public TTableEngine(int[][] keySchedule) {
+		this(packKeySchedule(keySchedule));
+	}
+
+	/**
+	 * Creates a new engine for the given packed key schedule
+	 *
+	 * @param words the key schedule as 4 * (Nr + 1) big-endian words
+	 */
+	public TTableEngine(int[] words) {
+		if (words.length != 4 * (Nr + 1)) {
+			throw new IllegalArgumentException("The key schedule size does not meet the specification criteria!");
+		}
+
+		this.encryptionKey = words.clone();
+		this.decryptionKey = invertKeySchedule(words);
+	}
+
+	/**
+	 * Packs the key schedule from the matrix format into big-endian words
+	 *
+	 * @param keySchedule the key schedule in the matrix format
+	 * @return packed key schedule
+	 */
+	public static int[] packKeySchedule(int[][] keySchedule) {
+		int cols = keySchedule[0].length;
+		int[] result = new int[cols];
+
+		for (int i = 0; i < cols; i++) {
+			result[i] = keySchedule[0][i] << 24 | keySchedule[1][i] << 16 | keySchedule[2][i] << 8 | keySchedule[3][i];
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates the round keys of the equivalent Inverse Cipher, which are the
+	 * round keys in reverse order, with InvMixColumns applied to all but the
+	 * first and the last one.
+	 *
+	 * @param words packed key schedule of the Cipher
+	 * @return packed key schedule of the equivalent Inverse Cipher
+	 */
+	private static int[] invertKeySchedule(int[] words) {
+		int[] result = new int[words.length];
+
+		for (int round = 0; round <= Nr; round++) {
+			for (int j = 0; j < 4; j++) {
+				int w = words[4 * (Nr - round) + j];
+
+				if (round != 0 && round != Nr) {
+					w = TD0[S[w >>> 24]] ^ TD1[S[(w >>> 16) & 0xff]] ^ TD2[S[(w >>> 8) & 0xff]] ^ TD3[S[w & 0xff]];
+				}
+
+				result[4 * round + j] = w;
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		int[] rk = encryptionKey;
+
+		int s0 = getWord(in, inOff) ^ rk[0];
+		int s1 = getWord(in, inOff + 4) ^ rk[1];
+		int s2 = getWord(in, inOff + 8) ^ rk[2];
+		int s3 = getWord(in, inOff + 12) ^ rk[3];
+
+		int k = 4;
+
+		for (int round = 1; round < Nr; round++, k += 4) {
+			int t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xff] ^ TE2[(s2 >>> 8) & 0xff] ^ TE3[s3 & 0xff] ^ rk[k];
+			int t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xff] ^ TE2[(s3 >>> 8) & 0xff] ^ TE3[s0 & 0xff] ^ rk[k + 1];
+			int t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & 0xff] ^ TE2[(s0 >>> 8) & 0xff] ^ TE3[s1 & 0xff] ^ rk[k + 2];
+			int t3 = TE0[s3 >>> 24] ^ TE1[(s0 >>> 16) & 0xff] ^ TE2[(s1 >>> 8) & 0xff] ^ TE3[s2 & 0xff] ^ rk[k + 3];
+
+			s0 = t0;
+			s1 = t1;
+			s2 = t2;
+			s3 = t3;
+		}
+
+		int t0 = (S[s0 >>> 24] << 24 | S[(s1 >>> 16) & 0xff] << 16 | S[(s2 >>> 8) & 0xff] << 8 | S[s3 & 0xff]) ^ rk[k];
+		int t1 = (S[s1 >>> 24] << 24 | S[(s2 >>> 16) & 0xff] << 16 | S[(s3 >>> 8) & 0xff] << 8 | S[s0 & 0xff])
+				^ rk[k + 1];
+		int t2 = (S[s2 >>> 24] << 24 | S[(s3 >>> 16) & 0xff] << 16 | S[(s0 >>> 8) & 0xff] << 8 | S[s1 & 0xff])
+				^ rk[k + 2];
+		int t3 = (S[s3 >>> 24] << 24 | S[(s0 >>> 16) & 0xff] << 16 | S[(s1 >>> 8) & 0xff] << 8 | S[s2 & 0xff])
+				^ rk[k + 3];
+
+		putWord(out, outOff, t0);
+		putWord(out, outOff + 4, t1);
+		putWord(out, outOff + 8, t2);
+		putWord(out, outOff + 12, t3);
+	}
+
+	@Override
+	public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		int[] rk = decryptionKey;
+
+		int s0 = getWord(in, inOff) ^ rk[0];
+		int s1 = getWord(in, inOff + 4) ^ rk[1];
+		int s2 = getWord(in, inOff + 8) ^ rk[2];
+		int s3 = getWord(in, inOff + 12) ^ rk[3];
+
+		int k = 4;
+
+		for (int round = 1; round < Nr; round++, k += 4) {
+			int t0 = TD0[s0 >>> 24] ^ TD1[(s3 >>> 16) & 0xff] ^ TD2[(s2 >>> 8) & 0xff] ^ TD3[s1 & 0xff] ^ rk[k];
+			int t1 = TD0[s1 >>> 24] ^ TD1[(s0 >>> 16) & 0xff] ^ TD2[(s3 >>> 8) & 0xff] ^ TD3[s2 & 0xff] ^ rk[k + 1];
+			int t2 = TD0[s2 >>> 24] ^ TD1[(s1 >>> 16) & 0xff] ^ TD2[(s0 >>> 8) & 0xff] ^ TD3[s3 & 0xff] ^ rk[k + 2];
+			int t3 = TD0[s3 >>> 24] ^ TD1[(s2 >>> 16) & 0xff] ^ TD2[(s1 >>> 8) & 0xff] ^ TD3[s0 & 0xff] ^ rk[k + 3];
+
+			s0 = t0;
+			s1 = t1;
+			s2 = t2;
+			s3 = t3;
+		}
+
+		int t0 = (IS[s0 >>> 24] << 24 | IS[(s3 >>> 16) & 0xff] << 16 | IS[(s2 >>> 8) & 0xff] << 8 | IS[s1 & 0xff])
+				^ rk[k];
+		int t1 = (IS[s1 >>> 24] << 24 | IS[(s0 >>> 16) & 0xff] << 16 | IS[(s3 >>> 8) & 0xff] << 8 | IS[s2 & 0xff])
+				^ rk[k + 1];
+		int t2 = (IS[s2 >>> 24] << 24 | IS[(s1 >>> 16) & 0xff] << 16 | IS[(s0 >>> 8) & 0xff] << 8 | IS[s3 & 0xff])
+				^ rk[k + 2];
+		int t3 = (IS[s3 >>> 24] << 24 | IS[(s2 >>> 16) & 0xff] << 16 | IS[(s1 >>> 8) & 0xff] << 8 | IS[s0 & 0xff])
+				^ rk[k + 3];
+
+		putWord(out, outOff, t0);
+		putWord(out, outOff + 4, t1);
+		putWord(out, outOff + 8, t2);
+		putWord(out, outOff + 12, t3);
+	}
+
+	/**
+	 * Reads a big-endian word
+	 *
+	 * @param b   array containing the word
+	 * @param off offset of the word
+	 * @return the word
+	 */
+	static int getWord(byte[] b, int off) {
+		return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+	}
+
+	/**
+	 * Writes a big-endian word
+	 *
+	 * @param b   array that the word will be written to
+	 * @param off offset of the word
+	 * @param w   the word
+	 */
+	static void putWord(byte[] b, int off, int w) {
+		b[off] = (byte) (w >>> 24);
+		b[off + 1] = (byte) (w >>> 16);
+		b[off + 2] = (byte) (w >>> 8);
+		b[off + 3] = (byte) w;
+	}
+
+	@Override
+	public String toString() {
+		return "TTableEngine";
+	}
+
+}
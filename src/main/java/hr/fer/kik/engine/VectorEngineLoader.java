@@ -0,0 +1,82 @@
+package hr.fer.kik.engine;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Objects;
+
+/**
+ * This class creates the Vector API engine reflectively, so the core classes
+ * neither depend on the incubating module nor on the engine being compiled.
+ * When either of them is missing, the bitsliced engine is created instead,
+ * which is constant-time as well.
+ *
+ * @author Ivan Lokas
+ *
+ */
+final class VectorEngineLoader {
+	/**
+	 * Name of the module that the engine needs at runtime
+	 */
+	private static final String MODULE = "jdk.incubator.vector";
+	/**
+	 * Name of the engine class, built in the <code>vector</code> profile
+	 */
+	private static final String ENGINE = "hr.fer.kik.engine.vector.VectorEngine";
+
+	/**
+	 * Constructor of the engine from the key schedule, or <code>null</code> if
+	 * the engine is not available
+	 */
+	private static final Constructor<?> CONSTRUCTOR = findConstructor();
+
+	private VectorEngineLoader() {
+	}
+
+	/**
+	 * @return true if the Vector API engine is available, false if the
+	 *         bitsliced engine is used instead
+	 */
+	static boolean isAvailable() {
+		return Objects.nonNull(CONSTRUCTOR);
+	}
+
+	/**
+	 * @param keySchedule the key schedule in the matrix format
+	 * @return the Vector API engine if it is available, the bitsliced engine
+	 *         otherwise
+	 */
+	static BlockEngine create(int[][] keySchedule) {
+		if (!isAvailable()) {
+			return new BitslicedEngine(keySchedule);
+		}
+
+		try {
+			return (BlockEngine) CONSTRUCTOR.newInstance((Object) keySchedule);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+
+			throw new IllegalStateException(e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return constructor of the engine, or <code>null</code> if the module or
+	 *         the class is missing
+	 */
+	private static Constructor<?> findConstructor() {
+		if (ModuleLayer.boot().findModule(MODULE).isEmpty()) {
+			return null;
+		}
+
+		try {
+			return Class.forName(ENGINE).getConstructor(int[][].class);
+		} catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+			return null;
+		}
+	}
+
+}
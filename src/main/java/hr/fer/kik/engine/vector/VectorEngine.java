@@ -0,0 +1,295 @@
+package hr.fer.kik.engine.vector;
+
+import java.util.function.IntBinaryOperator;
+
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.engine.TTableEngine;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class provides an AES-128 block engine on the incubating Vector API.
+ * Every byte of the State is a lane of a <code>ByteVector</code>, so the
+ * preferred species of the platform holds several independent blocks, which
+ * go through the rounds together. ShiftRows is a lane shuffle, MixColumns is
+ * built from shuffles and the lane-wise xtime, and SubBytes is evaluated as a
+ * circuit, the inversion in GF(2^8) followed by the affine transformation, so
+ * there are no secret dependent lookups.
+ *
+ * The class is only compiled in the <code>vector</code> build profile, and
+ * needs the <code>jdk.incubator.vector</code> module at runtime. It is
+ * created through <code>EngineType.VECTOR</code>, which falls back to the
+ * bitsliced engine when the module is absent.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class VectorEngine implements BlockEngine {
+	/**
+	 * Number of rounds. For AES-128, Nr = 10
+	 */
+	private static final int Nr = 10;
+	/**
+	 * Species of the State vectors, at least one block wide
+	 */
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() >= BLOCK_SIZE
+			? ByteVector.SPECIES_PREFERRED
+			: ByteVector.SPECIES_128;
+	/**
+	 * Number of blocks processed at once
+	 */
+	public static final int BATCH_BLOCKS = SPECIES.length() / BLOCK_SIZE;
+
+	/**
+	 * Shuffles of the bytes of every block, by their column and row
+	 */
+	private static final VectorShuffle<Byte> SHIFT_ROWS = shuffle((c, r) -> 4 * ((c + r) % 4) + r);
+	private static final VectorShuffle<Byte> INV_SHIFT_ROWS = shuffle((c, r) -> 4 * ((c - r + 4) % 4) + r);
+	private static final VectorShuffle<Byte> ROTATE_1 = shuffle((c, r) -> 4 * c + (r + 1) % 4);
+	private static final VectorShuffle<Byte> ROTATE_2 = shuffle((c, r) -> 4 * c + (r + 2) % 4);
+	private static final VectorShuffle<Byte> ROTATE_3 = shuffle((c, r) -> 4 * c + (r + 3) % 4);
+
+	/**
+	 * Round keys, repeated for every block of a vector
+	 */
+	private final ByteVector[] roundKeys = new ByteVector[Nr + 1];
+
+	/**
+	 * Creates a new engine for the given <code>keySchedule</code>
+	 *
+	 * @param keySchedule the key schedule in the matrix format created by
+	 *                    <code>AES128.keyExpansion</code>
+	 */
+	public VectorEngine(int[][] keySchedule) {
+		this(TTableEngine.packKeySchedule(keySchedule));
+	}
+
+	/**
+	 * Creates a new engine for the given packed key schedule
+	 *
+	 * @param words the key schedule as 4 * (Nr + 1) big-endian words
+	 */
+	public VectorEngine(int[] words) {
+		if (words.length != 4 * (Nr + 1)) {
+			throw new IllegalArgumentException("The key schedule size does not meet the specification criteria!");
+		}
+
+		byte[] batch = new byte[SPECIES.length()];
+
+		for (int round = 0; round <= Nr; round++) {
+			for (int i = 0; i < batch.length; i++) {
+				batch[i] = (byte) (words[4 * round + i / 4 % 4] >>> (24 - 8 * (i % 4)));
+			}
+
+			roundKeys[round] = ByteVector.fromArray(SPECIES, batch, 0);
+		}
+	}
+
+	@Override
+	public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		encryptBlocks(in, inOff, out, outOff, 1);
+	}
+
+	@Override
+	public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		decryptBlocks(in, inOff, out, outOff, 1);
+	}
+
+	@Override
+	public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		processBlocks(true, in, inOff, out, outOff, blocks);
+	}
+
+	@Override
+	public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		processBlocks(false, in, inOff, out, outOff, blocks);
+	}
+
+	/**
+	 * Encrypts or decrypts consecutive blocks, a vector at a time. An incomplete
+	 * last vector is loaded and stored with a mask.
+	 *
+	 * @param encryption true for encryption, false for decryption
+	 * @param in         input array
+	 * @param inOff      input offset
+	 * @param out        output array
+	 * @param outOff     output offset
+	 * @param blocks     number of blocks
+	 */
+	private void processBlocks(boolean encryption, byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		int len = blocks * BLOCK_SIZE;
+
+		for (int i = 0; i < len; i += SPECIES.length()) {
+			if (len - i >= SPECIES.length()) {
+				ByteVector state = ByteVector.fromArray(SPECIES, in, inOff + i);
+				(encryption ? encrypt(state) : decrypt(state)).intoArray(out, outOff + i);
+			} else {
+				var mask = SPECIES.indexInRange(i, len);
+				ByteVector state = ByteVector.fromArray(SPECIES, in, inOff + i, mask);
+				(encryption ? encrypt(state) : decrypt(state)).intoArray(out, outOff + i, mask);
+			}
+		}
+	}
+
+	/**
+	 * @param state blocks of plaintext
+	 * @return blocks of ciphertext
+	 */
+	private ByteVector encrypt(ByteVector state) {
+		ByteVector s = state.lanewise(VectorOperators.XOR, roundKeys[0]);
+
+		for (int round = 1; round < Nr; round++) {
+			s = mixColumns(subBytes(s).rearrange(SHIFT_ROWS)).lanewise(VectorOperators.XOR, roundKeys[round]);
+		}
+
+		return subBytes(s).rearrange(SHIFT_ROWS).lanewise(VectorOperators.XOR, roundKeys[Nr]);
+	}
+
+	/**
+	 * @param state blocks of ciphertext
+	 * @return blocks of plaintext
+	 */
+	private ByteVector decrypt(ByteVector state) {
+		ByteVector s = state.lanewise(VectorOperators.XOR, roundKeys[Nr]);
+
+		for (int round = Nr - 1; round > 0; round--) {
+			s = invSubBytes(s.rearrange(INV_SHIFT_ROWS)).lanewise(VectorOperators.XOR, roundKeys[round]);
+			s = invMixColumns(s);
+		}
+
+		return invSubBytes(s.rearrange(INV_SHIFT_ROWS)).lanewise(VectorOperators.XOR, roundKeys[0]);
+	}
+
+	/**
+	 * @param s the State
+	 * @return the State after the inversion and the affine transformation
+	 */
+	private static ByteVector subBytes(ByteVector s) {
+		ByteVector a = inverse(s);
+
+		return a.lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROL, 1))
+				.lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROL, 2))
+				.lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROL, 3))
+				.lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROL, 4))
+				.lanewise(VectorOperators.XOR, (byte) 0x63);
+	}
+
+	/**
+	 * @param s the State
+	 * @return the State after the inverse affine transformation and the
+	 *         inversion
+	 */
+	private static ByteVector invSubBytes(ByteVector s) {
+		ByteVector a = s.lanewise(VectorOperators.ROL, 1)
+				.lanewise(VectorOperators.XOR, s.lanewise(VectorOperators.ROL, 3))
+				.lanewise(VectorOperators.XOR, s.lanewise(VectorOperators.ROL, 6))
+				.lanewise(VectorOperators.XOR, (byte) 0x05);
+
+		return inverse(a);
+	}
+
+	/**
+	 * Computes the multiplicative inverse of every lane as x^254, which maps 0
+	 * to 0
+	 *
+	 * @param x the lanes
+	 * @return the inverses
+	 */
+	private static ByteVector inverse(ByteVector x) {
+		ByteVector x2 = multiply(x, x);
+		ByteVector x3 = multiply(x2, x);
+		ByteVector x6 = multiply(x3, x3);
+		ByteVector x12 = multiply(x6, x6);
+		ByteVector x15 = multiply(x12, x3);
+		ByteVector x240 = x15;
+
+		for (int i = 0; i < 4; i++) {
+			x240 = multiply(x240, x240);
+		}
+
+		return multiply(multiply(x240, x12), x2);
+	}
+
+	/**
+	 * Multiplies the lanes in GF(2^8), with a shift-and-add loop whose
+	 * additions are masked instead of branched
+	 *
+	 * @param a the first lanes
+	 * @param b the second lanes
+	 * @return the products
+	 */
+	private static ByteVector multiply(ByteVector a, ByteVector b) {
+		ByteVector result = ByteVector.zero(SPECIES);
+
+		for (int i = 0; i < 8; i++) {
+			ByteVector mask = b.lanewise(VectorOperators.LSHL, 7 - i).lanewise(VectorOperators.ASHR, 7);
+			result = result.lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.AND, mask));
+			a = xtime(a);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param a the lanes
+	 * @return the lanes multiplied by x in GF(2^8)
+	 */
+	private static ByteVector xtime(ByteVector a) {
+		return a.lanewise(VectorOperators.LSHL, 1).lanewise(VectorOperators.XOR,
+				a.lanewise(VectorOperators.ASHR, 7).lanewise(VectorOperators.AND, (byte) 0x1b));
+	}
+
+	/**
+	 * Mixes every column as 2 * a(r) + 3 * a(r + 1) + a(r + 2) + a(r + 3)
+	 *
+	 * @param s the State
+	 * @return the mixed State
+	 */
+	private static ByteVector mixColumns(ByteVector s) {
+		ByteVector a1 = s.rearrange(ROTATE_1);
+
+		return xtime(s.lanewise(VectorOperators.XOR, a1)).lanewise(VectorOperators.XOR, a1)
+				.lanewise(VectorOperators.XOR, s.rearrange(ROTATE_2))
+				.lanewise(VectorOperators.XOR, s.rearrange(ROTATE_3));
+	}
+
+	/**
+	 * Inverts the MixColumns transformation, by first multiplying every column
+	 * by {05, 00, 04, 00}, and then applying MixColumns
+	 *
+	 * @param s the State
+	 * @return the State before MixColumns
+	 */
+	private static ByteVector invMixColumns(ByteVector s) {
+		ByteVector u = xtime(xtime(s.lanewise(VectorOperators.XOR, s.rearrange(ROTATE_2))));
+
+		return mixColumns(s.lanewise(VectorOperators.XOR, u));
+	}
+
+	/**
+	 * Creates a shuffle, which applies the same permutation to every block of a
+	 * vector
+	 *
+	 * @param source index of the source byte in a block, from the column and
+	 *               the row of the destination byte
+	 * @return the shuffle
+	 */
+	private static VectorShuffle<Byte> shuffle(IntBinaryOperator source) {
+		int[] indices = new int[SPECIES.length()];
+
+		for (int i = 0; i < indices.length; i++) {
+			int p = i % BLOCK_SIZE;
+			indices[i] = i - p + source.applyAsInt(p / 4, p % 4);
+		}
+
+		return VectorShuffle.fromArray(SPECIES, indices, 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("VectorEngine[%d blocks]", BATCH_BLOCKS);
+	}
+
+}
@@ -0,0 +1,85 @@
+package hr.fer.kik.foreign;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+
+import hr.fer.kik.Cipher;
+
+/**
+ * This class encrypts and decrypts foreign memory segments with an
+ * initialized <code>Cipher</code>. The segments are viewed as byte buffers,
+ * so off-heap memory is read and written in place, and segments larger than
+ * a byte buffer are processed in parts. It is only built in the foreign
+ * profile.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class SegmentCipher {
+	/**
+	 * Maximum number of input bytes passed to the cipher at once
+	 */
+	static final int PART_SIZE = 1 << 30;
+
+	private SegmentCipher() {
+	}
+
+	/**
+	 * Continues the incremental operation of the cipher with the whole
+	 * <code>src</code> segment, and writes every output byte that is already
+	 * available at the start of <code>dst</code>
+	 *
+	 * @param cipher the cipher, initialized with a key
+	 * @param src    input segment
+	 * @param dst    output segment
+	 * @return number of bytes written to <code>dst</code>
+	 */
+	public static long update(Cipher cipher, MemorySegment src, MemorySegment dst) {
+		return process(cipher, src, dst, false);
+	}
+
+	/**
+	 * Finishes the incremental operation of the cipher with the whole
+	 * <code>src</code> segment, and writes the rest of the output at the start
+	 * of <code>dst</code>
+	 *
+	 * @param cipher the cipher, initialized with a key
+	 * @param src    input segment
+	 * @param dst    output segment
+	 * @return number of bytes written to <code>dst</code>
+	 */
+	public static long doFinal(Cipher cipher, MemorySegment src, MemorySegment dst) {
+		return process(cipher, src, dst, true);
+	}
+
+	/**
+	 * @param cipher the cipher
+	 * @param src    input segment
+	 * @param dst    output segment
+	 * @param last   true for <code>doFinal</code>, false for <code>update</code>
+	 * @return number of bytes written to <code>dst</code>
+	 */
+	private static long process(Cipher cipher, MemorySegment src, MemorySegment dst, boolean last) {
+		if (dst.isReadOnly()) {
+			throw new IllegalArgumentException("The output segment is read-only!");
+		}
+
+		long consumed = 0;
+		long written = 0;
+
+		do {
+			int len = (int) Math.min(src.byteSize() - consumed, PART_SIZE);
+			boolean lastPart = last && consumed + len == src.byteSize();
+
+			ByteBuffer in = src.asSlice(consumed, len).asByteBuffer();
+			long window = Math.min(dst.byteSize() - written, cipher.getOutputSize(len));
+			ByteBuffer out = dst.asSlice(written, window).asByteBuffer();
+
+			written += lastPart ? cipher.doFinal(in, out) : cipher.update(in, out);
+			consumed += len;
+		} while (consumed < src.byteSize());
+
+		return written;
+	}
+
+}
@@ -0,0 +1,183 @@
+package hr.fer.kik.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import hr.fer.kik.Cipher;
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class provides an input stream which encrypts or decrypts everything
+ * read from the underlying stream with the given <code>Cipher</code>. The
+ * cipher has to be initialized for incremental processing, and it is finished
+ * when the end of the underlying stream is reached.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class CipherInputStream extends FilterInputStream {
+	/**
+	 * Default buffer size in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Cipher that processes the read bytes
+	 */
+	private final Cipher cipher;
+	/**
+	 * Buffer for the input of the cipher
+	 */
+	private final byte[] inBuffer;
+	/**
+	 * Buffer for the output of the cipher
+	 */
+	private byte[] outBuffer;
+	/**
+	 * Position of the first unread byte in the output buffer
+	 */
+	private int outPosition = 0;
+	/**
+	 * Number of bytes in the output buffer
+	 */
+	private int outLength = 0;
+	/**
+	 * True if the cipher was finished
+	 */
+	private boolean finished = false;
+	/**
+	 * Buffer for single byte reads
+	 */
+	private final byte[] singleByte = new byte[1];
+
+	/**
+	 * Creates a new stream with the default buffer size
+	 * 
+	 * @param in     the underlying input stream
+	 * @param cipher initialized cipher
+	 */
+	public CipherInputStream(InputStream in, Cipher cipher) {
+		this(in, cipher, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new stream
+	 * 
+	 * @param in         the underlying input stream
+	 * @param cipher     initialized cipher
+	 * @param bufferSize buffer size in bytes, a positive multiple of the block
+	 *                   size
+	 */
+	public CipherInputStream(InputStream in, Cipher cipher, int bufferSize) {
+		super(in);
+
+		if (bufferSize <= 0 || bufferSize % BlockEngine.BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException(String.format(
+					"The buffer size needs to be a positive multiple of %d bytes, but was %d!", BlockEngine.BLOCK_SIZE,
+					bufferSize));
+		}
+
+		this.cipher = cipher;
+		this.inBuffer = new byte[bufferSize];
+		this.outBuffer = new byte[bufferSize + BlockEngine.BLOCK_SIZE];
+	}
+
+	@Override
+	public int read() throws IOException {
+		int n = read(singleByte, 0, 1);
+
+		return n == -1 ? -1 : singleByte[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, b.length);
+
+		if (len == 0) {
+			return 0;
+		}
+
+		if (outPosition == outLength && !fill()) {
+			return -1;
+		}
+
+		int n = Math.min(len, outLength - outPosition);
+		System.arraycopy(outBuffer, outPosition, b, off, n);
+		outPosition += n;
+
+		return n;
+	}
+
+	/**
+	 * Reads from the underlying stream until the cipher outputs at least one
+	 * byte, or the underlying stream ends
+	 * 
+	 * @return true if there are bytes available in the output buffer
+	 * @throws IOException if the underlying stream throws it
+	 */
+	private boolean fill() throws IOException {
+		outPosition = 0;
+		outLength = 0;
+
+		while (outLength == 0) {
+			if (finished) {
+				return false;
+			}
+
+			int n = in.read(inBuffer, 0, inBuffer.length);
+
+			if (n == -1) {
+				finished = true;
+
+				if (cipher.getOutputSize(0) > outBuffer.length) {
+					outBuffer = new byte[cipher.getOutputSize(0)];
+				}
+
+				outLength = cipher.doFinal(inBuffer, 0, 0, outBuffer, 0);
+			} else {
+				outLength = cipher.update(inBuffer, 0, n, outBuffer, 0);
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+
+		while (skipped < n) {
+			if (outPosition == outLength && !fill()) {
+				break;
+			}
+
+			int step = (int) Math.min(n - skipped, outLength - outPosition);
+			outPosition += step;
+			skipped += step;
+		}
+
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return outLength - outPosition;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("Mark and reset are not supported!");
+	}
+
+}
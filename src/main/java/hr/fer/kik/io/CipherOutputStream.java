@@ -0,0 +1,127 @@
+package hr.fer.kik.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import hr.fer.kik.Cipher;
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class provides an output stream which encrypts or decrypts everything
+ * written to it with the given <code>Cipher</code>, before passing it to the
+ * underlying stream. The cipher has to be initialized for incremental
+ * processing, and it is finished when the stream is closed.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class CipherOutputStream extends FilterOutputStream {
+	/**
+	 * Default buffer size in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Cipher that processes the written bytes
+	 */
+	private final Cipher cipher;
+	/**
+	 * Maximum number of input bytes passed to the cipher in a single call
+	 */
+	private final int bufferSize;
+	/**
+	 * Buffer for the cipher output
+	 */
+	private final byte[] buffer;
+	/**
+	 * Buffer for single byte writes
+	 */
+	private final byte[] singleByte = new byte[1];
+	/**
+	 * True if the stream was closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Creates a new stream with the default buffer size
+	 * 
+	 * @param out    the underlying output stream
+	 * @param cipher initialized cipher
+	 */
+	public CipherOutputStream(OutputStream out, Cipher cipher) {
+		this(out, cipher, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new stream
+	 * 
+	 * @param out        the underlying output stream
+	 * @param cipher     initialized cipher
+	 * @param bufferSize buffer size in bytes, a positive multiple of the block
+	 *                   size
+	 */
+	public CipherOutputStream(OutputStream out, Cipher cipher, int bufferSize) {
+		super(out);
+
+		if (bufferSize <= 0 || bufferSize % BlockEngine.BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException(String.format(
+					"The buffer size needs to be a positive multiple of %d bytes, but was %d!", BlockEngine.BLOCK_SIZE,
+					bufferSize));
+		}
+
+		this.cipher = cipher;
+		this.bufferSize = bufferSize;
+		this.buffer = new byte[bufferSize + BlockEngine.BLOCK_SIZE];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		singleByte[0] = (byte) b;
+		write(singleByte, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("The stream is closed!");
+		}
+
+		while (len > 0) {
+			int n = Math.min(len, bufferSize);
+			int produced = cipher.update(b, off, n, buffer, 0);
+
+			out.write(buffer, 0, produced);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Flushes the underlying stream. An incomplete block stays in the cipher
+	 * until more bytes are written, or the stream is closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Finishes the cipher, writes the rest of the output, and closes the
+	 * underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		try (OutputStream os = out) {
+			os.write(cipher.doFinal(buffer, 0, 0));
+			os.flush();
+		}
+	}
+
+}
@@ -0,0 +1,221 @@
+package hr.fer.kik.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.kik.AES128;
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.mode.Counter;
+import hr.fer.kik.mode.CounterMode;
+import hr.fer.kik.mode.ParallelChunks;
+import hr.fer.kik.util.AlgorithmUtils;
+
+/**
+ * This class encrypts or decrypts whole files in CTR mode, using memory mapped
+ * windows of the files. The windows are processed in parallel, each with its
+ * own copy of the counter, and only a small slice of every window is copied to
+ * the heap at a time, so the file contents are carried by the page cache.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class MappedFileCipher {
+	/**
+	 * Default window size in bytes
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+	/**
+	 * Number of bytes copied to the heap at a time
+	 */
+	private static final int SLICE_SIZE = 64 * 1024;
+
+	/**
+	 * Block engine initialized with the Cipher Key
+	 */
+	private final BlockEngine engine;
+	/**
+	 * Counter positioned at the first block of the file
+	 */
+	private final Counter counter;
+	/**
+	 * Size of a single mapped window in bytes
+	 */
+	private int windowSize = DEFAULT_WINDOW_SIZE;
+	/**
+	 * Executor that the windows are processed on
+	 */
+	private Executor executor = ForkJoinPool.commonPool();
+
+	/**
+	 * Creates a new file cipher
+	 * 
+	 * @param key the Cipher Key bytes
+	 * @param iv  the first counter block
+	 */
+	public MappedFileCipher(byte[] key, byte[] iv) {
+		this(new AES128().createEngine(AlgorithmUtils.bytesToKey(key)), new Counter(iv));
+	}
+
+	/**
+	 * Creates a new file cipher
+	 * 
+	 * @param engine  block engine initialized with the Cipher Key
+	 * @param counter counter positioned at the first block of the file, which is
+	 *                not modified
+	 */
+	public MappedFileCipher(BlockEngine engine, Counter counter) {
+		this.engine = Objects.requireNonNull(engine);
+		this.counter = counter.copy();
+	}
+
+	/**
+	 * @return size of a single mapped window in bytes
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * @param windowSize size of a single mapped window in bytes, a positive
+	 *                   multiple of the block size
+	 */
+	public void setWindowSize(int windowSize) {
+		if (windowSize <= 0 || windowSize % BlockEngine.BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException(String.format(
+					"The window size needs to be a positive multiple of %d bytes, but was %d!", BlockEngine.BLOCK_SIZE,
+					windowSize));
+		}
+
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * @param executor that the windows are processed on, the common
+	 *                 <code>ForkJoinPool</code> by default
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * Encrypts or decrypts the given file in place
+	 * 
+	 * @param file the file
+	 * @throws IOException if the file can not be mapped
+	 */
+	public void process(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = channel.size();
+
+			processWindows(size, (offset, length) -> {
+				MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, offset, length);
+				processWindow(buffer, buffer, offset);
+			});
+		}
+	}
+
+	/**
+	 * Encrypts or decrypts the <code>source</code> file into the
+	 * <code>target</code> file, which is created or overwritten
+	 * 
+	 * @param source the input file
+	 * @param target the output file
+	 * @throws IOException if the files can not be mapped
+	 */
+	public void process(Path source, Path target) throws IOException {
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+
+			if (size > 0) {
+				out.write(ByteBuffer.allocate(1), size - 1);
+			}
+
+			processWindows(size, (offset, length) -> {
+				MappedByteBuffer src = in.map(MapMode.READ_ONLY, offset, length);
+				MappedByteBuffer dst = out.map(MapMode.READ_WRITE, offset, length);
+				processWindow(src, dst, offset);
+			});
+		}
+	}
+
+	/**
+	 * Splits a file of the given size into windows, and runs the given action
+	 * for every window on the executor
+	 * 
+	 * @param size   size of the file in bytes
+	 * @param action action for a single window
+	 * @throws IOException if the action throws it
+	 */
+	private void processWindows(long size, WindowAction action) throws IOException {
+		long windows = (size + windowSize - 1) / windowSize;
+
+		if (windows > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The file is too large for the given window size!");
+		}
+
+		try {
+			ParallelChunks.run((int) windows, window -> {
+				long offset = (long) window * windowSize;
+
+				try {
+					action.process(offset, (int) Math.min(windowSize, size - offset));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Applies the keystream to a single window, one slice at a time
+	 * 
+	 * @param src    the input window
+	 * @param dst    the output window, which can be the same as
+	 *               <code>src</code>
+	 * @param offset offset of the window in the file
+	 */
+	private void processWindow(ByteBuffer src, ByteBuffer dst, long offset) {
+		Counter windowCounter = counter.copy();
+		windowCounter.add(offset / BlockEngine.BLOCK_SIZE);
+
+		byte[] slice = new byte[Math.min(SLICE_SIZE, src.capacity())];
+
+		for (int position = 0, length = src.capacity(); position < length; position += slice.length) {
+			int n = Math.min(slice.length, length - position);
+
+			src.get(position, slice, 0, n);
+			CounterMode.process(engine, windowCounter, slice, 0, n, slice, 0);
+			dst.put(position, slice, 0, n);
+		}
+	}
+
+	/**
+	 * Work done for a single mapped window
+	 * 
+	 * @author Ivan Lokas
+	 *
+	 */
+	@FunctionalInterface
+	private interface WindowAction {
+		/**
+		 * @param offset offset of the window in the file
+		 * @param length length of the window
+		 * @throws IOException if the window can not be mapped
+		 */
+		void process(long offset, int length) throws IOException;
+	}
+
+}
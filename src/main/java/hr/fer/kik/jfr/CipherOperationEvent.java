@@ -0,0 +1,73 @@
+package hr.fer.kik.jfr;
+
+import hr.fer.kik.engine.EngineType;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event of a single encryption or decryption. Operations
+ * shorter than the threshold, 1 ms by default, are not recorded. While the
+ * event is disabled, creating it and calling <code>begin</code> and
+ * <code>record</code> costs next to nothing, since the instance does not
+ * escape and <code>shouldCommit</code> is false.
+ *
+ * @author Ivan Lokas
+ *
+ */
+@Name(CipherOperationEvent.NAME)
+@Label("Cipher Operation")
+@Category({ "AES-128", "Cipher" })
+@Description("Encryption or decryption of a message")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class CipherOperationEvent extends jdk.jfr.Event {
+	/**
+	 * Name of the event type
+	 */
+	public static final String NAME = "hr.fer.kik.CipherOperation";
+
+	@Label("Algorithm")
+	String algorithm;
+
+	@Label("Mode of Operation")
+	String mode;
+
+	@Label("Encryption")
+	@Description("True for encryption, false for decryption")
+	boolean encryption;
+
+	@Label("Input Size")
+	@DataAmount
+	long bytes;
+
+	@Label("Engine")
+	String engine;
+
+	/**
+	 * Ends the event, and commits it if it is enabled and longer than the
+	 * threshold
+	 *
+	 * @param algorithm  name of the algorithm
+	 * @param mode       mode of operation
+	 * @param encryption true for encryption, false for decryption
+	 * @param bytes      input length in bytes
+	 * @param engine     type of the block engine, or <code>null</code> if it is
+	 *                   not known
+	 */
+	public void record(String algorithm, String mode, boolean encryption, long bytes, EngineType engine) {
+		if (shouldCommit()) {
+			this.algorithm = algorithm;
+			this.mode = mode;
+			this.encryption = encryption;
+			this.bytes = bytes;
+			this.engine = engine == null ? null : engine.name();
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package hr.fer.kik.jfr;
+
+import hr.fer.kik.engine.EngineType;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event of a Cipher Key expansion, together with the creation
+ * of its block engine. Expansions are rare, since the key contexts are cached,
+ * so every expansion is recorded by default.
+ *
+ * @author Ivan Lokas
+ *
+ */
+@Name(KeyExpansionEvent.NAME)
+@Label("Key Expansion")
+@Category({ "AES-128", "Cipher" })
+@Description("Expansion of a Cipher Key into its key schedule and block engine")
+@Threshold("0 ns")
+@StackTrace(false)
+public final class KeyExpansionEvent extends jdk.jfr.Event {
+	/**
+	 * Name of the event type
+	 */
+	public static final String NAME = "hr.fer.kik.KeyExpansion";
+
+	@Label("Engine")
+	String engine;
+
+	/**
+	 * Ends the event, and commits it if it is enabled
+	 *
+	 * @param engine type of the block engine
+	 */
+	public void record(EngineType engine) {
+		if (shouldCommit()) {
+			this.engine = engine.name();
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package hr.fer.kik.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class collects the metrics of the library, per transformation, and
+ * the number of Cipher Key expansions. There is a single instance per class
+ * loader, which is registered with the platform MBean server when it is first
+ * used. All counters are striped, so they can be updated by many threads
+ * without contention.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public final class CipherMetrics implements CipherMetricsMXBean {
+	/**
+	 * Name of the MBean
+	 */
+	public static final String OBJECT_NAME = "hr.fer.kik:type=CipherMetrics";
+
+	/**
+	 * The single instance
+	 */
+	private static final CipherMetrics INSTANCE = new CipherMetrics();
+
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (JMException | SecurityException e) {
+			// Another class loader has registered its instance, or JMX is not
+			// available, so the metrics are only available programmatically
+		}
+	}
+
+	/**
+	 * Metrics of every used transformation
+	 */
+	private final Map<String, TransformationMetrics> transformations = new ConcurrentHashMap<>();
+	private final LongAdder keyExpansions = new LongAdder();
+
+	private CipherMetrics() {
+	}
+
+	/**
+	 * @return the metrics of this library
+	 */
+	public static CipherMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the live metrics of the given transformation, which callers are
+	 * expected to keep, instead of looking them up for every call
+	 *
+	 * @param transformation name of the transformation, like
+	 *                       <code>AES128/CTR</code>
+	 * @return metrics of the transformation
+	 */
+	public TransformationMetrics getTransformation(String transformation) {
+		return transformations.computeIfAbsent(transformation, TransformationMetrics::new);
+	}
+
+	/**
+	 * Records an expansion of a Cipher Key into its key schedule
+	 */
+	public void recordKeyExpansion() {
+		keyExpansions.increment();
+	}
+
+	@Override
+	public long getOperationCount() {
+		return transformations.values().stream().mapToLong(TransformationMetrics::getOperationCount).sum();
+	}
+
+	@Override
+	public long getByteCount() {
+		return transformations.values().stream().mapToLong(TransformationMetrics::getByteCount).sum();
+	}
+
+	@Override
+	public long getBlockCount() {
+		return transformations.values().stream().mapToLong(TransformationMetrics::getBlockCount).sum();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return transformations.values().stream().mapToLong(TransformationMetrics::getErrorCount).sum();
+	}
+
+	@Override
+	public long getKeyExpansionCount() {
+		return keyExpansions.sum();
+	}
+
+	@Override
+	public List<TransformationStatistics> getTransformations() {
+		return transformations.values().stream().map(TransformationMetrics::snapshot)
+				.sorted(Comparator.comparing(TransformationStatistics::transformation)).toList();
+	}
+
+	@Override
+	public void reset() {
+		transformations.values().forEach(TransformationMetrics::reset);
+		keyExpansions.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CipherMetrics[operations=%d, bytes=%d, errors=%d, keyExpansions=%d]",
+				getOperationCount(), getByteCount(), getErrorCount(), getKeyExpansionCount());
+	}
+
+}
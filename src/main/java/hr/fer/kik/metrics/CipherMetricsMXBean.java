@@ -0,0 +1,48 @@
+package hr.fer.kik.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of the cipher metrics, registered as
+ * <code>hr.fer.kik:type=CipherMetrics</code>
+ *
+ * @author Ivan Lokas
+ *
+ */
+public interface CipherMetricsMXBean {
+
+	/**
+	 * @return number of finished operations of all transformations
+	 */
+	long getOperationCount();
+
+	/**
+	 * @return number of processed bytes of all transformations
+	 */
+	long getByteCount();
+
+	/**
+	 * @return number of processed blocks of all transformations
+	 */
+	long getBlockCount();
+
+	/**
+	 * @return number of failed calls of all transformations
+	 */
+	long getErrorCount();
+
+	/**
+	 * @return number of Cipher Key expansions
+	 */
+	long getKeyExpansionCount();
+
+	/**
+	 * @return snapshots of the metrics of every used transformation
+	 */
+	List<TransformationStatistics> getTransformations();
+
+	/**
+	 * Resets every counter and histogram
+	 */
+	void reset();
+}
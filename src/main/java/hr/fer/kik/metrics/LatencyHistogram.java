@@ -0,0 +1,127 @@
+package hr.fer.kik.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds, with buckets of powers of two. The
+ * bucket <code>i</code> counts the latencies in [2^i, 2^(i + 1)), and the last
+ * bucket counts every longer latency. The counters are striped, so recording
+ * from many threads does not contend.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public final class LatencyHistogram {
+	/**
+	 * Number of buckets, the last one starting at about 9 minutes
+	 */
+	public static final int BUCKETS = 40;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+
+	/**
+	 * Creates a new empty histogram
+	 */
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @param nanos latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		int bucket = nanos <= 1 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos));
+
+		buckets[bucket].increment();
+		count.increment();
+		totalNanos.add(Math.max(0, nanos));
+	}
+
+	/**
+	 * @return number of recorded latencies
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return sum of the recorded latencies in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/**
+	 * @return counts of the buckets
+	 */
+	public long[] getBuckets() {
+		long[] result = new long[BUCKETS];
+
+		for (int i = 0; i < BUCKETS; i++) {
+			result[i] = buckets[i].sum();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Estimates a percentile as the upper bound of the bucket that contains it,
+	 * so the result is at most twice the exact value
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return upper bound of the percentile in nanoseconds, or 0 if nothing was
+	 *         recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("The percentile needs to be between 0 and 100!");
+		}
+
+		long[] counts = getBuckets();
+		long total = 0;
+
+		for (long c : counts) {
+			total += c;
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+
+			if (seen >= rank) {
+				return i == BUCKETS - 1 ? Long.MAX_VALUE : 2L << i;
+			}
+		}
+
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Removes every recorded latency
+	 */
+	public void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+
+		count.reset();
+		totalNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LatencyHistogram[count=%d, p50=%dns, p99=%dns]", getCount(), getPercentile(50),
+				getPercentile(99));
+	}
+
+}
@@ -0,0 +1,154 @@
+package hr.fer.kik.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * Live metrics of a single transformation, like <code>AES128/CTR</code>. An
+ * operation is a finished <code>doFinal</code> call, while the bytes count the
+ * input of both the <code>update</code> and the <code>doFinal</code> calls.
+ * The blocks are derived from the bytes, so streaming calls of any length do
+ * not count more blocks than were processed.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public final class TransformationMetrics {
+	/**
+	 * Name of the transformation
+	 */
+	private final String transformation;
+
+	private final LongAdder operations = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LatencyHistogram doFinalLatency = new LatencyHistogram();
+	private final LatencyHistogram updateLatency = new LatencyHistogram();
+
+	/**
+	 * Creates new metrics
+	 *
+	 * @param transformation name of the transformation
+	 */
+	TransformationMetrics(String transformation) {
+		this.transformation = transformation;
+	}
+
+	/**
+	 * Records a finished <code>doFinal</code> call
+	 *
+	 * @param len   input length in bytes
+	 * @param nanos latency in nanoseconds
+	 */
+	public void recordDoFinal(long len, long nanos) {
+		operations.increment();
+		recordBytes(len);
+		doFinalLatency.record(nanos);
+	}
+
+	/**
+	 * Records a finished <code>update</code> call
+	 *
+	 * @param len   input length in bytes
+	 * @param nanos latency in nanoseconds
+	 */
+	public void recordUpdate(long len, long nanos) {
+		recordBytes(len);
+		updateLatency.record(nanos);
+	}
+
+	/**
+	 * Records a failed call
+	 */
+	public void recordError() {
+		errors.increment();
+	}
+
+	/**
+	 * @param len input length in bytes
+	 */
+	private void recordBytes(long len) {
+		if (len > 0) {
+			bytes.add(len);
+		}
+	}
+
+	/**
+	 * @return name of the transformation
+	 */
+	public String getTransformation() {
+		return transformation;
+	}
+
+	/**
+	 * @return number of finished <code>doFinal</code> calls
+	 */
+	public long getOperationCount() {
+		return operations.sum();
+	}
+
+	/**
+	 * @return number of processed input bytes
+	 */
+	public long getByteCount() {
+		return bytes.sum();
+	}
+
+	/**
+	 * @return number of processed input blocks, counting a partial last block
+	 */
+	public long getBlockCount() {
+		return (getByteCount() + BlockEngine.BLOCK_SIZE - 1) / BlockEngine.BLOCK_SIZE;
+	}
+
+	/**
+	 * @return number of failed calls
+	 */
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	/**
+	 * @return latencies of the <code>doFinal</code> calls
+	 */
+	public LatencyHistogram getDoFinalLatency() {
+		return doFinalLatency;
+	}
+
+	/**
+	 * @return latencies of the <code>update</code> calls
+	 */
+	public LatencyHistogram getUpdateLatency() {
+		return updateLatency;
+	}
+
+	/**
+	 * @return snapshot of the metrics
+	 */
+	public TransformationStatistics snapshot() {
+		return new TransformationStatistics(transformation, getOperationCount(), getByteCount(), getBlockCount(),
+				getErrorCount(), doFinalLatency.getCount(), doFinalLatency.getTotalNanos(),
+				doFinalLatency.getPercentile(50), doFinalLatency.getPercentile(99), doFinalLatency.getBuckets(),
+				updateLatency.getCount(), updateLatency.getTotalNanos(), updateLatency.getPercentile(50),
+				updateLatency.getPercentile(99), updateLatency.getBuckets());
+	}
+
+	/**
+	 * Resets every counter and histogram
+	 */
+	void reset() {
+		operations.reset();
+		bytes.reset();
+		errors.reset();
+		doFinalLatency.reset();
+		updateLatency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TransformationMetrics[%s, operations=%d, bytes=%d, errors=%d]", transformation,
+				getOperationCount(), getByteCount(), getErrorCount());
+	}
+
+}
@@ -0,0 +1,15 @@
+package hr.fer.kik.metrics;
+
+/**
+ * Snapshot of the metrics of a single transformation, like
+ * <code>AES128/CTR</code>. Latencies are in nanoseconds, and the histograms
+ * hold the bucket counts of <code>LatencyHistogram</code>.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public record TransformationStatistics(String transformation, long operations, long bytes, long blocks,
+		long errors, long doFinalCount, long doFinalTotalNanos, long doFinalP50Nanos, long doFinalP99Nanos,
+		long[] doFinalHistogram, long updateCount, long updateTotalNanos, long updateP50Nanos, long updateP99Nanos,
+		long[] updateHistogram) {
+}
@@ -0,0 +1,291 @@
+package hr.fer.kik.mode;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This is an utility class which provides the CBC mode of operation over byte
+ * arrays. Encryption is sequential, since every block is chained to the
+ * previous ciphertext block. Decryption of a block only depends on two
+ * ciphertext blocks, so the block range is divided into chunks of
+ * <code>CHUNK_BLOCKS</code> blocks, which are decrypted independently of one
+ * another.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class BlockChainingMode {
+	/**
+	 * Default input length in bytes, below which the input is decrypted on the
+	 * calling thread
+	 */
+	public static final int DEFAULT_THRESHOLD = 256 * 1024;
+	/**
+	 * Number of blocks in a single chunk
+	 */
+	public static final int CHUNK_BLOCKS = 4096;
+
+	/**
+	 * Encrypts the given array region without padding. Every block is chained
+	 * to the previous block of the output, so no memory is allocated.
+	 *
+	 * @param engine block engine initialized with the Cipher Key
+	 * @param iv     the IV, which is not modified
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length, a multiple of the block size
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	public static void encrypt(BlockEngine engine, byte[] iv, byte[] in, int inOff, int len, byte[] out,
+			int outOff) {
+		encrypt(engine, iv, 0, in, inOff, len, out, outOff);
+	}
+
+	/**
+	 * Encrypts the given array region without padding, chained to the given
+	 * block
+	 *
+	 * @param engine   block engine initialized with the Cipher Key
+	 * @param chain    array containing the block before the first block, or the
+	 *                 IV
+	 * @param chainOff offset of the chained block
+	 * @param in       input array
+	 * @param inOff    input offset
+	 * @param len      input length, a multiple of the block size
+	 * @param out      output array
+	 * @param outOff   output offset
+	 */
+	private static void encrypt(BlockEngine engine, byte[] chain, int chainOff, byte[] in, int inOff, int len,
+			byte[] out, int outOff) {
+		checkLength(len);
+
+		for (int i = 0; i < len; i += BlockEngine.BLOCK_SIZE) {
+			for (int j = 0; j < BlockEngine.BLOCK_SIZE; j++) {
+				out[outOff + i + j] = (byte) (in[inOff + i + j] ^ chain[chainOff + j]);
+			}
+
+			engine.encryptBlock(out, outOff + i, out, outOff + i);
+
+			chain = out;
+			chainOff = outOff + i;
+		}
+	}
+
+	/**
+	 * Encrypts the given array region, and appends the PKCS#7 padding. The
+	 * output array has to hold <code>Padding.PKCS7.paddedLength(len)</code>
+	 * bytes.
+	 *
+	 * @param engine block engine initialized with the Cipher Key
+	 * @param iv     the IV, which is not modified
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public static int encryptPadded(BlockEngine engine, byte[] iv, byte[] in, int inOff, int len, byte[] out,
+			int outOff) {
+		return encryptPadded(engine, Padding.PKCS7, iv, in, inOff, len, out, outOff);
+	}
+
+	/**
+	 * Encrypts the given array region, and pads the last block in place. The
+	 * output array has to hold <code>padding.paddedLength(len)</code> bytes.
+	 *
+	 * @param engine  block engine initialized with the Cipher Key
+	 * @param padding the padding
+	 * @param iv      the IV, which is not modified
+	 * @param in      input array
+	 * @param inOff   input offset
+	 * @param len     input length
+	 * @param out     output array
+	 * @param outOff  output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public static int encryptPadded(BlockEngine engine, Padding padding, byte[] iv, byte[] in, int inOff, int len,
+			byte[] out, int outOff) {
+		int padded = padding.paddedLength(len);
+		int full = len / BlockEngine.BLOCK_SIZE * BlockEngine.BLOCK_SIZE;
+
+		encrypt(engine, iv, 0, in, inOff, full, out, outOff);
+
+		if (padded == full) {
+			return padded;
+		}
+
+		System.arraycopy(in, inOff + full, out, outOff + full, len - full);
+		padding.pad(out, outOff + full, len - full);
+
+		if (full == 0) {
+			encrypt(engine, iv, 0, out, outOff, BlockEngine.BLOCK_SIZE, out, outOff);
+		} else {
+			encrypt(engine, out, outOff + full - BlockEngine.BLOCK_SIZE, out, outOff + full, BlockEngine.BLOCK_SIZE,
+					out, outOff + full);
+		}
+
+		return padded;
+	}
+
+	/**
+	 * Decrypts the given array region without removing the padding, on the
+	 * common <code>ForkJoinPool</code>, if the region is at least
+	 * <code>DEFAULT_THRESHOLD</code> bytes long
+	 *
+	 * @param engine block engine initialized with the Cipher Key
+	 * @param iv     the IV, which is not modified
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length, a multiple of the block size
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	public static void decrypt(BlockEngine engine, byte[] iv, byte[] in, int inOff, int len, byte[] out,
+			int outOff) {
+		decrypt(engine, iv, in, inOff, len, out, outOff, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Decrypts the given array region without removing the padding, on the given
+	 * <code>executor</code>, if the region is at least <code>threshold</code>
+	 * bytes long, otherwise on the calling thread. The operation can be done in
+	 * place, when <code>out</code> is <code>in</code> and both offsets are the
+	 * same.
+	 *
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param iv        the IV, which is not modified
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length, a multiple of the block size
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is
+	 *                  processed on the calling thread
+	 */
+	public static void decrypt(BlockEngine engine, byte[] iv, byte[] in, int inOff, int len, byte[] out, int outOff,
+			Executor executor, int threshold) {
+		checkLength(len);
+
+		int blocks = len / BlockEngine.BLOCK_SIZE;
+
+		if (len < threshold || blocks <= CHUNK_BLOCKS) {
+			decryptBlocks(engine, iv.clone(), in, inOff, out, outOff, blocks);
+			return;
+		}
+
+		int chunks = (blocks + CHUNK_BLOCKS - 1) / CHUNK_BLOCKS;
+		byte[][] chains = new byte[chunks][];
+		chains[0] = iv.clone();
+
+		for (int chunk = 1; chunk < chunks; chunk++) {
+			int offset = inOff + chunk * CHUNK_BLOCKS * BlockEngine.BLOCK_SIZE;
+			chains[chunk] = Arrays.copyOfRange(in, offset - BlockEngine.BLOCK_SIZE, offset);
+		}
+
+		ParallelChunks.run(chunks, chunk -> {
+			int first = chunk * CHUNK_BLOCKS;
+			int offset = first * BlockEngine.BLOCK_SIZE;
+
+			decryptBlocks(engine, chains[chunk], in, inOff + offset, out, outOff + offset,
+					Math.min(CHUNK_BLOCKS, blocks - first));
+		}, executor);
+	}
+
+	/**
+	 * Decrypts the given array region, and removes the PKCS#7 padding. The
+	 * output array has to hold <code>len</code> bytes, the bytes after the
+	 * returned length contain the removed padding.
+	 *
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param iv        the IV, which is not modified
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length, a positive multiple of the block size
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is
+	 *                  processed on the calling thread
+	 * @return length of the plaintext written to <code>out</code>
+	 */
+	public static int decryptPadded(BlockEngine engine, byte[] iv, byte[] in, int inOff, int len, byte[] out,
+			int outOff, Executor executor, int threshold) {
+		return decryptPadded(engine, Padding.PKCS7, iv, in, inOff, len, out, outOff, executor, threshold);
+	}
+
+	/**
+	 * Decrypts the given array region, and removes the padding. The output array
+	 * has to hold <code>len</code> bytes, the bytes after the returned length
+	 * contain the removed padding.
+	 *
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param padding   the padding
+	 * @param iv        the IV, which is not modified
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length, a multiple of the block size
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is
+	 *                  processed on the calling thread
+	 * @return length of the plaintext written to <code>out</code>
+	 */
+	public static int decryptPadded(BlockEngine engine, Padding padding, byte[] iv, byte[] in, int inOff, int len,
+			byte[] out, int outOff, Executor executor, int threshold) {
+		decrypt(engine, iv, in, inOff, len, out, outOff, executor, threshold);
+
+		return padding.unpad(out, outOff, len);
+	}
+
+	/**
+	 * Decrypts consecutive blocks on the calling thread. Every ciphertext block
+	 * is saved before its output is written, so the blocks can be decrypted in
+	 * place.
+	 *
+	 * @param engine block engine initialized with the Cipher Key
+	 * @param chain  the ciphertext block before the first block, or the IV,
+	 *               which is overwritten
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @param blocks number of blocks
+	 */
+	private static void decryptBlocks(BlockEngine engine, byte[] chain, byte[] in, int inOff, byte[] out, int outOff,
+			int blocks) {
+		byte[] next = new byte[BlockEngine.BLOCK_SIZE];
+
+		for (int i = 0; i < blocks; i++) {
+			int offset = i * BlockEngine.BLOCK_SIZE;
+
+			System.arraycopy(in, inOff + offset, next, 0, BlockEngine.BLOCK_SIZE);
+			engine.decryptBlock(next, 0, out, outOff + offset);
+
+			for (int j = 0; j < BlockEngine.BLOCK_SIZE; j++) {
+				out[outOff + offset + j] ^= chain[j];
+			}
+
+			byte[] t = chain;
+			chain = next;
+			next = t;
+		}
+	}
+
+	/**
+	 * @param len input length
+	 */
+	private static void checkLength(int len) {
+		if (len % BlockEngine.BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException(
+					String.format("The input length needs to be a multiple of %d bytes!", BlockEngine.BLOCK_SIZE));
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+package hr.fer.kik.mode;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class provides the CBC mode of operation, with PKCS#7 padding by
+ * default, as a stream processor. On encryption full blocks are processed as
+ * soon as they are available, and the padding is added by
+ * <code>doFinal</code>. On decryption the last block is kept until
+ * <code>doFinal</code>, since it contains the padding.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class BlockChainingStreamProcessor implements StreamProcessor {
+	/**
+	 * Block engine initialized with the Cipher Key
+	 */
+	private final BlockEngine engine;
+	/**
+	 * True for encryption, false for decryption
+	 */
+	private final boolean encryption;
+	/**
+	 * The padding of the last block
+	 */
+	private final Padding padding;
+	/**
+	 * The IV
+	 */
+	private final byte[] iv;
+	/**
+	 * Executor used for decryption on multiple threads
+	 */
+	private final Executor executor;
+	/**
+	 * Input length in bytes, from which the input is decrypted on multiple
+	 * threads
+	 */
+	private final int parallelThreshold;
+
+	/**
+	 * The last ciphertext block, which the next block is chained to
+	 */
+	private final byte[] chain = new byte[BlockEngine.BLOCK_SIZE];
+	/**
+	 * The incomplete block, or the withheld last block on decryption, carried
+	 * over between calls
+	 */
+	private final byte[] buffer = new byte[BlockEngine.BLOCK_SIZE];
+	/**
+	 * Number of bytes in the buffer
+	 */
+	private int bufferLength = 0;
+
+	/**
+	 * Creates a new processor
+	 *
+	 * @param engine            block engine initialized with the Cipher Key
+	 * @param encryption        true for encryption, false for decryption
+	 * @param iv                the IV
+	 * @param executor          executor used for decryption on multiple threads
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          decrypted on multiple threads
+	 */
+	public BlockChainingStreamProcessor(BlockEngine engine, boolean encryption, byte[] iv, Executor executor,
+			int parallelThreshold) {
+		this(engine, encryption, Padding.PKCS7, iv, executor, parallelThreshold);
+	}
+
+	/**
+	 * Creates a new processor with the given padding
+	 *
+	 * @param engine            block engine initialized with the Cipher Key
+	 * @param encryption        true for encryption, false for decryption
+	 * @param padding           the padding of the last block
+	 * @param iv                the IV
+	 * @param executor          executor used for decryption on multiple threads
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          decrypted on multiple threads
+	 */
+	public BlockChainingStreamProcessor(BlockEngine engine, boolean encryption, Padding padding, byte[] iv,
+			Executor executor, int parallelThreshold) {
+		if (iv.length != BlockEngine.BLOCK_SIZE) {
+			throw new IllegalArgumentException(
+					String.format("The IV needs to be %d bytes long!", BlockEngine.BLOCK_SIZE));
+		}
+
+		this.engine = engine;
+		this.encryption = encryption;
+		this.padding = Objects.requireNonNull(padding);
+		this.iv = iv.clone();
+		this.executor = executor;
+		this.parallelThreshold = parallelThreshold;
+
+		reset();
+	}
+
+	@Override
+	public int getUpdateOutputSize(int len) {
+		int total = bufferLength + len;
+
+		return total - kept(total);
+	}
+
+	@Override
+	public int getFinalOutputSize(int len) {
+		return encryption ? padding.paddedLength(bufferLength + len) : bufferLength + len;
+	}
+
+	@Override
+	public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		if (in == out && bufferLength != 0) {
+			in = Arrays.copyOfRange(in, inOff, inOff + len);
+			inOff = 0;
+		}
+
+		int produced = 0;
+
+		if (bufferLength != 0) {
+			int n = Math.min(len, BlockEngine.BLOCK_SIZE - bufferLength);
+			System.arraycopy(in, inOff, buffer, bufferLength, n);
+			bufferLength += n;
+			inOff += n;
+			len -= n;
+
+			if (bufferLength < BlockEngine.BLOCK_SIZE || !encryption && len == 0) {
+				return 0;
+			}
+
+			processBlocks(buffer, 0, BlockEngine.BLOCK_SIZE, out, outOff);
+			bufferLength = 0;
+			produced = BlockEngine.BLOCK_SIZE;
+		}
+
+		int keep = kept(len);
+		int full = len - keep;
+
+		if (full > 0) {
+			processBlocks(in, inOff, full, out, outOff + produced);
+			produced += full;
+		}
+
+		System.arraycopy(in, inOff + full, buffer, 0, keep);
+		bufferLength = keep;
+
+		return produced;
+	}
+
+	@Override
+	public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		int produced = update(in, inOff, len, out, outOff);
+
+		try {
+			if (encryption) {
+				if (padding.paddedLength(bufferLength) == 0) {
+					return produced;
+				}
+
+				padding.pad(buffer, 0, bufferLength);
+				processBlocks(buffer, 0, BlockEngine.BLOCK_SIZE, out, outOff + produced);
+
+				return produced + BlockEngine.BLOCK_SIZE;
+			}
+
+			if (bufferLength == 0 && !padding.isReversible()) {
+				return produced;
+			}
+
+			if (bufferLength != BlockEngine.BLOCK_SIZE) {
+				throw new IllegalArgumentException(String.format(
+						"The input length needs to be a positive multiple of %d bytes!", BlockEngine.BLOCK_SIZE));
+			}
+
+			processBlocks(buffer, 0, BlockEngine.BLOCK_SIZE, out, outOff + produced);
+
+			return produced + padding.unpad(out, outOff + produced, BlockEngine.BLOCK_SIZE);
+		} finally {
+			reset();
+		}
+	}
+
+	@Override
+	public void reset() {
+		System.arraycopy(iv, 0, chain, 0, BlockEngine.BLOCK_SIZE);
+		Arrays.fill(buffer, (byte) 0);
+		bufferLength = 0;
+	}
+
+	/**
+	 * @param len number of input bytes that are not yet processed
+	 * @return number of those bytes which are kept in the buffer. On decryption
+	 *         the last block is always kept.
+	 */
+	private int kept(int len) {
+		if (encryption) {
+			return len % BlockEngine.BLOCK_SIZE;
+		}
+
+		return len == 0 ? 0 : (len - 1) % BlockEngine.BLOCK_SIZE + 1;
+	}
+
+	/**
+	 * Encrypts or decrypts full blocks, and chains the next block to the last
+	 * ciphertext block
+	 *
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length, a multiple of the block size
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	private void processBlocks(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		int last = len - BlockEngine.BLOCK_SIZE;
+
+		if (encryption) {
+			BlockChainingMode.encrypt(engine, chain, in, inOff, len, out, outOff);
+			System.arraycopy(out, outOff + last, chain, 0, BlockEngine.BLOCK_SIZE);
+		} else {
+			byte[] next = Arrays.copyOfRange(in, inOff + last, inOff + len);
+			BlockChainingMode.decrypt(engine, chain, in, inOff, len, out, outOff, executor, parallelThreshold);
+			System.arraycopy(next, 0, chain, 0, BlockEngine.BLOCK_SIZE);
+		}
+	}
+
+}
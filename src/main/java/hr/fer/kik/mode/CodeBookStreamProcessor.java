@@ -0,0 +1,200 @@
+package hr.fer.kik.mode;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class provides the ECB mode of operation as a stream processor. Full
+ * blocks are processed as soon as they are available, while an incomplete
+ * block is kept until the next call. On encryption the last block is padded,
+ * with zeros by default, in compliance with <code>IOUtils</code> padding. On
+ * decryption with a reversible padding the last block is kept until
+ * <code>doFinal</code>, since it contains the padding.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class CodeBookStreamProcessor implements StreamProcessor {
+	/**
+	 * Block engine initialized with the Cipher Key
+	 */
+	private final BlockEngine engine;
+	/**
+	 * True for encryption, false for decryption
+	 */
+	private final boolean encryption;
+	/**
+	 * The padding of the last block
+	 */
+	private final Padding padding;
+	/**
+	 * Executor used for processing on multiple threads
+	 */
+	private final Executor executor;
+	/**
+	 * Input length in bytes, from which the input is processed on multiple
+	 * threads
+	 */
+	private final int parallelThreshold;
+
+	/**
+	 * The incomplete block carried over between calls
+	 */
+	private final byte[] buffer = new byte[BlockEngine.BLOCK_SIZE];
+	/**
+	 * Number of bytes in the incomplete block
+	 */
+	private int bufferLength = 0;
+
+	/**
+	 * Creates a new processor
+	 * 
+	 * @param engine            block engine initialized with the Cipher Key
+	 * @param encryption        true for encryption, false for decryption
+	 * @param executor          executor used for processing on multiple threads
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          processed on multiple threads
+	 */
+	public CodeBookStreamProcessor(BlockEngine engine, boolean encryption, Executor executor,
+			int parallelThreshold) {
+		this(engine, encryption, Padding.ZERO, executor, parallelThreshold);
+	}
+
+	/**
+	 * Creates a new processor with the given padding
+	 * 
+	 * @param engine            block engine initialized with the Cipher Key
+	 * @param encryption        true for encryption, false for decryption
+	 * @param padding           the padding of the last block
+	 * @param executor          executor used for processing on multiple threads
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          processed on multiple threads
+	 */
+	public CodeBookStreamProcessor(BlockEngine engine, boolean encryption, Padding padding, Executor executor,
+			int parallelThreshold) {
+		this.engine = engine;
+		this.encryption = encryption;
+		this.padding = Objects.requireNonNull(padding);
+		this.executor = executor;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	@Override
+	public int getUpdateOutputSize(int len) {
+		int total = bufferLength + len;
+
+		return total - kept(total);
+	}
+
+	@Override
+	public int getFinalOutputSize(int len) {
+		return encryption ? padding.paddedLength(bufferLength + len) : bufferLength + len;
+	}
+
+	@Override
+	public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		if (in == out && bufferLength != 0) {
+			in = Arrays.copyOfRange(in, inOff, inOff + len);
+			inOff = 0;
+		}
+
+		int done = 0;
+		int produced = 0;
+
+		if (bufferLength != 0) {
+			done = Math.min(len, BlockEngine.BLOCK_SIZE - bufferLength);
+			System.arraycopy(in, inOff, buffer, bufferLength, done);
+			bufferLength += done;
+
+			if (bufferLength < BlockEngine.BLOCK_SIZE || kept(bufferLength + len - done) > len - done) {
+				return 0;
+			}
+
+			processBlocks(buffer, 0, BlockEngine.BLOCK_SIZE, out, outOff);
+			bufferLength = 0;
+			produced = BlockEngine.BLOCK_SIZE;
+		}
+
+		int keep = kept(len - done);
+		int full = len - done - keep;
+
+		if (full > 0) {
+			processBlocks(in, inOff + done, full, out, outOff + produced);
+			done += full;
+			produced += full;
+		}
+
+		System.arraycopy(in, inOff + done, buffer, 0, keep);
+		bufferLength = keep;
+
+		return produced;
+	}
+
+	@Override
+	public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		int produced = update(in, inOff, len, out, outOff);
+
+		try {
+			if (encryption) {
+				if (padding.paddedLength(bufferLength) != 0) {
+					padding.pad(buffer, 0, bufferLength);
+					processBlocks(buffer, 0, BlockEngine.BLOCK_SIZE, out, outOff + produced);
+					produced += BlockEngine.BLOCK_SIZE;
+				}
+
+				return produced;
+			}
+
+			if (bufferLength % BlockEngine.BLOCK_SIZE != 0 || bufferLength == 0 && padding.isReversible()) {
+				throw new IllegalArgumentException(
+						String.format("The input length needs to be a multiple of %d bytes!", BlockEngine.BLOCK_SIZE));
+			}
+
+			if (bufferLength == 0) {
+				return produced;
+			}
+
+			processBlocks(buffer, 0, BlockEngine.BLOCK_SIZE, out, outOff + produced);
+
+			return produced + padding.unpad(out, outOff + produced, BlockEngine.BLOCK_SIZE);
+		} finally {
+			reset();
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(buffer, (byte) 0);
+		bufferLength = 0;
+	}
+
+	/**
+	 * @param len number of input bytes that are not yet processed
+	 * @return number of those bytes which are kept in the buffer. On decryption
+	 *         with a reversible padding the last block is always kept.
+	 */
+	private int kept(int len) {
+		if (encryption || !padding.isReversible()) {
+			return len % BlockEngine.BLOCK_SIZE;
+		}
+
+		return len == 0 ? 0 : (len - 1) % BlockEngine.BLOCK_SIZE + 1;
+	}
+
+	/**
+	 * Encrypts or decrypts full blocks
+	 * 
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length, a multiple of the block size
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	private void processBlocks(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		ParallelCodeBookMode.process(engine, encryption, in, inOff, len, out, outOff, executor, parallelThreshold);
+	}
+
+}
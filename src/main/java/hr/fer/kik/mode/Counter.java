@@ -0,0 +1,290 @@
+package hr.fer.kik.mode;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class generates consecutive counter blocks for the CTR mode of
+ * operation. The counter block is kept as two 64-bit halves, and only its
+ * lowest <code>counterWidth</code> bits are incremented, big-endian, while the
+ * remaining bits (the nonce) stay fixed. Once the counter field wraps around,
+ * every further request for a counter block fails, unless the counter was
+ * created by <code>wrapping</code>.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class Counter {
+	/**
+	 * Upper half of the current counter block
+	 */
+	private long high;
+	/**
+	 * Lower half of the current counter block
+	 */
+	private long low;
+	/**
+	 * Mask of the counter field in the upper half
+	 */
+	private final long highMask;
+	/**
+	 * Mask of the counter field in the lower half
+	 */
+	private final long lowMask;
+	/**
+	 * Width of the counter field in bits
+	 */
+	private final int counterWidth;
+	/**
+	 * True if the counter field has wrapped around
+	 */
+	private boolean wrapped = false;
+	/**
+	 * True if the counter field is incremented modulo 2^counterWidth, so it may
+	 * wrap around
+	 */
+	private boolean wrapping = false;
+
+	/**
+	 * Creates a new counter, which increments the whole 128-bit block
+	 * 
+	 * @param iv the first counter block
+	 */
+	public Counter(byte[] iv) {
+		this(iv, 128);
+	}
+
+	/**
+	 * Creates a new counter, which increments the lowest
+	 * <code>counterWidth</code> bits of the block
+	 * 
+	 * @param iv           the first counter block
+	 * @param counterWidth width of the counter field in bits, between 1 and 128
+	 */
+	public Counter(byte[] iv, int counterWidth) {
+		if (iv.length != BlockEngine.BLOCK_SIZE) {
+			throw new IllegalArgumentException(
+					String.format("The IV length needs to be %d bytes, but was %d!", BlockEngine.BLOCK_SIZE, iv.length));
+		}
+
+		if (counterWidth < 1 || counterWidth > 128) {
+			throw new IllegalArgumentException(
+					String.format("The counter width needs to be between 1 and 128 bits, but was %d!", counterWidth));
+		}
+
+		this.high = getLong(iv, 0);
+		this.low = getLong(iv, 8);
+		this.counterWidth = counterWidth;
+		this.lowMask = counterWidth >= 64 ? -1L : (1L << counterWidth) - 1;
+		this.highMask = counterWidth <= 64 ? 0L : counterWidth == 128 ? -1L : (1L << (counterWidth - 64)) - 1;
+	}
+
+	/**
+	 * Copy constructor
+	 * 
+	 * @param other counter that will be copied
+	 */
+	private Counter(Counter other) {
+		this.high = other.high;
+		this.low = other.low;
+		this.highMask = other.highMask;
+		this.lowMask = other.lowMask;
+		this.counterWidth = other.counterWidth;
+		this.wrapped = other.wrapped;
+		this.wrapping = other.wrapping;
+	}
+
+	/**
+	 * Creates a new counter, which increments the lowest
+	 * <code>counterWidth</code> bits of the block modulo 2^counterWidth, like
+	 * the <code>inc_s</code> function of GCM. The caller is responsible for
+	 * never using more than 2^counterWidth blocks.
+	 * 
+	 * @param iv           the first counter block
+	 * @param counterWidth width of the counter field in bits, between 1 and 128
+	 * @return the new counter
+	 */
+	public static Counter wrapping(byte[] iv, int counterWidth) {
+		Counter counter = new Counter(iv, counterWidth);
+		counter.wrapping = true;
+
+		return counter;
+	}
+
+	/**
+	 * Creates a new counter from the given <code>nonce</code>, which fills the
+	 * leading bytes of the block, while the remaining bytes hold the counter
+	 * field, starting at <code>initialValue</code>. For example, a 12-byte nonce
+	 * gives a 32-bit counter field as used in GCM.
+	 * 
+	 * @param nonce        the fixed part of the counter block
+	 * @param initialValue the initial value of the counter field
+	 * @return the new counter
+	 */
+	public static Counter fromNonce(byte[] nonce, long initialValue) {
+		if (nonce.length < 1 || nonce.length >= BlockEngine.BLOCK_SIZE) {
+			throw new IllegalArgumentException(
+					String.format("The nonce length needs to be between 1 and %d bytes, but was %d!",
+							BlockEngine.BLOCK_SIZE - 1, nonce.length));
+		}
+
+		byte[] iv = new byte[BlockEngine.BLOCK_SIZE];
+		System.arraycopy(nonce, 0, iv, 0, nonce.length);
+
+		Counter counter = new Counter(iv, 8 * (BlockEngine.BLOCK_SIZE - nonce.length));
+		counter.add(initialValue);
+
+		return counter;
+	}
+
+	/**
+	 * @return width of the counter field in bits
+	 */
+	public int getCounterWidth() {
+		return counterWidth;
+	}
+
+	/**
+	 * @return a copy of this counter, at the same position
+	 */
+	public Counter copy() {
+		return new Counter(this);
+	}
+
+	/**
+	 * Writes the current counter block into <code>out</code>, without
+	 * incrementing the counter
+	 * 
+	 * @param out    array that the counter block will be written to
+	 * @param outOff offset of the counter block
+	 */
+	public void getBlock(byte[] out, int outOff) {
+		checkWrapped();
+		putLong(out, outOff, high);
+		putLong(out, outOff + 8, low);
+	}
+
+	/**
+	 * Writes the current counter block into <code>out</code>, and increments the
+	 * counter
+	 * 
+	 * @param out    array that the counter block will be written to
+	 * @param outOff offset of the counter block
+	 */
+	public void next(byte[] out, int outOff) {
+		getBlock(out, outOff);
+		increment();
+	}
+
+	/**
+	 * Writes <code>blocks</code> consecutive counter blocks into
+	 * <code>out</code>, and advances the counter past them
+	 * 
+	 * @param out    array that the counter blocks will be written to
+	 * @param outOff offset of the first counter block
+	 * @param blocks number of counter blocks
+	 */
+	public void nextBlocks(byte[] out, int outOff, int blocks) {
+		for (int i = 0; i < blocks; i++) {
+			next(out, outOff + i * BlockEngine.BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * Increments the counter field by one
+	 */
+	public void increment() {
+		checkWrapped();
+
+		boolean carry = (low & lowMask) == lowMask;
+		low = (low & ~lowMask) | ((low + 1) & lowMask);
+
+		if (carry) {
+			carryIntoHigh();
+		}
+	}
+
+	/**
+	 * Advances the counter field by <code>blocks</code>
+	 * 
+	 * @param blocks non-negative number of blocks to skip
+	 */
+	public void add(long blocks) {
+		if (blocks < 0) {
+			throw new IllegalArgumentException("The number of blocks can not be negative!");
+		}
+
+		checkWrapped();
+
+		long field = low & lowMask;
+		long sum = field + blocks;
+
+		if (lowMask != -1L) {
+			if (sum < 0 || sum > lowMask) {
+				wrapped = true;
+			}
+
+			low = (low & ~lowMask) | (sum & lowMask);
+			return;
+		}
+
+		low = sum;
+
+		if (Long.compareUnsigned(sum, field) < 0) {
+			carryIntoHigh();
+		}
+	}
+
+	/**
+	 * Propagates a carry from the lower half into the upper half of the counter
+	 * field
+	 */
+	private void carryIntoHigh() {
+		if ((high & highMask) == highMask) {
+			wrapped = true;
+		}
+
+		high = (high & ~highMask) | ((high + 1) & highMask);
+	}
+
+	/**
+	 * Checks that the counter field has not wrapped around
+	 */
+	private void checkWrapped() {
+		if (wrapped && !wrapping) {
+			throw new IllegalStateException(String.format(
+					"The %d-bit counter has wrapped around, a new IV is needed to process more blocks!", counterWidth));
+		}
+	}
+
+	/**
+	 * Reads a big-endian long
+	 * 
+	 * @param b   array containing the value
+	 * @param off offset of the value
+	 * @return the value
+	 */
+	private static long getLong(byte[] b, int off) {
+		long result = 0;
+
+		for (int i = 0; i < 8; i++) {
+			result = result << 8 | (b[off + i] & 0xff);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes a big-endian long
+	 * 
+	 * @param b   array that the value will be written to
+	 * @param off offset of the value
+	 * @param v   the value
+	 */
+	private static void putLong(byte[] b, int off, long v) {
+		for (int i = 7; i >= 0; i--) {
+			b[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+}
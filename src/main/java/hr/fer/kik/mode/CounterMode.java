@@ -0,0 +1,107 @@
+package hr.fer.kik.mode;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This is an utility class which provides the CTR mode of operation over byte
+ * arrays. The keystream is created in batches of counter blocks, which are
+ * encrypted with a single call to the block engine.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class CounterMode {
+	/**
+	 * Number of counter blocks encrypted per block engine call
+	 */
+	public static final int BATCH_BLOCKS = 32;
+
+	/**
+	 * Keystream buffer of the current thread, so concurrent calls neither
+	 * allocate nor share it
+	 */
+	private static final ThreadLocal<byte[]> KEYSTREAM = ThreadLocal
+			.withInitial(() -> new byte[BATCH_BLOCKS * BlockEngine.BLOCK_SIZE]);
+
+	/**
+	 * Applies the keystream, created from the given <code>counter</code>, to the
+	 * given array region. Encryption and decryption are the same operation. The
+	 * counter is advanced past every block that was used, including a partial
+	 * last block.
+	 * 
+	 * @param engine  block engine initialized with the Cipher Key
+	 * @param counter counter positioned at the first block
+	 * @param in      input array
+	 * @param inOff   input offset
+	 * @param len     input length
+	 * @param out     output array
+	 * @param outOff  output offset
+	 */
+	public static void process(BlockEngine engine, Counter counter, byte[] in, int inOff, int len, byte[] out,
+			int outOff) {
+		byte[] keystream = KEYSTREAM.get();
+
+		for (int i = 0; i < len; i += keystream.length) {
+			int n = Math.min(keystream.length, len - i);
+			int blocks = blocks(n);
+
+			counter.nextBlocks(keystream, 0, blocks);
+			engine.encryptBlocks(keystream, 0, keystream, 0, blocks);
+
+			for (int j = 0; j < n; j++) {
+				out[outOff + i + j] = (byte) (in[inOff + i + j] ^ keystream[j]);
+			}
+		}
+	}
+
+	/**
+	 * Applies the keystream to the given buffer region, without moving the
+	 * positions of the buffers. The bytes are combined a long word at a time,
+	 * directly between the buffers, so direct buffers are never copied onto the
+	 * heap.
+	 * 
+	 * @param engine  block engine initialized with the Cipher Key
+	 * @param counter counter positioned at the first block
+	 * @param in      input buffer
+	 * @param inPos   input position
+	 * @param len     input length
+	 * @param out     output buffer
+	 * @param outPos  output position
+	 */
+	public static void process(BlockEngine engine, Counter counter, ByteBuffer in, int inPos, int len, ByteBuffer out,
+			int outPos) {
+		byte[] keystream = KEYSTREAM.get();
+		ByteBuffer words = ByteBuffer.wrap(keystream).order(ByteOrder.nativeOrder());
+		ByteBuffer src = in.duplicate().order(ByteOrder.nativeOrder());
+		ByteBuffer dst = out.duplicate().order(ByteOrder.nativeOrder());
+
+		for (int i = 0; i < len; i += keystream.length) {
+			int n = Math.min(keystream.length, len - i);
+			int blocks = blocks(n);
+			int j = 0;
+
+			counter.nextBlocks(keystream, 0, blocks);
+			engine.encryptBlocks(keystream, 0, keystream, 0, blocks);
+
+			for (; j <= n - Long.BYTES; j += Long.BYTES) {
+				dst.putLong(outPos + i + j, src.getLong(inPos + i + j) ^ words.getLong(j));
+			}
+
+			for (; j < n; j++) {
+				dst.put(outPos + i + j, (byte) (src.get(inPos + i + j) ^ keystream[j]));
+			}
+		}
+	}
+
+	/**
+	 * @param len length in bytes
+	 * @return number of blocks needed to hold <code>len</code> bytes
+	 */
+	public static int blocks(int len) {
+		return (len + BlockEngine.BLOCK_SIZE - 1) / BlockEngine.BLOCK_SIZE;
+	}
+
+}
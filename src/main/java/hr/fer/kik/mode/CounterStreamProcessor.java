@@ -0,0 +1,179 @@
+package hr.fer.kik.mode;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class provides the CTR mode of operation as a stream processor. The
+ * unused part of the last keystream block is kept between <code>update</code>
+ * calls, so the keystream position is not lost when the input is not split on
+ * block boundaries. Encryption and decryption are the same operation.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class CounterStreamProcessor implements StreamProcessor {
+	/**
+	 * Block engine initialized with the Cipher Key
+	 */
+	private final BlockEngine engine;
+	/**
+	 * Counter positioned at the first block, used for resetting
+	 */
+	private final Counter initialCounter;
+	/**
+	 * Executor used for processing on multiple threads
+	 */
+	private final Executor executor;
+	/**
+	 * Input length in bytes, from which the input is processed on multiple
+	 * threads
+	 */
+	private final int parallelThreshold;
+
+	/**
+	 * Counter positioned at the next unused block
+	 */
+	private Counter counter;
+	/**
+	 * The last keystream block
+	 */
+	private final byte[] keystream = new byte[BlockEngine.BLOCK_SIZE];
+	/**
+	 * Position of the first unused byte of the last keystream block
+	 */
+	private int keystreamPosition = BlockEngine.BLOCK_SIZE;
+
+	/**
+	 * Creates a new processor
+	 * 
+	 * @param engine            block engine initialized with the Cipher Key
+	 * @param counter           counter positioned at the first block
+	 * @param executor          executor used for processing on multiple threads
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          processed on multiple threads
+	 */
+	public CounterStreamProcessor(BlockEngine engine, Counter counter, Executor executor, int parallelThreshold) {
+		this.engine = engine;
+		this.initialCounter = counter.copy();
+		this.counter = counter.copy();
+		this.executor = executor;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	@Override
+	public int getUpdateOutputSize(int len) {
+		return len;
+	}
+
+	@Override
+	public int getFinalOutputSize(int len) {
+		return len;
+	}
+
+	@Override
+	public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		int done = 0;
+
+		while (keystreamPosition < BlockEngine.BLOCK_SIZE && done < len) {
+			out[outOff + done] = (byte) (in[inOff + done] ^ keystream[keystreamPosition++]);
+			done++;
+		}
+
+		int full = (len - done) / BlockEngine.BLOCK_SIZE * BlockEngine.BLOCK_SIZE;
+
+		if (full > 0) {
+			ParallelCounterMode.process(engine, counter, in, inOff + done, full, out, outOff + done, executor,
+					parallelThreshold);
+			done += full;
+		}
+
+		if (done < len) {
+			counter.next(keystream, 0);
+			engine.encryptBlock(keystream, 0, keystream, 0);
+			keystreamPosition = 0;
+
+			while (done < len) {
+				out[outOff + done] = (byte) (in[inOff + done] ^ keystream[keystreamPosition++]);
+				done++;
+			}
+		}
+
+		return len;
+	}
+
+	/**
+	 * Processes heap buffers in place, and the other buffers directly, without
+	 * any window, since the output of CTR mode is available right away
+	 */
+	@Override
+	public int update(ByteBuffer in, ByteBuffer out) {
+		if (in.hasArray() && out.hasArray() || in == out) {
+			return StreamProcessor.super.update(in, out);
+		}
+
+		int len = in.remaining();
+
+		if (out.remaining() < len) {
+			throw new IllegalArgumentException(String.format(
+					"The output buffer has %d bytes remaining, but %d are needed!", out.remaining(), len));
+		}
+
+		int inPos = in.position();
+		int outPos = out.position();
+		int done = 0;
+
+		while (keystreamPosition < BlockEngine.BLOCK_SIZE && done < len) {
+			out.put(outPos + done, (byte) (in.get(inPos + done) ^ keystream[keystreamPosition++]));
+			done++;
+		}
+
+		int full = (len - done) / BlockEngine.BLOCK_SIZE * BlockEngine.BLOCK_SIZE;
+
+		if (full > 0) {
+			CounterMode.process(engine, counter, in, inPos + done, full, out, outPos + done);
+			done += full;
+		}
+
+		if (done < len) {
+			counter.next(keystream, 0);
+			engine.encryptBlock(keystream, 0, keystream, 0);
+			keystreamPosition = 0;
+
+			while (done < len) {
+				out.put(outPos + done, (byte) (in.get(inPos + done) ^ keystream[keystreamPosition++]));
+				done++;
+			}
+		}
+
+		in.position(inPos + len);
+		out.position(outPos + len);
+
+		return len;
+	}
+
+	@Override
+	public int doFinal(ByteBuffer in, ByteBuffer out) {
+		int result = update(in, out);
+		reset();
+
+		return result;
+	}
+
+	@Override
+	public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		int result = update(in, inOff, len, out, outOff);
+		reset();
+
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		counter = initialCounter.copy();
+		keystreamPosition = BlockEngine.BLOCK_SIZE;
+	}
+
+}
@@ -0,0 +1,285 @@
+package hr.fer.kik.mode;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class provides the GHASH function of GCM, a multiplication by the hash
+ * subkey H in GF(2^128). Elements of the field are kept as two big-endian
+ * longs, with the coefficient of x^0 in the most significant bit. The
+ * multiplication processes the multiplier four bits at a time, using a table
+ * of the 16 multiples of H, which is precomputed once per key (Shoup's
+ * method). The object is immutable, and the hash state is passed to every
+ * call, so it can be shared between threads.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public final class GHash {
+	/**
+	 * The reduction polynomial x^128 + x^7 + x^2 + x + 1, without x^128
+	 */
+	private static final long R = 0xe100000000000000L;
+
+	/**
+	 * Reductions of the four bits shifted out of the element, when it is
+	 * multiplied by x^4
+	 */
+	private static final long[] REDUCTION = new long[16];
+
+	static {
+		for (int f = 0; f < 16; f++) {
+			for (int j = 0; j < 4; j++) {
+				if ((f >> (3 - j) & 1) != 0) {
+					REDUCTION[f] ^= R >>> j;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Upper halves of the 16 multiples of H
+	 */
+	private final long[] tableHigh = new long[16];
+	/**
+	 * Lower halves of the 16 multiples of H
+	 */
+	private final long[] tableLow = new long[16];
+	/**
+	 * Upper half of H
+	 */
+	private final long high;
+	/**
+	 * Lower half of H
+	 */
+	private final long low;
+
+	/**
+	 * Creates a new GHASH function for the given block engine, with the hash
+	 * subkey H = CIPH_K(0^128)
+	 *
+	 * @param engine block engine initialized with the Cipher Key
+	 */
+	public GHash(BlockEngine engine) {
+		this(subkey(engine));
+	}
+
+	/**
+	 * Creates a new GHASH function for the given hash subkey
+	 *
+	 * @param h the hash subkey, a single block
+	 */
+	public GHash(byte[] h) {
+		this(getLong(h, 0), getLong(h, 8));
+	}
+
+	/**
+	 * Creates a new GHASH function, and precomputes its table
+	 *
+	 * @param high upper half of the hash subkey
+	 * @param low  lower half of the hash subkey
+	 */
+	private GHash(long high, long low) {
+		this.high = high;
+		this.low = low;
+
+		long h = high;
+		long l = low;
+
+		for (int i = 8; i > 0; i >>= 1) {
+			tableHigh[i] = h;
+			tableLow[i] = l;
+
+			long carry = -(l & 1) & R;
+			l = l >>> 1 | h << 63;
+			h = h >>> 1 ^ carry;
+		}
+
+		for (int i = 2; i < 16; i <<= 1) {
+			for (int j = 1; j < i; j++) {
+				tableHigh[i + j] = tableHigh[i] ^ tableHigh[j];
+				tableLow[i + j] = tableLow[i] ^ tableLow[j];
+			}
+		}
+	}
+
+	/**
+	 * Multiplies the given element by H, in place
+	 *
+	 * @param x the element as two longs
+	 */
+	public void multiply(long[] x) {
+		long zh = 0;
+		long zl = 0;
+
+		for (int half = 1; half >= 0; half--) {
+			long word = x[half];
+
+			for (int i = 0; i < 64; i += 4) {
+				int f = (int) zl & 0x0f;
+				zl = zl >>> 4 | zh << 60;
+				zh = zh >>> 4 ^ REDUCTION[f];
+
+				int n = (int) (word >>> i) & 0x0f;
+				zh ^= tableHigh[n];
+				zl ^= tableLow[n];
+			}
+		}
+
+		x[0] = zh;
+		x[1] = zl;
+	}
+
+	/**
+	 * Absorbs the given array region into the hash state. An incomplete last
+	 * block is padded with zeros.
+	 *
+	 * @param state the hash state as two longs
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 */
+	public void update(long[] state, byte[] in, int inOff, int len) {
+		int full = len - len % BlockEngine.BLOCK_SIZE;
+
+		for (int i = 0; i < full; i += BlockEngine.BLOCK_SIZE) {
+			state[0] ^= getLong(in, inOff + i);
+			state[1] ^= getLong(in, inOff + i + 8);
+			multiply(state);
+		}
+
+		if (full < len) {
+			byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+			System.arraycopy(in, inOff + full, block, 0, len - full);
+			update(state, block, 0, BlockEngine.BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * Absorbs the final block, holding the bit lengths of the additional data
+	 * and of the ciphertext
+	 *
+	 * @param state      the hash state as two longs
+	 * @param aadLength  length of the additional data in bytes
+	 * @param textLength length of the ciphertext in bytes
+	 */
+	public void updateLengths(long[] state, long aadLength, long textLength) {
+		state[0] ^= aadLength * 8;
+		state[1] ^= textLength * 8;
+		multiply(state);
+	}
+
+	/**
+	 * Creates the GHASH function for H^n, which absorbs a state in one
+	 * multiplication, as if <code>n</code> zero blocks were hashed after it.
+	 * This allows chunks of data to be hashed independently and combined
+	 * afterwards.
+	 *
+	 * @param n positive exponent
+	 * @return function that multiplies by H^n
+	 */
+	public GHash power(long n) {
+		if (n < 1) {
+			throw new IllegalArgumentException("The exponent needs to be positive!");
+		}
+
+		long[] result = { Long.MIN_VALUE, 0 };
+		long[] base = { high, low };
+
+		for (; n > 0; n >>>= 1) {
+			if ((n & 1) != 0) {
+				result = multiply(result, base);
+			}
+
+			base = multiply(base, base);
+		}
+
+		return new GHash(result[0], result[1]);
+	}
+
+	/**
+	 * Multiplies two elements bit by bit, as described in the specification
+	 *
+	 * @param x the first element
+	 * @param y the second element
+	 * @return the product
+	 */
+	static long[] multiply(long[] x, long[] y) {
+		long zh = 0;
+		long zl = 0;
+		long vh = y[0];
+		long vl = y[1];
+
+		for (int i = 0; i < 128; i++) {
+			long bit = i < 64 ? x[0] >>> (63 - i) & 1 : x[1] >>> (127 - i) & 1;
+
+			zh ^= -bit & vh;
+			zl ^= -bit & vl;
+
+			long carry = -(vl & 1) & R;
+			vl = vl >>> 1 | vh << 63;
+			vh = vh >>> 1 ^ carry;
+		}
+
+		return new long[] { zh, zl };
+	}
+
+	/**
+	 * Writes the hash state as a block
+	 *
+	 * @param state  the hash state as two longs
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	public static void getBlock(long[] state, byte[] out, int outOff) {
+		putLong(out, outOff, state[0]);
+		putLong(out, outOff + 8, state[1]);
+	}
+
+	/**
+	 * @param engine block engine initialized with the Cipher Key
+	 * @return the hash subkey
+	 */
+	private static byte[] subkey(BlockEngine engine) {
+		byte[] h = new byte[BlockEngine.BLOCK_SIZE];
+		engine.encryptBlock(h, 0, h, 0);
+
+		return h;
+	}
+
+	/**
+	 * Reads a big-endian long
+	 *
+	 * @param b   array containing the value
+	 * @param off offset of the value
+	 * @return the value
+	 */
+	private static long getLong(byte[] b, int off) {
+		long result = 0;
+
+		for (int i = 0; i < 8; i++) {
+			result = result << 8 | (b[off + i] & 0xff);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes a big-endian long
+	 *
+	 * @param b   array that the value will be written to
+	 * @param off offset of the value
+	 * @param v   the value
+	 */
+	private static void putLong(byte[] b, int off, long v) {
+		for (int i = 7; i >= 0; i--) {
+			b[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "GHash";
+	}
+
+}
@@ -0,0 +1,277 @@
+package hr.fer.kik.mode;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This is an utility class which provides the GCM authenticated encryption
+ * over byte arrays. The payload is encrypted in CTR mode, with a 32-bit
+ * counter field, and the additional data and the ciphertext are
+ * authenticated with GHASH. The ciphertext is followed by a
+ * <code>TAG_LENGTH</code> byte authentication tag.
+ *
+ * Payloads of at least the threshold length are split into chunks of
+ * <code>CHUNK_SIZE</code> bytes. Every chunk is encrypted and hashed on its
+ * own, and the partial hashes are combined with precomputed powers of H.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class GaloisCounterMode {
+	/**
+	 * Length of the authentication tag in bytes
+	 */
+	public static final int TAG_LENGTH = 16;
+	/**
+	 * Length of the IV in bytes, for which the pre-counter block is created
+	 * without hashing
+	 */
+	public static final int DEFAULT_IV_LENGTH = 12;
+	/**
+	 * Default input length in bytes, below which the input is processed on the
+	 * calling thread
+	 */
+	public static final int DEFAULT_THRESHOLD = 256 * 1024;
+	/**
+	 * Size of a single chunk in bytes, a multiple of the block size
+	 */
+	public static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Encrypts the given array region on the common <code>ForkJoinPool</code>,
+	 * if the region is at least <code>DEFAULT_THRESHOLD</code> bytes long
+	 *
+	 * @see #encrypt(BlockEngine, GHash, byte[], byte[], byte[], int, int,
+	 *      byte[], int, Executor, int)
+	 */
+	public static int encrypt(BlockEngine engine, GHash ghash, byte[] iv, byte[] aad, byte[] in, int inOff, int len,
+			byte[] out, int outOff) {
+		return encrypt(engine, ghash, iv, aad, in, inOff, len, out, outOff, ForkJoinPool.commonPool(),
+				DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Encrypts and authenticates the given array region, and writes the
+	 * ciphertext followed by the authentication tag into <code>out</code>, which
+	 * has to hold <code>len + TAG_LENGTH</code> bytes
+	 *
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param ghash     GHASH function for the Cipher Key
+	 * @param iv        the IV, preferably <code>DEFAULT_IV_LENGTH</code> bytes
+	 *                  long
+	 * @param aad       additional data, which is authenticated, but not
+	 *                  encrypted
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is
+	 *                  processed on the calling thread
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public static int encrypt(BlockEngine engine, GHash ghash, byte[] iv, byte[] aad, byte[] in, int inOff, int len,
+			byte[] out, int outOff, Executor executor, int threshold) {
+		byte[] j0 = preCounterBlock(ghash, iv);
+		long[] state = new long[2];
+		ghash.update(state, aad, 0, aad.length);
+
+		Counter counter = counter(j0);
+
+		if (len < threshold || len <= CHUNK_SIZE) {
+			CounterMode.process(engine, counter, in, inOff, len, out, outOff);
+			ghash.update(state, out, outOff, len);
+		} else {
+			ParallelChunks.run(chunks(len), chunk -> {
+				int offset = chunk * CHUNK_SIZE;
+				Counter chunkCounter = counter.copy();
+				chunkCounter.add(offset / BlockEngine.BLOCK_SIZE);
+
+				CounterMode.process(engine, chunkCounter, in, inOff + offset, Math.min(CHUNK_SIZE, len - offset),
+						out, outOff + offset);
+			}, executor);
+
+			hash(ghash, state, out, outOff, len, executor);
+		}
+
+		tag(engine, ghash, j0, state, aad.length, len, out, outOff + len);
+
+		return len + TAG_LENGTH;
+	}
+
+	/**
+	 * Decrypts the given array region on the common <code>ForkJoinPool</code>,
+	 * if the region is at least <code>DEFAULT_THRESHOLD</code> bytes long
+	 *
+	 * @see #decrypt(BlockEngine, GHash, byte[], byte[], byte[], int, int,
+	 *      byte[], int, Executor, int)
+	 */
+	public static int decrypt(BlockEngine engine, GHash ghash, byte[] iv, byte[] aad, byte[] in, int inOff, int len,
+			byte[] out, int outOff) {
+		return decrypt(engine, ghash, iv, aad, in, inOff, len, out, outOff, ForkJoinPool.commonPool(),
+				DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Verifies the authentication tag at the end of the given array region, and
+	 * only then decrypts the ciphertext before it. Nothing is written to
+	 * <code>out</code> when the tag does not match.
+	 *
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param ghash     GHASH function for the Cipher Key
+	 * @param iv        the IV used for encryption
+	 * @param aad       additional data used for encryption
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length, including the tag
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is
+	 *                  processed on the calling thread
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public static int decrypt(BlockEngine engine, GHash ghash, byte[] iv, byte[] aad, byte[] in, int inOff, int len,
+			byte[] out, int outOff, Executor executor, int threshold) {
+		if (len < TAG_LENGTH) {
+			throw new IllegalArgumentException(
+					String.format("The input needs to be at least %d bytes long!", TAG_LENGTH));
+		}
+
+		int textLength = len - TAG_LENGTH;
+		byte[] j0 = preCounterBlock(ghash, iv);
+		long[] state = new long[2];
+		ghash.update(state, aad, 0, aad.length);
+
+		if (textLength < threshold || textLength <= CHUNK_SIZE) {
+			ghash.update(state, in, inOff, textLength);
+		} else {
+			hash(ghash, state, in, inOff, textLength, executor);
+		}
+
+		byte[] tag = new byte[TAG_LENGTH];
+		tag(engine, ghash, j0, state, aad.length, textLength, tag, 0);
+
+		if (!MessageDigest.isEqual(tag, Arrays.copyOfRange(in, inOff + textLength, inOff + len))) {
+			throw new IllegalArgumentException("The authentication tag does not match!");
+		}
+
+		ParallelCounterMode.process(engine, counter(j0), in, inOff, textLength, out, outOff, executor, threshold);
+
+		return textLength;
+	}
+
+	/**
+	 * Creates the pre-counter block J0 from the IV. A 12-byte IV is followed by
+	 * the 32-bit counter 1, while any other IV is hashed.
+	 *
+	 * @param ghash GHASH function for the Cipher Key
+	 * @param iv    the IV
+	 * @return the pre-counter block
+	 */
+	public static byte[] preCounterBlock(GHash ghash, byte[] iv) {
+		if (iv.length == 0) {
+			throw new IllegalArgumentException("The IV can not be empty!");
+		}
+
+		byte[] j0 = new byte[BlockEngine.BLOCK_SIZE];
+
+		if (iv.length == DEFAULT_IV_LENGTH) {
+			System.arraycopy(iv, 0, j0, 0, iv.length);
+			j0[BlockEngine.BLOCK_SIZE - 1] = 1;
+
+			return j0;
+		}
+
+		long[] state = new long[2];
+		ghash.update(state, iv, 0, iv.length);
+		ghash.updateLengths(state, 0, iv.length);
+		GHash.getBlock(state, j0, 0);
+
+		return j0;
+	}
+
+	/**
+	 * @param j0 the pre-counter block
+	 * @return counter positioned at the first payload block, inc32(J0)
+	 */
+	public static Counter counter(byte[] j0) {
+		Counter counter = Counter.wrapping(j0, 32);
+		counter.increment();
+
+		return counter;
+	}
+
+	/**
+	 * Finishes the hash with the length block, and writes the authentication
+	 * tag, GCTR(J0, S)
+	 *
+	 * @param engine     block engine initialized with the Cipher Key
+	 * @param ghash      GHASH function for the Cipher Key
+	 * @param j0         the pre-counter block
+	 * @param state      hash state over the additional data and the ciphertext
+	 * @param aadLength  length of the additional data in bytes
+	 * @param textLength length of the ciphertext in bytes
+	 * @param out        output array
+	 * @param outOff     output offset
+	 */
+	static void tag(BlockEngine engine, GHash ghash, byte[] j0, long[] state, long aadLength, long textLength,
+			byte[] out, int outOff) {
+		ghash.updateLengths(state, aadLength, textLength);
+
+		byte[] s = new byte[BlockEngine.BLOCK_SIZE];
+		GHash.getBlock(state, s, 0);
+		engine.encryptBlock(j0, 0, out, outOff);
+
+		for (int i = 0; i < TAG_LENGTH; i++) {
+			out[outOff + i] ^= s[i];
+		}
+	}
+
+	/**
+	 * Hashes the given array region in chunks on the given executor, and
+	 * combines the partial hashes into the state. The hash of a chunk is
+	 * absorbed by multiplying the state by H raised to the number of blocks in
+	 * the chunk.
+	 *
+	 * @param ghash    GHASH function for the Cipher Key
+	 * @param state    the hash state, which is updated
+	 * @param in       input array
+	 * @param inOff    input offset
+	 * @param len      input length
+	 * @param executor executor that the chunks will be processed on
+	 */
+	private static void hash(GHash ghash, long[] state, byte[] in, int inOff, int len, Executor executor) {
+		int chunks = chunks(len);
+		long[][] partial = new long[chunks][2];
+
+		ParallelChunks.run(chunks, chunk -> {
+			int offset = chunk * CHUNK_SIZE;
+			ghash.update(partial[chunk], in, inOff + offset, Math.min(CHUNK_SIZE, len - offset));
+		}, executor);
+
+		GHash chunkPower = ghash.power(CHUNK_SIZE / BlockEngine.BLOCK_SIZE);
+		int lastBlocks = CounterMode.blocks(len - (chunks - 1) * CHUNK_SIZE);
+		GHash lastPower = ghash.power(lastBlocks);
+
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			(chunk == chunks - 1 ? lastPower : chunkPower).multiply(state);
+			state[0] ^= partial[chunk][0];
+			state[1] ^= partial[chunk][1];
+		}
+	}
+
+	/**
+	 * @param len input length
+	 * @return number of chunks needed to hold <code>len</code> bytes
+	 */
+	private static int chunks(int len) {
+		return (len + CHUNK_SIZE - 1) / CHUNK_SIZE;
+	}
+
+}
@@ -0,0 +1,228 @@
+package hr.fer.kik.mode;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executor;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class provides the GCM authenticated encryption as a stream processor.
+ * On encryption the ciphertext is output as soon as it is available, and
+ * <code>doFinal</code> appends the authentication tag. On decryption the whole
+ * input is kept until <code>doFinal</code>, so no plaintext is output before
+ * the tag is verified.
+ *
+ * Once the encryption is finished, the processor can not be used again, since
+ * the IV must never be reused with the same key.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class GaloisCounterStreamProcessor implements StreamProcessor {
+	/**
+	 * Block engine initialized with the Cipher Key
+	 */
+	private final BlockEngine engine;
+	/**
+	 * GHASH function for the Cipher Key
+	 */
+	private final GHash ghash;
+	/**
+	 * True for encryption, false for decryption
+	 */
+	private final boolean encryption;
+	/**
+	 * The IV
+	 */
+	private final byte[] iv;
+	/**
+	 * Executor used for processing on multiple threads
+	 */
+	private final Executor executor;
+	/**
+	 * Input length in bytes, from which the input is processed on multiple
+	 * threads
+	 */
+	private final int parallelThreshold;
+
+	/**
+	 * Additional data
+	 */
+	private final ByteArrayOutputStream aad = new ByteArrayOutputStream();
+	/**
+	 * Input kept until <code>doFinal</code> on decryption
+	 */
+	private final ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+
+	/**
+	 * Keystream of the encryption, null until the first <code>update</code>
+	 */
+	private CounterStreamProcessor keystream = null;
+	/**
+	 * Hash state of the encryption
+	 */
+	private final long[] state = new long[2];
+	/**
+	 * Incomplete ciphertext block, which is not hashed yet
+	 */
+	private final byte[] partial = new byte[BlockEngine.BLOCK_SIZE];
+	/**
+	 * Number of bytes in the incomplete ciphertext block
+	 */
+	private int partialLength = 0;
+	/**
+	 * Length of the ciphertext output so far
+	 */
+	private long textLength = 0;
+	/**
+	 * True once the encryption is finished
+	 */
+	private boolean finished = false;
+
+	/**
+	 * Creates a new processor
+	 *
+	 * @param engine            block engine initialized with the Cipher Key
+	 * @param ghash             GHASH function for the Cipher Key
+	 * @param encryption        true for encryption, false for decryption
+	 * @param iv                the IV
+	 * @param executor          executor used for processing on multiple threads
+	 * @param parallelThreshold input length in bytes, from which the input is
+	 *                          processed on multiple threads
+	 */
+	public GaloisCounterStreamProcessor(BlockEngine engine, GHash ghash, boolean encryption, byte[] iv,
+			Executor executor, int parallelThreshold) {
+		if (iv.length == 0) {
+			throw new IllegalArgumentException("The IV can not be empty!");
+		}
+
+		this.engine = engine;
+		this.ghash = ghash;
+		this.encryption = encryption;
+		this.iv = iv.clone();
+		this.executor = executor;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	@Override
+	public void updateAAD(byte[] in, int inOff, int len) {
+		checkFinished();
+
+		if (keystream != null || ciphertext.size() != 0) {
+			throw new IllegalArgumentException("The additional data has to be given before the input!");
+		}
+
+		aad.write(in, inOff, len);
+	}
+
+	@Override
+	public int getUpdateOutputSize(int len) {
+		return encryption ? len : 0;
+	}
+
+	@Override
+	public int getFinalOutputSize(int len) {
+		return encryption ? len + GaloisCounterMode.TAG_LENGTH
+				: Math.max(0, ciphertext.size() + len - GaloisCounterMode.TAG_LENGTH);
+	}
+
+	@Override
+	public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		checkFinished();
+
+		if (!encryption) {
+			ciphertext.write(in, inOff, len);
+			return 0;
+		}
+
+		if (keystream == null) {
+			byte[] j0 = GaloisCounterMode.preCounterBlock(ghash, iv);
+			keystream = new CounterStreamProcessor(engine, GaloisCounterMode.counter(j0), executor,
+					parallelThreshold);
+			ghash.update(state, aad.toByteArray(), 0, aad.size());
+		}
+
+		int produced = keystream.update(in, inOff, len, out, outOff);
+		hash(out, outOff, produced);
+		textLength += produced;
+
+		return produced;
+	}
+
+	@Override
+	public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+		checkFinished();
+
+		try {
+			if (!encryption) {
+				ciphertext.write(in, inOff, len);
+				byte[] input = ciphertext.toByteArray();
+
+				return GaloisCounterMode.decrypt(engine, ghash, iv, aad.toByteArray(), input, 0, input.length, out,
+						outOff, executor, parallelThreshold);
+			}
+
+			int produced = update(in, inOff, len, out, outOff);
+			ghash.update(state, partial, 0, partialLength);
+			GaloisCounterMode.tag(engine, ghash, GaloisCounterMode.preCounterBlock(ghash, iv), state, aad.size(),
+					textLength, out, outOff + produced);
+			finished = true;
+
+			return produced + GaloisCounterMode.TAG_LENGTH;
+		} finally {
+			reset();
+		}
+	}
+
+	@Override
+	public void reset() {
+		aad.reset();
+		ciphertext.reset();
+		keystream = null;
+		state[0] = 0;
+		state[1] = 0;
+		partialLength = 0;
+		textLength = 0;
+	}
+
+	/**
+	 * Absorbs the given ciphertext into the hash state, keeping an incomplete
+	 * block until the next call
+	 *
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 */
+	private void hash(byte[] in, int inOff, int len) {
+		if (partialLength != 0) {
+			int n = Math.min(len, BlockEngine.BLOCK_SIZE - partialLength);
+			System.arraycopy(in, inOff, partial, partialLength, n);
+			partialLength += n;
+			inOff += n;
+			len -= n;
+
+			if (partialLength < BlockEngine.BLOCK_SIZE) {
+				return;
+			}
+
+			ghash.update(state, partial, 0, BlockEngine.BLOCK_SIZE);
+			partialLength = 0;
+		}
+
+		int full = len - len % BlockEngine.BLOCK_SIZE;
+		ghash.update(state, in, inOff, full);
+
+		System.arraycopy(in, inOff + full, partial, 0, len - full);
+		partialLength = len - full;
+	}
+
+	/**
+	 * Checks that the encryption is not finished
+	 */
+	private void checkFinished() {
+		if (finished) {
+			throw new IllegalStateException("The IV can not be reused, the cipher has to be initialized again!");
+		}
+	}
+
+}
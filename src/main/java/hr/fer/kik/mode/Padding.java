@@ -0,0 +1,195 @@
+package hr.fer.kik.mode;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * Supported paddings of the block modes of operation. The padding is always
+ * applied in place, on the last incomplete block, and the checks of the
+ * reversible paddings examine the whole last block, so the time taken does
+ * not depend on where the padding is invalid.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public enum Padding {
+	/**
+	 * No padding, the input length has to be a multiple of the block size
+	 */
+	NONE {
+		@Override
+		public int paddedLength(int len) {
+			return len;
+		}
+
+		@Override
+		public void pad(byte[] block, int off, int len) {
+			if (len != 0) {
+				throw new IllegalArgumentException(
+						String.format("The input length needs to be a multiple of %d bytes!", BlockEngine.BLOCK_SIZE));
+			}
+		}
+
+		@Override
+		public int unpad(byte[] in, int inOff, int len) {
+			return len;
+		}
+	},
+	/**
+	 * The incomplete last block is filled with zeros, and nothing is added to an
+	 * aligned input. The zeros can not be told apart from the data, so they are
+	 * not removed on decryption.
+	 */
+	ZERO {
+		@Override
+		public int paddedLength(int len) {
+			return (len + BlockEngine.BLOCK_SIZE - 1) / BlockEngine.BLOCK_SIZE * BlockEngine.BLOCK_SIZE;
+		}
+
+		@Override
+		public void pad(byte[] block, int off, int len) {
+			for (int i = len; i < BlockEngine.BLOCK_SIZE; i++) {
+				block[off + i] = 0;
+			}
+		}
+
+		@Override
+		public int unpad(byte[] in, int inOff, int len) {
+			return len;
+		}
+	},
+	/**
+	 * PKCS#7 padding. The last block is filled with bytes whose value is the
+	 * number of added bytes, and a full block of padding is added when the
+	 * input is already aligned.
+	 */
+	PKCS7 {
+		@Override
+		public int paddedLength(int len) {
+			return (len / BlockEngine.BLOCK_SIZE + 1) * BlockEngine.BLOCK_SIZE;
+		}
+
+		@Override
+		public void pad(byte[] block, int off, int len) {
+			byte value = (byte) (BlockEngine.BLOCK_SIZE - len);
+
+			for (int i = len; i < BlockEngine.BLOCK_SIZE; i++) {
+				block[off + i] = value;
+			}
+		}
+
+		@Override
+		public int unpad(byte[] in, int inOff, int len) {
+			checkPadded(len);
+
+			int value = in[inOff + len - 1] & 0xff;
+			int bad = (value - 1) >>> 31 | (BlockEngine.BLOCK_SIZE - value) >>> 31;
+
+			for (int i = 1; i <= BlockEngine.BLOCK_SIZE; i++) {
+				int inPadding = (i - value - 1) >> 31;
+				bad |= inPadding & ((in[inOff + len - i] & 0xff) ^ value);
+			}
+
+			return unpadded(len, value, bad);
+		}
+	},
+	/**
+	 * ISO/IEC 7816-4 padding. The byte 0x80 is appended, and the rest of the
+	 * last block is filled with zeros, so a full block of padding is added when
+	 * the input is already aligned.
+	 */
+	ISO7816 {
+		@Override
+		public int paddedLength(int len) {
+			return (len / BlockEngine.BLOCK_SIZE + 1) * BlockEngine.BLOCK_SIZE;
+		}
+
+		@Override
+		public void pad(byte[] block, int off, int len) {
+			block[off + len] = (byte) 0x80;
+
+			for (int i = len + 1; i < BlockEngine.BLOCK_SIZE; i++) {
+				block[off + i] = 0;
+			}
+		}
+
+		@Override
+		public int unpad(byte[] in, int inOff, int len) {
+			checkPadded(len);
+
+			int found = 0;
+			int bad = 0;
+			int value = 0;
+
+			for (int i = 1; i <= BlockEngine.BLOCK_SIZE; i++) {
+				int b = in[inOff + len - i] & 0xff;
+				int nonZero = (b | -b) >>> 31;
+				int marker = nonZero & ~found;
+
+				bad |= marker & (b ^ 0x80);
+				value |= -marker & i;
+				found |= nonZero;
+			}
+
+			return unpadded(len, value, bad | found ^ 1);
+		}
+	};
+
+	/**
+	 * @param len input length
+	 * @return length of the padded input
+	 */
+	public abstract int paddedLength(int len);
+
+	/**
+	 * Fills the rest of the last block with the padding
+	 *
+	 * @param block array containing the last block
+	 * @param off   offset of the last block
+	 * @param len   number of input bytes in the last block, less than the block
+	 *              size
+	 */
+	public abstract void pad(byte[] block, int off, int len);
+
+	/**
+	 * Checks the padding of the last block of the given array region
+	 *
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length, a multiple of the block size
+	 * @return length of the input without the padding
+	 */
+	public abstract int unpad(byte[] in, int inOff, int len);
+
+	/**
+	 * @return true if the padding is removed on decryption, so the last block
+	 *         has to be kept until the end of the input
+	 */
+	public boolean isReversible() {
+		return this == PKCS7 || this == ISO7816;
+	}
+
+	/**
+	 * @param len input length
+	 */
+	private static void checkPadded(int len) {
+		if (len == 0 || len % BlockEngine.BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException(
+					String.format("The input length needs to be a multiple of %d bytes!", BlockEngine.BLOCK_SIZE));
+		}
+	}
+
+	/**
+	 * @param len   input length
+	 * @param value length of the padding
+	 * @param bad   non-zero if the padding is not valid
+	 * @return length of the input without the padding
+	 */
+	private static int unpadded(int len, int value, int bad) {
+		if (bad != 0) {
+			throw new IllegalArgumentException("The padding is not valid!");
+		}
+
+		return len - value;
+	}
+
+}
@@ -0,0 +1,54 @@
+package hr.fer.kik.mode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * This is an utility class which runs independent, indexed chunks of work on
+ * an executor, and waits for all of them to finish.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class ParallelChunks {
+
+	/**
+	 * Runs <code>action</code> for every chunk index from 0 inclusive to
+	 * <code>chunks</code> exclusive. On a <code>ForkJoinPool</code> the index
+	 * range is partitioned by the spliterator of a parallel stream, while on any
+	 * other executor every chunk is submitted separately. An unchecked exception
+	 * thrown by any chunk is rethrown to the caller.
+	 * 
+	 * @param chunks   number of chunks
+	 * @param action   work for a single chunk index
+	 * @param executor executor that the chunks will be run on
+	 */
+	public static void run(int chunks, IntConsumer action, Executor executor) {
+		if (executor instanceof ForkJoinPool pool) {
+			pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(action)).join();
+			return;
+		}
+
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks];
+
+		for (int c = 0; c < chunks; c++) {
+			int chunk = c;
+			futures[c] = CompletableFuture.runAsync(() -> action.accept(chunk), executor);
+		}
+
+		try {
+			CompletableFuture.allOf(futures).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+
+			throw e;
+		}
+	}
+
+}
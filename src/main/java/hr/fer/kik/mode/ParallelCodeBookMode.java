@@ -0,0 +1,175 @@
+package hr.fer.kik.mode;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This is an utility class which provides the ECB mode of operation split
+ * across multiple threads. The blocks are independent, so the block range is
+ * divided into chunks of <code>CHUNK_BLOCKS</code> blocks, which are encrypted
+ * or decrypted independently of one another.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class ParallelCodeBookMode {
+	/**
+	 * Default input length in bytes, below which the input is processed on the
+	 * calling thread
+	 */
+	public static final int DEFAULT_THRESHOLD = 256 * 1024;
+	/**
+	 * Number of blocks in a single chunk
+	 */
+	public static final int CHUNK_BLOCKS = 4096;
+
+	/**
+	 * Encrypts the given array region on the common <code>ForkJoinPool</code>, if
+	 * the region is at least <code>DEFAULT_THRESHOLD</code> bytes long
+	 * 
+	 * @param engine block engine initialized with the Cipher Key
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length, a multiple of the block size
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	public static void encrypt(BlockEngine engine, byte[] in, int inOff, int len, byte[] out, int outOff) {
+		process(engine, true, in, inOff, len, out, outOff, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Decrypts the given array region on the common <code>ForkJoinPool</code>, if
+	 * the region is at least <code>DEFAULT_THRESHOLD</code> bytes long
+	 * 
+	 * @param engine block engine initialized with the Cipher Key
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length, a multiple of the block size
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	public static void decrypt(BlockEngine engine, byte[] in, int inOff, int len, byte[] out, int outOff) {
+		process(engine, false, in, inOff, len, out, outOff, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Encrypts or decrypts the given array region on the given
+	 * <code>executor</code>, if the region is at least <code>threshold</code>
+	 * bytes long, otherwise on the calling thread
+	 * 
+	 * @param engine     block engine initialized with the Cipher Key
+	 * @param encryption true for encryption, false for decryption
+	 * @param in         input array
+	 * @param inOff      input offset
+	 * @param len        input length, a multiple of the block size
+	 * @param out        output array
+	 * @param outOff     output offset
+	 * @param executor   executor that the chunks will be processed on
+	 * @param threshold  input length in bytes, below which the input is
+	 *                   processed on the calling thread
+	 */
+	public static void process(BlockEngine engine, boolean encryption, byte[] in, int inOff, int len, byte[] out,
+			int outOff, Executor executor, int threshold) {
+		if (len % BlockEngine.BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException(
+					String.format("The input length needs to be a multiple of %d bytes!", BlockEngine.BLOCK_SIZE));
+		}
+
+		int blocks = len / BlockEngine.BLOCK_SIZE;
+
+		if (len < threshold || blocks <= CHUNK_BLOCKS) {
+			processBlocks(engine, encryption, in, inOff, out, outOff, blocks);
+			return;
+		}
+
+		int chunks = (blocks + CHUNK_BLOCKS - 1) / CHUNK_BLOCKS;
+
+		ParallelChunks.run(chunks, chunk -> {
+			int first = chunk * CHUNK_BLOCKS;
+			int offset = first * BlockEngine.BLOCK_SIZE;
+
+			processBlocks(engine, encryption, in, inOff + offset, out, outOff + offset,
+					Math.min(CHUNK_BLOCKS, blocks - first));
+		}, executor);
+	}
+
+	/**
+	 * Encrypts the given array region, and pads the last block in place. The
+	 * output array has to hold <code>padding.paddedLength(len)</code> bytes.
+	 *
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param padding   the padding
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is
+	 *                  processed on the calling thread
+	 * @return number of bytes written to <code>out</code>
+	 */
+	public static int encryptPadded(BlockEngine engine, Padding padding, byte[] in, int inOff, int len, byte[] out,
+			int outOff, Executor executor, int threshold) {
+		int padded = padding.paddedLength(len);
+		int full = len / BlockEngine.BLOCK_SIZE * BlockEngine.BLOCK_SIZE;
+
+		if (padded > full) {
+			System.arraycopy(in, inOff + full, out, outOff + full, len - full);
+			padding.pad(out, outOff + full, len - full);
+			processBlocks(engine, true, out, outOff + full, out, outOff + full, 1);
+		}
+
+		process(engine, true, in, inOff, full, out, outOff, executor, threshold);
+
+		return padded;
+	}
+
+	/**
+	 * Decrypts the given array region, and removes the padding. The output array
+	 * has to hold <code>len</code> bytes, the bytes after the returned length
+	 * contain the removed padding.
+	 *
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param padding   the padding
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length, a multiple of the block size
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is
+	 *                  processed on the calling thread
+	 * @return length of the plaintext written to <code>out</code>
+	 */
+	public static int decryptPadded(BlockEngine engine, Padding padding, byte[] in, int inOff, int len, byte[] out,
+			int outOff, Executor executor, int threshold) {
+		process(engine, false, in, inOff, len, out, outOff, executor, threshold);
+
+		return padding.unpad(out, outOff, len);
+	}
+
+	/**
+	 * Encrypts or decrypts consecutive blocks on the calling thread
+	 * 
+	 * @param engine     block engine initialized with the Cipher Key
+	 * @param encryption true for encryption, false for decryption
+	 * @param in         input array
+	 * @param inOff      input offset
+	 * @param out        output array
+	 * @param outOff     output offset
+	 * @param blocks     number of blocks
+	 */
+	private static void processBlocks(BlockEngine engine, boolean encryption, byte[] in, int inOff, byte[] out,
+			int outOff, int blocks) {
+		if (encryption) {
+			engine.encryptBlocks(in, inOff, out, outOff, blocks);
+		} else {
+			engine.decryptBlocks(in, inOff, out, outOff, blocks);
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package hr.fer.kik.mode;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This is an utility class which provides the CTR mode of operation split
+ * across multiple threads. The input is divided into counter-aligned chunks of
+ * <code>CHUNK_SIZE</code> bytes, and every chunk is processed with its own copy
+ * of the counter, advanced to the first block of the chunk, so the result is
+ * the same as the result of {@link CounterMode}.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class ParallelCounterMode {
+	/**
+	 * Default input length in bytes, below which the input is processed on the
+	 * calling thread
+	 */
+	public static final int DEFAULT_THRESHOLD = 256 * 1024;
+	/**
+	 * Length of a single chunk in bytes, which is a multiple of the block size
+	 */
+	public static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Applies the keystream to the given array region on the common
+	 * <code>ForkJoinPool</code>, if the region is at least
+	 * <code>DEFAULT_THRESHOLD</code> bytes long
+	 * 
+	 * @param engine  block engine initialized with the Cipher Key
+	 * @param counter counter positioned at the first block
+	 * @param in      input array
+	 * @param inOff   input offset
+	 * @param len     input length
+	 * @param out     output array
+	 * @param outOff  output offset
+	 */
+	public static void process(BlockEngine engine, Counter counter, byte[] in, int inOff, int len, byte[] out,
+			int outOff) {
+		process(engine, counter, in, inOff, len, out, outOff, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Applies the keystream to the given array region on the given
+	 * <code>executor</code>, if the region is at least <code>threshold</code>
+	 * bytes long, otherwise on the calling thread. The counter is advanced past
+	 * every block that was used, as in {@link CounterMode}.
+	 * 
+	 * @param engine    block engine initialized with the Cipher Key
+	 * @param counter   counter positioned at the first block
+	 * @param in        input array
+	 * @param inOff     input offset
+	 * @param len       input length
+	 * @param out       output array
+	 * @param outOff    output offset
+	 * @param executor  executor that the chunks will be processed on
+	 * @param threshold input length in bytes, below which the input is processed
+	 *                  on the calling thread
+	 */
+	public static void process(BlockEngine engine, Counter counter, byte[] in, int inOff, int len, byte[] out,
+			int outOff, Executor executor, int threshold) {
+		if (len < threshold || len <= CHUNK_SIZE) {
+			CounterMode.process(engine, counter, in, inOff, len, out, outOff);
+			return;
+		}
+
+		Counter start = counter.copy();
+		int chunks = (len + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		ParallelChunks.run(chunks, chunk -> processChunk(engine, start, in, inOff, len, out, outOff, chunk), executor);
+
+		counter.add(CounterMode.blocks(len));
+	}
+
+	/**
+	 * Processes the <code>chunk</code>-th chunk of the given array region
+	 * 
+	 * @param engine block engine initialized with the Cipher Key
+	 * @param start  counter positioned at the first block of the region, which
+	 *               is not modified
+	 * @param in     input array
+	 * @param inOff  input offset of the region
+	 * @param len    input length of the region
+	 * @param out    output array
+	 * @param outOff output offset of the region
+	 * @param chunk  index of the chunk
+	 */
+	private static void processChunk(BlockEngine engine, Counter start, byte[] in, int inOff, int len, byte[] out,
+			int outOff, int chunk) {
+		int offset = chunk * CHUNK_SIZE;
+		Counter counter = start.copy();
+		counter.add(offset / BlockEngine.BLOCK_SIZE);
+
+		CounterMode.process(engine, counter, in, inOff + offset, Math.min(CHUNK_SIZE, len - offset), out,
+				outOff + offset);
+	}
+
+}
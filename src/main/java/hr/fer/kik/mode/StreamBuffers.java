@@ -0,0 +1,103 @@
+package hr.fer.kik.mode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import hr.fer.kik.engine.BlockEngine;
+
+/**
+ * This class feeds the remaining bytes of a <code>ByteBuffer</code> to a
+ * stream processor. Buffers backed by accessible arrays are processed in
+ * place, while the other buffers, like direct buffers, are passed through a
+ * small window, so the payload is never copied onto the heap as a whole.
+ *
+ * @author Ivan Lokas
+ *
+ */
+final class StreamBuffers {
+	/**
+	 * Size of the window in bytes
+	 */
+	static final int WINDOW_SIZE = 8192;
+
+	private StreamBuffers() {
+	}
+
+	/**
+	 * Processes the remaining bytes of <code>in</code>, writes the output at the
+	 * position of <code>out</code>, and advances both positions. The buffers can
+	 * share their content, for processing in place, but they need to be
+	 * different objects. Array regions which partly overlap are processed from
+	 * a copy of the input.
+	 *
+	 * @param processor the stream processor
+	 * @param in        input buffer
+	 * @param out       output buffer
+	 * @param last      true for <code>doFinal</code>, false for
+	 *                  <code>update</code>
+	 * @return number of bytes written to <code>out</code>
+	 */
+	static int process(StreamProcessor processor, ByteBuffer in, ByteBuffer out, boolean last) {
+		if (in == out) {
+			throw new IllegalArgumentException("The input and the output need to be different buffer objects!");
+		}
+
+		int len = in.remaining();
+		int size = last ? processor.getFinalOutputSize(len) : processor.getUpdateOutputSize(len);
+
+		if (out.isReadOnly()) {
+			throw new IllegalArgumentException("The output buffer is read-only!");
+		}
+
+		if (out.remaining() < size) {
+			throw new IllegalArgumentException(String.format(
+					"The output buffer has %d bytes remaining, but %d are needed!", out.remaining(), size));
+		}
+
+		if (in.hasArray() && out.hasArray()) {
+			byte[] input = in.array();
+			int inOff = in.arrayOffset() + in.position();
+			int outOff = out.arrayOffset() + out.position();
+
+			if (input == out.array() && inOff != outOff && inOff < outOff + size && outOff < inOff + len) {
+				// The regions partly overlap, so the input is copied before the
+				// output overwrites it
+				input = Arrays.copyOfRange(input, inOff, inOff + len);
+				inOff = 0;
+			}
+
+			int produced = last ? processor.doFinal(input, inOff, len, out.array(), outOff)
+					: processor.update(input, inOff, len, out.array(), outOff);
+
+			in.position(in.limit());
+			out.position(out.position() + produced);
+
+			return produced;
+		}
+
+		byte[] input = new byte[Math.min(len, WINDOW_SIZE)];
+		byte[] output = new byte[input.length + 2 * BlockEngine.BLOCK_SIZE];
+		int produced = 0;
+
+		do {
+			int n = Math.min(input.length, in.remaining());
+			boolean end = last && n == in.remaining();
+			int outSize = end ? processor.getFinalOutputSize(n) : processor.getUpdateOutputSize(n);
+
+			if (output.length < outSize) {
+				output = new byte[outSize];
+			}
+
+			in.get(input, 0, n);
+			int m = end ? processor.doFinal(input, 0, n, output, 0) : processor.update(input, 0, n, output, 0);
+			out.put(output, 0, m);
+			produced += m;
+		} while (in.hasRemaining());
+
+		Arrays.fill(input, (byte) 0);
+		Arrays.fill(output, (byte) 0);
+
+		return produced;
+	}
+
+}
@@ -0,0 +1,100 @@
+package hr.fer.kik.mode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface that models a mode of operation which processes its input
+ * incrementally. Every <code>update</code> call outputs as much as the mode of
+ * operation allows, and the remaining state is carried over to the next call,
+ * until <code>doFinal</code> processes the tail and resets the processor.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public interface StreamProcessor {
+
+	/**
+	 * @param len length of the next <code>update</code> input
+	 * @return maximum number of bytes the next <code>update</code> call outputs
+	 */
+	int getUpdateOutputSize(int len);
+
+	/**
+	 * @param len length of the <code>doFinal</code> input
+	 * @return maximum number of bytes the <code>doFinal</code> call outputs
+	 */
+	int getFinalOutputSize(int len);
+
+	/**
+	 * Absorbs additional data, which is authenticated, but not encrypted. It has
+	 * to be called before the first <code>update</code>.
+	 * 
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 */
+	default void updateAAD(byte[] in, int inOff, int len) {
+		throw new IllegalArgumentException("The mode of operation does not support additional data!");
+	}
+
+	/**
+	 * Processes the given array region, and writes every byte that is already
+	 * available into <code>out</code>
+	 * 
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	int update(byte[] in, int inOff, int len, byte[] out, int outOff);
+
+	/**
+	 * Processes the given array region together with the carried over state,
+	 * writes the rest of the output into <code>out</code>, and resets the
+	 * processor
+	 * 
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @return number of bytes written to <code>out</code>
+	 */
+	int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff);
+
+	/**
+	 * Processes the remaining bytes of <code>in</code>, writes every byte that is
+	 * already available at the position of <code>out</code>, and advances both
+	 * positions. Heap buffers are processed in place, and the other buffers
+	 * through a small window.
+	 * 
+	 * @param in  input buffer
+	 * @param out output buffer, a different object than <code>in</code>
+	 * @return number of bytes written to <code>out</code>
+	 */
+	default int update(ByteBuffer in, ByteBuffer out) {
+		return StreamBuffers.process(this, in, out, false);
+	}
+
+	/**
+	 * Processes the remaining bytes of <code>in</code> together with the carried
+	 * over state, writes the rest of the output at the position of
+	 * <code>out</code>, advances both positions, and resets the processor
+	 * 
+	 * @param in  input buffer
+	 * @param out output buffer, a different object than <code>in</code>
+	 * @return number of bytes written to <code>out</code>
+	 */
+	default int doFinal(ByteBuffer in, ByteBuffer out) {
+		return StreamBuffers.process(this, in, out, true);
+	}
+
+	/**
+	 * Drops the carried over state, and returns the processor to the state it
+	 * was created in
+	 */
+	void reset();
+
+}
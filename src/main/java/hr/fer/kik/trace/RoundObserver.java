@@ -0,0 +1,39 @@
+package hr.fer.kik.trace;
+
+/**
+ * Interface that models an observer of the intermediate states of the Cipher
+ * and the Inverse Cipher. An observer is set on a single algorithm or cipher
+ * instance, and blocks are only traced while it is set, so instances without
+ * an observer run on the block engine at full speed.
+ *
+ * The states are passed as packed blocks of 16 bytes, in the order of the
+ * input bytes. The arrays are reused between calls, so an observer that
+ * keeps a state has to copy it.
+ *
+ * Traced operations are never split across threads, so an observer is called
+ * from the thread of the operation, one block after another.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public interface RoundObserver {
+
+	/**
+	 * Called before a block is processed
+	 *
+	 * @param encryption true for the Cipher, false for the Inverse Cipher
+	 * @param input      the input block
+	 * @param key        the Cipher Key
+	 */
+	default void begin(boolean encryption, byte[] input, byte[] key) {
+	}
+
+	/**
+	 * Called after every step of the Cipher or the Inverse Cipher
+	 *
+	 * @param round the round, counted from 0 in both directions
+	 * @param step  the step
+	 * @param state the State, or the round key of the key schedule steps
+	 */
+	void onStep(int round, RoundStep step, byte[] state);
+}
@@ -0,0 +1,83 @@
+package hr.fer.kik.trace;
+
+/**
+ * Steps of the Cipher and the Inverse Cipher, at which the State is reported
+ * to a <code>RoundObserver</code>, named as in the FIPS-197 example vectors
+ *
+ * @author Ivan Lokas
+ *
+ */
+public enum RoundStep {
+	/**
+	 * Input of the Cipher
+	 */
+	INPUT("input"),
+	/**
+	 * State at the start of a round
+	 */
+	START("start"),
+	/**
+	 * State after SubBytes
+	 */
+	S_BOX("s_box"),
+	/**
+	 * State after ShiftRows
+	 */
+	S_ROW("s_row"),
+	/**
+	 * State after MixColumns
+	 */
+	M_COL("m_col"),
+	/**
+	 * Round key of the Cipher, instead of the State
+	 */
+	K_SCH("k_sch"),
+	/**
+	 * Output of the Cipher
+	 */
+	OUTPUT("output"),
+	/**
+	 * Input of the Inverse Cipher
+	 */
+	IINPUT("iinput"),
+	/**
+	 * State at the start of an inverse round
+	 */
+	ISTART("istart"),
+	/**
+	 * State after InvShiftRows
+	 */
+	IS_ROW("is_row"),
+	/**
+	 * State after InvSubBytes
+	 */
+	IS_BOX("is_box"),
+	/**
+	 * Round key of the Inverse Cipher, instead of the State
+	 */
+	IK_SCH("ik_sch"),
+	/**
+	 * State after AddRoundKey in an inverse round
+	 */
+	IK_ADD("ik_add"),
+	/**
+	 * Output of the Inverse Cipher
+	 */
+	IOUTPUT("ioutput");
+
+	/**
+	 * Name of the step in the FIPS-197 example vectors
+	 */
+	private final String label;
+
+	private RoundStep(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * @return name of the step in the FIPS-197 example vectors
+	 */
+	public String getLabel() {
+		return label;
+	}
+}
@@ -0,0 +1,55 @@
+package hr.fer.kik.trace;
+
+import java.io.PrintStream;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * Observer which prints the intermediate states in the format of the FIPS-197
+ * example vectors, one line per step
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class TextRoundObserver implements RoundObserver {
+	/**
+	 * Formatter of the states as lowercase hex strings
+	 */
+	private static final HexFormat HEX = HexFormat.of();
+
+	/**
+	 * Stream that the lines are printed to
+	 */
+	private final PrintStream out;
+
+	/**
+	 * Creates a new observer
+	 *
+	 * @param out stream that the lines are printed to
+	 */
+	public TextRoundObserver(PrintStream out) {
+		this.out = Objects.requireNonNull(out);
+	}
+
+	@Override
+	public void begin(boolean encryption, byte[] input, byte[] key) {
+		if (encryption) {
+			out.println(String.format("PLAINTEXT: %s", HEX.formatHex(input)));
+			out.println(String.format("KEY: %s", HEX.formatHex(key)));
+			out.println("CIPHER (ENCRYPT):");
+		} else {
+			out.println("INVERSE CIPHER (DECRYPT):");
+		}
+	}
+
+	@Override
+	public void onStep(int round, RoundStep step, byte[] state) {
+		out.println(String.format("round[%2d].%s %s", round, step.getLabel(), HEX.formatHex(state)));
+	}
+
+	@Override
+	public String toString() {
+		return "TextRoundObserver";
+	}
+
+}
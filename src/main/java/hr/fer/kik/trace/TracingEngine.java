@@ -0,0 +1,65 @@
+package hr.fer.kik.trace;
+
+import java.util.Objects;
+
+import hr.fer.kik.AES128;
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.util.AlgorithmUtils;
+
+/**
+ * Block engine which runs the reference implementation of the Cipher, and
+ * reports the intermediate states of every block to an observer. It is only
+ * used while an observer is set, so tracing can be enabled for a single
+ * cipher in any mode of operation.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class TracingEngine implements BlockEngine {
+	/**
+	 * Algorithm providing the reference implementation, which does not depend on
+	 * its state
+	 */
+	private static final AES128 REFERENCE = new AES128();
+
+	/**
+	 * Key schedule in the matrix format
+	 */
+	private final int[][] keySchedule;
+	/**
+	 * Observer of the intermediate states
+	 */
+	private final RoundObserver observer;
+
+	/**
+	 * Creates a new engine
+	 *
+	 * @param keySchedule the key schedule in the matrix format, which is not
+	 *                    copied
+	 * @param observer    observer of the intermediate states
+	 */
+	public TracingEngine(int[][] keySchedule, RoundObserver observer) {
+		this.keySchedule = Objects.requireNonNull(keySchedule);
+		this.observer = Objects.requireNonNull(observer);
+	}
+
+	@Override
+	public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		int[][] state = new int[AES128.getNb()][AES128.getNb()];
+		AlgorithmUtils.bytesToState(in, inOff, state, 0);
+		AlgorithmUtils.stateToBytes(REFERENCE.referenceCipher(state, keySchedule, observer), 0, out, outOff);
+	}
+
+	@Override
+	public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		int[][] state = new int[AES128.getNb()][AES128.getNb()];
+		AlgorithmUtils.bytesToState(in, inOff, state, 0);
+		AlgorithmUtils.stateToBytes(REFERENCE.referenceInvCipher(state, keySchedule, observer), 0, out, outOff);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TracingEngine[%s]", observer);
+	}
+
+}
@@ -176,6 +176,62 @@ public class AlgorithmUtils {
 		return result;
 	}
 
+	/**
+	 * Copies the block which starts at the <code>col</code>-th column of the given
+	 * <code>matrix</code> into the byte array, column by column
+	 * 
+	 * @param matrix the source matrix with Nb rows
+	 * @param col    index of the first column of the block
+	 * @param out    array that the block will be written to
+	 * @param outOff offset of the block
+	 */
+	public static void stateToBytes(int[][] matrix, int col, byte[] out, int outOff) {
+		for (int j = 0; j < Nb; j++) {
+			for (int i = 0; i < Nb; i++) {
+				out[outOff + Nb * j + i] = (byte) matrix[i][col + j];
+			}
+		}
+	}
+
+	/**
+	 * Copies the block from the byte array into the given <code>matrix</code>,
+	 * starting at its <code>col</code>-th column
+	 * 
+	 * @param in     array containing the block
+	 * @param inOff  offset of the block
+	 * @param matrix the destination matrix with Nb rows
+	 * @param col    index of the first column of the block
+	 */
+	public static void bytesToState(byte[] in, int inOff, int[][] matrix, int col) {
+		for (int j = 0; j < Nb; j++) {
+			for (int i = 0; i < Nb; i++) {
+				matrix[i][col + j] = in[inOff + Nb * j + i] & 0xff;
+			}
+		}
+	}
+
+	/**
+	 * Converts the Cipher Key from a byte array into the matrix format, in which
+	 * every row holds one key word
+	 * 
+	 * @param key the Cipher Key bytes
+	 * @return the Cipher Key in the matrix format
+	 */
+	public static int[][] bytesToKey(byte[] key) {
+		if (key.length != Nk * Nb) {
+			throw new IllegalArgumentException(
+					String.format("The key length needs to be %d bytes, but was %d!", Nk * Nb, key.length));
+		}
+
+		int[][] result = new int[Nk][Nb];
+
+		for (int i = 0; i < key.length; i++) {
+			result[i / Nb][i % Nb] = key[i] & 0xff;
+		}
+
+		return result;
+	}
+
 	/**
 	 * Returns an IV created from starting IV value in hex format, and requested
 	 * increment specified by <code>index</code>
@@ -0,0 +1,239 @@
+package hr.fer.kik.util;
+
+import java.util.Objects;
+
+/**
+ * This is an utility class which provides finite fields arithmetic, with
+ * modulus 2. Multiplication in GF(2^8) uses tables precomputed when the class
+ * is loaded: logarithms and antilogarithms to the base {03}, and full
+ * multiplication tables for the constants of MixColumns and InvMixColumns.
+ * 
+ * @author Ivan Lokas
+ *
+ */
+public class FiniteFieldsUtil {
+	/**
+	 * Binary mask used for retrieval of the <code>i</code>-th bit for a given byte
+	 */
+	public final static int[] MASK = { 0x01, 0x02, 0x04, 0x08, 0x10, 0x20, 0x40, 0x80 };
+
+	/**
+	 * Powers of {03}, the generator of the multiplicative group, repeated twice,
+	 * so a sum of two logarithms can be used as an index without the reduction
+	 * modulo 255
+	 */
+	private static final int[] EXP = new int[510];
+	/**
+	 * Logarithms to the base {03}, undefined for 0
+	 */
+	private static final int[] LOG = new int[256];
+
+	/**
+	 * Multiplication tables for the constants {02}, {03}, {09}, {0b}, {0d} and
+	 * {0e}
+	 */
+	private static final int[] MUL2 = new int[256], MUL3 = new int[256], MUL9 = new int[256],
+			MUL11 = new int[256], MUL13 = new int[256], MUL14 = new int[256];
+
+	static {
+		int x = 1;
+
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = EXP[i + 255] = x;
+			LOG[x] = i;
+			x ^= xtime(x);
+		}
+
+		for (int a = 0; a < 256; a++) {
+			int a2 = xtime(a);
+			int a4 = xtime(a2);
+			int a8 = xtime(a4);
+
+			MUL2[a] = a2;
+			MUL3[a] = a2 ^ a;
+			MUL9[a] = a8 ^ a;
+			MUL11[a] = a8 ^ a2 ^ a;
+			MUL13[a] = a8 ^ a4 ^ a;
+			MUL14[a] = a8 ^ a4 ^ a2;
+		}
+	}
+
+	/**
+	 * Finite fields addition
+	 * 
+	 * @param a the first value
+	 * @param b the second value
+	 * @return the sum of <code>a</code> and <code>b</code>
+	 */
+	public static int add(int a, int b) {
+		return a ^ b;
+	}
+
+	/**
+	 * Finite fields addition over matrices, applied element-wise
+	 * 
+	 * @param a first matrix
+	 * @param b second matrix
+	 * @return the sum of matrix <code>a</code> and matrix <code>b</code>, applied
+	 *         element-wise
+	 * 
+	 */
+	public static int[][] add(int[][] a, int[][] b) {
+		if (a.length != b.length || a[0].length != b[0].length) {
+			throw new IllegalArgumentException("The dimensions of both arrays are not the same!");
+		}
+
+		int rows = a.length;
+		int cols = a[0].length;
+		int[][] result = new int[rows][cols];
+
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				result[i][j] = add(a[i][j], b[i][j]);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Finite fields addition over byte arrays, applied element-wise
+	 * 
+	 * @param a      array containing the first values
+	 * @param aOff   offset of the first values
+	 * @param b      array containing the second values
+	 * @param bOff   offset of the second values
+	 * @param out    array that the sums will be written to
+	 * @param outOff offset of the sums
+	 * @param len    number of values
+	 */
+	public static void add(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len) {
+		for (int i = 0; i < len; i++) {
+			out[outOff + i] = (byte) (a[aOff + i] ^ b[bOff + i]);
+		}
+	}
+
+	/**
+	 * Finite fields multiplication, with a single table lookup for the
+	 * constants of MixColumns and InvMixColumns, and with the logarithm tables
+	 * otherwise
+	 * 
+	 * @param a the first value
+	 * @param b the second value
+	 * @return the product of <code>a</code> and <code>b</code>
+	 */
+	public static int multiply(int a, int b) {
+		a &= 0xff;
+		b &= 0xff;
+
+		return switch (b) {
+		case 0x01 -> a;
+		case 0x02 -> MUL2[a];
+		case 0x03 -> MUL3[a];
+		case 0x09 -> MUL9[a];
+		case 0x0b -> MUL11[a];
+		case 0x0d -> MUL13[a];
+		case 0x0e -> MUL14[a];
+		default -> a == 0 || b == 0 ? 0 : EXP[LOG[a] + LOG[b]];
+		};
+	}
+
+	/**
+	 * Finite fields multiplication of a byte array by a constant, applied
+	 * element-wise. The input and the output may be the same array region.
+	 * 
+	 * @param in     array containing the values
+	 * @param inOff  offset of the values
+	 * @param c      the constant
+	 * @param out    array that the products will be written to
+	 * @param outOff offset of the products
+	 * @param len    number of values
+	 */
+	public static void multiply(byte[] in, int inOff, int c, byte[] out, int outOff, int len) {
+		int[] table = multiplicationTable(c);
+
+		for (int i = 0; i < len; i++) {
+			out[outOff + i] = (byte) table[in[inOff + i] & 0xff];
+		}
+	}
+
+	/**
+	 * Adds the products of a byte array and a constant to the output array,
+	 * applied element-wise
+	 * 
+	 * @param in     array containing the values
+	 * @param inOff  offset of the values
+	 * @param c      the constant
+	 * @param out    array that the products will be added to
+	 * @param outOff offset of the sums
+	 * @param len    number of values
+	 */
+	public static void multiplyAdd(byte[] in, int inOff, int c, byte[] out, int outOff, int len) {
+		int[] table = multiplicationTable(c);
+
+		for (int i = 0; i < len; i++) {
+			out[outOff + i] ^= table[in[inOff + i] & 0xff];
+		}
+	}
+
+	/**
+	 * Finite fields multiplicative inverse
+	 * 
+	 * @param a the value
+	 * @return the inverse of <code>a</code>, or 0 if <code>a</code> is 0
+	 */
+	public static int inverse(int a) {
+		a &= 0xff;
+
+		return a == 0 ? 0 : EXP[255 - LOG[a]];
+	}
+
+	/**
+	 * @param c the constant
+	 * @return table of the products of every value with <code>c</code>, shared
+	 *         for the constants of MixColumns and InvMixColumns
+	 */
+	private static int[] multiplicationTable(int c) {
+		int[] table = switch (c & 0xff) {
+		case 0x02 -> MUL2;
+		case 0x03 -> MUL3;
+		case 0x09 -> MUL9;
+		case 0x0b -> MUL11;
+		case 0x0d -> MUL13;
+		case 0x0e -> MUL14;
+		default -> null;
+		};
+
+		if (Objects.isNull(table)) {
+			table = new int[256];
+
+			for (int a = 0; a < 256; a++) {
+				table[a] = multiply(a, c);
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * Method which returns the requested bit of a given value
+	 * 
+	 * @param a the value used for bit retrieval
+	 * @param i the position of the wanted bit
+	 * @return <code>i</code>-th bit for the given value <code>a</code>
+	 */
+	public static int getBit(int a, int i) {
+		return (a & MASK[i]) >> i & 0x01;
+	}
+
+	/**
+	 * Finite fields operation which multiplies the given value by x
+	 * 
+	 * @param a the value which will be multiplied by <code>x</code>
+	 * @return the product of given value <code>a</code> with <code>x</code>
+	 */
+	public static int xtime(int a) {
+		int result = (a & 0xff) << 0x01;
+		return ((result & 0x100) != 0x00) ? result ^ 0x11b : result;
+	}
+}
@@ -0,0 +1,430 @@
+package hr.fer.kik.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * This is an utility class which converts between bytes and their lowercase
+ * hex representation with lookup tables. Decoding accepts both lowercase and
+ * uppercase digits. No intermediate strings are created, so the methods are
+ * suitable for large payloads, and the State methods convert directly between
+ * hex and the column-major block layout of the cipher.
+ *
+ * @author Ivan Lokas
+ *
+ */
+public class HexCodec {
+
+	/**
+	 * Lowercase hex digits
+	 */
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+	/**
+	 * Both hex digits of every byte value, the high digit at <code>2 * b</code>
+	 */
+	private static final char[] ENCODE = new char[512];
+	/**
+	 * Values of the hex digits by their character, -1 for the other characters
+	 */
+	private static final byte[] DECODE = new byte[128];
+
+	/**
+	 * Number of characters processed at once by the streaming methods
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	static {
+		for (int b = 0; b < 256; b++) {
+			ENCODE[2 * b] = DIGITS[b >>> 4];
+			ENCODE[2 * b + 1] = DIGITS[b & 0x0f];
+		}
+
+		Arrays.fill(DECODE, (byte) -1);
+
+		for (int i = 0; i < 16; i++) {
+			DECODE[DIGITS[i]] = (byte) i;
+			DECODE[Character.toUpperCase(DIGITS[i])] = (byte) i;
+		}
+	}
+
+	/**
+	 * @param bytes that will be encoded
+	 * @return hex representation of the <code>bytes</code>
+	 */
+	public static String encode(byte[] bytes) {
+		return encode(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 * @return hex representation of the <code>len</code> bytes
+	 */
+	public static String encode(byte[] in, int inOff, int len) {
+		char[] out = new char[2 * len];
+		encode(in, inOff, len, out, 0);
+
+		return new String(out);
+	}
+
+	/**
+	 * Writes the hex representation of <code>len</code> bytes into
+	 * <code>out</code>
+	 *
+	 * @param in     input array
+	 * @param inOff  input offset
+	 * @param len    input length
+	 * @param out    output array, which has to hold <code>2 * len</code>
+	 *               characters
+	 * @param outOff output offset
+	 */
+	public static void encode(byte[] in, int inOff, int len, char[] out, int outOff) {
+		Objects.checkFromIndexSize(inOff, len, in.length);
+		Objects.checkFromIndexSize(outOff, 2 * len, out.length);
+
+		for (int i = 0; i < len; i++) {
+			int b = 2 * (in[inOff + i] & 0xff);
+			out[outOff++] = ENCODE[b];
+			out[outOff++] = ENCODE[b + 1];
+		}
+	}
+
+	/**
+	 * Writes the hex representation of <code>len</code> bytes at the position of
+	 * <code>out</code>, and advances its position
+	 *
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 * @param out   output buffer
+	 */
+	public static void encode(byte[] in, int inOff, int len, CharBuffer out) {
+		if (out.remaining() < 2 * len) {
+			throw new IllegalArgumentException(
+					String.format("The buffer has %d characters remaining, but %d are needed!", out.remaining(), 2 * len));
+		}
+
+		if (out.hasArray()) {
+			encode(in, inOff, len, out.array(), out.arrayOffset() + out.position());
+			out.position(out.position() + 2 * len);
+			return;
+		}
+
+		Objects.checkFromIndexSize(inOff, len, in.length);
+
+		for (int i = 0; i < len; i++) {
+			int b = 2 * (in[inOff + i] & 0xff);
+			out.put(ENCODE[b]).put(ENCODE[b + 1]);
+		}
+	}
+
+	/**
+	 * Appends the hex representation of <code>len</code> bytes to
+	 * <code>out</code>
+	 *
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 * @param out   the builder that the digits are appended to
+	 * @return <code>out</code>
+	 */
+	public static StringBuilder encode(byte[] in, int inOff, int len, StringBuilder out) {
+		Objects.checkFromIndexSize(inOff, len, in.length);
+		out.ensureCapacity(out.length() + 2 * len);
+
+		for (int i = 0; i < len; i++) {
+			int b = 2 * (in[inOff + i] & 0xff);
+			out.append(ENCODE[b]).append(ENCODE[b + 1]);
+		}
+
+		return out;
+	}
+
+	/**
+	 * Writes the hex representation of <code>len</code> bytes to
+	 * <code>out</code>, a buffer at a time
+	 *
+	 * @param in    input array
+	 * @param inOff input offset
+	 * @param len   input length
+	 * @param out   the writer
+	 * @throws IOException if writing fails
+	 */
+	public static void encode(byte[] in, int inOff, int len, Writer out) throws IOException {
+		Objects.checkFromIndexSize(inOff, len, in.length);
+		char[] buffer = new char[Math.min(BUFFER_SIZE, 2 * len)];
+
+		for (int i = 0; i < len;) {
+			int n = Math.min(buffer.length / 2, len - i);
+			encode(in, inOff + i, n, buffer, 0);
+			out.write(buffer, 0, 2 * n);
+			i += n;
+		}
+	}
+
+	/**
+	 * Encodes every byte of <code>in</code> to <code>out</code>, until the end
+	 * of the stream. Neither stream is closed.
+	 *
+	 * @param in  the input stream
+	 * @param out the writer
+	 * @return number of encoded bytes
+	 * @throws IOException if reading or writing fails
+	 */
+	public static long encode(InputStream in, Writer out) throws IOException {
+		byte[] bytes = new byte[BUFFER_SIZE / 2];
+		char[] chars = new char[BUFFER_SIZE];
+		long total = 0;
+
+		for (int n; (n = in.read(bytes)) != -1;) {
+			encode(bytes, 0, n, chars, 0);
+			out.write(chars, 0, 2 * n);
+			total += n;
+		}
+
+		return total;
+	}
+
+	/**
+	 * @param hex an even number of hex digits
+	 * @return the decoded bytes
+	 */
+	public static byte[] decode(CharSequence hex) {
+		if (hex.length() % 2 != 0) {
+			throw new IllegalArgumentException(
+					String.format("The hex string needs an even number of digits, but has %d!", hex.length()));
+		}
+
+		byte[] out = new byte[hex.length() / 2];
+		decode(hex, 0, hex.length(), out, 0);
+
+		return out;
+	}
+
+	/**
+	 * Decodes the hex digits between <code>start</code> and <code>end</code>
+	 * into <code>out</code>
+	 *
+	 * @param hex    the hex digits
+	 * @param start  index of the first digit
+	 * @param end    index after the last digit, with an even number of digits
+	 *               from <code>start</code>
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @return number of decoded bytes
+	 */
+	public static int decode(CharSequence hex, int start, int end, byte[] out, int outOff) {
+		Objects.checkFromToIndex(start, end, hex.length());
+
+		if ((end - start) % 2 != 0) {
+			throw new IllegalArgumentException("The number of hex digits needs to be even!");
+		}
+
+		int len = (end - start) / 2;
+		Objects.checkFromIndexSize(outOff, len, out.length);
+
+		for (int i = start; i < end; i += 2) {
+			out[outOff++] = (byte) (digit(hex.charAt(i), i) << 4 | digit(hex.charAt(i + 1), i + 1));
+		}
+
+		return len;
+	}
+
+	/**
+	 * Decodes <code>2 * len</code> hex digits of <code>in</code> into
+	 * <code>out</code>
+	 *
+	 * @param in     the hex digits
+	 * @param inOff  offset of the first digit
+	 * @param len    number of decoded bytes
+	 * @param out    output array
+	 * @param outOff output offset
+	 */
+	public static void decode(char[] in, int inOff, int len, byte[] out, int outOff) {
+		Objects.checkFromIndexSize(inOff, 2 * len, in.length);
+		Objects.checkFromIndexSize(outOff, len, out.length);
+
+		for (int i = inOff, end = inOff + 2 * len; i < end; i += 2) {
+			out[outOff++] = (byte) (digit(in[i], i - inOff) << 4 | digit(in[i + 1], i + 1 - inOff));
+		}
+	}
+
+	/**
+	 * Decodes every remaining pair of hex digits of <code>in</code> into
+	 * <code>out</code>, and advances the position of <code>in</code>. An odd
+	 * last digit is left in the buffer.
+	 *
+	 * @param in     the buffer with the hex digits
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @return number of decoded bytes
+	 */
+	public static int decode(CharBuffer in, byte[] out, int outOff) {
+		int len = in.remaining() / 2;
+
+		if (in.hasArray()) {
+			decode(in.array(), in.arrayOffset() + in.position(), len, out, outOff);
+		} else {
+			Objects.checkFromIndexSize(outOff, len, out.length);
+
+			for (int i = 0, p = in.position(); i < len; i++, p += 2) {
+				out[outOff + i] = (byte) (digit(in.get(p), 2 * i) << 4 | digit(in.get(p + 1), 2 * i + 1));
+			}
+		}
+
+		in.position(in.position() + 2 * len);
+
+		return len;
+	}
+
+	/**
+	 * Decodes every hex digit of <code>in</code> to <code>out</code>, until the
+	 * end of the stream. Neither stream is closed.
+	 *
+	 * @param in  the reader of the hex digits
+	 * @param out the output stream
+	 * @return number of decoded bytes
+	 * @throws IOException if reading or writing fails
+	 */
+	public static long decode(Reader in, OutputStream out) throws IOException {
+		char[] chars = new char[BUFFER_SIZE];
+		byte[] bytes = new byte[BUFFER_SIZE / 2];
+		int pending = 0;
+		long total = 0;
+
+		for (int n; (n = in.read(chars, pending, chars.length - pending)) != -1;) {
+			int available = pending + n;
+			int len = available / 2;
+
+			decode(chars, 0, len, bytes, 0);
+			out.write(bytes, 0, len);
+			total += len;
+
+			pending = available % 2;
+			chars[0] = chars[available - 1];
+		}
+
+		if (pending != 0) {
+			throw new IllegalArgumentException("The number of hex digits needs to be even!");
+		}
+
+		return total;
+	}
+
+	/**
+	 * Reads up to <code>len</code> bytes of hex digits from <code>in</code>,
+	 * which allows decoding a large payload a block at a time
+	 *
+	 * @param in     the reader of the hex digits
+	 * @param out    output array
+	 * @param outOff output offset
+	 * @param len    maximum number of decoded bytes
+	 * @return number of decoded bytes, or -1 at the end of the stream
+	 * @throws IOException if reading fails
+	 */
+	public static int read(Reader in, byte[] out, int outOff, int len) throws IOException {
+		Objects.checkFromIndexSize(outOff, len, out.length);
+		char[] chars = new char[Math.min(BUFFER_SIZE, 2 * len)];
+		int total = 0;
+
+		while (total < len) {
+			int wanted = Math.min(chars.length, 2 * (len - total));
+			int read = 0;
+
+			for (int n; read < wanted && (n = in.read(chars, read, wanted - read)) != -1;) {
+				read += n;
+			}
+
+			if (read % 2 != 0) {
+				throw new IllegalArgumentException("The number of hex digits needs to be even!");
+			}
+
+			decode(chars, 0, read / 2, out, outOff + total);
+			total += read / 2;
+
+			if (read < wanted) {
+				break;
+			}
+		}
+
+		return total == 0 && len > 0 ? -1 : total;
+	}
+
+	/**
+	 * Decodes a block of 32 hex digits directly into the column-major State
+	 * layout, so byte <code>i</code> is written to row <code>i % 4</code> of
+	 * column <code>col + i / 4</code>
+	 *
+	 * @param hex   the hex digits
+	 * @param start index of the first digit
+	 * @param state the State matrix with 4 rows
+	 * @param col   first column of the block
+	 */
+	public static void decodeState(CharSequence hex, int start, int[][] state, int col) {
+		Objects.checkFromIndexSize(start, 32, hex.length());
+
+		for (int i = 0; i < 16; i++) {
+			int p = start + 2 * i;
+			state[i % 4][col + i / 4] = digit(hex.charAt(p), p) << 4 | digit(hex.charAt(p + 1), p + 1);
+		}
+	}
+
+	/**
+	 * Appends the hex representation of every column of the State, in the
+	 * column-major order of the cipher
+	 *
+	 * @param state the State matrix
+	 * @param out   the builder that the digits are appended to
+	 * @return <code>out</code>
+	 */
+	public static StringBuilder encodeState(int[][] state, StringBuilder out) {
+		int rows = state.length;
+		int cols = state[0].length;
+		out.ensureCapacity(out.length() + 2 * rows * cols);
+
+		for (int j = 0; j < cols; j++) {
+			for (int i = 0; i < rows; i++) {
+				int b = 2 * (state[i][j] & 0xff);
+				out.append(ENCODE[b]).append(ENCODE[b + 1]);
+			}
+		}
+
+		return out;
+	}
+
+	/**
+	 * Appends the two hex digits of <code>b</code>
+	 *
+	 * @param b   the byte value
+	 * @param out the builder that the digits are appended to
+	 * @return <code>out</code>
+	 */
+	public static StringBuilder append(int b, StringBuilder out) {
+		int i = 2 * (b & 0xff);
+
+		return out.append(ENCODE[i]).append(ENCODE[i + 1]);
+	}
+
+	/**
+	 * @param c     the hex digit
+	 * @param index index of the digit, for the error message
+	 * @return value of the digit
+	 */
+	static int digit(char c, int index) {
+		int value = c < DECODE.length ? DECODE[c] : -1;
+
+		if (value < 0) {
+			throw new IllegalArgumentException(String.format("Invalid hex digit '%c' at index %d!", c, index));
+		}
+
+		return value;
+	}
+
+}
@@ -1,5 +1,8 @@
 package hr.fer.kik.util;
 
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.mode.Padding;
+
 /**
  * This is an utility class which provides IO helper methods.
  * 
@@ -8,15 +11,6 @@ package hr.fer.kik.util;
  */
 public class IOUtils {
 
-	/**
-	 * Default padding in hex format
-	 */
-	private static final String DEFAULT_PADDING = "00";
-	/**
-	 * Padding length in hex format
-	 */
-	private static final int PADDING_LENGTH = 2;
-
 	/**
 	 * Parses the given <code>input</code> string into a <code>int</code> matrix.
 	 * The given <code>input</code> string is a string representation of
@@ -34,7 +28,8 @@ public class IOUtils {
 		for (int i = 0, length = input.length(); i < length / 2; i++) {
 			int a = isKey ? i / x : i % x;
 			int b = isKey ? i % (y % 4 + 4) : i / (y % 4 + 4);
-			result[a][b] = Integer.parseInt(input.substring(2 * i, 2 * i + 2), 16);
+			result[a][b] = HexCodec.digit(input.charAt(2 * i), 2 * i) << 4
+					| HexCodec.digit(input.charAt(2 * i + 1), 2 * i + 1);
 		}
 
 		return result;
@@ -43,9 +38,9 @@ public class IOUtils {
 	/**
 	 * Parses the given <code>input</code> string into a <code>int</code> matrix.
 	 * The given <code>input</code> string is a string representation of
-	 * concatenated hex values which can be arbitrary length, and will be padded to
-	 * the size, in compliance with the specification.
-	 * 
+	 * concatenated hex values which can be arbitrary length. The decoded bytes
+	 * are zero padded in place to whole blocks, in compliance with the
+	 * specification.
 	 * 
 	 * @param input which will be parsed into <code>int</code> matrix
 	 * @param x     the first dimension of the resulting matrix
@@ -55,60 +50,38 @@ public class IOUtils {
 	 *         which might have been padded
 	 */
 	public static int[][] parseHexStringArbitraryLength(String input, int x, int y, boolean isKey) {
-		String paddedInput = padInput(input, y);
-		return parseHexString(paddedInput, x, paddedInput.length() / 2 / 4, isKey);
-	}
+		int len = input.length() / 2;
+		int full = len / BlockEngine.BLOCK_SIZE * BlockEngine.BLOCK_SIZE;
+		byte[] bytes = new byte[Padding.ZERO.paddedLength(len)];
 
-	/**
-	 * Pads the given <code>input</code> in compliance to the specification.
-	 * 
-	 * @param input   which will be padded, if necessary
-	 * @param mod     modulus of the padding
-	 * @param padding the exact hex value that will be used as padding
-	 * @return padded <code>input</code> matrix in compliance with the specification
-	 */
-	private static String padInput(String input, int mod, String padding) {
-		if (padding.length() != 2) {
-			throw new IllegalArgumentException("Padding length needs to be equal to 2!");
-		}
-
-		int x = 16 - input.length() / PADDING_LENGTH % 16;
+		HexCodec.decode(input, 0, 2 * len, bytes, 0);
 
-		if (x % 16 == 0) {
-			return input;
+		if (bytes.length > full) {
+			Padding.ZERO.pad(bytes, full, len - full);
 		}
 
-		StringBuilder sb = new StringBuilder(input);
+		int cols = bytes.length / 4;
+		int[][] result = new int[x][cols];
 
-		for (int i = 0; i < x; i++) {
-			sb.append(padding);
+		for (int i = 0; i < bytes.length; i++) {
+			int a = isKey ? i / x : i % x;
+			int b = isKey ? i % (cols % 4 + 4) : i / (cols % 4 + 4);
+			result[a][b] = bytes[i] & 0xff;
 		}
 
-		return sb.toString();
-	}
-
-	private static String padInput(String input, int mod) {
-		return padInput(input, mod, DEFAULT_PADDING);
+		return result;
 	}
 
 	/**
 	 * Parses the given <code>input</code> matrix into a string representation of
-	 * concatenated hex values.
+	 * concatenated hex values, column by column.
 	 * 
 	 * @param input which will be parsed into hex string representation
 	 * @return the equivalent hex string representation for the given
 	 *         <code>input</code> matrix
 	 */
 	public static String parseState(int[][] input) {
-		StringBuilder sb = new StringBuilder();
-
-		for (int i = 0; i < input.length; i++) {
-			for (int j = 0; j < input[0].length; j++) {
-				sb.append(String.format("%s", Integer.toHexString(0x100 | input[j][i]).substring(1)));
-			}
-		}
-
-		return sb.toString();
+		return HexCodec.encodeState(input, new StringBuilder()).toString();
 	}
 
 }
@@ -14,13 +14,15 @@ public class PrintUtils {
 	 * @param matrix which to be printed
 	 */
 	public static void printMatrix(int[][] matrix) {
+		StringBuilder sb = new StringBuilder();
+
 		for (int i = 0, rows = matrix.length; i < rows; i++) {
 			for (int j = 0, cols = matrix[0].length; j < cols; j++) {
-				System.out.print(String.format("%s ", Integer.toHexString(0x100 | matrix[i][j]).substring(1)));
+				HexCodec.append(matrix[i][j], sb).append(' ');
 			}
-			System.out.println();
+			sb.append(System.lineSeparator());
 		}
-		System.out.println();
+		System.out.println(sb);
 	}
 
 	/**
@@ -30,10 +32,12 @@ public class PrintUtils {
 	 * @param col    the requested column
 	 */
 	public static void printColumn(int[][] matrix, int col) {
+		StringBuilder sb = new StringBuilder();
+
 		for (int i = 0, rows = matrix.length; i < rows; i++) {
-			System.out.println(Integer.toHexString(0x100 | matrix[i][col]).substring(1));
+			HexCodec.append(matrix[i][col], sb).append(System.lineSeparator());
 		}
-		System.out.println();
+		System.out.println(sb);
 	}
 
 	/**
@@ -42,10 +46,12 @@ public class PrintUtils {
 	 * @param array that will be printed, as a column
 	 */
 	public static void printColumn(int[] array) {
+		StringBuilder sb = new StringBuilder();
+
 		for (int i = 0, rows = array.length; i < rows; i++) {
-			System.out.println(Integer.toHexString(0x100 | array[i]).substring(1));
+			HexCodec.append(array[i], sb).append(System.lineSeparator());
 		}
-		System.out.println();
+		System.out.println(sb);
 	}
 
 }
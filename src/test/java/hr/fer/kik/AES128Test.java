@@ -1,12 +1,18 @@
 package hr.fer.kik;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
+import hr.fer.kik.trace.RoundStep;
+import hr.fer.kik.trace.TextRoundObserver;
 import hr.fer.kik.util.IOUtils;
 
 public class AES128Test {
@@ -28,7 +34,7 @@ public class AES128Test {
 		int[][] ciphertext = aes.cipher(plaintext, keySchedule);
 		String cipherDebugResult = os.toString();
 
-		assertEquals(CIPHER_DEBUG, cipherDebugResult);
+		assertEquals(lines(CIPHER_DEBUG), cipherDebugResult);
 
 		os = new ByteArrayOutputStream();
 		System.setOut(new PrintStream(os));
@@ -36,9 +42,75 @@ public class AES128Test {
 		aes.invCipher(ciphertext, keySchedule);
 		String invCipherDebugResult = os.toString();
 
-		assertEquals(INV_CIPHER_DEBUG, invCipherDebugResult);
+		assertEquals(lines(INV_CIPHER_DEBUG), invCipherDebugResult);
 	}
 
+	@Test
+	public void testTextRoundObserver() {
+		AES128 aes = new AES128();
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		aes.setRoundObserver(new TextRoundObserver(new PrintStream(os)));
+
+		int[][] plaintext = IOUtils.parseHexString(PLAINTEXT, AES128.getNk(), AES128.getNb(), false);
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		int[][] keySchedule = aes.keyExpansion(key);
+
+		int[][] ciphertext = aes.cipher(plaintext, keySchedule);
+		assertEquals(lines(CIPHER_DEBUG), os.toString());
+
+		os.reset();
+		aes.invCipher(ciphertext, keySchedule);
+		assertEquals(lines(INV_CIPHER_DEBUG), os.toString());
+	}
+
+	@Test
+	public void testRoundObserverOnCipher() {
+		List<String> steps = new ArrayList<>();
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/ECB");
+		cipher.setModeOfUse(Cipher.ENCRYPT_MODE);
+		cipher.setRoundObserver((round, step, state) -> {
+			if (step == RoundStep.OUTPUT) {
+				steps.add(HexFormat.of().formatHex(state));
+			}
+		});
+
+		byte[] plaintext = HexFormat.of().parseHex(PLAINTEXT + PLAINTEXT);
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		cipher.doFinal(plaintext, 0, plaintext.length, plaintext, 0, key);
+
+		assertEquals(List.of(CIPHERTEXT, CIPHERTEXT), steps);
+		assertEquals(CIPHERTEXT + CIPHERTEXT, HexFormat.of().formatHex(plaintext));
+
+		steps.clear();
+		cipher.setRoundObserver(null);
+		cipher.doFinal(plaintext, 0, plaintext.length, plaintext, 0, key);
+		assertEquals(List.of(), steps);
+	}
+
+	@Test
+	public void testRoundObserverIsCalledSequentially() {
+		List<String> steps = new ArrayList<>();
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/CTR");
+		cipher.setExecutor(task -> fail("Traced blocks need to be processed on the calling thread!"));
+		cipher.setParallelThreshold(0);
+		cipher.setRoundObserver((round, step, state) -> {
+			if (step == RoundStep.INPUT) {
+				steps.add(HexFormat.of().formatHex(state));
+			}
+		});
+
+		cipher.init(Cipher.ENCRYPT_MODE, HexFormat.of().parseHex(KEY));
+		cipher.doFinal(new byte[1 << 20]);
+
+		assertEquals(1 << 16, steps.size());
+		assertEquals("00000000000000000000000000000000", steps.get(0));
+		assertEquals("0000000000000000000000000000ffff", steps.get(steps.size() - 1));
+	}
+
+	private static final String CIPHERTEXT = "69c4e0d86a7b0430d8cdb78070b4c55a";
+
 	private static final String PLAINTEXT = "00112233445566778899aabbccddeeff";
 
 	private static final String KEY = "000102030405060708090a0b0c0d0e0f";
@@ -152,4 +224,12 @@ public class AES128Test {
 			+ "round[10].ik_sch 000102030405060708090a0b0c0d0e0f\r\n"
 			+ "round[10].ioutput 00112233445566778899aabbccddeeff\r\n";
 
+	/**
+	 * @param text expected output written with Windows line separators
+	 * @return the text with the line separator of the platform
+	 */
+	private static String lines(String text) {
+		return text.replace("\r\n", System.lineSeparator());
+	}
+
 }
@@ -0,0 +1,300 @@
+package hr.fer.kik;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.util.AlgorithmUtils;
+import hr.fer.kik.util.IOUtils;
+
+public class CipherTest {
+
+	@Test
+	public void testByteArrayDoFinalMatchesMatrixDoFinal() {
+		for (String mode : new String[] { "ECB", "CTR" }) {
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/" + mode);
+
+			int[][] plaintext = IOUtils.parseHexStringArbitraryLength(PLAINTEXT, AES128.getNk(), AES128.getNb(), false);
+			int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+
+			cipher.setModeOfUse(Cipher.ENCRYPT_MODE);
+			byte[] expected = toBytes(cipher.doFinal(plaintext, key));
+
+			byte[] buffer = new byte[expected.length + 3];
+			System.arraycopy(toBytes(plaintext), 0, buffer, 3, expected.length);
+
+			assertEquals(expected.length, cipher.doFinal(buffer, 3, expected.length, buffer, 3, key));
+			assertArrayEquals(expected, Arrays.copyOfRange(buffer, 3, buffer.length));
+
+			cipher.setModeOfUse(Cipher.DECRYPT_MODE);
+			byte[] decrypted = new byte[expected.length];
+			cipher.doFinal(buffer, 3, expected.length, decrypted, 0, key);
+
+			assertArrayEquals(toBytes(plaintext), decrypted);
+		}
+	}
+
+	@Test
+	public void testCtrPartialBlock() {
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/CTR");
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+
+		byte[] plaintext = new byte[37];
+		for (int i = 0; i < plaintext.length; i++) {
+			plaintext[i] = (byte) i;
+		}
+
+		byte[] ciphertext = new byte[plaintext.length + 11];
+		cipher.setModeOfUse(Cipher.ENCRYPT_MODE);
+		cipher.doFinal(plaintext, 0, plaintext.length, ciphertext, 0, key);
+
+		byte[] full = new byte[48];
+		System.arraycopy(plaintext, 0, full, 0, plaintext.length);
+		cipher.doFinal(full, 0, full.length, full, 0, key);
+
+		assertArrayEquals(Arrays.copyOf(full, plaintext.length),
+				Arrays.copyOf(ciphertext, plaintext.length));
+	}
+
+	@Test
+	public void testParallelDoFinalMatchesSequential() {
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		byte[] plaintext = new byte[1024 * 1024];
+		new Random(6).nextBytes(plaintext);
+
+		for (String mode : new String[] { "ECB", "CTR" }) {
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/" + mode);
+
+			byte[] expected = new byte[plaintext.length];
+			cipher.setParallelThreshold(Integer.MAX_VALUE);
+			cipher.doFinal(plaintext, 0, plaintext.length, expected, 0, key);
+
+			byte[] actual = plaintext.clone();
+			cipher.setParallelThreshold(0);
+			cipher.doFinal(actual, 0, actual.length, actual, 0, key);
+
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testStreamingMatchesDoFinal() {
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		byte[] keyBytes = toBytes(IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), false));
+		Random random = new Random(7);
+		byte[] plaintext = new byte[100_003];
+		random.nextBytes(plaintext);
+
+		for (String mode : new String[] { "ECB", "CTR" }) {
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/" + mode);
+
+			int paddedLength = mode.equals("ECB") ? (plaintext.length + 15) / 16 * 16 : plaintext.length;
+			byte[] padded = Arrays.copyOf(plaintext, paddedLength);
+			byte[] expected = new byte[padded.length];
+			cipher.setModeOfUse(Cipher.ENCRYPT_MODE);
+			cipher.doFinal(padded, 0, padded.length, expected, 0, key);
+
+			cipher.init(Cipher.ENCRYPT_MODE, keyBytes);
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			int position = 0;
+			while (position < plaintext.length - 5000) {
+				int len = random.nextInt(5000);
+				os.writeBytes(cipher.update(plaintext, position, len));
+				position += len;
+			}
+			os.writeBytes(cipher.doFinal(plaintext, position, plaintext.length - position));
+
+			assertArrayEquals(expected, os.toByteArray());
+
+			cipher.init(Cipher.DECRYPT_MODE, keyBytes);
+			byte[] first = cipher.update(expected, 0, 33);
+			byte[] rest = cipher.doFinal(expected, 33, expected.length - 33);
+
+			ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+			decrypted.writeBytes(first);
+			decrypted.writeBytes(rest);
+			assertArrayEquals(padded, decrypted.toByteArray());
+		}
+	}
+
+	@Test
+	public void testByteBuffersMatchByteArrays() {
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		byte[] keyBytes = toBytes(IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), false));
+		byte[] iv = new byte[16];
+		Random random = new Random(9);
+		random.nextBytes(iv);
+		byte[] plaintext = new byte[20_005];
+		random.nextBytes(plaintext);
+
+		for (String mode : new String[] { "ECB", "CBC", "CTR", "GCM" }) {
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/" + mode);
+
+			cipher.init(Cipher.ENCRYPT_MODE, keyBytes, iv);
+			byte[] expected = cipher.doFinal(plaintext);
+
+			for (boolean direct : new boolean[] { false, true }) {
+				ByteBuffer in = allocate(plaintext.length + 10, direct);
+				in.position(3);
+				in.put(plaintext);
+				in.flip().position(3);
+				ByteBuffer out = allocate(expected.length + 7, direct);
+				out.position(7);
+
+				cipher.init(Cipher.ENCRYPT_MODE, keyBytes, iv);
+				int produced = 0;
+				while (in.remaining() > 3000) {
+					ByteBuffer chunk = in.slice().limit(random.nextInt(3000));
+					produced += cipher.update(chunk, out);
+					in.position(in.position() + chunk.position());
+				}
+				produced += cipher.doFinal(in, out);
+
+				assertEquals(expected.length, produced);
+				assertEquals(in.limit(), in.position());
+				assertEquals(out.limit(), out.position());
+				assertArrayEquals(expected, Arrays.copyOfRange(toArray(out), 7, out.limit()));
+
+				out.position(7);
+				ByteBuffer decrypted = allocate(plaintext.length + 16, direct);
+				cipher.init(Cipher.DECRYPT_MODE, keyBytes, iv);
+				cipher.doFinal(out, decrypted);
+				byte[] actual = Arrays.copyOf(toArray(decrypted), decrypted.position());
+
+				if (mode.equals("ECB")) {
+					assertArrayEquals(Arrays.copyOf(plaintext, expected.length), actual);
+				} else {
+					assertArrayEquals(plaintext, actual);
+				}
+			}
+		}
+
+		for (String mode : new String[] { "ECB", "CTR" }) {
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/" + mode);
+			cipher.setModeOfUse(Cipher.ENCRYPT_MODE);
+			byte[] expected = new byte[(plaintext.length + 15) / 16 * 16];
+			int length = cipher.doFinal(plaintext, 0, plaintext.length, expected, 0, key);
+
+			ByteBuffer in = allocate(plaintext.length, true).put(plaintext).flip();
+			ByteBuffer out = allocate(length, true);
+			assertEquals(length, cipher.doFinal(in, out, key));
+			assertEquals(0, in.remaining());
+			assertArrayEquals(Arrays.copyOf(expected, length), toArray(out));
+		}
+	}
+
+	@Test
+	public void testHeapByteBuffers() {
+		byte[] key = new byte[16];
+		int[][] cipherKey = AlgorithmUtils.bytesToKey(key);
+		byte[] plaintext = new byte[100];
+		new Random(10).nextBytes(plaintext);
+
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/CTR");
+		cipher.init(Cipher.ENCRYPT_MODE, key);
+		byte[] expected = cipher.doFinal(plaintext);
+
+		byte[] array = new byte[plaintext.length + 20];
+		ByteBuffer in = ByteBuffer.wrap(plaintext);
+		ByteBuffer out = ByteBuffer.wrap(array, 5, plaintext.length + 10).slice().limit(plaintext.length - 1);
+		assertThrows(IllegalArgumentException.class, () -> cipher.doFinal(in, out));
+		assertThrows(IllegalArgumentException.class, () -> cipher.doFinal(in, out, cipherKey));
+		assertArrayEquals(new byte[array.length], array);
+
+		for (int shift : new int[] { -7, 0, 7 }) {
+			ByteBuffer src = ByteBuffer.wrap(array, 10, plaintext.length);
+			ByteBuffer dst = ByteBuffer.wrap(array, 10 + shift, plaintext.length);
+
+			System.arraycopy(plaintext, 0, array, 10, plaintext.length);
+			assertEquals(plaintext.length, cipher.doFinal(src.duplicate(), dst.duplicate()));
+			assertArrayEquals(expected, Arrays.copyOfRange(array, 10 + shift, 10 + shift + plaintext.length));
+
+			System.arraycopy(plaintext, 0, array, 10, plaintext.length);
+			assertEquals(plaintext.length, cipher.doFinal(src, dst, cipherKey));
+			assertArrayEquals(expected, Arrays.copyOfRange(array, 10 + shift, 10 + shift + plaintext.length));
+		}
+	}
+
+	@Test
+	public void testConcurrentCiphersWithDifferentKeys() throws Exception {
+		int threads = 8;
+		byte[] plaintext = new byte[4096];
+		new Random(8).nextBytes(plaintext);
+
+		byte[][] keys = new byte[threads][16];
+		byte[][] expected = new byte[threads][];
+		for (int t = 0; t < threads; t++) {
+			new Random(t).nextBytes(keys[t]);
+			expected[t] = new byte[plaintext.length];
+			KeyContext.of(keys[t]).encrypt(ModeOfOperation.CTR, new byte[16], plaintext, 0, plaintext.length,
+					expected[t], 0);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] futures = new Future<?>[threads];
+			for (int t = 0; t < threads; t++) {
+				int index = t;
+				futures[t] = pool.submit(() -> {
+					Cipher cipher = new Cipher();
+					cipher.init("AES128/CTR");
+					int[][] key = AlgorithmUtils.bytesToKey(keys[index]);
+
+					for (int i = 0; i < 200; i++) {
+						byte[] actual = new byte[plaintext.length];
+						cipher.doFinal(plaintext, 0, plaintext.length, actual, 0, key);
+						assertArrayEquals(expected[index], actual);
+					}
+				});
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static ByteBuffer allocate(int capacity, boolean direct) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] result = new byte[buffer.capacity()];
+		buffer.duplicate().clear().get(result);
+		return result;
+	}
+
+	private static byte[] toBytes(int[][] matrix) {
+		byte[] result = new byte[matrix.length * matrix[0].length];
+
+		for (int col = 0; col < matrix[0].length; col += AES128.getNb()) {
+			AlgorithmUtils.stateToBytes(matrix, col, result, col * AES128.getNb());
+		}
+
+		return result;
+	}
+
+	private static final String PLAINTEXT = "ffeeddccbbaa9988776655443322110000112233445566778899aabbccddeeff0102";
+
+	private static final String KEY = "000102030405060708090a0b0c0d0e0f";
+
+}
@@ -0,0 +1,55 @@
+package hr.fer.kik;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class KeyScheduleCacheTest {
+
+	@Test
+	public void testHitsMissesAndEviction() {
+		KeyScheduleCache cache = new KeyScheduleCache(2);
+		int[][] a = key(1);
+		int[][] b = key(2);
+		int[][] c = key(3);
+
+		KeyContext context = cache.getContext(a);
+		assertArrayEquals(new AES128().keyExpansion(a), context.getKeySchedule());
+		assertSame(context, cache.getContext(key(1)));
+
+		cache.getKeySchedule(b);
+		cache.getKeySchedule(a);
+		cache.getKeySchedule(c);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+
+		cache.getKeySchedule(c);
+		assertEquals(3, cache.getHitCount());
+
+		cache.getKeySchedule(b);
+		assertEquals(4, cache.getMissCount());
+		assertEquals(2, cache.getEvictionCount());
+
+		cache.getKeySchedule(b);
+		assertEquals(4, cache.getHitCount());
+
+		cache.invalidate(b);
+		assertEquals(1, cache.size());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+	private static int[][] key(int value) {
+		int[][] result = new int[AES128.getNk()][AES128.getNb()];
+		result[0][0] = value;
+
+		return result;
+	}
+
+}
@@ -0,0 +1,124 @@
+package hr.fer.kik.batch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import hr.fer.kik.Cipher;
+
+public class FileBatchCipherTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testBatchMatchesCipher() throws IOException {
+		Random random = new Random(10);
+		byte[] key = new byte[16];
+		random.nextBytes(key);
+
+		List<Path> sources = new ArrayList<>();
+		Map<String, byte[]> fileIVs = new HashMap<>();
+		int[] sizes = { 0, 1, 15, 16, 1000, 4096, 4097, 50_000, 123_457 };
+
+		for (int i = 0; i < sizes.length; i++) {
+			byte[] content = new byte[sizes[i]];
+			random.nextBytes(content);
+			Path source = directory.resolve("file" + i);
+			Files.write(source, content);
+			sources.add(source);
+
+			byte[] iv = new byte[16];
+			random.nextBytes(iv);
+			fileIVs.put("file" + i, iv);
+		}
+
+		// the ciphertexts are named after their sources, so they get the same IV
+		Function<Path, byte[]> ivs = path -> fileIVs.get(path.getFileName().toString().split("\\.")[0]);
+
+		for (String mode : new String[] { "ECB", "CTR", "ECB/PKCS7", "GCM" }) {
+			String transformation = "AES128/" + mode;
+			String suffix = "." + mode.replace('/', '-');
+			boolean codeBook = mode.startsWith("ECB");
+			AtomicInteger reports = new AtomicInteger();
+
+			FileBatchCipher batch = codeBook ? new FileBatchCipher(transformation, Cipher.ENCRYPT_MODE, key)
+					: new FileBatchCipher(transformation, Cipher.ENCRYPT_MODE, key, ivs);
+			batch.setThreads(4);
+			batch.setChunkSize(4096);
+			batch.setProgressListener(progress -> reports.incrementAndGet());
+
+			BatchProgress result = batch.process(sources,
+					source -> source.resolveSibling(source.getFileName() + suffix));
+
+			assertTrue(result.isDone());
+			assertEquals(result.totalBytes(), result.processedBytes());
+			assertTrue(reports.get() >= sources.size());
+
+			Cipher cipher = new Cipher();
+			cipher.init(transformation);
+
+			for (Path source : sources) {
+				cipher.init(Cipher.ENCRYPT_MODE, key, codeBook ? new byte[16] : ivs.apply(source));
+				byte[] expected = cipher.doFinal(Files.readAllBytes(source));
+
+				Path target = source.resolveSibling(source.getFileName() + suffix);
+
+				assertArrayEquals(expected, Files.readAllBytes(target));
+			}
+
+			List<Path> ciphertexts = sources.stream()
+					.map(source -> source.resolveSibling(source.getFileName() + suffix)).toList();
+
+			FileBatchCipher inverse = codeBook ? new FileBatchCipher(transformation, Cipher.DECRYPT_MODE, key)
+					: new FileBatchCipher(transformation, Cipher.DECRYPT_MODE, key, ivs);
+			inverse.setThreads(4);
+			inverse.setChunkSize(4096);
+			inverse.process(ciphertexts, source -> source.resolveSibling(source.getFileName() + ".out"));
+
+			for (Path source : ciphertexts) {
+				cipher.init(Cipher.DECRYPT_MODE, key, codeBook ? new byte[16] : ivs.apply(source));
+				byte[] expected = cipher.doFinal(Files.readAllBytes(source));
+
+				assertArrayEquals(expected, Files.readAllBytes(source.resolveSibling(source.getFileName() + ".out")));
+			}
+		}
+	}
+
+	@Test
+	public void testSharedIVIsRejected() throws IOException {
+		byte[] key = new byte[16];
+		byte[] iv = new byte[16];
+		Path first = Files.write(directory.resolve("first"), new byte[100]);
+		Path second = Files.write(directory.resolve("second"), new byte[100]);
+
+		assertThrows(IllegalArgumentException.class,
+				() -> new FileBatchCipher("AES128/CTR", Cipher.ENCRYPT_MODE, key));
+		assertThrows(IllegalArgumentException.class,
+				() -> new FileBatchCipher("AES128/ECB", Cipher.ENCRYPT_MODE, key, source -> iv));
+
+		for (String transformation : new String[] { "AES128/CTR", "AES128/GCM" }) {
+			FileBatchCipher batch = new FileBatchCipher(transformation, Cipher.ENCRYPT_MODE, key, source -> iv);
+
+			assertThrows(IllegalArgumentException.class,
+					() -> batch.process(List.of(first, second),
+							source -> source.resolveSibling(source.getFileName() + ".enc")));
+		}
+	}
+
+}
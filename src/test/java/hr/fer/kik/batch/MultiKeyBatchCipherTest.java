@@ -0,0 +1,93 @@
+package hr.fer.kik.batch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.KeyContext;
+import hr.fer.kik.ModeOfOperation;
+import hr.fer.kik.engine.EngineType;
+
+public class MultiKeyBatchCipherTest {
+
+	@Test
+	public void testBatchMatchesKeyContexts() {
+		Random random = new Random(17);
+		int[] sizes = { 0, 1, 15, 16, 17, 33, 100, 5000, 70_000 };
+
+		for (EngineType engineType : new EngineType[] { EngineType.TABLE, EngineType.BITSLICED, null }) {
+			for (ModeOfOperation mode : new ModeOfOperation[] { ModeOfOperation.CTR, ModeOfOperation.GCM }) {
+				BatchJob[] jobs = new BatchJob[300];
+
+				for (int i = 0; i < jobs.length; i++) {
+					byte[] key = new byte[16];
+					byte[] iv = new byte[mode == ModeOfOperation.GCM && i % 7 != 0 ? 12 : 16];
+					byte[] aad = new byte[i % 5];
+					byte[] payload = new byte[i < sizes.length ? sizes[i] : random.nextInt(200)];
+					random.nextBytes(key);
+					random.nextBytes(iv);
+					random.nextBytes(aad);
+					random.nextBytes(payload);
+
+					EngineType type = engineType != null ? engineType
+							: i % 3 == 0 ? EngineType.TABLE : EngineType.BITSLICED;
+					jobs[i] = new BatchJob(KeyContext.of(key, type), iv, aad, payload);
+				}
+
+				for (int threshold : new int[] { Integer.MAX_VALUE, 0 }) {
+					MultiKeyBatchCipher cipher = new MultiKeyBatchCipher(mode, ForkJoinPool.commonPool(), threshold);
+					byte[][] ciphertexts = cipher.encrypt(jobs);
+					BatchJob[] decryptionJobs = new BatchJob[jobs.length];
+
+					for (int i = 0; i < jobs.length; i++) {
+						BatchJob job = jobs[i];
+						byte[] expected = new byte[KeyContext.getOutputSize(mode, true, job.payload().length)];
+						job.context().encrypt(mode, job.iv(), job.aad(), job.payload(), 0, job.payload().length,
+								expected, 0);
+
+						assertArrayEquals(expected, ciphertexts[i]);
+						decryptionJobs[i] = new BatchJob(job.context(), job.iv(), job.aad(), ciphertexts[i]);
+					}
+
+					byte[][] plaintexts = cipher.decrypt(decryptionJobs);
+					for (int i = 0; i < jobs.length; i++) {
+						assertArrayEquals(jobs[i].payload(), plaintexts[i]);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTamperedTagIsRejected() {
+		byte[] iv = new byte[12];
+		BatchJob[] jobs = new BatchJob[10];
+
+		for (int i = 0; i < jobs.length; i++) {
+			byte[] key = new byte[16];
+			key[0] = (byte) i;
+			jobs[i] = new BatchJob(KeyContext.of(key, EngineType.BITSLICED), iv, new byte[40]);
+		}
+
+		MultiKeyBatchCipher cipher = new MultiKeyBatchCipher(ModeOfOperation.GCM);
+		byte[][] ciphertexts = cipher.encrypt(jobs);
+		ciphertexts[4][ciphertexts[4].length - 1] ^= 1;
+
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = new BatchJob(jobs[i].context(), iv, ciphertexts[i]);
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> cipher.decrypt(jobs));
+	}
+
+	@Test
+	public void testUnsupportedModes() {
+		assertThrows(IllegalArgumentException.class, () -> new MultiKeyBatchCipher(ModeOfOperation.CBC));
+		assertThrows(IllegalArgumentException.class, () -> new MultiKeyBatchCipher(ModeOfOperation.ECB));
+	}
+
+}
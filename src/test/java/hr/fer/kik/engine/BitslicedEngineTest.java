@@ -0,0 +1,141 @@
+package hr.fer.kik.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.AES128;
+import hr.fer.kik.KeyContext;
+import hr.fer.kik.ModeOfOperation;
+import hr.fer.kik.util.AlgorithmUtils;
+import hr.fer.kik.util.IOUtils;
+
+public class BitslicedEngineTest {
+
+	@Test
+	public void testEncryptAndDecryptBlock() {
+		AES128 aes = new AES128();
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		BlockEngine engine = new BitslicedEngine(aes.keyExpansion(key));
+
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+		for (int i = 0; i < block.length; i++) {
+			block[i] = (byte) (0x11 * i);
+		}
+
+		byte[] plaintext = block.clone();
+
+		engine.encryptBlock(block, 0, block, 0);
+		assertArrayEquals(CIPHERTEXT, block);
+
+		engine.decryptBlock(block, 0, block, 0);
+		assertArrayEquals(plaintext, block);
+	}
+
+	@Test
+	public void testVectorEngineTypeEncryptsBlock() {
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		BlockEngine engine = EngineType.VECTOR.create(new AES128().keyExpansion(key));
+
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+		for (int i = 0; i < block.length; i++) {
+			block[i] = (byte) (0x11 * i);
+		}
+
+		engine.encryptBlock(block, 0, block, 0);
+		assertArrayEquals(CIPHERTEXT, block);
+	}
+
+	@Test
+	public void testMatchesReferenceImplementation() {
+		AES128 aes = new AES128();
+		Random random = new Random(15);
+
+		for (int n = 0; n < 20; n++) {
+			byte[] keyBytes = new byte[16];
+			random.nextBytes(keyBytes);
+			int[][] keySchedule = aes.keyExpansion(AlgorithmUtils.bytesToKey(keyBytes));
+			BlockEngine engine = new BitslicedEngine(keySchedule);
+
+			int blocks = 1 + n % 9;
+			byte[] in = new byte[blocks * BlockEngine.BLOCK_SIZE];
+			random.nextBytes(in);
+
+			byte[] expected = new byte[in.length];
+			byte[] inverse = new byte[in.length];
+			for (int i = 0; i < blocks; i++) {
+				int[][] state = new int[AES128.getNb()][AES128.getNb()];
+				AlgorithmUtils.bytesToState(in, i * BlockEngine.BLOCK_SIZE, state, 0);
+				AlgorithmUtils.stateToBytes(aes.referenceCipher(state, keySchedule), 0, expected,
+						i * BlockEngine.BLOCK_SIZE);
+				AlgorithmUtils.stateToBytes(aes.referenceInvCipher(state, keySchedule), 0, inverse,
+						i * BlockEngine.BLOCK_SIZE);
+			}
+
+			byte[] out = in.clone();
+			engine.encryptBlocks(out, 0, out, 0, blocks);
+			assertArrayEquals(expected, out);
+
+			engine.decryptBlocks(in, 0, out, 0, blocks);
+			assertArrayEquals(inverse, out);
+		}
+	}
+
+	@Test
+	public void testKeyContextModes() {
+		Random random = new Random(16);
+		byte[] key = new byte[16];
+		byte[] iv = new byte[16];
+		byte[] in = new byte[1000 * BlockEngine.BLOCK_SIZE];
+		random.nextBytes(key);
+		random.nextBytes(iv);
+		random.nextBytes(in);
+
+		KeyContext table = KeyContext.of(key);
+		KeyContext bitsliced = KeyContext.of(key, EngineType.BITSLICED);
+
+		for (ModeOfOperation mode : new ModeOfOperation[] { ModeOfOperation.ECB, ModeOfOperation.CTR }) {
+			byte[] expected = new byte[in.length];
+			byte[] out = new byte[in.length];
+
+			table.encrypt(mode, iv, in, 0, in.length, expected, 0);
+			bitsliced.encrypt(mode, iv, in, 0, in.length, out, 0);
+			assertArrayEquals(expected, out);
+		}
+	}
+
+	@Test
+	public void testBlocksUnderDifferentKeys() {
+		Random random = new Random(18);
+		BitslicedEngine[] keys = new BitslicedEngine[3];
+		for (int k = 0; k < keys.length; k++) {
+			byte[] key = new byte[16];
+			random.nextBytes(key);
+			keys[k] = (BitslicedEngine) KeyContext.of(key, EngineType.BITSLICED).getEngine();
+		}
+
+		int blocks = 11;
+		BitslicedEngine[] engines = new BitslicedEngine[blocks];
+		byte[] in = new byte[blocks * BlockEngine.BLOCK_SIZE];
+		byte[] expected = new byte[in.length];
+		random.nextBytes(in);
+
+		for (int i = 0; i < blocks; i++) {
+			engines[i] = keys[i < 4 ? 0 : random.nextInt(keys.length)];
+			engines[i].encryptBlock(in, i * BlockEngine.BLOCK_SIZE, expected, i * BlockEngine.BLOCK_SIZE);
+		}
+
+		byte[] out = new byte[in.length];
+		BitslicedEngine.encryptBlocks(engines, 0, in, 0, out, 0, blocks);
+		assertArrayEquals(expected, out);
+	}
+
+	private static final String KEY = "000102030405060708090a0b0c0d0e0f";
+
+	private static final byte[] CIPHERTEXT = { (byte) 0x69, (byte) 0xc4, (byte) 0xe0, (byte) 0xd8, (byte) 0x6a,
+			(byte) 0x7b, (byte) 0x04, (byte) 0x30, (byte) 0xd8, (byte) 0xcd, (byte) 0xb7, (byte) 0x80, (byte) 0x70,
+			(byte) 0xb4, (byte) 0xc5, (byte) 0x5a };
+
+}
@@ -0,0 +1,67 @@
+package hr.fer.kik.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.AES128;
+import hr.fer.kik.util.IOUtils;
+
+public class TTableEngineTest {
+
+	@Test
+	public void testEncryptAndDecryptBlock() {
+		AES128 aes = new AES128();
+		int[][] key = IOUtils.parseHexString(KEY, AES128.getNk(), AES128.getNb(), true);
+		BlockEngine engine = new TTableEngine(aes.keyExpansion(key));
+
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+		for (int i = 0; i < block.length; i++) {
+			block[i] = (byte) (0x11 * i);
+		}
+
+		byte[] plaintext = block.clone();
+
+		engine.encryptBlock(block, 0, block, 0);
+		assertArrayEquals(CIPHERTEXT, block);
+
+		engine.decryptBlock(block, 0, block, 0);
+		assertArrayEquals(plaintext, block);
+	}
+
+	@Test
+	public void testMatchesReferenceImplementation() {
+		AES128 aes = new AES128();
+		Random random = new Random(128);
+
+		for (int n = 0; n < 100; n++) {
+			int[][] key = randomState(random);
+			int[][] in = randomState(random);
+			int[][] keySchedule = aes.keyExpansion(key);
+
+			assertArrayEquals(aes.referenceCipher(in, keySchedule), aes.cipher(in, keySchedule));
+			assertArrayEquals(aes.referenceInvCipher(in, keySchedule), aes.invCipher(in, keySchedule));
+		}
+	}
+
+	private static int[][] randomState(Random random) {
+		int[][] result = new int[AES128.getNb()][AES128.getNb()];
+
+		for (int i = 0; i < result.length; i++) {
+			for (int j = 0; j < result[0].length; j++) {
+				result[i][j] = random.nextInt(256);
+			}
+		}
+
+		return result;
+	}
+
+	private static final String KEY = "000102030405060708090a0b0c0d0e0f";
+
+	private static final byte[] CIPHERTEXT = { (byte) 0x69, (byte) 0xc4, (byte) 0xe0, (byte) 0xd8, (byte) 0x6a,
+			(byte) 0x7b, (byte) 0x04, (byte) 0x30, (byte) 0xd8, (byte) 0xcd, (byte) 0xb7, (byte) 0x80, (byte) 0x70,
+			(byte) 0xb4, (byte) 0xc5, (byte) 0x5a };
+
+}
@@ -0,0 +1,54 @@
+package hr.fer.kik.engine.vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.AES128;
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.engine.EngineType;
+import hr.fer.kik.engine.TTableEngine;
+import hr.fer.kik.util.AlgorithmUtils;
+
+public class VectorEngineTest {
+
+	@Test
+	public void testEngineTypeCreatesVectorEngine() {
+		int[][] keySchedule = new AES128().keyExpansion(new int[AES128.getNk()][AES128.getNb()]);
+
+		assertTrue(EngineType.isVectorAvailable());
+		assertInstanceOf(VectorEngine.class, EngineType.VECTOR.create(keySchedule));
+	}
+
+	@Test
+	public void testMatchesTableEngine() {
+		AES128 aes = new AES128();
+		Random random = new Random(16);
+
+		for (int n = 0; n < 20; n++) {
+			byte[] key = new byte[16];
+			random.nextBytes(key);
+			int[][] keySchedule = aes.keyExpansion(AlgorithmUtils.bytesToKey(key));
+			BlockEngine expected = new TTableEngine(keySchedule);
+			BlockEngine engine = new VectorEngine(keySchedule);
+
+			int blocks = 1 + n * 3 % (4 * VectorEngine.BATCH_BLOCKS + 1);
+			byte[] in = new byte[blocks * BlockEngine.BLOCK_SIZE];
+			random.nextBytes(in);
+
+			byte[] ciphertext = new byte[in.length];
+			expected.encryptBlocks(in, 0, ciphertext, 0, blocks);
+			byte[] out = in.clone();
+			engine.encryptBlocks(out, 0, out, 0, blocks);
+			assertArrayEquals(ciphertext, out);
+
+			engine.decryptBlocks(out, 0, out, 0, blocks);
+			assertArrayEquals(in, out);
+		}
+	}
+
+}
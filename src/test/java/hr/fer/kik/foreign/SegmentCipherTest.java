@@ -0,0 +1,67 @@
+package hr.fer.kik.foreign;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.Cipher;
+
+public class SegmentCipherTest {
+
+	@Test
+	public void testNativeSegmentsMatchByteArrays() {
+		byte[] key = new byte[16];
+		byte[] iv = new byte[16];
+		byte[] plaintext = new byte[10_007];
+		Random random = new Random(10);
+		random.nextBytes(key);
+		random.nextBytes(iv);
+		random.nextBytes(plaintext);
+
+		for (String mode : new String[] { "CBC", "CTR", "GCM" }) {
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/" + mode);
+			cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+			byte[] expected = cipher.doFinal(plaintext);
+
+			try (Arena arena = Arena.ofConfined()) {
+				MemorySegment src = arena.allocate(plaintext.length);
+				MemorySegment.copy(plaintext, 0, src, ValueLayout.JAVA_BYTE, 0, plaintext.length);
+				MemorySegment dst = arena.allocate(expected.length);
+
+				cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+				long written = SegmentCipher.update(cipher, src.asSlice(0, 4000), dst);
+				written += SegmentCipher.doFinal(cipher, src.asSlice(4000), dst.asSlice(written));
+
+				assertEquals(expected.length, written);
+				assertArrayEquals(expected, dst.toArray(ValueLayout.JAVA_BYTE));
+
+				MemorySegment decrypted = arena.allocate(expected.length);
+				cipher.init(Cipher.DECRYPT_MODE, key, iv);
+				written = SegmentCipher.doFinal(cipher, dst, decrypted);
+
+				assertEquals(plaintext.length, written);
+				assertArrayEquals(plaintext, decrypted.asSlice(0, written).toArray(ValueLayout.JAVA_BYTE));
+			}
+		}
+	}
+
+	@Test
+	public void testReadOnlyOutputIsRejected() {
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/CTR");
+		cipher.init(Cipher.ENCRYPT_MODE, new byte[16]);
+		MemorySegment segment = MemorySegment.ofArray(new byte[16]);
+
+		assertThrows(IllegalArgumentException.class,
+				() -> SegmentCipher.doFinal(cipher, segment, segment.asReadOnly()));
+	}
+
+}
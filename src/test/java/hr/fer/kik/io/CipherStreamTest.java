@@ -0,0 +1,51 @@
+package hr.fer.kik.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.Cipher;
+
+public class CipherStreamTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Random random = new Random(8);
+		byte[] key = new byte[16];
+		byte[] iv = new byte[16];
+		byte[] plaintext = new byte[70_001];
+		random.nextBytes(key);
+		random.nextBytes(iv);
+		random.nextBytes(plaintext);
+
+		for (String mode : new String[] { "ECB", "CTR" }) {
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/" + mode);
+			cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+			byte[] expected = cipher.doFinal(plaintext);
+
+			ByteArrayOutputStream sink = new ByteArrayOutputStream();
+			try (OutputStream os = new CipherOutputStream(sink, cipher, 1024)) {
+				os.write(plaintext, 0, 10);
+				os.write(plaintext[10]);
+				os.write(plaintext, 11, plaintext.length - 11);
+			}
+			assertArrayEquals(expected, sink.toByteArray());
+
+			cipher.init(Cipher.DECRYPT_MODE, key, iv);
+			try (InputStream is = new CipherInputStream(new ByteArrayInputStream(expected), cipher, 512)) {
+				byte[] decrypted = is.readAllBytes();
+				assertArrayEquals(plaintext, Arrays.copyOf(decrypted, plaintext.length));
+			}
+		}
+	}
+
+}
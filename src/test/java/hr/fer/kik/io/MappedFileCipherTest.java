@@ -0,0 +1,50 @@
+package hr.fer.kik.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import hr.fer.kik.Cipher;
+
+public class MappedFileCipherTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testMatchesCipherAndRoundTrips() throws IOException {
+		Random random = new Random(9);
+		byte[] key = new byte[16];
+		byte[] iv = new byte[16];
+		byte[] plaintext = new byte[300_007];
+		random.nextBytes(key);
+		random.nextBytes(iv);
+		random.nextBytes(plaintext);
+
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/CTR");
+		cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+		byte[] expected = cipher.doFinal(plaintext);
+
+		Path source = directory.resolve("plain.bin");
+		Path target = directory.resolve("cipher.bin");
+		Files.write(source, plaintext);
+
+		MappedFileCipher fileCipher = new MappedFileCipher(key, iv);
+		fileCipher.setWindowSize(64 * 1024 + 16);
+		fileCipher.process(source, target);
+
+		assertArrayEquals(expected, Files.readAllBytes(target));
+
+		fileCipher.process(target);
+
+		assertArrayEquals(plaintext, Files.readAllBytes(target));
+	}
+
+}
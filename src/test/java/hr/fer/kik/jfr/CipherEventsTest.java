@@ -0,0 +1,93 @@
+package hr.fer.kik.jfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.Cipher;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class CipherEventsTest {
+
+	@Test
+	public void testEventsAreRecorded() throws Exception {
+		byte[] key = new byte[16];
+		new Random().nextBytes(key);
+
+		Path file = Files.createTempFile("cipher", ".jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable(CipherOperationEvent.NAME).withThreshold(Duration.ZERO);
+			recording.enable(KeyExpansionEvent.NAME);
+			recording.start();
+
+			Cipher cipher = new Cipher();
+			cipher.init("AES128/CTR");
+			cipher.init(Cipher.ENCRYPT_MODE, key, new byte[16]);
+			cipher.doFinal(new byte[100]);
+
+			recording.stop();
+			recording.dump(file);
+		}
+
+		try {
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+			RecordedEvent operation = events.stream()
+					.filter(event -> event.getEventType().getName().equals(CipherOperationEvent.NAME)).findFirst()
+					.orElseThrow();
+			assertEquals("AES128", operation.getString("algorithm"));
+			assertEquals("CTR", operation.getString("mode"));
+			assertTrue(operation.getBoolean("encryption"));
+			assertEquals(100, operation.getLong("bytes"));
+			assertEquals(Thread.currentThread().getName(), operation.getThread().getJavaName());
+
+			assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals(KeyExpansionEvent.NAME)
+					&& "TABLE".equals(event.getString("engine"))));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testShortOperationsAreNotRecordedByDefault() throws Exception {
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/ECB");
+		cipher.setModeOfUse(Cipher.ENCRYPT_MODE);
+
+		for (int i = 0; i < 1000; i++) {
+			cipher.doFinal(new byte[16], 0, 16, new byte[16], 0, new int[4][4]);
+		}
+
+		Path file = Files.createTempFile("cipher", ".jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable(CipherOperationEvent.NAME);
+			recording.start();
+
+			cipher.doFinal(new byte[16], 0, 16, new byte[16], 0, new int[4][4]);
+
+			recording.stop();
+			recording.dump(file);
+		}
+
+		try {
+			assertFalse(RecordingFile.readAllEvents(file).stream()
+					.anyMatch(event -> event.getEventType().getName().equals(CipherOperationEvent.NAME)
+							&& event.getLong("bytes") == 16));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package hr.fer.kik.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.Cipher;
+
+public class CipherMetricsTest {
+
+	@Test
+	public void testStreamingCallsAreCounted() {
+		CipherMetrics metrics = CipherMetrics.getInstance();
+		TransformationMetrics ctr = metrics.getTransformation("AES128/CTR");
+
+		long operations = ctr.getOperationCount();
+		long bytes = ctr.getByteCount();
+		long errors = ctr.getErrorCount();
+		long updates = ctr.getUpdateLatency().getCount();
+		long expansions = metrics.getKeyExpansionCount();
+
+		byte[] key = new byte[16];
+		new Random().nextBytes(key);
+
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/CTR");
+		cipher.init(Cipher.ENCRYPT_MODE, key, new byte[16]);
+
+		cipher.update(new byte[20]);
+		cipher.doFinal(new byte[12]);
+
+		assertEquals(operations + 1, ctr.getOperationCount());
+		assertEquals(bytes + 32, ctr.getByteCount());
+		assertEquals((bytes + 32 + 15) / 16, ctr.getBlockCount());
+		assertEquals(updates + 1, ctr.getUpdateLatency().getCount());
+		assertTrue(metrics.getKeyExpansionCount() > expansions);
+
+		assertThrows(IndexOutOfBoundsException.class, () -> cipher.update(new byte[16], 0, 16, new byte[8], 0));
+		assertEquals(errors + 1, ctr.getErrorCount());
+	}
+
+	@Test
+	public void testMBeanIsRegistered() throws Exception {
+		Cipher cipher = new Cipher();
+		cipher.init("AES128/ECB");
+		cipher.setModeOfUse(Cipher.ENCRYPT_MODE);
+		cipher.doFinal(new byte[32], 0, 32, new byte[32], 0, new int[4][4]);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(CipherMetrics.OBJECT_NAME);
+
+		assertTrue((Long) server.getAttribute(name, "OperationCount") > 0);
+
+		CompositeData ecb = Arrays.stream((CompositeData[]) server.getAttribute(name, "Transformations"))
+				.filter(data -> "AES128/ECB".equals(data.get("transformation"))).findFirst().orElseThrow();
+
+		assertTrue((Long) ecb.get("operations") > 0);
+		assertTrue((Long) ecb.get("blocks") >= 2);
+		assertEquals(LatencyHistogram.BUCKETS, ((long[]) ecb.get("doFinalHistogram")).length);
+	}
+
+	@Test
+	public void testLatencyHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99));
+
+		for (int i = 0; i < 99; i++) {
+			histogram.record(100);
+		}
+		histogram.record(1_000_000);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(128, histogram.getPercentile(50));
+		assertEquals(128, histogram.getPercentile(99));
+		assertEquals(1 << 20, histogram.getPercentile(100));
+		assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101));
+	}
+
+}
@@ -0,0 +1,126 @@
+package hr.fer.kik.mode;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.KeyContext;
+import hr.fer.kik.ModeOfOperation;
+import hr.fer.kik.engine.BlockEngine;
+
+public class BlockChainingModeTest {
+
+	/**
+	 * CBC-AES128 example vectors from NIST SP 800-38A, F.2.1
+	 */
+	private static final String KEY = "2b7e151628aed2a6abf7158809cf4f3c";
+	private static final String IV = "000102030405060708090a0b0c0d0e0f";
+	private static final String PLAINTEXT = "6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e51"
+			+ "30c81c46a35ce411e5fbc1191a0a52eff69f2445df4f9b17ad2b417be66c3710";
+	private static final String CIPHERTEXT = "7649abac8119b246cee98e9b12e9197d5086cb9b507219ee95db113a917678b2"
+			+ "73bed6b8e3c1743b7116e69e222295163ff1caa1681fac09120eca307586e1a7";
+
+	@Test
+	public void testNistVectors() {
+		KeyContext context = KeyContext.of(hex(KEY));
+		byte[] iv = hex(IV);
+		byte[] plaintext = hex(PLAINTEXT);
+
+		byte[] ciphertext = new byte[KeyContext.getOutputSize(ModeOfOperation.CBC, true, plaintext.length)];
+		assertEquals(plaintext.length + 16,
+				context.encrypt(ModeOfOperation.CBC, iv, plaintext, 0, plaintext.length, ciphertext, 0));
+		assertArrayEquals(hex(CIPHERTEXT), Arrays.copyOf(ciphertext, plaintext.length));
+
+		byte[] decrypted = new byte[ciphertext.length];
+		assertEquals(plaintext.length,
+				context.decrypt(ModeOfOperation.CBC, iv, ciphertext, 0, ciphertext.length, decrypted, 0));
+		assertArrayEquals(plaintext, Arrays.copyOf(decrypted, plaintext.length));
+	}
+
+	@Test
+	public void testParallelDecryptionInPlace() {
+		Random random = new Random(9);
+		BlockEngine engine = KeyContext.of(new byte[16]).getEngine();
+		byte[] iv = new byte[16];
+		random.nextBytes(iv);
+
+		byte[] plaintext = new byte[(3 * BlockChainingMode.CHUNK_BLOCKS + 5) * 16];
+		random.nextBytes(plaintext);
+		byte[] ciphertext = new byte[plaintext.length];
+		BlockChainingMode.encrypt(engine, iv, plaintext, 0, plaintext.length, ciphertext, 0);
+
+		byte[] sequential = new byte[plaintext.length];
+		BlockChainingMode.decrypt(engine, iv, ciphertext, 0, ciphertext.length, sequential, 0,
+				ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+		assertArrayEquals(plaintext, sequential);
+
+		byte[] parallel = ciphertext.clone();
+		BlockChainingMode.decrypt(engine, iv, parallel, 0, parallel.length, parallel, 0, ForkJoinPool.commonPool(), 0);
+		assertArrayEquals(plaintext, parallel);
+	}
+
+	@Test
+	public void testStreamProcessorMatchesOneShot() {
+		Random random = new Random(10);
+		KeyContext context = KeyContext.of(hex(KEY));
+		byte[] iv = hex(IV);
+
+		for (int length : new int[] { 0, 15, 16, 17, 1000, 4096 }) {
+			byte[] plaintext = new byte[length];
+			random.nextBytes(plaintext);
+
+			byte[] expected = new byte[KeyContext.getOutputSize(ModeOfOperation.CBC, true, length)];
+			context.encrypt(ModeOfOperation.CBC, iv, plaintext, 0, length, expected, 0);
+
+			StreamProcessor encryptor = new BlockChainingStreamProcessor(context.getEngine(), true, iv,
+					ForkJoinPool.commonPool(), 0);
+			assertArrayEquals(expected, process(encryptor, plaintext, random));
+
+			StreamProcessor decryptor = new BlockChainingStreamProcessor(context.getEngine(), false, iv,
+					ForkJoinPool.commonPool(), 0);
+			assertArrayEquals(plaintext, process(decryptor, expected, random));
+		}
+	}
+
+	@Test
+	public void testInvalidPadding() {
+		KeyContext context = KeyContext.of(hex(KEY));
+		byte[] iv = hex(IV);
+		byte[] ciphertext = Arrays.copyOf(hex(CIPHERTEXT), 64);
+
+		byte[] out = new byte[ciphertext.length];
+		assertThrows(IllegalArgumentException.class,
+				() -> context.decrypt(ModeOfOperation.CBC, iv, ciphertext, 0, ciphertext.length, out, 0));
+		assertThrows(IllegalArgumentException.class,
+				() -> context.decrypt(ModeOfOperation.CBC, iv, ciphertext, 0, 20, out, 0));
+	}
+
+	private static byte[] process(StreamProcessor processor, byte[] in, Random random) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] out = new byte[in.length + 32];
+		int position = 0;
+
+		while (position < in.length - 40) {
+			int len = random.nextInt(40);
+			os.write(out, 0, processor.update(in, position, len, out, 0));
+			position += len;
+		}
+
+		os.write(out, 0, processor.doFinal(in, position, in.length - position, out, 0));
+
+		return os.toByteArray();
+	}
+
+	private static byte[] hex(String s) {
+		return HexFormat.of().parseHex(s);
+	}
+
+}
@@ -0,0 +1,78 @@
+package hr.fer.kik.mode;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class CounterTest {
+
+	@Test
+	public void testIncrementCarriesAcrossHalves() {
+		byte[] iv = new byte[16];
+		Arrays.fill(iv, 8, 16, (byte) 0xff);
+		iv[7] = 0x01;
+
+		Counter counter = new Counter(iv);
+		byte[] block = new byte[16];
+
+		counter.next(block, 0);
+		assertArrayEquals(iv, block);
+
+		counter.getBlock(block, 0);
+		byte[] expected = new byte[16];
+		expected[7] = 0x02;
+		assertArrayEquals(expected, block);
+	}
+
+	@Test
+	public void testCounterWidthKeepsNonce() {
+		byte[] iv = new byte[16];
+		Arrays.fill(iv, (byte) 0xab);
+		Arrays.fill(iv, 12, 16, (byte) 0xff);
+		iv[15] = (byte) 0xfe;
+
+		Counter counter = new Counter(iv, 32);
+		byte[] block = new byte[32];
+		counter.nextBlocks(block, 0, 2);
+
+		assertArrayEquals(Arrays.copyOfRange(block, 0, 12), Arrays.copyOfRange(block, 16, 28));
+		assertThrows(IllegalStateException.class, () -> counter.next(block, 0));
+	}
+
+	@Test
+	public void testAddMatchesIncrement() {
+		byte[] iv = new byte[16];
+		Arrays.fill(iv, 4, 16, (byte) 0xff);
+
+		Counter incremented = new Counter(iv, 100);
+		Counter added = incremented.copy();
+
+		for (int i = 0; i < 1000; i++) {
+			incremented.increment();
+		}
+		added.add(1000);
+
+		byte[] a = new byte[16];
+		byte[] b = new byte[16];
+		incremented.getBlock(a, 0);
+		added.getBlock(b, 0);
+
+		assertArrayEquals(a, b);
+	}
+
+	@Test
+	public void testFromNonce() {
+		byte[] nonce = new byte[12];
+		Arrays.fill(nonce, (byte) 0x5a);
+
+		byte[] block = new byte[16];
+		Counter.fromNonce(nonce, 2).getBlock(block, 0);
+
+		assertArrayEquals(nonce, Arrays.copyOf(block, 12));
+		assertArrayEquals(new byte[] { 0, 0, 0, 2 }, Arrays.copyOfRange(block, 12, 16));
+	}
+
+}
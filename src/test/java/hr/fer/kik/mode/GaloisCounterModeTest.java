@@ -0,0 +1,177 @@
+package hr.fer.kik.mode;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.KeyContext;
+import hr.fer.kik.ModeOfOperation;
+
+public class GaloisCounterModeTest {
+
+	/**
+	 * Test cases 2, 3, 4 and 6 from the GCM specification by McGrew and Viega
+	 */
+	private static final String KEY = "feffe9928665731c6d6a8f9467308308";
+	private static final String IV = "cafebabefacedbaddecaf888";
+	private static final String LONG_IV = "9313225df88406e555909c5aff5269aa6a7a9538534f7da1e4c303d2a318a728"
+			+ "c3c0c95156809539fcf0e2429a6b525416aedbf5a0de6a57a637b39b";
+	private static final String AAD = "feedfacedeadbeeffeedfacedeadbeefabaddad2";
+	private static final String PLAINTEXT = "d9313225f88406e5a55909c5aff5269a86a7a9531534f7da2e4c303d8a318a72"
+			+ "1c3c0c95956809532fcf0e2449a6b525b16aedf5aa0de657ba637b391aafd255";
+	private static final String CIPHERTEXT = "42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e"
+			+ "21d514b25466931c7d8f6a5aac84aa051ba30b396a0aac973d58e091473f5985";
+
+	@Test
+	public void testSpecificationVectors() {
+		assertVector("00000000000000000000000000000000", "000000000000000000000000", "",
+				"00000000000000000000000000000000", "0388dace60b6a392f328c2b971b2fe78ab6e47d42cec13bdf53a67b21257bddf");
+		assertVector(KEY, IV, "", PLAINTEXT, CIPHERTEXT + "4d5c2af327cd64a62cf35abd2ba6fab4");
+		assertVector(KEY, IV, AAD, PLAINTEXT.substring(0, 120),
+				CIPHERTEXT.substring(0, 120) + "5bc94fbc3221a5db94fae95ae7121a47");
+		assertVector(KEY, LONG_IV, AAD, PLAINTEXT.substring(0, 120),
+				"8ce24998625615b603a033aca13fb894be9112a5c3a211a8ba262a3cca7e2ca701e4a9a4fba43c90ccdcb281d48c7c6f"
+						+ "d62875d2aca417034c34aee5619cc5aefffe0bfa462af43c1699d050");
+	}
+
+	@Test
+	public void testTableMatchesReferenceMultiplication() {
+		Random random = new Random(11);
+		byte[] h = new byte[16];
+		random.nextBytes(h);
+		GHash ghash = new GHash(h);
+		long[] hElement = { toLong(h, 0), toLong(h, 8) };
+
+		for (int i = 0; i < 100; i++) {
+			long[] x = { random.nextLong(), random.nextLong() };
+			long[] expected = GHash.multiply(x, hElement);
+			ghash.multiply(x);
+
+			assertArrayEquals(expected, x);
+		}
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		Random random = new Random(12);
+		KeyContext context = KeyContext.of(hex(KEY));
+		byte[] iv = hex(IV);
+		byte[] aad = hex(AAD);
+		byte[] plaintext = new byte[5 * GaloisCounterMode.CHUNK_SIZE + 23];
+		random.nextBytes(plaintext);
+
+		byte[] expected = new byte[plaintext.length + GaloisCounterMode.TAG_LENGTH];
+		GaloisCounterMode.encrypt(context.getEngine(), context.getGHash(), iv, aad, plaintext, 0, plaintext.length,
+				expected, 0, ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+
+		byte[] parallel = Arrays.copyOf(plaintext, expected.length);
+		GaloisCounterMode.encrypt(context.getEngine(), context.getGHash(), iv, aad, parallel, 0, plaintext.length,
+				parallel, 0, ForkJoinPool.commonPool(), 0);
+		assertArrayEquals(expected, parallel);
+
+		assertEquals(plaintext.length, GaloisCounterMode.decrypt(context.getEngine(), context.getGHash(), iv, aad,
+				parallel, 0, parallel.length, parallel, 0, ForkJoinPool.commonPool(), 0));
+		assertArrayEquals(plaintext, Arrays.copyOf(parallel, plaintext.length));
+	}
+
+	@Test
+	public void testTamperedInputIsRejected() {
+		KeyContext context = KeyContext.of(hex(KEY));
+		byte[] iv = hex(IV);
+		byte[] aad = hex(AAD);
+		byte[] plaintext = hex(PLAINTEXT);
+
+		byte[] ciphertext = new byte[plaintext.length + GaloisCounterMode.TAG_LENGTH];
+		context.encrypt(ModeOfOperation.GCM, iv, aad, plaintext, 0, plaintext.length, ciphertext, 0);
+
+		byte[] out = new byte[plaintext.length];
+		ciphertext[5] ^= 1;
+		assertThrows(IllegalArgumentException.class,
+				() -> context.decrypt(ModeOfOperation.GCM, iv, aad, ciphertext, 0, ciphertext.length, out, 0));
+		assertArrayEquals(new byte[plaintext.length], out);
+
+		ciphertext[5] ^= 1;
+		assertThrows(IllegalArgumentException.class,
+				() -> context.decrypt(ModeOfOperation.GCM, iv, ciphertext, 0, ciphertext.length, out, 0));
+	}
+
+	@Test
+	public void testStreamProcessorMatchesOneShot() {
+		Random random = new Random(13);
+		KeyContext context = KeyContext.of(hex(KEY));
+		byte[] iv = hex(IV);
+		byte[] aad = hex(AAD);
+
+		for (int length : new int[] { 0, 1, 16, 60, 1000 }) {
+			byte[] plaintext = new byte[length];
+			random.nextBytes(plaintext);
+
+			byte[] expected = new byte[length + GaloisCounterMode.TAG_LENGTH];
+			context.encrypt(ModeOfOperation.GCM, iv, aad, plaintext, 0, length, expected, 0);
+
+			StreamProcessor encryptor = new GaloisCounterStreamProcessor(context.getEngine(), context.getGHash(), true,
+					iv, ForkJoinPool.commonPool(), 0);
+			encryptor.updateAAD(aad, 0, 7);
+			encryptor.updateAAD(aad, 7, aad.length - 7);
+			assertArrayEquals(expected, process(encryptor, plaintext, random));
+			assertThrows(IllegalStateException.class, () -> encryptor.update(plaintext, 0, 0, expected, 0));
+
+			StreamProcessor decryptor = new GaloisCounterStreamProcessor(context.getEngine(), context.getGHash(), false,
+					iv, ForkJoinPool.commonPool(), 0);
+			decryptor.updateAAD(aad, 0, aad.length);
+			assertArrayEquals(plaintext, process(decryptor, expected, random));
+		}
+	}
+
+	private static void assertVector(String key, String iv, String aad, String plaintext, String expected) {
+		KeyContext context = KeyContext.of(hex(key));
+		byte[] in = hex(plaintext);
+		byte[] out = new byte[in.length + GaloisCounterMode.TAG_LENGTH];
+
+		context.encrypt(ModeOfOperation.GCM, hex(iv), hex(aad), in, 0, in.length, out, 0);
+		assertArrayEquals(hex(expected), out);
+
+		byte[] decrypted = new byte[in.length];
+		context.decrypt(ModeOfOperation.GCM, hex(iv), hex(aad), out, 0, out.length, decrypted, 0);
+		assertArrayEquals(in, decrypted);
+	}
+
+	private static byte[] process(StreamProcessor processor, byte[] in, Random random) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] out = new byte[in.length + 32];
+		int position = 0;
+
+		while (position < in.length - 40) {
+			int len = random.nextInt(40);
+			os.write(out, 0, processor.update(in, position, len, out, 0));
+			position += len;
+		}
+
+		os.write(out, 0, processor.doFinal(in, position, in.length - position, out, 0));
+
+		return os.toByteArray();
+	}
+
+	private static long toLong(byte[] b, int off) {
+		long result = 0;
+
+		for (int i = 0; i < 8; i++) {
+			result = result << 8 | (b[off + i] & 0xff);
+		}
+
+		return result;
+	}
+
+	private static byte[] hex(String s) {
+		return HexFormat.of().parseHex(s);
+	}
+
+}
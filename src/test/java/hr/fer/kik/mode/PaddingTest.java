@@ -0,0 +1,119 @@
+package hr.fer.kik.mode;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.Cipher;
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.util.AlgorithmUtils;
+
+public class PaddingTest {
+
+	@Test
+	public void testPadAndUnpad() {
+		for (Padding padding : new Padding[] { Padding.PKCS7, Padding.ISO7816 }) {
+			for (int len = 0; len <= 2 * BlockEngine.BLOCK_SIZE; len++) {
+				int padded = padding.paddedLength(len);
+				byte[] block = new byte[padded];
+				Arrays.fill(block, 0, len, (byte) 0x80);
+
+				int last = padded - BlockEngine.BLOCK_SIZE;
+				padding.pad(block, last, len - last);
+
+				assertEquals(len, padding.unpad(block, 0, padded));
+			}
+		}
+
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+		Padding.ISO7816.pad(block, 0, 13);
+		assertEquals("00000000000000000000000000800000", HexFormat.of().formatHex(block));
+
+		Padding.PKCS7.pad(block, 0, 13);
+		assertEquals("00000000000000000000000000030303", HexFormat.of().formatHex(block));
+
+		assertEquals(32, Padding.ZERO.paddedLength(17));
+		assertEquals(32, Padding.ZERO.paddedLength(32));
+		assertThrows(IllegalArgumentException.class, () -> Padding.NONE.pad(new byte[16], 0, 3));
+	}
+
+	@Test
+	public void testInvalidPadding() {
+		byte[] block = new byte[BlockEngine.BLOCK_SIZE];
+		assertThrows(IllegalArgumentException.class, () -> Padding.PKCS7.unpad(block, 0, block.length));
+		assertThrows(IllegalArgumentException.class, () -> Padding.ISO7816.unpad(block, 0, block.length));
+
+		block[15] = 0x11;
+		assertThrows(IllegalArgumentException.class, () -> Padding.PKCS7.unpad(block, 0, block.length));
+		assertThrows(IllegalArgumentException.class, () -> Padding.ISO7816.unpad(block, 0, block.length));
+
+		block[15] = 0x02;
+		block[14] = 0x03;
+		assertThrows(IllegalArgumentException.class, () -> Padding.PKCS7.unpad(block, 0, block.length));
+	}
+
+	@Test
+	public void testCipherTransformations() {
+		Random random = new Random(22);
+		byte[] key = new byte[16];
+		byte[] iv = new byte[16];
+		random.nextBytes(key);
+		random.nextBytes(iv);
+
+		for (String transformation : new String[] { "AES128/ECB/PKCS7", "AES128/ECB/ISO7816", "AES128/CBC/ISO7816",
+				"AES128/CBC/ZERO", "AES128/CBC/NONE", "AES128/ECB/NONE" }) {
+			for (int len : new int[] { 0, 5, 16, 37, 64 }) {
+				if (transformation.endsWith("NONE") && len % 16 != 0) {
+					continue;
+				}
+
+				byte[] plaintext = new byte[len];
+				random.nextBytes(plaintext);
+
+				Cipher cipher = new Cipher();
+				cipher.init(transformation);
+				cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+				byte[] ciphertext = cipher.doFinal(plaintext);
+
+				cipher.init(Cipher.DECRYPT_MODE, key, iv);
+				ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+				for (int i = 0; i < ciphertext.length; i += 7) {
+					decrypted.writeBytes(cipher.update(ciphertext, i, Math.min(7, ciphertext.length - i)));
+				}
+				decrypted.writeBytes(cipher.doFinal(new byte[0]));
+
+				byte[] expected = transformation.endsWith("ZERO") ? Arrays.copyOf(plaintext, ciphertext.length)
+						: plaintext;
+				assertArrayEquals(expected, decrypted.toByteArray(), transformation);
+
+				if (transformation.startsWith("AES128/ECB")) {
+					byte[] oneShot = new byte[ciphertext.length];
+					cipher.setModeOfUse(Cipher.DECRYPT_MODE);
+					int produced = cipher.doFinal(ciphertext, 0, ciphertext.length, oneShot, 0,
+							AlgorithmUtils.bytesToKey(key));
+					assertArrayEquals(expected, Arrays.copyOf(oneShot, produced), transformation);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUnsupportedPadding() {
+		Cipher cipher = new Cipher();
+
+		assertThrows(IllegalArgumentException.class, () -> cipher.init("AES128/CTR/PKCS7"));
+		assertThrows(IllegalArgumentException.class, () -> cipher.init("AES128/CBC/X923"));
+
+		cipher.init("AES128/CBC/NONE");
+		cipher.init(Cipher.ENCRYPT_MODE, new byte[16]);
+		assertThrows(IllegalArgumentException.class, () -> cipher.doFinal(new byte[5]));
+	}
+
+}
@@ -0,0 +1,57 @@
+package hr.fer.kik.mode;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.engine.BlockEngine;
+import hr.fer.kik.engine.TTableEngine;
+
+public class ParallelCounterModeTest {
+
+	@Test
+	public void testMatchesSequentialResult() {
+		Random random = new Random(5);
+		int[] keySchedule = new int[44];
+		for (int i = 0; i < keySchedule.length; i++) {
+			keySchedule[i] = random.nextInt();
+		}
+		BlockEngine engine = new TTableEngine(keySchedule);
+
+		byte[] iv = new byte[16];
+		random.nextBytes(iv);
+		byte[] in = new byte[5 * ParallelCounterMode.CHUNK_SIZE + 21];
+		random.nextBytes(in);
+
+		byte[] expected = new byte[in.length];
+		Counter sequential = new Counter(iv);
+		CounterMode.process(engine, sequential, in, 0, in.length, expected, 0);
+
+		byte[] forkJoin = new byte[in.length];
+		Counter forkJoinCounter = new Counter(iv);
+		ParallelCounterMode.process(engine, forkJoinCounter, in, 0, in.length, forkJoin, 0, ForkJoinPool.commonPool(), 0);
+		assertArrayEquals(expected, forkJoin);
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			byte[] inPlace = in.clone();
+			Counter executorCounter = new Counter(iv);
+			ParallelCounterMode.process(engine, executorCounter, inPlace, 0, in.length, inPlace, 0, executor, 0);
+			assertArrayEquals(expected, inPlace);
+		} finally {
+			executor.shutdown();
+		}
+
+		byte[] a = new byte[16];
+		byte[] b = new byte[16];
+		sequential.getBlock(a, 0);
+		forkJoinCounter.getBlock(b, 0);
+		assertArrayEquals(a, b);
+	}
+
+}
@@ -0,0 +1,71 @@
+package hr.fer.kik.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class FiniteFieldsUtilTest {
+
+	@Test
+	public void testMultiplyMatchesShiftAndAdd() {
+		for (int a = 0; a < 256; a++) {
+			for (int b = 0; b < 256; b++) {
+				assertEquals(referenceMultiply(a, b), FiniteFieldsUtil.multiply(a, b));
+			}
+		}
+
+		assertEquals(0xc1, FiniteFieldsUtil.multiply(0x57, 0x83));
+	}
+
+	@Test
+	public void testInverse() {
+		assertEquals(0, FiniteFieldsUtil.inverse(0));
+
+		for (int a = 1; a < 256; a++) {
+			assertEquals(1, FiniteFieldsUtil.multiply(a, FiniteFieldsUtil.inverse(a)));
+		}
+	}
+
+	@Test
+	public void testBulkOperations() {
+		Random random = new Random(17);
+		byte[] a = new byte[100];
+		byte[] b = new byte[100];
+		random.nextBytes(a);
+		random.nextBytes(b);
+
+		for (int c : new int[] { 0x00, 0x02, 0x0e, 0x57 }) {
+			byte[] expected = new byte[a.length];
+			for (int i = 0; i < a.length; i++) {
+				expected[i] = (byte) (b[i] ^ referenceMultiply(a[i] & 0xff, c));
+			}
+
+			byte[] out = new byte[a.length];
+			FiniteFieldsUtil.multiply(a, 0, c, out, 0, a.length);
+			FiniteFieldsUtil.add(out, 0, b, 0, out, 0, out.length);
+			assertArrayEquals(expected, out);
+
+			out = b.clone();
+			FiniteFieldsUtil.multiplyAdd(a, 0, c, out, 0, a.length);
+			assertArrayEquals(expected, out);
+		}
+	}
+
+	private static int referenceMultiply(int a, int b) {
+		int result = 0;
+
+		for (int i = 0; i < 8; i++) {
+			if (FiniteFieldsUtil.getBit(b, i) != 0) {
+				result ^= a;
+			}
+
+			a = FiniteFieldsUtil.xtime(a);
+		}
+
+		return result;
+	}
+
+}
@@ -0,0 +1,90 @@
+package hr.fer.kik.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.kik.AES128;
+
+public class HexCodecTest {
+
+	@Test
+	public void testMatchesHexFormat() {
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+
+		String hex = HexFormat.of().formatHex(bytes);
+
+		assertEquals(hex, HexCodec.encode(bytes));
+		assertArrayEquals(bytes, HexCodec.decode(hex));
+		assertArrayEquals(bytes, HexCodec.decode(hex.toUpperCase()));
+	}
+
+	@Test
+	public void testBuffers() {
+		byte[] bytes = { 0x00, 0x7f, (byte) 0x80, (byte) 0xff };
+
+		CharBuffer heap = CharBuffer.allocate(10);
+		heap.put('[');
+		HexCodec.encode(bytes, 0, bytes.length, heap);
+		assertEquals("[007f80ff", new String(heap.array(), 0, heap.position()));
+
+		CharBuffer wrapped = CharBuffer.wrap("007f80ffa");
+		byte[] out = new byte[4];
+		assertEquals(4, HexCodec.decode(wrapped, out, 0));
+		assertArrayEquals(bytes, out);
+		assertEquals(1, wrapped.remaining());
+
+		assertThrows(IllegalArgumentException.class, () -> HexCodec.decode("0g"));
+		assertThrows(IllegalArgumentException.class, () -> HexCodec.decode("abc"));
+	}
+
+	@Test
+	public void testStreams() throws Exception {
+		byte[] bytes = new byte[20_000];
+		new Random(21).nextBytes(bytes);
+
+		StringWriter writer = new StringWriter();
+		assertEquals(bytes.length, HexCodec.encode(new ByteArrayInputStream(bytes), writer));
+		assertEquals(HexFormat.of().formatHex(bytes), writer.toString());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(bytes.length, HexCodec.decode(new StringReader(writer.toString()), out));
+		assertArrayEquals(bytes, out.toByteArray());
+
+		StringReader reader = new StringReader(writer.toString());
+		byte[] block = new byte[16];
+		int total = 0;
+		for (int n; (n = HexCodec.read(reader, block, 0, block.length)) != -1;) {
+			assertArrayEquals(Arrays.copyOfRange(bytes, total, total + n), Arrays.copyOf(block, n));
+			total += n;
+		}
+		assertEquals(bytes.length, total);
+	}
+
+	@Test
+	public void testStateLayout() {
+		String hex = "00112233445566778899aabbccddeeff";
+		int[][] expected = IOUtils.parseHexString(hex, AES128.getNk(), AES128.getNb(), false);
+		int[][] state = new int[AES128.getNb()][AES128.getNb()];
+
+		HexCodec.decodeState(hex, 0, state, 0);
+
+		assertArrayEquals(expected, state);
+		assertEquals(hex, IOUtils.parseState(state));
+	}
+
+}